@@ -0,0 +1,90 @@
+package com.waes.filediff.benchmark;
+
+import java.util.Random;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.waes.filediff.Application;
+
+/**
+ * Files compared by the benchmarks, generated from a fixed seed so every
+ * run compares the same content.
+ *
+ * @author Rodrigo Hackbarth
+ */
+public final class BenchmarkFiles {
+
+	/**
+	 * How many bytes of the right file differ from the left file.
+	 */
+	public enum Density {
+
+		/** No byte differs. */
+		IDENTICAL(0),
+
+		/** One byte in every 64 KB differs. */
+		SPARSE(64 * 1024),
+
+		/** One byte in every 16 differs. */
+		DENSE(16),
+
+		/** Every other byte differs, the largest possible number of diffs. */
+		ALTERNATING(2);
+
+		private final int interval;
+
+		Density(int interval) {
+			this.interval = interval;
+		}
+	}
+
+	private BenchmarkFiles() {}
+
+	/**
+	 * Returns a file of random content.
+	 *
+	 * @param size size of the file, in bytes
+	 * @return the file content
+	 */
+	public static byte[] leftFile(int size) {
+		byte[] file = new byte[size];
+		new Random(42).nextBytes(file);
+		return file;
+	}
+
+	/**
+	 * Returns a copy of the given file with bytes changed at the given density.
+	 *
+	 * @param leftFile file to be copied
+	 * @param density how many bytes are changed
+	 * @return the changed copy
+	 */
+	public static byte[] rightFile(byte[] leftFile, Density density) {
+		byte[] file = leftFile.clone();
+
+		if(density.interval > 0) {
+			for(int i = density.interval / 2; i < file.length; i += density.interval) {
+				file[i]++;
+			}
+		}
+
+		return file;
+	}
+
+	/**
+	 * Starts the application without its web server, with the given
+	 * properties, so the benchmarks run the beans as they are wired in
+	 * production.
+	 *
+	 * @param properties properties in the "key=value" format
+	 * @return the application context, to be closed by the benchmark
+	 */
+	public static ConfigurableApplicationContext startApplication(String... properties) {
+		return new SpringApplicationBuilder(Application.class)
+				.web(WebApplicationType.NONE)
+				.properties(properties)
+				.run();
+	}
+}
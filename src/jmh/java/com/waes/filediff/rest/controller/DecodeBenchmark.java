@@ -0,0 +1,89 @@
+package com.waes.filediff.rest.controller;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import com.waes.filediff.benchmark.BenchmarkFiles;
+import com.waes.filediff.exception.DiffValidationException;
+import com.waes.filediff.service.FileUpload;
+
+/**
+ * Measures decoding the json body of a file upload, from 1 KB to 1 GB of
+ * file content, by the streaming parser of {@link DiffController} and by the
+ * incremental {@link Base64JsonBodyDecoder} of {@link ReactiveDiffController},
+ * which receives the body in 8 KB pieces as Netty would.
+ *
+ * @author Rodrigo Hackbarth
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=3)
+@Measurement(iterations=5)
+@Fork(value=1, jvmArgsAppend={"-Xms6g", "-Xmx6g"})
+public class DecodeBenchmark {
+
+	private static final int PIECE_SIZE = 8192;
+
+	@Param({"1024", "1048576", "67108864", "1073741824"})
+	private int size;
+
+	private final DiffController controller = new DiffController();
+	private byte[] body;
+
+	@Setup
+	public void setUp() {
+		byte[] encodedFile = Base64.getEncoder().encode(BenchmarkFiles.leftFile(size));
+		byte[] prefix = "{\"file\":\"".getBytes(StandardCharsets.UTF_8);
+
+		// built as bytes, a 1 GB file would not fit the heap as an encoded String
+		body = new byte[prefix.length + encodedFile.length + 2];
+		System.arraycopy(prefix, 0, body, 0, prefix.length);
+		System.arraycopy(encodedFile, 0, body, prefix.length, encodedFile.length);
+		body[body.length - 2] = '"';
+		body[body.length - 1] = '}';
+	}
+
+	@Benchmark
+	public FileUpload decodeStream() throws DiffValidationException {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.setContentType(MediaType.APPLICATION_JSON_VALUE);
+		request.setContent(body);
+
+		FileUpload file = newUpload();
+		controller.readDecodedFileContentFromRequestBody(request, file);
+
+		return file;
+	}
+
+	@Benchmark
+	public FileUpload decodePieces() throws DiffValidationException {
+		Base64JsonBodyDecoder decoder = new Base64JsonBodyDecoder(newUpload());
+
+		for(int offset = 0; offset < body.length; offset += PIECE_SIZE) {
+			decoder.decode(ByteBuffer.wrap(body, offset, Math.min(PIECE_SIZE, body.length - offset)));
+		}
+
+		return decoder.toFileContent();
+	}
+
+	private FileUpload newUpload() throws DiffValidationException {
+		return new FileUpload(ByteBuffer.allocate((int) DiffController.getExpectedDecodedSize(body.length)));
+	}
+}
@@ -0,0 +1,97 @@
+package com.waes.filediff.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.waes.filediff.benchmark.BenchmarkFiles;
+import com.waes.filediff.benchmark.BenchmarkFiles.Density;
+import com.waes.filediff.exception.DiffValidationException;
+import com.waes.filediff.model.DiffServiceResultDTO;
+
+/**
+ * Measures building the whole {@link DiffServiceResultDTO} of two files, done
+ * by {@link DiffService#diff(int)} through DiffService.checkFilesDiffs, and
+ * serializing it to json, for each {@link Density} of differences.
+ * <br/><br/>
+ * The result holds every diff, up to one for every other byte, so the files
+ * only go up to 64 MB instead of the 1 GB of {@link DiffServiceBenchmark}.
+ *
+ * @author Rodrigo Hackbarth
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=3)
+@Measurement(iterations=5)
+@Fork(value=1, jvmArgsAppend={"-Xms4g", "-Xmx4g"})
+public class DiffResultBenchmark {
+
+	private static final int ID = 1;
+
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+	/**
+	 * Stream discarding the serialized result.
+	 */
+	private static final OutputStream DISCARDING_STREAM = new OutputStream() {
+
+		@Override
+		public void write(int b) {}
+
+		@Override
+		public void write(byte[] b, int off, int len) {}
+	};
+
+	@Param({"1024", "1048576", "16777216", "67108864"})
+	private int size;
+
+	@Param({"IDENTICAL", "SPARSE", "DENSE", "ALTERNATING"})
+	private Density density;
+
+	private ConfigurableApplicationContext context;
+	private DiffService diffService;
+	private DiffServiceResultDTO result;
+
+	@Setup
+	public void setUp() throws IOException, DiffValidationException {
+		context = BenchmarkFiles.startApplication("diff.cache.max-size=0");
+		diffService = context.getBean(DiffService.class);
+
+		byte[] left = BenchmarkFiles.leftFile(size);
+		diffService.addLeft(ID, left);
+		diffService.addRight(ID, BenchmarkFiles.rightFile(left, density));
+
+		result = diffService.diff(ID);
+	}
+
+	@TearDown
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public DiffServiceResultDTO checkFilesDiffs() throws DiffValidationException {
+		return diffService.diff(ID);
+	}
+
+	@Benchmark
+	public void serialize() throws IOException {
+		OBJECT_MAPPER.writeValue(DISCARDING_STREAM, result);
+	}
+}
@@ -0,0 +1,113 @@
+package com.waes.filediff.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.waes.filediff.benchmark.BenchmarkFiles;
+import com.waes.filediff.benchmark.BenchmarkFiles.Density;
+import com.waes.filediff.exception.DiffValidationException;
+
+/**
+ * Measures the comparison of two files of the same size, from 1 KB to 1 GB,
+ * for each {@link Density} of differences.
+ * <br/><br/>
+ * "compare" runs the {@link ParallelDiffComparator} pass done by
+ * DiffService.checkFilesDiffs. "diff" runs {@link DiffService#diff(int, DiffResultWriter)}
+ * end to end, as done for GET /v1/diff/{id}, with the result cache disabled so
+ * every invocation compares the files. Both only count the diffs, and the
+ * comparator only holds the runs of a window of chunks at a time, so the
+ * memory used besides the files does not grow with their size;
+ * {@link DiffResultBenchmark} measures building and serializing the whole result.
+ * <br/><br/>
+ * Identical uploads are stored once, so "diff" of {@link Density#IDENTICAL}
+ * files measures that shortcut rather than a comparison.
+ *
+ * @author Rodrigo Hackbarth
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=3)
+@Measurement(iterations=5)
+@Fork(value=1, jvmArgsAppend={"-Xms6g", "-Xmx6g"})
+public class DiffServiceBenchmark {
+
+	private static final int ID = 1;
+
+	@Param({"1024", "1048576", "67108864", "1073741824"})
+	private int size;
+
+	@Param({"IDENTICAL", "SPARSE", "DENSE", "ALTERNATING"})
+	private Density density;
+
+	private ConfigurableApplicationContext context;
+	private DiffService diffService;
+	private ParallelDiffComparator comparator;
+	private ByteBuffer leftFile;
+	private ByteBuffer rightFile;
+
+	@Setup
+	public void setUp() throws IOException {
+		context = BenchmarkFiles.startApplication("diff.cache.max-size=0");
+		diffService = context.getBean(DiffService.class);
+		comparator = context.getBean(ParallelDiffComparator.class);
+
+		byte[] left = BenchmarkFiles.leftFile(size);
+		byte[] right = BenchmarkFiles.rightFile(left, density);
+		leftFile = ByteBuffer.wrap(left);
+		rightFile = ByteBuffer.wrap(right);
+
+		diffService.addLeft(ID, left);
+		diffService.addRight(ID, right);
+	}
+
+	@TearDown
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public int compare() {
+		long[] diffBytes = new long[1];
+
+		return comparator.compare(leftFile, rightFile, (offset, length) -> diffBytes[0] += length);
+	}
+
+	@Benchmark
+	public void diff(Blackhole blackhole) throws DiffValidationException, IOException {
+		diffService.diff(ID, new DiffResultWriter() {
+
+			@Override
+			public void writeStart(String status, String message) {
+				blackhole.consume(message);
+			}
+
+			@Override
+			public void writeDiff(int offset, int length) {
+				blackhole.consume(offset);
+				blackhole.consume(length);
+			}
+
+			@Override
+			public void writeEnd(String nextCursor) {
+				blackhole.consume(nextCursor);
+			}
+		});
+	}
+}
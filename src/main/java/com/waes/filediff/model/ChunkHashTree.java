@@ -0,0 +1,329 @@
+package com.waes.filediff.model;
+
+import java.nio.ByteBuffer;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * SHA-256 hashes of the fixed-size chunks of a file, topped by a root hash
+ * of all chunk hashes, computed once when the file is uploaded.
+ * <br/><br/>
+ * Chunks at the same index whose hashes are equal hold the same bytes, so
+ * only the chunks whose hashes differ need to be compared byte by byte, and
+ * files whose root hashes are equal do not need to be compared at all.
+ *
+ * @author Rodrigo Hackbarth
+ */
+public final class ChunkHashTree {
+
+	private static final int HASH_LENGTH = 32;
+
+	private final int chunkSize;
+	private final int length;
+	private final byte[] chunkHashes;
+	private final byte[] root;
+
+	private ChunkHashTree(int chunkSize, int length, byte[] chunkHashes, byte[] root) {
+		this.chunkSize = chunkSize;
+		this.length = length;
+		this.chunkHashes = chunkHashes;
+		this.root = root;
+	}
+
+	/**
+	 * Hashes the given file content in chunks of the given size, the last
+	 * chunk being shorter when the content length is not a multiple of it.
+	 *
+	 * @param fileContent file content
+	 * @param chunkSize size of the chunks, in bytes
+	 * @return the hashes of the file content, or null if the chunk size is
+	 *         not positive
+	 */
+	public static ChunkHashTree of(byte[] fileContent, int chunkSize) {
+		return of(ByteBuffer.wrap(fileContent), chunkSize);
+	}
+
+	/**
+	 * Hashes the given file, from its first to its last byte regardless of
+	 * its position and limit, in chunks of the given size.
+	 *
+	 * @param file file content, which may be a heap, direct or memory-mapped buffer
+	 * @param chunkSize size of the chunks, in bytes
+	 * @return the hashes of the file content, or null if the chunk size is
+	 *         not positive
+	 * @see #of(byte[], int)
+	 */
+	public static ChunkHashTree of(ByteBuffer file, int chunkSize) {
+		if(chunkSize <= 0) {
+			return null;
+		}
+
+		MessageDigest digest = newDigest();
+		int length = file.capacity();
+		int chunkCount = getChunkCount(length, chunkSize);
+		byte[] chunkHashes = new byte[chunkCount * HASH_LENGTH];
+
+		for(int chunk = 0; chunk < chunkCount; chunk++) {
+			hashChunk(digest, file, chunkSize, chunk, chunkHashes);
+		}
+
+		return new ChunkHashTree(chunkSize, length, chunkHashes, digest.digest(chunkHashes));
+	}
+
+	/**
+	 * Returns a builder hashing the chunks of a file of up to the given
+	 * length as they are written, see {@link Builder}.
+	 *
+	 * @param maxLength length of the buffer the file is written to
+	 * @param chunkSize size of the chunks, in bytes
+	 * @return the builder, or null if the chunk size is not positive
+	 */
+	public static Builder builder(int maxLength, int chunkSize) {
+		return chunkSize <= 0 ? null : new Builder(maxLength, chunkSize);
+	}
+
+	/**
+	 * Returns the hashes of the given file, which is the file these hashes
+	 * were computed for, with the [offset, offset + patch length) range
+	 * overwritten by the given patch. The file itself is left as it is, and
+	 * only the chunks overlapping the patched range are hashed again.
+	 *
+	 * @param file file content before the patch, from its first to its last byte
+	 * @param offset offset of the patched range
+	 * @param patch bytes overwriting the patched range
+	 * @return the hashes of the patched file content
+	 */
+	public ChunkHashTree patched(ByteBuffer file, int offset, byte[] patch) {
+		MessageDigest digest = newDigest();
+		byte[] patchedHashes = chunkHashes.clone();
+		int end = offset + patch.length;
+
+		for(int chunk = offset / chunkSize; chunk < getChunkCount() && (long) chunk * chunkSize < end; chunk++) {
+			int chunkStart = chunk * chunkSize;
+			int chunkEnd = (int) Math.min((long) chunkStart + chunkSize, length);
+			int patchStart = Math.max(chunkStart, offset);
+			int patchEnd = Math.min(chunkEnd, end);
+
+			digest.update(range(file, chunkStart, patchStart));
+			digest.update(patch, patchStart - offset, patchEnd - patchStart);
+			digest.update(range(file, patchEnd, chunkEnd));
+			digestChunk(digest, chunk, patchedHashes);
+		}
+
+		return new ChunkHashTree(chunkSize, length, patchedHashes, digest.digest(patchedHashes));
+	}
+
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	/**
+	 * Returns the root hash, which identifies the file content along with
+	 * its length and the chunk size, as two different contents hashed in
+	 * chunks of the same size have different roots.
+	 *
+	 * @return a copy of the root hash
+	 */
+	public byte[] getRootHash() {
+		return root.clone();
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	public int getChunkCount() {
+		return chunkHashes.length / HASH_LENGTH;
+	}
+
+	/**
+	 * Tells if the chunks of both trees cover the same ranges, which is the
+	 * case for trees of files with the same length hashed in chunks of the
+	 * same size.
+	 *
+	 * @param other hashes of the other file, may be null
+	 * @return true if the chunk hashes of both trees can be compared
+	 */
+	public boolean isComparableTo(ChunkHashTree other) {
+		return other != null && chunkSize == other.chunkSize && length == other.length;
+	}
+
+	/**
+	 * Tells if the root hashes of both trees are equal, meaning the
+	 * files are equal. Both trees must be comparable.
+	 *
+	 * @param other hashes of the other file
+	 * @return true if the files are equal
+	 */
+	public boolean rootEquals(ChunkHashTree other) {
+		return MessageDigest.isEqual(root, other.root);
+	}
+
+	/**
+	 * Returns the index of the first chunk, from the given one on, whose hash
+	 * differs from the hash of the same chunk of the other tree, which must
+	 * be comparable to this one.
+	 *
+	 * @param other hashes of the other file
+	 * @param chunk index of the first chunk to be checked
+	 * @return the index of the changed chunk, or -1 if there is none
+	 */
+	public int nextChangedChunk(ChunkHashTree other, int chunk) {
+		for(; chunk < getChunkCount(); chunk++) {
+			if(!chunkEquals(other, chunk)) {
+				return chunk;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Returns the index of the first chunk, from the given one on, whose hash
+	 * is equal to the hash of the same chunk of the other tree, which must
+	 * be comparable to this one.
+	 *
+	 * @param other hashes of the other file
+	 * @param chunk index of the first chunk to be checked
+	 * @return the index of the unchanged chunk, or the chunk count if there is none
+	 */
+	public int nextUnchangedChunk(ChunkHashTree other, int chunk) {
+		for(; chunk < getChunkCount(); chunk++) {
+			if(chunkEquals(other, chunk)) {
+				return chunk;
+			}
+		}
+
+		return getChunkCount();
+	}
+
+	private boolean chunkEquals(ChunkHashTree other, int chunk) {
+		int offset = chunk * HASH_LENGTH;
+
+		for(int i = offset; i < offset + HASH_LENGTH; i++) {
+			if(chunkHashes[i] != other.chunkHashes[i]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static int getChunkCount(int length, int chunkSize) {
+		return (int) ((length + (long) chunkSize - 1) / chunkSize);
+	}
+
+	private static void hashChunk(MessageDigest digest, ByteBuffer file, int chunkSize, int chunk, byte[] chunkHashes) {
+		int offset = chunk * chunkSize;
+		digest.update(range(file, offset, offset + Math.min(chunkSize, file.capacity() - offset)));
+		digestChunk(digest, chunk, chunkHashes);
+	}
+
+	private static void digestChunk(MessageDigest digest, int chunk, byte[] chunkHashes) {
+		try {
+			digest.digest(chunkHashes, chunk * HASH_LENGTH, HASH_LENGTH);
+		} catch (DigestException e) {
+			throw new IllegalStateException("Could not hash the file chunk.", e);
+		}
+	}
+
+	private static ByteBuffer range(ByteBuffer file, int from, int to) {
+		ByteBuffer content = file.duplicate();
+		content.limit(to);
+		content.position(from);
+
+		return content;
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available.", e);
+		}
+	}
+
+	/**
+	 * Hashes the chunks of a file while the file is written into a buffer,
+	 * each chunk as soon as it is complete, so the tree is built once the
+	 * file ends without another pass over its whole content.
+	 * <br/><br/>
+	 * Disjoint ranges of the file may be hashed by different threads, whose
+	 * writes must be visible to the thread building the tree, as they are
+	 * once an upload session is closed. A chunk written again has to be
+	 * hashed again.
+	 */
+	public static final class Builder {
+
+		private final int chunkSize;
+		private final int maxLength;
+		private final byte[] chunkHashes;
+		private final boolean[] hashedChunks;
+
+		private Builder(int maxLength, int chunkSize) {
+			int chunkCount = getChunkCount(maxLength, chunkSize);
+
+			this.chunkSize = chunkSize;
+			this.maxLength = maxLength;
+			this.chunkHashes = new byte[chunkCount * HASH_LENGTH];
+			this.hashedChunks = new boolean[chunkCount];
+		}
+
+		public int getChunkSize() {
+			return chunkSize;
+		}
+
+		/**
+		 * Hashes the chunks lying entirely in the [from, to) range of the
+		 * file, which was just written.
+		 *
+		 * @param file buffer the file is written to, whose capacity is the
+		 *             maximum length of the file
+		 * @param from offset of the first written byte
+		 * @param to offset following the last written byte
+		 */
+		public void hashChunks(ByteBuffer file, int from, int to) {
+			MessageDigest digest = null;
+
+			for(int chunk = getChunkCount(from, chunkSize); chunk < hashedChunks.length && getChunkEnd(chunk) <= to; chunk++) {
+				if(digest == null) {
+					digest = newDigest();
+				}
+
+				hashChunk(digest, file, chunkSize, chunk, chunkHashes);
+				hashedChunks[chunk] = true;
+			}
+		}
+
+		/**
+		 * Builds the hashes of the given file, which is not written anymore,
+		 * hashing the chunks which were not hashed yet. The builder must not
+		 * be used afterwards.
+		 *
+		 * @param file whole file content, from its first byte to its capacity,
+		 *             which is at most the maximum length of the file
+		 * @return the hashes of the file content
+		 */
+		public ChunkHashTree build(ByteBuffer file) {
+			MessageDigest digest = newDigest();
+			int length = file.capacity();
+			int chunkCount = getChunkCount(length, chunkSize);
+			byte[] hashes = chunkCount == hashedChunks.length ? chunkHashes : Arrays.copyOf(chunkHashes, chunkCount * HASH_LENGTH);
+
+			for(int chunk = 0; chunk < chunkCount; chunk++) {
+				// the last chunk of a file shorter than its buffer may have been hashed with more bytes
+				if(!hashedChunks[chunk] || getChunkEnd(chunk) > length) {
+					hashChunk(digest, file, chunkSize, chunk, hashes);
+				}
+			}
+
+			return new ChunkHashTree(chunkSize, length, hashes, digest.digest(hashes));
+		}
+
+		private int getChunkEnd(int chunk) {
+			return (int) Math.min((long) chunk * chunkSize + chunkSize, maxLength);
+		}
+	}
+}
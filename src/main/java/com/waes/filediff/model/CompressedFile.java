@@ -0,0 +1,304 @@
+package com.waes.filediff.model;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * File content compressed with Deflate in fixed-size blocks, each of them
+ * compressed on its own so it can be decompressed without the others.
+ * <br/><br/>
+ * Blocks which do not get smaller when compressed are kept as they are, so
+ * content which does not compress costs no more than the raw file. All blocks
+ * are compressed the same way, so blocks at the same index whose compressed
+ * bytes are equal hold the same bytes, and do not need to be decompressed to
+ * be compared.
+ * <br/><br/>
+ * Instances are immutable: patching a file returns a new instance sharing
+ * the blocks which were not patched.
+ *
+ * @author Rodrigo Hackbarth
+ */
+public final class CompressedFile {
+
+	private final int blockSize;
+	private final int length;
+	private final byte[][] blocks;
+
+	private CompressedFile(int blockSize, int length, byte[][] blocks) {
+		this.blockSize = blockSize;
+		this.length = length;
+		this.blocks = blocks;
+	}
+
+	/**
+	 * Compresses the given file content in blocks of the given size, the last
+	 * block being shorter when the content length is not a multiple of it.
+	 *
+	 * @param fileContent file content
+	 * @param blockSize size of the blocks, in bytes, which must be positive
+	 * @return the compressed file content
+	 */
+	public static CompressedFile of(byte[] fileContent, int blockSize) {
+		return of(ByteBuffer.wrap(fileContent), blockSize);
+	}
+
+	/**
+	 * Compresses the given file, from its first to its last byte regardless
+	 * of its position and limit, in blocks of the given size.
+	 *
+	 * @param file file content, which may be a heap, direct or memory-mapped buffer
+	 * @param blockSize size of the blocks, in bytes, which must be positive
+	 * @return the compressed file content
+	 * @see #of(byte[], int)
+	 */
+	public static CompressedFile of(ByteBuffer file, int blockSize) {
+		if(blockSize <= 0) {
+			throw new IllegalArgumentException("Block size must be positive.");
+		}
+
+		int length = file.capacity();
+		byte[][] blocks = new byte[(int) ((length + (long) blockSize - 1) / blockSize)][];
+		BlockCompressor compressor = new BlockCompressor(blockSize);
+
+		try {
+			for(int block = 0; block < blocks.length; block++) {
+				blocks[block] = compressor.compress(file, block * blockSize, blockLength(length, blockSize, block));
+			}
+		} finally {
+			compressor.end();
+		}
+
+		return new CompressedFile(blockSize, length, blocks);
+	}
+
+	/**
+	 * Returns the content of this file with the [offset, offset + patch length)
+	 * range overwritten by the given patch. Only the blocks overlapping that
+	 * range are decompressed, patched and compressed again.
+	 *
+	 * @param offset offset of the patched range
+	 * @param patch bytes overwriting the patched range
+	 * @return the compressed patched file content
+	 */
+	public CompressedFile patched(int offset, byte[] patch) {
+		byte[][] patchedBlocks = blocks.clone();
+		ByteBuffer block = ByteBuffer.wrap(new byte[Math.min(blockSize, length)]);
+		BlockCompressor compressor = new BlockCompressor(blockSize);
+		Inflater inflater = new Inflater();
+		int end = offset + patch.length;
+
+		try {
+			for(int i = offset / blockSize; i < blocks.length && (long) i * blockSize < end; i++) {
+				int blockStart = i * blockSize;
+				int blockLength = decompressBlock(i, block.array(), inflater);
+				int patchStart = Math.max(blockStart, offset);
+				int patchEnd = Math.min(blockStart + blockLength, end);
+
+				System.arraycopy(patch, patchStart - offset, block.array(), patchStart - blockStart, patchEnd - patchStart);
+				patchedBlocks[i] = compressor.compress(block, 0, blockLength);
+			}
+		} finally {
+			compressor.end();
+			inflater.end();
+		}
+
+		return new CompressedFile(blockSize, length, patchedBlocks);
+	}
+
+	/**
+	 * Returns the length of the decompressed file.
+	 *
+	 * @return the file length, in bytes
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	public int getBlockCount() {
+		return blocks.length;
+	}
+
+	/**
+	 * Returns the decompressed length of the given block, which is the block
+	 * size for all blocks but the last one.
+	 *
+	 * @param block index of the block
+	 * @return the length of the block, in bytes
+	 */
+	public int getBlockLength(int block) {
+		return blockLength(length, blockSize, block);
+	}
+
+	/**
+	 * Returns the size of the compressed content, which is what the file
+	 * takes in memory.
+	 *
+	 * @return the size of the compressed blocks, in bytes
+	 */
+	public long getCompressedSize() {
+		long compressedSize = 0;
+
+		for(byte[] block : blocks) {
+			compressedSize += block.length;
+		}
+
+		return compressedSize;
+	}
+
+	/**
+	 * Tells if the blocks of both files cover the same ranges, which is the
+	 * case for files with the same length compressed in blocks of the same size.
+	 *
+	 * @param other the other compressed file, may be null
+	 * @return true if the blocks of both files can be compared
+	 */
+	public boolean isComparableTo(CompressedFile other) {
+		return other != null && blockSize == other.blockSize && length == other.length;
+	}
+
+	/**
+	 * Tells if the block at the given index is known to hold the same bytes
+	 * in both files, by comparing their compressed bytes.
+	 *
+	 * @param other the other compressed file, which must be comparable to this one
+	 * @param block index of the block
+	 * @return true if the block holds the same bytes in both files, false
+	 *         if it must be decompressed to be compared
+	 */
+	public boolean blockEquals(CompressedFile other, int block) {
+		byte[] thisBlock = blocks[block];
+		byte[] otherBlock = other.blocks[block];
+
+		if(thisBlock == otherBlock) {
+			return true;
+		}
+
+		if(thisBlock.length != otherBlock.length) {
+			return false;
+		}
+
+		for(int i = 0; i < thisBlock.length; i++) {
+			if(thisBlock[i] != otherBlock[i]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Decompresses the given block into the start of the given array.
+	 *
+	 * @param block index of the block
+	 * @param target array receiving the block, at least as long as it
+	 * @param inflater inflater used to decompress the block, which is reset
+	 *                 before being used, so it can be reused for other blocks
+	 * @return the length of the block, in bytes
+	 */
+	public int decompressBlock(int block, byte[] target, Inflater inflater) {
+		byte[] compressed = blocks[block];
+		int blockLength = getBlockLength(block);
+
+		if(compressed.length == blockLength) {
+			// stored as it is, since it did not get smaller when compressed
+			System.arraycopy(compressed, 0, target, 0, blockLength);
+			return blockLength;
+		}
+
+		inflater.reset();
+		inflater.setInput(compressed);
+
+		try {
+			int decompressed = 0;
+			while(decompressed < blockLength && !inflater.finished()) {
+				int inflated = inflater.inflate(target, decompressed, blockLength - decompressed);
+
+				if(inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new DataFormatException("Truncated block.");
+				}
+
+				decompressed += inflated;
+			}
+		} catch (DataFormatException e) {
+			throw new IllegalStateException("Corrupted compressed block: " + block, e);
+		}
+
+		return blockLength;
+	}
+
+	/**
+	 * Decompresses the whole file.
+	 *
+	 * @return the decompressed file content
+	 */
+	public byte[] toByteArray() {
+		byte[] fileContent = new byte[length];
+		byte[] block = new byte[Math.min(blockSize, length)];
+		Inflater inflater = new Inflater();
+
+		try {
+			for(int i = 0; i < blocks.length; i++) {
+				System.arraycopy(block, 0, fileContent, i * blockSize, decompressBlock(i, block, inflater));
+			}
+		} finally {
+			inflater.end();
+		}
+
+		return fileContent;
+	}
+
+	private static int blockLength(int length, int blockSize, int block) {
+		return (int) Math.min(blockSize, length - (long) block * blockSize);
+	}
+
+	/**
+	 * Compresses blocks one after the other, reusing its buffers and deflater.
+	 */
+	private static class BlockCompressor {
+
+		private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		private final byte[] input;
+		private final byte[] output;
+
+		BlockCompressor(int blockSize) {
+			this.input = new byte[blockSize];
+			this.output = new byte[blockSize];
+		}
+
+		/**
+		 * Compresses the [offset, offset + blockLength) range of the given
+		 * file, returning it as it is if it does not get smaller.
+		 */
+		byte[] compress(ByteBuffer file, int offset, int blockLength) {
+			ByteBuffer source = file.duplicate();
+			source.clear().position(offset);
+			source.get(input, 0, blockLength);
+
+			deflater.reset();
+			deflater.setInput(input, 0, blockLength);
+			deflater.finish();
+
+			int compressed = 0;
+			while(!deflater.finished() && compressed < blockLength) {
+				compressed += deflater.deflate(output, compressed, blockLength - compressed);
+			}
+
+			if(!deflater.finished() || compressed >= blockLength) {
+				return Arrays.copyOf(input, blockLength);
+			}
+
+			return Arrays.copyOf(output, compressed);
+		}
+
+		void end() {
+			deflater.end();
+		}
+	}
+}
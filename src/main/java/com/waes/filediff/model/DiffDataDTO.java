@@ -28,4 +28,8 @@ public class DiffDataDTO {
 	public int getLength() {
 		return length;
 	}
+	
+	public void setLength(int length) {
+		this.length = length;
+	}
 }
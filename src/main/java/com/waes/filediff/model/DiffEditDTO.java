@@ -0,0 +1,47 @@
+package com.waes.filediff.model;
+
+/**
+ * Data of an edit turning the left file into the right file, found 
+ * when comparing files which may be different in size.
+ * 
+ * @author Rodrigo Hackbarth
+ */
+public class DiffEditDTO {
+
+	private String operation;
+	private int leftOffset;
+	private int rightOffset;
+	private int length;
+	
+	public String getOperation() {
+		return operation;
+	}
+	
+	public void setOperation(String operation) {
+		this.operation = operation;
+	}
+	
+	public int getLeftOffset() {
+		return leftOffset;
+	}
+	
+	public void setLeftOffset(int leftOffset) {
+		this.leftOffset = leftOffset;
+	}
+	
+	public int getRightOffset() {
+		return rightOffset;
+	}
+	
+	public void setRightOffset(int rightOffset) {
+		this.rightOffset = rightOffset;
+	}
+	
+	public int getLength() {
+		return length;
+	}
+	
+	public void setLength(int length) {
+		this.length = length;
+	}
+}
@@ -0,0 +1,57 @@
+package com.waes.filediff.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of the insert/delete diff of the diff service.
+ * <br/><br/>
+ * It contains the edits which turn the left
+ * file into the right file.
+ * 
+ * @author Rodrigo Hackbarth
+ */
+public class DiffEditsResultDTO {
+
+	private String status;
+	private String message;
+	private List<DiffEditDTO> edits;
+	
+	public String getStatus() {
+		return status;
+	}
+	
+	public void setStatus(String status) {
+		this.status = status;
+	}
+	
+	public String getMessage() {
+		return message;
+	}
+	
+	public void setMessage(String message) {
+		this.message = message;
+	}
+	
+	public List<DiffEditDTO> getEdits() {
+		createEditsListIfNull();
+		
+		return Collections.unmodifiableList(edits);
+	}
+	
+	public void addEdit(DiffEditDTO edit) {
+		createEditsListIfNull();
+		
+		this.edits.add(edit);
+	}
+
+	/**
+	 * Creates the {@link #edits} list if the list is null.
+	 */
+	private void createEditsListIfNull() {
+		if(edits == null) {
+			edits = new ArrayList<>();
+		}
+	}
+}
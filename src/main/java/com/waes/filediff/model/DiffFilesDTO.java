@@ -1,15 +1,28 @@
 package com.waes.filediff.model;
 
+import java.nio.ByteBuffer;
+
 /**
  * Stores the files to be compared.
+ * <br/><br/>
+ * The files are kept as read-only buffers, which are either heap
+ * or memory-mapped buffers depending on the storage mode, along with
+ * the {@link ChunkHashTree} of each file computed when it was uploaded.
+ * <br/><br/>
+ * With "diff.storage.compression.enabled" set to true, each file is kept
+ * as a {@link CompressedFile} instead, its buffer and hashes being null.
  *
  * @author Rodrigo Hackbarth
  */
 public class DiffFilesDTO {
 
 	private Integer id;
-	private byte[] leftFile;
-	private byte[] rightFile;
+	private ByteBuffer leftFile;
+	private ByteBuffer rightFile;
+	private ChunkHashTree leftFileHashes;
+	private ChunkHashTree rightFileHashes;
+	private CompressedFile leftCompressedFile;
+	private CompressedFile rightCompressedFile;
 	
 	public Integer getId() {
 		return id;
@@ -19,19 +32,51 @@ public class DiffFilesDTO {
 		this.id = id;
 	}
 	
-	public byte[] getLeftFile() {
+	public ByteBuffer getLeftFile() {
 		return leftFile;
 	}
 	
-	public void setLeftFile(byte[] leftFile) {
+	public void setLeftFile(ByteBuffer leftFile) {
 		this.leftFile = leftFile;
 	}
 	
-	public byte[] getRightFile() {
+	public ByteBuffer getRightFile() {
 		return rightFile;
 	}
 	
-	public void setRightFile(byte[] rightFile) {
+	public void setRightFile(ByteBuffer rightFile) {
 		this.rightFile = rightFile;
 	}
+	
+	public ChunkHashTree getLeftFileHashes() {
+		return leftFileHashes;
+	}
+	
+	public void setLeftFileHashes(ChunkHashTree leftFileHashes) {
+		this.leftFileHashes = leftFileHashes;
+	}
+	
+	public ChunkHashTree getRightFileHashes() {
+		return rightFileHashes;
+	}
+	
+	public void setRightFileHashes(ChunkHashTree rightFileHashes) {
+		this.rightFileHashes = rightFileHashes;
+	}
+	
+	public CompressedFile getLeftCompressedFile() {
+		return leftCompressedFile;
+	}
+	
+	public void setLeftCompressedFile(CompressedFile leftCompressedFile) {
+		this.leftCompressedFile = leftCompressedFile;
+	}
+	
+	public CompressedFile getRightCompressedFile() {
+		return rightCompressedFile;
+	}
+	
+	public void setRightCompressedFile(CompressedFile rightCompressedFile) {
+		this.rightCompressedFile = rightCompressedFile;
+	}
 }
@@ -0,0 +1,82 @@
+package com.waes.filediff.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/**
+ * State of an asynchronous diff job of the diff service.
+ * <br/><br/>
+ * The job is "running" until its comparison is "done", "failed" or
+ * "cancelled". The result of the comparison is only filled in once the
+ * job is done.
+ *
+ * @author Rodrigo Hackbarth
+ */
+public class DiffJobDTO {
+
+	private String status;
+	private String message;
+	private String jobId;
+	private String state;
+	private long scannedBytes;
+	private long totalBytes;
+
+	@JsonInclude(Include.NON_NULL)
+	private DiffServiceResultDTO result;
+
+	public String getStatus() {
+		return status;
+	}
+
+	public void setStatus(String status) {
+		this.status = status;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	public void setMessage(String message) {
+		this.message = message;
+	}
+
+	public String getJobId() {
+		return jobId;
+	}
+
+	public void setJobId(String jobId) {
+		this.jobId = jobId;
+	}
+
+	public String getState() {
+		return state;
+	}
+
+	public void setState(String state) {
+		this.state = state;
+	}
+
+	public long getScannedBytes() {
+		return scannedBytes;
+	}
+
+	public void setScannedBytes(long scannedBytes) {
+		this.scannedBytes = scannedBytes;
+	}
+
+	public long getTotalBytes() {
+		return totalBytes;
+	}
+
+	public void setTotalBytes(long totalBytes) {
+		this.totalBytes = totalBytes;
+	}
+
+	public DiffServiceResultDTO getResult() {
+		return result;
+	}
+
+	public void setResult(DiffServiceResultDTO result) {
+		this.result = result;
+	}
+}
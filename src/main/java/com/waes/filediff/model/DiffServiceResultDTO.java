@@ -1,22 +1,33 @@
 package com.waes.filediff.model;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
 
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
 /**
  * Result of the diff service.
  * <br/><br/>
  * It contains all diff data found when
  * comparing the files.
+ * <br/><br/>
+ * The offset and length of the diffs are kept in primitive arrays, taking
+ * 8 bytes per diff, instead of one {@link DiffDataDTO} per diff. The result
+ * is serialized by {@link DiffServiceResultSerializer}.
  * 
  * @author Rodrigo Hackbarth
  */
+@JsonSerialize(using=DiffServiceResultSerializer.class)
 public class DiffServiceResultDTO {
 
+	private static final int[] EMPTY = new int[0];
+
 	private String status;
 	private String message;
-	private List<DiffDataDTO> diffs;
+	private int[] offsets = EMPTY;
+	private int[] lengths = EMPTY;
+	private int diffCount;
 	
 	public String getStatus() {
 		return status;
@@ -34,24 +45,59 @@ public class DiffServiceResultDTO {
 		this.message = message;
 	}
 	
+	/**
+	 * Returns a read-only view of the diffs, creating the 
+	 * {@link DiffDataDTO} of a diff only when it is accessed.
+	 * 
+	 * @return the diffs found when comparing the files
+	 */
 	public List<DiffDataDTO> getDiffs() {
-		createDiffsListIfNull();
-		
-		return Collections.unmodifiableList(diffs);
+		return new AbstractList<DiffDataDTO>() {
+
+			@Override
+			public DiffDataDTO get(int index) {
+				if(index < 0 || index >= diffCount) {
+					throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + diffCount);
+				}
+				
+				DiffDataDTO diff = new DiffDataDTO();
+				diff.setOffset(offsets[index]);
+				diff.setLength(lengths[index]);
+				return diff;
+			}
+
+			@Override
+			public int size() {
+				return diffCount;
+			}
+		};
 	}
 	
 	public void addDiff(DiffDataDTO diff) {
-		createDiffsListIfNull();
-		
-		this.diffs.add(diff);
+		addDiff(diff.getOffset(), diff.getLength());
 	}
-
-	/**
-	 * Creates the {@link #diffs} list if the list is null.
-	 */
-	private void createDiffsListIfNull() {
-		if(diffs == null) {
-			diffs = new ArrayList<>();
+	
+	public void addDiff(int offset, int length) {
+		if(diffCount == offsets.length) {
+			int capacity = Math.max(16, diffCount * 2);
+			offsets = Arrays.copyOf(offsets, capacity);
+			lengths = Arrays.copyOf(lengths, capacity);
 		}
+		
+		offsets[diffCount] = offset;
+		lengths[diffCount] = length;
+		diffCount++;
+	}
+	
+	public int getDiffCount() {
+		return diffCount;
+	}
+	
+	public int getDiffOffset(int index) {
+		return offsets[index];
+	}
+	
+	public int getDiffLength(int index) {
+		return lengths[index];
 	}
 }
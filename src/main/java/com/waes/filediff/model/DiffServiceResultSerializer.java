@@ -0,0 +1,45 @@
+package com.waes.filediff.model;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+/**
+ * Serializes a {@link DiffServiceResultDTO} straight from its primitive
+ * arrays, without creating a {@link DiffDataDTO} per diff.
+ * <br/><br/>
+ * The produced json is in the following format:
+ * <br/>
+ * 
+ * {"status":"success","message":null,"diffs":[{"offset":0,"length":1}]}
+ * 
+ * @author Rodrigo Hackbarth
+ */
+public class DiffServiceResultSerializer extends StdSerializer<DiffServiceResultDTO> {
+
+	private static final long serialVersionUID = 4702145861342395623L;
+
+	public DiffServiceResultSerializer() {
+		super(DiffServiceResultDTO.class);
+	}
+
+	@Override
+	public void serialize(DiffServiceResultDTO result, JsonGenerator generator, SerializerProvider provider) throws IOException {
+		generator.writeStartObject();
+		generator.writeStringField("status", result.getStatus());
+		generator.writeStringField("message", result.getMessage());
+		generator.writeArrayFieldStart("diffs");
+		
+		for(int i = 0; i < result.getDiffCount(); i++) {
+			generator.writeStartObject();
+			generator.writeNumberField("offset", result.getDiffOffset(i));
+			generator.writeNumberField("length", result.getDiffLength(i));
+			generator.writeEndObject();
+		}
+		
+		generator.writeEndArray();
+		generator.writeEndObject();
+	}
+}
@@ -0,0 +1,80 @@
+package com.waes.filediff.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/**
+ * Summary of a diff of the diff service, answering a single question
+ * about the files without listing their diffs.
+ * <br/><br/>
+ * Only the field answering the question asked is filled in: whether the
+ * files are equal, where their first difference is, or how many diffs and
+ * different bytes there are.
+ *
+ * @author Rodrigo Hackbarth
+ */
+public class DiffSummaryDTO {
+
+	private String status;
+	private String message;
+
+	@JsonInclude(Include.NON_NULL)
+	private Boolean equal;
+
+	@JsonInclude(Include.NON_NULL)
+	private Integer firstDifference;
+
+	@JsonInclude(Include.NON_NULL)
+	private Long diffCount;
+
+	@JsonInclude(Include.NON_NULL)
+	private Long diffBytes;
+
+	public String getStatus() {
+		return status;
+	}
+
+	public void setStatus(String status) {
+		this.status = status;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	public void setMessage(String message) {
+		this.message = message;
+	}
+
+	public Boolean getEqual() {
+		return equal;
+	}
+
+	public void setEqual(Boolean equal) {
+		this.equal = equal;
+	}
+
+	public Integer getFirstDifference() {
+		return firstDifference;
+	}
+
+	public void setFirstDifference(Integer firstDifference) {
+		this.firstDifference = firstDifference;
+	}
+
+	public Long getDiffCount() {
+		return diffCount;
+	}
+
+	public void setDiffCount(Long diffCount) {
+		this.diffCount = diffCount;
+	}
+
+	public Long getDiffBytes() {
+		return diffBytes;
+	}
+
+	public void setDiffBytes(Long diffBytes) {
+		this.diffBytes = diffBytes;
+	}
+}
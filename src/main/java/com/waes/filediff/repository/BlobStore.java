@@ -0,0 +1,306 @@
+package com.waes.filediff.repository;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.waes.filediff.model.ChunkHashTree;
+
+/**
+ * Content-addressed storage for the uploaded files.
+ * <br/><br/>
+ * Each upload is hashed with SHA-256 and stored in the {@link FileStore} only
+ * once per unique content: uploads with the same content, under the same or
+ * different IDs, get the very same buffer back. Stored blobs are reference
+ * counted and dropped once no side of any ID points to them anymore.
+ * <br/><br/>
+ * When the {@link ChunkHashTree} of an upload is given, its root hash is used
+ * as the hash of the content, so the upload is not hashed a second time.
+ * <br/><br/>
+ * Since equal content always resolves to the same buffer, two files can be
+ * known to be equal just by comparing the references to their buffers.
+ * <br/><br/>
+ * The buffers handed out are read-only and their content never changes, so
+ * they can be read without locking: a patched file is stored as a new blob
+ * by {@link #storePatched(int, ByteBuffer, int, byte[], ChunkHashTree)},
+ * leaving the blob being read untouched.
+ * <br/><br/>
+ * With "diff.storage.deduplication.enabled" set to false, every upload
+ * is stored separately.
+ * 
+ * @author Rodrigo Hackbarth
+ */
+@Component
+public class BlobStore {
+
+	private final FileStore fileStore;
+	private final boolean deduplicationEnabled;
+
+	/**
+	 * Stored blobs mapped by the hash of their content.
+	 */
+	private final Map<ContentHash, Blob> blobsByHash = new HashMap<>();
+
+	/**
+	 * Stored blobs, deduplicated or not, mapped by their read-only buffer,
+	 * compared by reference.
+	 */
+	private final Map<ByteBuffer, Blob> blobsByBuffer = new IdentityHashMap<>();
+
+	@Autowired
+	public BlobStore(FileStore fileStore, @Value("${diff.storage.deduplication.enabled:true}") boolean deduplicationEnabled) {
+		this.fileStore = fileStore;
+		this.deduplicationEnabled = deduplicationEnabled;
+	}
+
+	/**
+	 * Stores the given file content, or references the already stored
+	 * blob with the same content.
+	 * 
+	 * @param id identifier of the files the content belongs to
+	 * @param fileContent file content
+	 * @return a read-only buffer holding the stored content
+	 * @throws IOException if the content could not be stored
+	 */
+	public ByteBuffer store(int id, byte[] fileContent) throws IOException {
+		return store(id, fileContent, null);
+	}
+
+	/**
+	 * Stores the given file content, or references the already stored
+	 * blob with the same content, as identified by the given hashes.
+	 * 
+	 * @param id identifier of the files the content belongs to
+	 * @param fileContent file content
+	 * @param hashes hashes of the given file content, or null to hash it
+	 * @return a read-only buffer holding the stored content
+	 * @throws IOException if the content could not be stored
+	 */
+	public ByteBuffer store(int id, byte[] fileContent, ChunkHashTree hashes) throws IOException {
+		ContentHash hash = !deduplicationEnabled ? null : hashes != null ? new ContentHash(hashes) : new ContentHash(fileContent);
+		ByteBuffer stored = reference(hash);
+
+		return stored != null ? stored : add(hash, fileStore.store(id, fileContent));
+	}
+
+	/**
+	 * Allocates room in the {@link FileStore} for a file of the given size,
+	 * to be written in place and then handed to {@link #register(ByteBuffer, ChunkHashTree)}.
+	 *
+	 * @param id identifier of the files the content belongs to
+	 * @param size size of the file, in bytes
+	 * @return a writable buffer of the given capacity
+	 * @throws IOException if the room could not be allocated
+	 */
+	public ByteBuffer allocate(int id, int size) throws IOException {
+		return fileStore.allocate(id, size);
+	}
+
+	/**
+	 * Registers a file written in place into a buffer allocated by
+	 * {@link FileStore#allocate(int, int)}, or references the already
+	 * stored blob with the same content, in which case the given buffer
+	 * is dropped.
+	 * 
+	 * @param file buffer holding the whole file content, which must not 
+	 *             be written anymore
+	 * @return a read-only buffer holding the stored content
+	 */
+	public ByteBuffer register(ByteBuffer file) {
+		return register(file, null);
+	}
+
+	/**
+	 * Registers a file written in place, as done by {@link #register(ByteBuffer)},
+	 * identifying its content by the given hashes.
+	 * 
+	 * @param file buffer holding the whole file content, which must not 
+	 *             be written anymore
+	 * @param hashes hashes of the given file, or null to hash it
+	 * @return a read-only buffer holding the stored content
+	 */
+	public ByteBuffer register(ByteBuffer file, ChunkHashTree hashes) {
+		ByteBuffer content = file.duplicate();
+		content.clear();
+		
+		ContentHash hash = !deduplicationEnabled ? null : hashes != null ? new ContentHash(hashes) : new ContentHash(content);
+		
+		return add(hash, content);
+	}
+
+	/**
+	 * Stores a copy of the given file with the [offset, offset + patch length)
+	 * range overwritten, or references the already stored blob with the
+	 * patched content, as identified by the given hashes.
+	 * <br/><br/>
+	 * The file is copied from buffer to buffer, so the patched content is
+	 * neither held in an array on the heap nor hashed once more.
+	 * 
+	 * @param id identifier of the files the content belongs to
+	 * @param file stored file to be patched
+	 * @param offset offset of the patched range
+	 * @param patch bytes overwriting the patched range
+	 * @param hashes hashes of the patched content, or null to hash it
+	 * @return a read-only buffer holding the patched content
+	 * @throws IOException if the patched content could not be stored
+	 */
+	public ByteBuffer storePatched(int id, ByteBuffer file, int offset, byte[] patch, ChunkHashTree hashes) throws IOException {
+		ContentHash hash = deduplicationEnabled && hashes != null ? new ContentHash(hashes) : null;
+		ByteBuffer stored = reference(hash);
+
+		if(stored != null) {
+			return stored;
+		}
+
+		ByteBuffer source = file.duplicate();
+		source.clear();
+
+		ByteBuffer content = fileStore.allocate(id, source.capacity());
+		content.put(source);
+		content.position(offset);
+		content.put(patch);
+		content.clear();
+
+		if(deduplicationEnabled && hash == null) {
+			hash = new ContentHash(content);
+		}
+
+		return add(hash, content);
+	}
+
+	/**
+	 * Releases a reference to the given buffer, dropping its blob once it
+	 * is no longer referenced.
+	 * 
+	 * @param buffer buffer returned by {@link #store(int, byte[])}, may be null
+	 */
+	public synchronized void release(ByteBuffer buffer) {
+		Blob blob = buffer == null ? null : blobsByBuffer.get(buffer);
+
+		if(blob != null && --blob.references == 0) {
+			if(blob.hash != null) {
+				blobsByHash.remove(blob.hash);
+			}
+			blobsByBuffer.remove(buffer);
+		}
+	}
+
+	/**
+	 * Returns the number of unique blobs currently stored.
+	 * 
+	 * @return the number of stored blobs
+	 */
+	public synchronized int getBlobCount() {
+		return blobsByHash.size();
+	}
+
+	/**
+	 * References the stored blob with the given hash, if any.
+	 * 
+	 * @param hash hash of the content, null when it is not deduplicated
+	 * @return the buffer of the blob, or null if there is none
+	 */
+	private synchronized ByteBuffer reference(ContentHash hash) {
+		Blob blob = hash == null ? null : blobsByHash.get(hash);
+
+		if(blob == null) {
+			return null;
+		}
+
+		blob.references++;
+		return blob.buffer;
+	}
+
+	/**
+	 * Adds a blob holding the given content, unless a blob with the same
+	 * content was stored concurrently, and references it.
+	 * 
+	 * @param hash hash of the content, null when it is not deduplicated
+	 * @param content stored content
+	 * @return the buffer of the blob
+	 */
+	private synchronized ByteBuffer add(ContentHash hash, ByteBuffer content) {
+		Blob blob = hash == null ? null : blobsByHash.get(hash);
+
+		if(blob == null) {
+			blob = new Blob(hash, content);
+			if(hash != null) {
+				blobsByHash.put(hash, blob);
+			}
+			blobsByBuffer.put(blob.buffer, blob);
+		}
+
+		blob.references++;
+		return blob.buffer;
+	}
+
+	private static class Blob {
+
+		private final ContentHash hash;
+		private final ByteBuffer buffer;
+		private int references;
+
+		Blob(ContentHash hash, ByteBuffer content) {
+			this.hash = hash;
+			this.buffer = content.asReadOnlyBuffer();
+			this.buffer.clear();
+		}
+	}
+
+	/**
+	 * SHA-256 hash of a file content, along with its length, either of the
+	 * whole content or as the root of its chunk hashes, in which case the
+	 * chunk size tells both kinds apart.
+	 */
+	private static class ContentHash {
+
+		private final byte[] digest;
+		private final int length;
+		private final int chunkSize;
+
+		ContentHash(byte[] fileContent) {
+			this(ByteBuffer.wrap(fileContent));
+		}
+
+		ContentHash(ByteBuffer fileContent) {
+			try {
+				MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+				messageDigest.update(fileContent.duplicate());
+				this.digest = messageDigest.digest();
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException("SHA-256 is not available.", e);
+			}
+			this.length = fileContent.remaining();
+			this.chunkSize = 0;
+		}
+
+		ContentHash(ChunkHashTree hashes) {
+			this.digest = hashes.getRootHash();
+			this.length = hashes.getLength();
+			this.chunkSize = hashes.getChunkSize();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof ContentHash)) {
+				return false;
+			}
+
+			ContentHash other = (ContentHash) obj;
+			return length == other.length && chunkSize == other.chunkSize && MessageDigest.isEqual(digest, other.digest);
+		}
+
+		@Override
+		public int hashCode() {
+			return ((digest[0] & 0xFF) << 24 | (digest[1] & 0xFF) << 16 | (digest[2] & 0xFF) << 8 | (digest[3] & 0xFF)) ^ length;
+		}
+	}
+}
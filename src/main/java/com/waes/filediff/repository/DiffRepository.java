@@ -1,45 +1,434 @@
 package com.waes.filediff.repository;
 
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Repository;
 
+import com.waes.filediff.model.CompressedFile;
 import com.waes.filediff.model.DiffFilesDTO;
 
 /**
  * Repository for the files to be compared.
- * 
+ * <br/><br/>
+ * The repository is safe for concurrent use: updates to the same ID are
+ * applied atomically and the stored {@link DiffFilesDTO} instances are
+ * published safely to the threads reading them.
+ * <br/><br/>
+ * The files kept in memory may be limited in two ways, both disabled by
+ * default:
+ * <ul>
+ * <li>"diff.storage.max-bytes": once the stored files exceed this size,
+ *     the files of the least recently accessed IDs are evicted until they
+ *     fit again, as approximated by the second chance (CLOCK) algorithm.
+ *     Each ID weighs the size of its two files, as compressed when they
+ *     are stored as {@link CompressedFile}s;</li>
+ * <li>"diff.storage.ttl-minutes": the files of an ID expire this long after
+ *     they were last stored, and are evicted by a background sweeper running
+ *     every "diff.storage.sweep-interval-seconds", or when read.</li>
+ * </ul>
+ * An evicted ID is the same as one never provided. The
+ * {@link EvictionListener} is notified of each eviction, so whatever
+ * else is held for the evicted files can be released.
+ *
  * @author Rodrigo Hackbarth
  */
 @Repository
 public class DiffRepository {
 
+	/**
+	 * Listener notified of the files evicted from the repository.
+	 */
+	public interface EvictionListener {
+
+		/**
+		 * Called once the files of the given ID were evicted.
+		 *
+		 * @param id identifier of the evicted files
+		 * @param diffFiles evicted files
+		 */
+		void onEviction(int id, DiffFilesDTO diffFiles);
+	}
+
+	@Value("${diff.storage.max-bytes:0}")
+	private long maxBytes;
+
+	@Value("${diff.storage.ttl-minutes:0}")
+	private long ttlMinutes;
+
+	@Value("${diff.storage.sweep-interval-seconds:60}")
+	private long sweepIntervalSeconds;
+
 	/**
 	 * Stores the files to be compared mapped by their IDs.
 	 */
-	private final Map<Integer, DiffFilesDTO> filesforComparisonMap = new HashMap<>();
-	
+	private final ConcurrentMap<Integer, StoredFiles> filesforComparisonMap = new ConcurrentHashMap<>();
+
+	/**
+	 * Size of all the stored files, in bytes.
+	 */
+	private final AtomicLong storedBytes = new AtomicLong();
+
+	/**
+	 * Stored files ordered from the least to the most recently stored, or
+	 * given a second chance by eviction, only kept when "diff.storage.max-bytes"
+	 * is set. Guarded by its own monitor, which is only taken by writers and
+	 * eviction, and never held while updating the stored files.
+	 * <br/><br/>
+	 * Reads do not reorder it, they only flag the files as accessed, so
+	 * concurrent reads do not contend on a lock. Eviction then moves the
+	 * flagged files to the most recent end, clearing their flag, instead of
+	 * evicting them.
+	 * <br/><br/>
+	 * Writes are recorded after the stored files are updated, so an entry
+	 * may briefly refer to files already replaced or evicted: eviction skips
+	 * such entries, recording the files currently stored in their place.
+	 */
+	private final LinkedHashMap<Integer, StoredFiles> accessOrder = new LinkedHashMap<>();
+
+	private final AtomicLong sizeEvictions = new AtomicLong();
+
+	private final AtomicLong expiredEvictions = new AtomicLong();
+
+	private volatile EvictionListener evictionListener;
+
+	/**
+	 * Executor sweeping the expired files. Null when the files do not expire.
+	 */
+	private ScheduledExecutorService sweeper;
+
+	@PostConstruct
+	public void startSweeper() {
+		if(ttlMinutes > 0) {
+			sweeper = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("diff-storage-sweeper-"));
+			sweeper.scheduleWithFixedDelay(() -> removeExpired(System.nanoTime()),
+					sweepIntervalSeconds, sweepIntervalSeconds, TimeUnit.SECONDS);
+		}
+	}
+
+	@PreDestroy
+	public void stopSweeper() {
+		if(sweeper != null) {
+			sweeper.shutdownNow();
+		}
+	}
+
+	/**
+	 * Sets the listener notified of the evicted files.
+	 *
+	 * @param evictionListener listener notified of each eviction
+	 */
+	public void setEvictionListener(EvictionListener evictionListener) {
+		this.evictionListener = evictionListener;
+	}
+
 	/**
 	 * Returns the files stored with the provided id.
-	 * 
+	 *
 	 * @param id Id of the files for comparison
-	 * @return the files which were stored with the given id
+	 * @return the files which were stored with the given id, or null if
+	 *         there are none or if they have expired
 	 */
 	public DiffFilesDTO getFilesForComparisonById(int id) {
-		return filesforComparisonMap.get(id);
+		StoredFiles stored = filesforComparisonMap.get(id);
+
+		if(stored == null) {
+			return null;
+		}
+
+		if(stored.isExpired(System.nanoTime())) {
+			evict(id, stored, expiredEvictions);
+			return null;
+		}
+
+		// checked first, so reads of files already flagged do not write to them
+		if(maxBytes > 0 && !stored.accessed) {
+			stored.accessed = true;
+		}
+
+		return stored.diffFiles;
 	}
-	
+
 	/**
 	 * Stores the provided file as the left file, associated with
 	 * the given ID.
-	 * 
+	 *
 	 * @param id identifies the file
-	 * @param diffDTO {@link DiffFilesDTO} containing the file(s) 
+	 * @param diffDTO {@link DiffFilesDTO} containing the file(s)
 	 * 		  		  to be stored
 	 */
 	public void save(int id, DiffFilesDTO diffDTO) {
-		diffDTO.setId(id);
-		filesforComparisonMap.put(id, diffDTO);
+		update(id, current -> diffDTO);
+	}
+
+	/**
+	 * Atomically replaces the files stored with the given ID by the
+	 * result of the provided update function.
+	 * <br/><br/>
+	 * Concurrent updates to the same ID are applied one after the other,
+	 * so none of them is lost. The update function must not modify the
+	 * instance it receives, since it may be in use by readers, but return
+	 * a new one instead.
+	 * <br/><br/>
+	 * When the stored files exceed "diff.storage.max-bytes" after the update,
+	 * the files of the least recently accessed IDs are evicted, except for
+	 * the files just stored.
+	 *
+	 * @param id identifies the files
+	 * @param update function receiving the currently stored files, or null
+	 *               if there are none, and returning the files to be stored,
+	 *               or either null or the received files to leave the stored
+	 *               files unchanged
+	 * @return the stored files, or null if there are none
+	 */
+	public DiffFilesDTO update(int id, UnaryOperator<DiffFilesDTO> update) {
+		StoredFiles expired = filesforComparisonMap.get(id);
+
+		if(expired != null && expired.isExpired(System.nanoTime())) {
+			evict(id, expired, expiredEvictions);
+		}
+
+		StoredFiles stored = filesforComparisonMap.compute(id, (key, current) -> {
+			DiffFilesDTO updated = update.apply(current == null ? null : current.diffFiles);
+
+			if(updated == null || current != null && updated == current.diffFiles) {
+				return current;
+			}
+
+			updated.setId(id);
+			StoredFiles replacement = new StoredFiles(updated, System.nanoTime());
+			storedBytes.addAndGet(replacement.size - (current == null ? 0 : current.size));
+			return replacement;
+		});
+
+		if(maxBytes > 0 && stored != null) {
+			synchronized(accessOrder) {
+				// moves the entry to the most recently stored end
+				accessOrder.remove(id);
+				accessOrder.put(id, stored);
+			}
+
+			if(storedBytes.get() > maxBytes) {
+				evictLeastRecentlyUsed(id);
+			}
+		}
+
+		return stored == null ? null : stored.diffFiles;
+	}
+
+	/**
+	 * Returns the number of IDs with at least one file stored.
+	 *
+	 * @return the number of stored IDs
+	 */
+	public int getIdCount() {
+		return filesforComparisonMap.size();
+	}
+
+	/**
+	 * Returns the number of bytes held by the stored files, as limited by
+	 * "diff.storage.max-bytes".
+	 * <br/><br/>
+	 * Each ID weighs the size of its two files, even when they share the
+	 * same buffer with other files, as deduplicated by the {@link BlobStore},
+	 * since evicting the ID only releases its own references to them.
+	 *
+	 * @return the size of the stored files, in bytes
+	 */
+	public long getStoredBytes() {
+		return storedBytes.get();
+	}
+
+	/**
+	 * Returns the number of IDs evicted for the stored files exceeding
+	 * "diff.storage.max-bytes".
+	 *
+	 * @return the number of evictions due to the size of the stored files
+	 */
+	public long getSizeEvictionCount() {
+		return sizeEvictions.get();
+	}
+
+	/**
+	 * Returns the number of IDs evicted for their files being stored for
+	 * longer than "diff.storage.ttl-minutes".
+	 *
+	 * @return the number of evictions due to expiration
+	 */
+	public long getExpiredEvictionCount() {
+		return expiredEvictions.get();
+	}
+
+	/**
+	 * Evicts the files which expired at the given time.
+	 *
+	 * @param now current value of the system timer, in nanoseconds
+	 */
+	void removeExpired(long now) {
+		filesforComparisonMap.forEach((id, stored) -> {
+			if(stored.isExpired(now)) {
+				evict(id, stored, expiredEvictions);
+			}
+		});
+	}
+
+	/**
+	 * Evicts the files of the least recently accessed IDs until the stored
+	 * files fit in "diff.storage.max-bytes" again.
+	 * <br/><br/>
+	 * Evictions are done by one thread at a time, each taking the least
+	 * recently accessed files off the access order, so their cost only
+	 * depends on the number of evicted IDs.
+	 *
+	 * @param keptId ID whose files are not evicted, since they were just stored
+	 */
+	private synchronized void evictLeastRecentlyUsed(int keptId) {
+		while(storedBytes.get() > maxBytes) {
+			Map.Entry<Integer, StoredFiles> eldest = pollLeastRecentlyUsed(keptId);
+
+			if(eldest == null) {
+				return;
+			}
+
+			if(!evict(eldest.getKey(), eldest.getValue(), sizeEvictions)) {
+				// the files were replaced after their access was recorded
+				StoredFiles current = filesforComparisonMap.get(eldest.getKey());
+
+				if(current != null) {
+					synchronized(accessOrder) {
+						accessOrder.putIfAbsent(eldest.getKey(), current);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes the least recently accessed files from the access order: the
+	 * eldest files not accessed since they were stored or given their last
+	 * second chance. The accessed files found before them are moved to the
+	 * most recent end, with their flag cleared.
+	 *
+	 * @param keptId ID whose files are skipped
+	 * @return the ID and files removed, or null if there are none but the
+	 *         files of the kept ID
+	 */
+	private Map.Entry<Integer, StoredFiles> pollLeastRecentlyUsed(int keptId) {
+		synchronized(accessOrder) {
+			// a second pass evicts the eldest files even if they were accessed again in the meantime
+			for(int pass = 0; pass < 2; pass++) {
+				List<Map.Entry<Integer, StoredFiles>> accessed = new ArrayList<>();
+				Map.Entry<Integer, StoredFiles> eldest = null;
+				Iterator<Map.Entry<Integer, StoredFiles>> entries = accessOrder.entrySet().iterator();
+
+				while(eldest == null && entries.hasNext()) {
+					Map.Entry<Integer, StoredFiles> entry = entries.next();
+
+					if(entry.getKey() == keptId) {
+						continue;
+					}
+
+					entries.remove();
+
+					if(pass == 0 && entry.getValue().accessed) {
+						entry.getValue().accessed = false;
+						accessed.add(entry);
+					}else {
+						eldest = entry;
+					}
+				}
+
+				for(Map.Entry<Integer, StoredFiles> entry : accessed) {
+					accessOrder.put(entry.getKey(), entry.getValue());
+				}
+
+				if(eldest != null || accessed.isEmpty()) {
+					return eldest;
+				}
+			}
+
+			return null;
+		}
+	}
+
+	/**
+	 * Evicts the given files, unless they were replaced in the meantime.
+	 *
+	 * @param id identifier of the files
+	 * @param stored files to be evicted
+	 * @param evictions counter of the evictions due to the same cause
+	 * @return true if the files were evicted, false if they were replaced
+	 */
+	private boolean evict(int id, StoredFiles stored, AtomicLong evictions) {
+		if(!filesforComparisonMap.remove(id, stored)) {
+			return false;
+		}
+
+		if(maxBytes > 0) {
+			synchronized(accessOrder) {
+				accessOrder.remove(id, stored);
+			}
+		}
+
+		storedBytes.addAndGet(-stored.size);
+		evictions.incrementAndGet();
+
+		EvictionListener listener = evictionListener;
+		if(listener != null) {
+			listener.onEviction(id, stored.diffFiles);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Files stored under an ID, along with what is needed to evict them.
+	 */
+	private class StoredFiles {
+
+		private final DiffFilesDTO diffFiles;
+		private final long size;
+		private final long storedAt;
+
+		/**
+		 * Whether the files were read since they were stored or given their
+		 * last second chance by eviction.
+		 */
+		private volatile boolean accessed;
+
+		StoredFiles(DiffFilesDTO diffFiles, long storedAt) {
+			this.diffFiles = diffFiles;
+			this.size = sizeOf(diffFiles.getLeftFile()) + sizeOf(diffFiles.getRightFile())
+					+ sizeOf(diffFiles.getLeftCompressedFile()) + sizeOf(diffFiles.getRightCompressedFile());
+			this.storedAt = storedAt;
+		}
+
+		boolean isExpired(long now) {
+			return ttlMinutes > 0 && now - storedAt >= TimeUnit.MINUTES.toNanos(ttlMinutes);
+		}
+
+		private long sizeOf(ByteBuffer file) {
+			return file == null ? 0 : file.capacity();
+		}
+
+		private long sizeOf(CompressedFile file) {
+			return file == null ? 0 : file.getCompressedSize();
+		}
 	}
 }
@@ -0,0 +1,38 @@
+package com.waes.filediff.repository;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Storage for the content of the uploaded files.
+ * <br/><br/>
+ * The content is handed back as a read-only {@link ByteBuffer}, which may
+ * be backed by the heap or by memory outside of it, depending on the
+ * implementation selected by the "diff.storage.mode" property.
+ * 
+ * @author Rodrigo Hackbarth
+ */
+public interface FileStore {
+
+	/**
+	 * Stores the given file content.
+	 * 
+	 * @param id identifier of the files the content belongs to
+	 * @param fileContent file content
+	 * @return a read-only buffer holding the stored content
+	 * @throws IOException if the content could not be stored
+	 */
+	ByteBuffer store(int id, byte[] fileContent) throws IOException;
+	
+	/**
+	 * Allocates room for a file of the given size, whose content is written
+	 * in place, in any order, before the buffer is handed to 
+	 * {@link BlobStore#register(ByteBuffer)}.
+	 * 
+	 * @param id identifier of the files the content belongs to
+	 * @param size size of the file, in bytes
+	 * @return a writable buffer of the given capacity
+	 * @throws IOException if the room could not be allocated
+	 */
+	ByteBuffer allocate(int id, int size) throws IOException;
+}
@@ -0,0 +1,28 @@
+package com.waes.filediff.repository;
+
+import java.nio.ByteBuffer;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the uploaded files on the Java heap.
+ * <br/><br/>
+ * This is the default storage mode.
+ * 
+ * @author Rodrigo Hackbarth
+ */
+@Component
+@ConditionalOnProperty(name="diff.storage.mode", havingValue="heap", matchIfMissing=true)
+public class HeapFileStore implements FileStore {
+
+	@Override
+	public ByteBuffer store(int id, byte[] fileContent) {
+		return ByteBuffer.wrap(fileContent).asReadOnlyBuffer();
+	}
+	
+	@Override
+	public ByteBuffer allocate(int id, int size) {
+		return ByteBuffer.allocate(size);
+	}
+}
@@ -0,0 +1,76 @@
+package com.waes.filediff.repository;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the uploaded files in local files, served back as memory-mapped
+ * buffers.
+ * <br/><br/>
+ * The content is kept outside of the Java heap and the operating system
+ * page cache decides which parts of it stay resident. Each upload is 
+ * written to a new file which is deleted right after being mapped: the
+ * mapping keeps the content available until the buffer is garbage 
+ * collected, without any file being left behind.
+ * 
+ * @author Rodrigo Hackbarth
+ */
+@Component
+@ConditionalOnProperty(name="diff.storage.mode", havingValue="mapped")
+public class MappedFileStore implements FileStore {
+
+	private final Path directory;
+
+	/**
+	 * @param directory directory in which the files are written
+	 * @throws IOException if the directory could not be created
+	 */
+	@Autowired
+	public MappedFileStore(@Value("${diff.storage.directory:${java.io.tmpdir}/diff}") String directory) throws IOException {
+		this.directory = Files.createDirectories(Paths.get(directory));
+	}
+
+	@Override
+	public ByteBuffer store(int id, byte[] fileContent) throws IOException {
+		Path file = Files.createTempFile(directory, id + "-", ".bin");
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			ByteBuffer content = ByteBuffer.wrap(fileContent);
+			while(content.hasRemaining()) {
+				channel.write(content);
+			}
+
+			return channel.map(MapMode.READ_ONLY, 0, fileContent.length);
+		} finally {
+			if(!file.toFile().delete()) {
+				// platforms which do not allow deleting mapped files
+				file.toFile().deleteOnExit();
+			}
+		}
+	}
+	
+	@Override
+	public ByteBuffer allocate(int id, int size) throws IOException {
+		Path file = Files.createTempFile(directory, id + "-", ".bin");
+		
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			// mapping beyond the end of the file grows it to the mapped size
+			return channel.map(MapMode.READ_WRITE, 0, size);
+		} finally {
+			if(!file.toFile().delete()) {
+				file.toFile().deleteOnExit();
+			}
+		}
+	}
+}
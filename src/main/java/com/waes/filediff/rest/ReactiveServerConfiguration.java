@@ -0,0 +1,26 @@
+package com.waes.filediff.rest;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Serves the reactive endpoints on Netty when the application is started
+ * with "spring.main.web-application-type" set to "reactive".
+ * <br/><br/>
+ * Tomcat is on the classpath for the servlet endpoints, and would otherwise
+ * be picked for the reactive ones as well.
+ *
+ * @author Rodrigo Hackbarth
+ */
+@Configuration
+@ConditionalOnWebApplication(type=Type.REACTIVE)
+public class ReactiveServerConfiguration {
+
+	@Bean
+	public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+		return new NettyReactiveWebServerFactory();
+	}
+}
@@ -0,0 +1,193 @@
+package com.waes.filediff.rest.controller;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.waes.filediff.exception.DiffValidationException;
+import com.waes.filediff.service.FileUpload;
+
+/**
+ * Decodes the json body of a file upload, {"file":"&lt;base64 content&gt;"},
+ * as it arrives in pieces, for the non-blocking {@link ReactiveDiffController}.
+ * <br/><br/>
+ * Each piece is fed to Jackson's non-blocking parser as soon as it is
+ * received, and the "file" field is located the same way as done by
+ * {@link DiffController} when reading the body as a stream: other fields
+ * are skipped, and whatever follows the "file" field is ignored.
+ * <br/><br/>
+ * The non-blocking parser only returns the "file" string once all of it
+ * was received, holding it in its text buffer. The content is decoded from
+ * that buffer into the {@link FileUpload} a piece at a time, rather than by
+ * {@link JsonParser#readBinaryValue}, which the non-blocking parser
+ * implements by decoding the whole file into another array first.
+ *
+ * @author Rodrigo Hackbarth
+ */
+class Base64JsonBodyDecoder {
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	/**
+	 * Number of base64 characters decoded at once, a multiple of 4.
+	 */
+	private static final int PIECE_LENGTH = 4096;
+
+	private final FileUpload file;
+	private final JsonParser parser;
+	private final ByteArrayFeeder feeder;
+
+	/**
+	 * Copy of the last piece of the body which was not backed by an array.
+	 */
+	private byte[] input = new byte[0];
+
+	private int depth;
+	private boolean fileField;
+	private boolean done;
+
+	/**
+	 * @param file upload receiving the decoded file content
+	 * @throws DiffValidationException if the parser could not be created
+	 */
+	Base64JsonBodyDecoder(FileUpload file) throws DiffValidationException {
+		this.file = file;
+
+		try {
+			this.parser = JSON_FACTORY.createNonBlockingByteArrayParser();
+		} catch (IOException e) {
+			throw new DiffValidationException("Error reading request body.", e);
+		}
+
+		this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+	}
+
+	/**
+	 * Decodes the next piece of the request body.
+	 *
+	 * @param body next bytes of the request body, which are all consumed
+	 * @throws DiffValidationException if the request body is not in json format
+	 *                                 or if the file content is not base64 encoded
+	 */
+	void decode(ByteBuffer body) throws DiffValidationException {
+		if(done) {
+			return;
+		}
+
+		try {
+			if(body.hasArray()) {
+				feeder.feedInput(body.array(), body.arrayOffset() + body.position(), body.arrayOffset() + body.limit());
+			}else {
+				int length = body.remaining();
+				if(input.length < length) {
+					input = new byte[length];
+				}
+
+				body.get(input, 0, length);
+				feeder.feedInput(input, 0, length);
+			}
+
+			body.position(body.limit());
+			readTokens();
+		} catch (IOException | IllegalArgumentException e) {
+			throw new DiffValidationException("Error reading request body.", e);
+		}
+	}
+
+	/**
+	 * Returns the upload holding the decoded file, once the whole request
+	 * body was decoded.
+	 *
+	 * @return the upload holding the decoded file content
+	 * @throws DiffValidationException if the request body is not in json format or
+	 *                                 if it does not provide the file associated
+	 *                                 with the "file" key
+	 */
+	FileUpload toFileContent() throws DiffValidationException {
+		if(!done) {
+			feeder.endOfInput();
+
+			try {
+				readTokens();
+			} catch (IOException | IllegalArgumentException e) {
+				throw new DiffValidationException("Error reading request body.", e);
+			}
+		}
+
+		if(!done) {
+			throw new DiffValidationException("Error reading request body.");
+		}
+
+		if(fileField) {
+			return file;
+		}
+
+		throw new DiffValidationException("Wrong request format. Expected file data to be associated to 'file' key.");
+	}
+
+	/**
+	 * Reads the tokens of the pieces received so far, up to the "file" field
+	 * or up to the end of the json object.
+	 */
+	private void readTokens() throws IOException, DiffValidationException {
+		JsonToken token;
+
+		while(!done && (token = parser.nextToken()) != JsonToken.NOT_AVAILABLE && token != null) {
+			if(depth == 0 && token != JsonToken.START_OBJECT) {
+				throw new DiffValidationException("Wrong request format. Expected file data to be associated to 'file' key.");
+			}
+
+			if(token.isStructStart()) {
+				depth++;
+			}else if(token.isStructEnd()) {
+				// the object ended without the file
+				done = --depth == 0;
+			}else if(depth == 1 && token == JsonToken.FIELD_NAME) {
+				fileField = "file".equals(parser.getCurrentName());
+			}else if(depth == 1 && fileField && token == JsonToken.VALUE_STRING) {
+				writeFileContent();
+				done = true;
+			}else if(depth == 1) {
+				fileField = false;
+			}
+		}
+	}
+
+	/**
+	 * Decodes the "file" string from the text buffer of the parser into the
+	 * upload, skipping whitespace as the streaming parser does.
+	 */
+	private void writeFileContent() throws IOException {
+		char[] text = parser.getTextCharacters();
+		int end = parser.getTextOffset() + parser.getTextLength();
+		byte[] encoded = new byte[PIECE_LENGTH];
+		byte[] decoded = new byte[PIECE_LENGTH / 4 * 3];
+		int count = 0;
+
+		for(int i = parser.getTextOffset(); i < end; i++) {
+			char c = text[i];
+
+			if(c <= ' ') {
+				continue;
+			}
+
+			if(c > 0x7F) {
+				throw new IOException("Illegal character in the base64 encoded file.");
+			}
+
+			encoded[count++] = (byte) c;
+
+			if(count == PIECE_LENGTH) {
+				file.write(decoded, 0, Base64.getDecoder().decode(encoded, decoded));
+				count = 0;
+			}
+		}
+
+		file.write(decoded, 0, Base64.getDecoder().decode(Arrays.copyOf(encoded, count), decoded));
+	}
+}
@@ -0,0 +1,117 @@
+package com.waes.filediff.rest.controller;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+
+import reactor.core.publisher.FluxSink;
+
+/**
+ * Output stream emitting what is written to it as {@link DataBuffer}s of
+ * up to 8 KB, so the blocking writers used by {@link DiffController} can
+ * stream a response body of {@link ReactiveDiffController} without it
+ * being held in memory.
+ * <br/><br/>
+ * A buffer is only emitted once it is requested by the subscriber of the
+ * sink: the writer blocks until then, so a slow client slows the writer down
+ * instead of the emitted buffers piling up. The sink is expected to be
+ * created with {@link reactor.core.publisher.FluxSink.OverflowStrategy#ERROR},
+ * as nothing is ever emitted beyond the demand.
+ * <br/><br/>
+ * Flushing the stream emits the bytes written so far right away. Writing
+ * fails once the response is cancelled, so the writer stops early.
+ *
+ * @author Rodrigo Hackbarth
+ */
+class DataBufferOutputStream extends OutputStream {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final DataBufferFactory bufferFactory;
+	private final FluxSink<DataBuffer> sink;
+	private DataBuffer buffer;
+
+	DataBufferOutputStream(DataBufferFactory bufferFactory, FluxSink<DataBuffer> sink) {
+		this.bufferFactory = bufferFactory;
+		this.sink = sink;
+
+		sink.onRequest(n -> signalDemand());
+		sink.onDispose(this::signalDemand);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		ensureBuffer();
+		buffer.write((byte) b);
+		emitIfFull();
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		while(len > 0) {
+			ensureBuffer();
+
+			int written = Math.min(len, BUFFER_SIZE - buffer.readableByteCount());
+			buffer.write(b, off, written);
+			emitIfFull();
+
+			off += written;
+			len -= written;
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		if(buffer != null) {
+			awaitDemand();
+			sink.next(buffer);
+			buffer = null;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		flush();
+	}
+
+	private synchronized void signalDemand() {
+		notifyAll();
+	}
+
+	private synchronized void awaitDemand() throws IOException {
+		while(sink.requestedFromDownstream() == 0 && !sink.isCancelled()) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+
+				if(!sink.isCancelled()) {
+					throw new InterruptedIOException("Interrupted while waiting for the response to be requested.");
+				}
+			}
+		}
+
+		if(sink.isCancelled()) {
+			throw new IOException("Response was cancelled.");
+		}
+	}
+
+	private void ensureBuffer() throws IOException {
+		if(sink.isCancelled()) {
+			throw new IOException("Response was cancelled.");
+		}
+
+		if(buffer == null) {
+			buffer = bufferFactory.allocateBuffer(BUFFER_SIZE);
+		}
+	}
+
+	private void emitIfFull() throws IOException {
+		if(buffer.readableByteCount() == BUFFER_SIZE) {
+			flush();
+		}
+	}
+}
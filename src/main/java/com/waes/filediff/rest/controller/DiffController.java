@@ -1,24 +1,37 @@
 package com.waes.filediff.rest.controller;
 
 import java.io.IOException;
-import java.util.Base64;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.PathVariable;
-import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
-import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.waes.filediff.exception.DiffValidationException;
-import com.waes.filediff.model.DiffServiceResultDTO;
+import com.waes.filediff.service.BatchDiffService;
+import com.waes.filediff.service.DiffMetrics;
 import com.waes.filediff.service.DiffService;
+import com.waes.filediff.service.FileUpload;
 
 /**
  * Provides endpoints for uploading files to be compared
@@ -29,122 +42,472 @@ import com.waes.filediff.service.DiffService;
  */
 @RestController
 @RequestMapping("/v1/diff")
+@ConditionalOnWebApplication(type=Type.SERVLET)
 public class DiffController {
 	
+	/**
+	 * Mapper serializing the diff results.
+	 */
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+	
+	/**
+	 * Factory of the streaming parsers reading the upload request bodies
+	 * and of the generators writing the diff results.
+	 */
+	private static final JsonFactory JSON_FACTORY = OBJECT_MAPPER.getFactory();
+	
+	/**
+	 * Length of an upload request body providing an empty file: {"file":""}
+	 */
+	static final int EMPTY_REQUEST_BODY_LENGTH = 11;
+	
+	/**
+	 * Media type of the batch diff results written one per line.
+	 */
+	static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+	
 	@Autowired
 	private DiffService diffService; 
+	
+	@Autowired
+	private BatchDiffService batchDiffService;
 
 	/**
 	 * Saves the provided data to be compared with the
-	 * data provided in {@link #saveRightFile(String, String)}.
+	 * data provided in {@link #saveRightFile(Integer, HttpServletRequest)}.
 	 * 
 	 * <br/><br/>
 	 * The provided file must be Base64 encoded.
 	 * 
 	 * @param id identifier for the data to be compared
-	 * @param encodedFile base64 encoded data to 
-	 * 		  be saved for later comparison
+	 * @param request request whose json body provides the base64
+	 * 		  encoded data to be saved for later comparison
 	 * @return message in Json format, to inform if the operation
 	 *         was successful or if an error has occurred.
 	 * 
 	 */
 	@RequestMapping(method=RequestMethod.POST, path="/{id}/left", consumes="application/json", produces="application/json")
-	public String saveLeftFile(@PathVariable Integer id, @RequestBody String encodedFile) {
-		byte[] file;
-		
+	public String saveLeftFile(@PathVariable Integer id, HttpServletRequest request) {
 		try {
-			file = getDecodedFileContentFromRequestBody(encodedFile);
+			FileUpload file = diffService.newUpload(id, getExpectedDecodedSize(request.getContentLengthLong()));
+			readDecodedFileContentFromRequestBody(request, file);
+			diffService.addLeft(id, file);
 		} catch (DiffValidationException e) {
 			return e.getFormattedResultMessage();
+		} catch (IOException e) {
+			return buildJsonResultMessage("error", "Error storing file.");
 		}
-		
-		diffService.addLeft(id, file);
 
 		return buildJsonResultMessage("success", "Left file was saved successfully.");
 	}
 	
 	/**
 	 * Saves the provided data to be compared with the
-	 * data provided in {@link #saveLeftFile(String, String)}.
+	 * data provided in {@link #saveLeftFile(Integer, HttpServletRequest)}.
 	 * 
 	 * <br/><br/>
 	 * The provided file must be Base64 encoded.
 	 * 
 	 * @param id identifier for the data to be compared
-	 * @param encodedFile base64 encoded data to 
-	 * 		  be saved for later comparison
+	 * @param request request whose json body provides the base64
+	 * 		  encoded data to be saved for later comparison
 	 * @return message in Json format, to inform if the operation
 	 *         was successful or if an error has occurred.
 	 */
 	@RequestMapping(method=RequestMethod.POST, path="/{id}/right", consumes="application/json", produces="application/json")
-	public String saveRightFile(@PathVariable Integer id, @RequestBody String encodedFile) {
-		byte[] file;
+	public String saveRightFile(@PathVariable Integer id, HttpServletRequest request) {
+		try {
+			FileUpload file = diffService.newUpload(id, getExpectedDecodedSize(request.getContentLengthLong()));
+			readDecodedFileContentFromRequestBody(request, file);
+			diffService.addRight(id, file);
+		} catch (DiffValidationException e) {
+			return e.getFormattedResultMessage();
+		} catch (IOException e) {
+			return buildJsonResultMessage("error", "Error storing file.");
+		}
 		
+		return buildJsonResultMessage("success", "Right file was saved successfully.");
+	}
+	
+	/**
+	 * Saves the raw binary data provided in the request body as the
+	 * left file, the same way as {@link #saveLeftFile(Integer, HttpServletRequest)}
+	 * but without the json and Base64 encoding overhead.
+	 * 
+	 * @param id identifier for the data to be compared
+	 * @param request request whose body is the data to be saved
+	 * 		  for later comparison
+	 * @return message in Json format, to inform if the operation
+	 *         was successful or if an error has occurred.
+	 */
+	@RequestMapping(method=RequestMethod.POST, path="/{id}/left", consumes="application/octet-stream", produces="application/json")
+	public String saveBinaryLeftFile(@PathVariable Integer id, HttpServletRequest request) {
 		try {
-			file = getDecodedFileContentFromRequestBody(encodedFile);
+			FileUpload file = diffService.newUpload(id, checkContentLength(request.getContentLengthLong()));
+			readFileContentFromRequestBody(request, file);
+			diffService.addLeft(id, file);
 		} catch (DiffValidationException e) {
 			return e.getFormattedResultMessage();
+		} catch (IOException e) {
+			return buildJsonResultMessage("error", "Error storing file.");
 		}
 		
-		diffService.addRight(id, file);
+		return buildJsonResultMessage("success", "Left file was saved successfully.");
+	}
+	
+	/**
+	 * Saves the raw binary data provided in the request body as the
+	 * right file, the same way as {@link #saveRightFile(Integer, HttpServletRequest)}
+	 * but without the json and Base64 encoding overhead.
+	 * 
+	 * @param id identifier for the data to be compared
+	 * @param request request whose body is the data to be saved
+	 * 		  for later comparison
+	 * @return message in Json format, to inform if the operation
+	 *         was successful or if an error has occurred.
+	 */
+	@RequestMapping(method=RequestMethod.POST, path="/{id}/right", consumes="application/octet-stream", produces="application/json")
+	public String saveBinaryRightFile(@PathVariable Integer id, HttpServletRequest request) {
+		try {
+			FileUpload file = diffService.newUpload(id, checkContentLength(request.getContentLengthLong()));
+			readFileContentFromRequestBody(request, file);
+			diffService.addRight(id, file);
+		} catch (DiffValidationException e) {
+			return e.getFormattedResultMessage();
+		} catch (IOException e) {
+			return buildJsonResultMessage("error", "Error storing file.");
+		}
 		
 		return buildJsonResultMessage("success", "Right file was saved successfully.");
 	}
 	
+	/**
+	 * Overwrites a range of the left or right file saved under the given ID 
+	 * with the raw binary data provided in the request body, so a small change
+	 * to a large file does not require uploading the whole file again.
+	 * 
+	 * @param id identifier for the data to be compared
+	 * @param side "left" or "right", the file to be patched
+	 * @param offset offset of the first byte of the file to be overwritten
+	 * @param request request whose body is the data to be written at the 
+	 * 		  given offset
+	 * @return message in Json format, to inform if the operation
+	 *         was successful or if an error has occurred.
+	 */
+	@RequestMapping(method=RequestMethod.PATCH, path="/{id}/{side}", consumes="application/octet-stream", produces="application/json")
+	public String patchFile(@PathVariable Integer id, @PathVariable String side, @RequestParam int offset, HttpServletRequest request) {
+		try {
+			if(!"left".equals(side) && !"right".equals(side)) {
+				throw new DiffValidationException("Unknown file side: " + side);
+			}
+			
+			FileUpload patch = diffService.newPatch(checkContentLength(request.getContentLengthLong()));
+			readFileContentFromRequestBody(request, patch);
+			
+			if("left".equals(side)) {
+				diffService.patchLeft(id, offset, patch.toByteArray());
+				return buildJsonResultMessage("success", "Left file was patched successfully.");
+			}
+			
+			diffService.patchRight(id, offset, patch.toByteArray());
+			return buildJsonResultMessage("success", "Right file was patched successfully.");
+		} catch (DiffValidationException e) {
+			return e.getFormattedResultMessage();
+		} catch (IOException e) {
+			return buildJsonResultMessage("error", "Error storing file.");
+		}
+	}
+	
 	/**
 	 * Perfoms the diff between the data that was saved under the 
-	 * same ID via {@link #saveLeftFile(String, String)} and 
-	 * {@link #saveRightFile(String, String)}.
+	 * same ID via {@link #saveLeftFile(Integer, HttpServletRequest)} and 
+	 * {@link #saveRightFile(Integer, HttpServletRequest)}.
+	 * 
+	 * <br/><br/>
+	 * The result is written straight to the response body as the diffs
+	 * are found, so it is never held in memory as a String.
 	 * 
 	 * @param id - identifier for finding the data to be compared
-	 * @return a message to inform that the 2 uploaded data are equal,
-	 * 		   that they are different in size or informing where the
-	 * 		   differences are
+	 * @param algorithm - "positional", the default, compares the files byte 
+	 * 		  by byte and requires them to be equal in size; "myers" reports
+	 * 		  the bytes inserted and deleted from the left file to the right
+	 * 		  file, which may be different in size; "blocks" reports the 
+	 * 		  regions of the right file copied from the left file, detecting
+	 * 		  moved and shifted content
+	 * @param fromOffset - first offset compared by the "positional" algorithm,
+	 * 		  0 by default
+	 * @param toOffset - offset where the "positional" algorithm stops comparing,
+	 * 		  the file length by default
+	 * @param limit - maximum number of diffs returned by the "positional" 
+	 * 		  algorithm, which returns a "nextCursor" when there may be more
+	 * @param cursor - "nextCursor" returned by the previous request, from 
+	 * 		  which the comparison resumes instead of "fromOffset"
+	 * @param mode - with the "positional" algorithm, answers a single question
+	 * 		  instead of listing the diffs: "equal" tells if the files are equal,
+	 * 		  "first" returns the offset of the first difference and "count"
+	 * 		  returns the number of diffs and of different bytes
+	 * @param response response to which a message is written, informing 
+	 * 		  that the 2 uploaded data are equal, that they are different 
+	 * 		  in size or informing where the differences are
+	 * @throws IOException if the response could not be written
 	 */
 	@RequestMapping(method=RequestMethod.GET, path="/{id}", produces="application/json")
-	@ResponseBody
-	public String diff(@PathVariable Integer id) {
-		DiffServiceResultDTO diffResult;
+	public void diff(@PathVariable Integer id, 
+					 @RequestParam(defaultValue="positional") String algorithm, 
+					 @RequestParam(required=false) Integer fromOffset,
+					 @RequestParam(required=false) Integer toOffset,
+					 @RequestParam(required=false) Integer limit,
+					 @RequestParam(required=false) String cursor,
+					 @RequestParam(required=false) String mode,
+					 HttpServletResponse response) throws IOException {
+		response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+		OutputStream responseBody = response.getOutputStream();
+		boolean paged = fromOffset != null || toOffset != null || limit != null || cursor != null;
 		
 		try {
-			diffResult = diffService.diff(id);
-			return new ObjectMapper().writeValueAsString(diffResult);
+			if(paged && !"positional".equals(algorithm)) {
+				throw new DiffValidationException("Ranged diffs are only supported by the positional algorithm.");
+			}
+			
+			if(mode != null && (paged || !"positional".equals(algorithm))) {
+				throw new DiffValidationException("Query modes are only supported by the positional algorithm, without ranges.");
+			}
+			
+			if("equal".equals(mode)) {
+				writeJson(responseBody, diffService.diffEqual(id));
+			}else if("first".equals(mode)) {
+				writeJson(responseBody, diffService.diffFirst(id));
+			}else if("count".equals(mode)) {
+				writeJson(responseBody, diffService.diffCount(id));
+			}else if(mode != null) {
+				throw new DiffValidationException("Unknown diff mode: " + mode);
+			}else if(paged) {
+				diffService.diff(id, cursor != null ? parseCursor(cursor) : fromOffset != null ? fromOffset : 0,
+								 toOffset != null ? toOffset : Integer.MAX_VALUE, limit != null ? limit : 0,
+								 new JsonDiffResultWriter(JSON_FACTORY.createGenerator(responseBody)));
+			}else if("positional".equals(algorithm)) {
+				diffService.diff(id, new JsonDiffResultWriter(JSON_FACTORY.createGenerator(responseBody)));
+			}else if("myers".equals(algorithm)) {
+				writeJson(responseBody, diffService.diffEdits(id));
+			}else if("blocks".equals(algorithm)) {
+				writeJson(responseBody, diffService.diffBlocks(id));
+			}else {
+				throw new DiffValidationException("Unknown diff algorithm: " + algorithm);
+			}
 		} catch (DiffValidationException e) {
-			return e.getFormattedResultMessage();
-		} catch (JsonProcessingException e) {
-			return buildJsonResultMessage("error", "Error parsing diff result."); 
+			responseBody.write(e.getFormattedResultMessage().getBytes(StandardCharsets.UTF_8));
+		}
+	}
+	
+	/**
+	 * Performs the diff of the data saved under each of the IDs provided in
+	 * the request body, in parallel, in a single request.
+	 * 
+	 * <br/><br/>
+	 * The request body is a json array of IDs. The response is a json array
+	 * with an element for each ID, in the same order, holding the "id" and
+	 * the "result" which {@link #diff(Integer, String, Integer, Integer, Integer, String, String, HttpServletResponse)}
+	 * would return for it. When the request accepts "application/x-ndjson",
+	 * the elements are written one per line instead, without the array.
+	 * The elements are written as the diffs are done.
+	 * 
+	 * @param request request whose json body is the array of IDs
+	 * @param response response to which the results are written
+	 * @throws IOException if the response could not be written
+	 */
+	@RequestMapping(method=RequestMethod.POST, path="/batch", consumes="application/json", produces={"application/json", "application/x-ndjson"})
+	public void batchDiff(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		boolean ndjson = String.valueOf(request.getHeader("Accept")).contains(NDJSON_MEDIA_TYPE);
+		response.setContentType(ndjson ? NDJSON_MEDIA_TYPE : MediaType.APPLICATION_JSON_UTF8_VALUE);
+		OutputStream responseBody = response.getOutputStream();
+		
+		List<Integer> ids;
+		try {
+			ids = getIdsFromRequestBody(request);
+		} catch (DiffValidationException e) {
+			responseBody.write(e.getFormattedResultMessage().getBytes(StandardCharsets.UTF_8));
+			return;
+		}
+		
+		JsonBatchResultWriter writer = new JsonBatchResultWriter(JSON_FACTORY.createGenerator(responseBody), ndjson);
+		
+		try {
+			batchDiffService.diff(ids, writer);
+		} catch (DiffValidationException e) {
+			// thrown before any result is written
+			responseBody.write(e.getFormattedResultMessage().getBytes(StandardCharsets.UTF_8));
+			return;
+		}
+		
+		writer.finish();
+	}
+	
+	/**
+	 * Reads the IDs from the json array in the request body received by
+	 * {@link #batchDiff(HttpServletRequest, HttpServletResponse)}.
+	 * 
+	 * @param request Request whose body is a json array of integer IDs
+	 * @return the IDs, in the order they were given
+	 * @throws DiffValidationException if the request body is not a json array
+	 *                                 of integers
+	 */
+	private List<Integer> getIdsFromRequestBody(HttpServletRequest request) throws DiffValidationException {
+		try (JsonParser parser = JSON_FACTORY.createParser(request.getInputStream())) {
+			if(parser.nextToken() != JsonToken.START_ARRAY) {
+				throw new DiffValidationException("Wrong request format. Expected a json array of IDs.");
+			}
+			
+			List<Integer> ids = new ArrayList<>();
+			JsonToken token;
+			
+			while((token = parser.nextToken()) == JsonToken.VALUE_NUMBER_INT) {
+				ids.add(parser.getIntValue());
+			}
+			
+			if(token != JsonToken.END_ARRAY) {
+				throw new DiffValidationException("Wrong request format. Expected a json array of IDs.");
+			}
+			
+			return ids;
+		} catch (IOException e) {
+			throw new DiffValidationException("Error reading request body.", e);
 		}
 	}
 	
 	/**
-	 * Decodes and returns the file content from the request body received by
-	 * {@link #saveLeftFile(Integer, String)} and {@link #saveRightFile(Integer, String)}.
+	 * Parses the cursor returned by a previous page of diffs.
+	 * 
+	 * @param cursor cursor returned as "nextCursor"
+	 * @return the offset from which the comparison resumes
+	 * @throws DiffValidationException if the cursor is not valid
+	 */
+	private int parseCursor(String cursor) throws DiffValidationException {
+		try {
+			return Integer.parseInt(cursor);
+		} catch (NumberFormatException e) {
+			throw new DiffValidationException("Invalid cursor: " + cursor, e);
+		}
+	}
+	
+	/**
+	 * Decodes the file content from the request body received by
+	 * {@link #saveLeftFile(Integer, HttpServletRequest)} and {@link #saveRightFile(Integer, HttpServletRequest)}.
+	 * <br/><br/>
+	 * The request body is read as a stream: the "file" field is located by a
+	 * streaming json parser and its base64 content is decoded straight into
+	 * the given upload, so the body is never held in memory as a String.
 	 * 
-	 * @param encodedFileContent Request body, in json format, containing the base64 encoded file 
-	 * @return the decoded file content
+	 * @param request Request whose body, in json format, contains the base64 encoded file 
+	 * @param file upload receiving the decoded file content
 	 * @throws DiffValidationException if the request body is not in json format or
 	 * 								   if the request body, in json format, does not provide the 
 	 * 								   file associated with the "file" key. 
 	 *                                 
 	 */
-	private byte[] getDecodedFileContentFromRequestBody(String encodedFileContent) throws DiffValidationException {
-		String file = null;
-		try {
-			JsonNode jsonNode = new ObjectMapper().readTree(encodedFileContent);
+	void readDecodedFileContentFromRequestBody(HttpServletRequest request, FileUpload file) throws DiffValidationException {
+		long startTime = DiffMetrics.start();
+		
+		try (JsonParser parser = JSON_FACTORY.createParser(request.getInputStream())) {
+			JsonToken token = parser.nextToken();
 			
-			if(jsonNode.get("file") != null) {
-				file = jsonNode.get("file").asText();
-			}else {
+			if(token == null) {
+				throw new DiffValidationException("Error reading request body.");
+			}
+			
+			if(token != JsonToken.START_OBJECT) {
 				throw new DiffValidationException("Wrong request format. Expected file data to be associated to 'file' key.");
 			}
+			
+			while(parser.nextToken() == JsonToken.FIELD_NAME) {
+				String fieldName = parser.getCurrentName();
+				JsonToken value = parser.nextToken();
 				
-			return Base64.getDecoder().decode(file);
-
+				if("file".equals(fieldName) && value == JsonToken.VALUE_STRING) {
+					parser.readBinaryValue(Base64Variants.MIME_NO_LINEFEEDS, file);
+					return;
+				}
+				
+				parser.skipChildren();
+			}
+			
+			throw new DiffValidationException("Wrong request format. Expected file data to be associated to 'file' key.");
 		} catch (IOException e) {
 			throw new DiffValidationException("Error reading request body.", e); 
+		} finally {
+			DiffMetrics.record(DiffMetrics.DECODE, startTime);
+		}
+	}
+	
+	/**
+	 * Reads the raw file content from the request body received by
+	 * {@link #saveBinaryLeftFile(Integer, HttpServletRequest)}, 
+	 * {@link #saveBinaryRightFile(Integer, HttpServletRequest)} and
+	 * {@link #patchFile(Integer, String, int, HttpServletRequest)}.
+	 * <br/><br/>
+	 * The body is read through a channel straight into the buffer of the
+	 * upload, without going through an intermediate array.
+	 * 
+	 * @param request Request whose body is the file content
+	 * @param file upload receiving the file content, sized from the Content-Length
+	 * @throws DiffValidationException if the request body could not be read or if
+	 *                                 it is longer than its Content-Length
+	 */
+	private void readFileContentFromRequestBody(HttpServletRequest request, FileUpload file) throws DiffValidationException {
+		long startTime = DiffMetrics.start();
+		
+		try (InputStream body = request.getInputStream()) {
+			file.readFrom(body);
+		} catch (IOException e) {
+			throw new DiffValidationException("Error reading request body.", e);
+		} finally {
+			DiffMetrics.record(DiffMetrics.DECODE, startTime);
 		}
 	}
 	
+	/**
+	 * Writes the given result to the response body in json format.
+	 * 
+	 * @param responseBody response body to which the result is written
+	 * @param result result to be written
+	 * @throws IOException if the response could not be written
+	 */
+	private void writeJson(OutputStream responseBody, Object result) throws IOException {
+		long startTime = DiffMetrics.start();
+		OBJECT_MAPPER.writeValue(responseBody, result);
+		DiffMetrics.record(DiffMetrics.SERIALIZE, startTime);
+	}
+	
+	/**
+	 * Returns the Content-Length of a request whose body is uploaded into a
+	 * buffer of that size.
+	 * 
+	 * @param contentLength Content-Length of the request, or -1 if unknown
+	 * @return the given Content-Length
+	 * @throws DiffValidationException if the Content-Length is unknown
+	 */
+	static long checkContentLength(long contentLength) throws DiffValidationException {
+		if(contentLength < 0) {
+			throw new DiffValidationException("Request body must declare its Content-Length.");
+		}
+		
+		return contentLength;
+	}
+	
+	/**
+	 * Returns the maximum size of the file decoded from a json request body
+	 * of the given length, as if the body only contained the "file" field.
+	 * 
+	 * @param contentLength Content-Length of the request, or -1 if unknown
+	 * @return the maximum size of the decoded file
+	 * @throws DiffValidationException if the Content-Length is unknown
+	 */
+	static long getExpectedDecodedSize(long contentLength) throws DiffValidationException {
+		long encodedLength = checkContentLength(contentLength) - EMPTY_REQUEST_BODY_LENGTH;
+		
+		// 3 bytes for every 4 characters, rounded up for unpadded content
+		return Math.max((encodedLength * 3 + 3) / 4, 0);
+	}
+	
 	/**
 	 * Builds a simple result message, in json format, composed of the 
 	 * given status and message information.
@@ -0,0 +1,93 @@
+package com.waes.filediff.rest.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.waes.filediff.exception.DiffValidationException;
+import com.waes.filediff.model.DiffJobDTO;
+import com.waes.filediff.service.DiffJobService;
+
+/**
+ * Provides endpoints for comparing files in the background, as an
+ * alternative to {@link DiffController#diff} for files large enough for
+ * the comparison to outlast the request timeouts.
+ * <br/><br/>
+ * A job is submitted and its ID returned right away. The job is then
+ * polled for its progress, in bytes scanned, until it returns the same
+ * result {@link DiffController#diff} would.
+ *
+ * @author Rodrigo Hackbarth
+ */
+@RestController
+@RequestMapping("/v1/diff")
+public class DiffJobController {
+
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+	@Autowired
+	private DiffJobService diffJobService;
+
+	/**
+	 * Submits a job comparing the data saved under the given ID.
+	 *
+	 * @param id identifier for finding the data to be compared
+	 * @return the state of the job in Json format, providing its "jobId",
+	 *         or a message informing that an error has occurred
+	 * @throws JsonProcessingException if the state could not be written
+	 */
+	@RequestMapping(method=RequestMethod.POST, path="/{id}/jobs", produces="application/json")
+	public String submitJob(@PathVariable Integer id) throws JsonProcessingException {
+		try {
+			return writeJob(diffJobService.submit(id));
+		} catch (DiffValidationException e) {
+			return e.getFormattedResultMessage();
+		}
+	}
+
+	/**
+	 * Returns the state of the given job: whether it is running, done, failed
+	 * or cancelled, how many bytes it scanned and, once it is done, the
+	 * "result" of the comparison.
+	 *
+	 * @param id identifier of the data compared by the job
+	 * @param jobId ID returned when the job was submitted
+	 * @return the state of the job in Json format, or a message informing
+	 *         that an error has occurred
+	 * @throws JsonProcessingException if the state could not be written
+	 */
+	@RequestMapping(method=RequestMethod.GET, path="/{id}/jobs/{jobId}", produces="application/json")
+	public String getJob(@PathVariable Integer id, @PathVariable String jobId) throws JsonProcessingException {
+		try {
+			return writeJob(diffJobService.getJob(id, jobId));
+		} catch (DiffValidationException e) {
+			return e.getFormattedResultMessage();
+		}
+	}
+
+	/**
+	 * Cancels the given job, stopping its comparison if it is still running.
+	 *
+	 * @param id identifier of the data compared by the job
+	 * @param jobId ID returned when the job was submitted
+	 * @return the state of the job in Json format, or a message informing
+	 *         that an error has occurred
+	 * @throws JsonProcessingException if the state could not be written
+	 */
+	@RequestMapping(method=RequestMethod.DELETE, path="/{id}/jobs/{jobId}", produces="application/json")
+	public String cancelJob(@PathVariable Integer id, @PathVariable String jobId) throws JsonProcessingException {
+		try {
+			return writeJob(diffJobService.cancel(id, jobId));
+		} catch (DiffValidationException e) {
+			return e.getFormattedResultMessage();
+		}
+	}
+
+	private String writeJob(DiffJobDTO job) throws JsonProcessingException {
+		return OBJECT_MAPPER.writeValueAsString(job);
+	}
+}
@@ -0,0 +1,79 @@
+package com.waes.filediff.rest.controller;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.waes.filediff.exception.DiffValidationException;
+import com.waes.filediff.model.DiffServiceResultDTO;
+import com.waes.filediff.service.BatchDiffService.BatchResultListener;
+
+/**
+ * Writes the results of a batch diff to a {@link JsonGenerator}, as a json
+ * array with an {"id":..,"result":..} element for each ID or, in the
+ * "application/x-ndjson" format, as one such element per line, each line
+ * being flushed as soon as it is written.
+ * 
+ * @author Rodrigo Hackbarth
+ */
+class JsonBatchResultWriter implements BatchResultListener {
+
+	private final JsonGenerator generator;
+	private final boolean ndjson;
+	private boolean started;
+
+	JsonBatchResultWriter(JsonGenerator generator, boolean ndjson) {
+		this.generator = generator;
+		this.ndjson = ndjson;
+	}
+
+	@Override
+	public void onResult(int id, DiffServiceResultDTO result) throws IOException {
+		writeStart(id);
+		generator.writeObject(result);
+		writeEnd();
+	}
+
+	@Override
+	public void onError(int id, DiffValidationException error) throws IOException {
+		writeStart(id);
+		generator.writeRawValue(error.getFormattedResultMessage());
+		writeEnd();
+	}
+
+	/**
+	 * Ends the results, once all of them were written.
+	 * 
+	 * @throws IOException if the results could not be written
+	 */
+	void finish() throws IOException {
+		if(!ndjson) {
+			if(!started) {
+				generator.writeStartArray();
+			}
+			generator.writeEndArray();
+		}
+		generator.flush();
+	}
+
+	private void writeStart(int id) throws IOException {
+		// the array is only started with the first result, so an error
+		// rejecting the whole batch can still be written instead
+		if(!started && !ndjson) {
+			generator.writeStartArray();
+		}
+		started = true;
+
+		generator.writeStartObject();
+		generator.writeNumberField("id", id);
+		generator.writeFieldName("result");
+	}
+
+	private void writeEnd() throws IOException {
+		generator.writeEndObject();
+
+		if(ndjson) {
+			generator.writeRaw('\n');
+			generator.flush();
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package com.waes.filediff.rest.controller;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.waes.filediff.model.DiffServiceResultDTO;
+import com.waes.filediff.service.DiffResultWriter;
+
+/**
+ * Writes the result of a diff to a {@link JsonGenerator}, in the same
+ * json format as a serialized {@link DiffServiceResultDTO}.
+ * 
+ * @author Rodrigo Hackbarth
+ */
+class JsonDiffResultWriter implements DiffResultWriter {
+
+	private final JsonGenerator generator;
+
+	JsonDiffResultWriter(JsonGenerator generator) {
+		this.generator = generator;
+	}
+
+	@Override
+	public void writeStart(String status, String message) throws IOException {
+		generator.writeStartObject();
+		generator.writeStringField("status", status);
+		generator.writeStringField("message", message);
+		generator.writeArrayFieldStart("diffs");
+	}
+
+	@Override
+	public void writeDiff(int offset, int length) throws IOException {
+		generator.writeStartObject();
+		generator.writeNumberField("offset", offset);
+		generator.writeNumberField("length", length);
+		generator.writeEndObject();
+	}
+
+	@Override
+	public void writeEnd(String nextCursor) throws IOException {
+		generator.writeEndArray();
+		
+		if(nextCursor != null) {
+			generator.writeStringField("nextCursor", nextCursor);
+		}
+		
+		generator.writeEndObject();
+		generator.flush();
+	}
+}
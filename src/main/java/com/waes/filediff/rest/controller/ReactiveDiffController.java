@@ -0,0 +1,474 @@
+package com.waes.filediff.rest.controller;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebInputException;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.waes.filediff.exception.DiffValidationException;
+import com.waes.filediff.service.BatchDiffService;
+import com.waes.filediff.service.DiffService;
+import com.waes.filediff.service.FileUpload;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Provides the same endpoints as {@link DiffController} on Spring WebFlux,
+ * when the application is started with "spring.main.web-application-type"
+ * set to "reactive".
+ * <br/><br/>
+ * Request bodies are consumed as streams of {@link DataBuffer}s as they
+ * arrive, the json uploads being parsed piece by piece by Jackson's
+ * non-blocking parser in {@link Base64JsonBodyDecoder}, so slow uploads do not hold any thread
+ * while waiting for their next bytes. The CPU bound work, storing the files
+ * and comparing them, is handed off to a scheduler of "diff.reactive.threads"
+ * threads with up to "diff.reactive.queue-size" tasks waiting for them.
+ *
+ * @author Rodrigo Hackbarth
+ */
+@RestController
+@RequestMapping("/v1/diff")
+@ConditionalOnWebApplication(type=Type.REACTIVE)
+public class ReactiveDiffController {
+
+	/**
+	 * Mapper serializing the diff results.
+	 */
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+	/**
+	 * Factory of the generators writing the diff results.
+	 */
+	private static final JsonFactory JSON_FACTORY = OBJECT_MAPPER.getFactory();
+
+	@Autowired
+	private DiffService diffService;
+
+	@Autowired
+	private BatchDiffService batchDiffService;
+
+	@Value("${diff.reactive.threads:0}")
+	private int threads;
+
+	@Value("${diff.reactive.queue-size:1000}")
+	private int queueSize;
+
+	private ThreadPoolExecutor executor;
+
+	/**
+	 * Scheduler running the CPU bound work on the executor.
+	 */
+	private Scheduler diffScheduler;
+
+	@PostConstruct
+	public void startScheduler() {
+		int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+
+		executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueSize), new CustomizableThreadFactory("reactive-diff-"));
+		diffScheduler = Schedulers.fromExecutorService(executor);
+	}
+
+	@PreDestroy
+	public void stopScheduler() {
+		diffScheduler.dispose();
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Saves the provided data to be compared with the data provided
+	 * as the right file, as {@link DiffController#saveLeftFile} does.
+	 *
+	 * @param id identifier for the data to be compared
+	 * @param request request whose json body provides the base64
+	 * 		  encoded data to be saved for later comparison
+	 * @return message in Json format, to inform if the operation
+	 *         was successful or if an error has occurred.
+	 */
+	@RequestMapping(method=RequestMethod.POST, path="/{id}/left", consumes="application/json", produces="application/json")
+	public Mono<String> saveLeftFile(@PathVariable Integer id, ServerHttpRequest request) {
+		return getDecodedFileContentFromRequestBody(id, request)
+				.flatMap(file -> onDiffScheduler(() -> saveFile(id, true, file)))
+				.onErrorResume(DiffValidationException.class, e -> Mono.just(e.getFormattedResultMessage()))
+				.onErrorResume(IOException.class, e -> Mono.just(buildJsonResultMessage("error", "Error storing file.")));
+	}
+
+	/**
+	 * Saves the provided data to be compared with the data provided
+	 * as the left file, as {@link DiffController#saveRightFile} does.
+	 *
+	 * @param id identifier for the data to be compared
+	 * @param request request whose json body provides the base64
+	 * 		  encoded data to be saved for later comparison
+	 * @return message in Json format, to inform if the operation
+	 *         was successful or if an error has occurred.
+	 */
+	@RequestMapping(method=RequestMethod.POST, path="/{id}/right", consumes="application/json", produces="application/json")
+	public Mono<String> saveRightFile(@PathVariable Integer id, ServerHttpRequest request) {
+		return getDecodedFileContentFromRequestBody(id, request)
+				.flatMap(file -> onDiffScheduler(() -> saveFile(id, false, file)))
+				.onErrorResume(DiffValidationException.class, e -> Mono.just(e.getFormattedResultMessage()))
+				.onErrorResume(IOException.class, e -> Mono.just(buildJsonResultMessage("error", "Error storing file.")));
+	}
+
+	/**
+	 * Saves the raw binary data provided in the request body as the
+	 * left file, as {@link DiffController#saveBinaryLeftFile} does.
+	 *
+	 * @param id identifier for the data to be compared
+	 * @param request request whose body is the data to be saved
+	 * 		  for later comparison
+	 * @return message in Json format, to inform if the operation
+	 *         was successful or if an error has occurred.
+	 */
+	@RequestMapping(method=RequestMethod.POST, path="/{id}/left", consumes="application/octet-stream", produces="application/json")
+	public Mono<String> saveBinaryLeftFile(@PathVariable Integer id, ServerHttpRequest request) {
+		return getFileContentFromRequestBody(id, request)
+				.flatMap(file -> onDiffScheduler(() -> saveFile(id, true, file)))
+				.onErrorResume(DiffValidationException.class, e -> Mono.just(e.getFormattedResultMessage()))
+				.onErrorResume(IOException.class, e -> Mono.just(buildJsonResultMessage("error", "Error storing file.")));
+	}
+
+	/**
+	 * Saves the raw binary data provided in the request body as the
+	 * right file, as {@link DiffController#saveBinaryRightFile} does.
+	 *
+	 * @param id identifier for the data to be compared
+	 * @param request request whose body is the data to be saved
+	 * 		  for later comparison
+	 * @return message in Json format, to inform if the operation
+	 *         was successful or if an error has occurred.
+	 */
+	@RequestMapping(method=RequestMethod.POST, path="/{id}/right", consumes="application/octet-stream", produces="application/json")
+	public Mono<String> saveBinaryRightFile(@PathVariable Integer id, ServerHttpRequest request) {
+		return getFileContentFromRequestBody(id, request)
+				.flatMap(file -> onDiffScheduler(() -> saveFile(id, false, file)))
+				.onErrorResume(DiffValidationException.class, e -> Mono.just(e.getFormattedResultMessage()))
+				.onErrorResume(IOException.class, e -> Mono.just(buildJsonResultMessage("error", "Error storing file.")));
+	}
+
+	/**
+	 * Overwrites a range of the left or right file saved under the given ID
+	 * with the raw binary data provided in the request body, as
+	 * {@link DiffController#patchFile} does.
+	 *
+	 * @param id identifier for the data to be compared
+	 * @param side "left" or "right", the file to be patched
+	 * @param offset offset of the first byte of the file to be overwritten
+	 * @param request request whose body is the data to be written at the
+	 * 		  given offset
+	 * @return message in Json format, to inform if the operation
+	 *         was successful or if an error has occurred.
+	 */
+	@RequestMapping(method=RequestMethod.PATCH, path="/{id}/{side}", consumes="application/octet-stream", produces="application/json")
+	public Mono<String> patchFile(@PathVariable Integer id, @PathVariable String side, @RequestParam int offset, ServerHttpRequest request) {
+		if(!"left".equals(side) && !"right".equals(side)) {
+			return Mono.just(new DiffValidationException("Unknown file side: " + side).getFormattedResultMessage());
+		}
+
+		return getPatchFromRequestBody(request).flatMap(patch -> onDiffScheduler(() -> {
+			try {
+				if("left".equals(side)) {
+					diffService.patchLeft(id, offset, patch.toByteArray());
+					return buildJsonResultMessage("success", "Left file was patched successfully.");
+				}
+
+				diffService.patchRight(id, offset, patch.toByteArray());
+				return buildJsonResultMessage("success", "Right file was patched successfully.");
+			} catch (IOException e) {
+				return buildJsonResultMessage("error", "Error storing file.");
+			}
+		})).onErrorResume(DiffValidationException.class, e -> Mono.just(e.getFormattedResultMessage()));
+	}
+
+	/**
+	 * Performs the diff between the data saved under the same ID, with the
+	 * same parameters and results as {@link DiffController#diff}.
+	 * <br/><br/>
+	 * The result is written to the response body in pieces as the diffs
+	 * are found.
+	 *
+	 * @param id identifier for finding the data to be compared
+	 * @param algorithm "positional", "myers" or "blocks"
+	 * @param fromOffset first offset compared by the "positional" algorithm
+	 * @param toOffset offset where the "positional" algorithm stops comparing
+	 * @param limit maximum number of diffs returned by the "positional" algorithm
+	 * @param cursor "nextCursor" returned by the previous request
+	 * @param mode "equal", "first" or "count", with the "positional" algorithm
+	 * @param response response whose buffers hold the result
+	 * @return the result of the diff in Json format
+	 */
+	@RequestMapping(method=RequestMethod.GET, path="/{id}", produces="application/json")
+	public Flux<DataBuffer> diff(@PathVariable Integer id,
+								 @RequestParam(defaultValue="positional") String algorithm,
+								 @RequestParam(required=false) Integer fromOffset,
+								 @RequestParam(required=false) Integer toOffset,
+								 @RequestParam(required=false) Integer limit,
+								 @RequestParam(required=false) String cursor,
+								 @RequestParam(required=false) String mode,
+								 ServerHttpResponse response) {
+		boolean paged = fromOffset != null || toOffset != null || limit != null || cursor != null;
+
+		return writeOnDiffScheduler(response, responseBody -> {
+			if(paged && !"positional".equals(algorithm)) {
+				throw new DiffValidationException("Ranged diffs are only supported by the positional algorithm.");
+			}
+
+			if(mode != null && (paged || !"positional".equals(algorithm))) {
+				throw new DiffValidationException("Query modes are only supported by the positional algorithm, without ranges.");
+			}
+
+			if("equal".equals(mode)) {
+				OBJECT_MAPPER.writeValue(responseBody, diffService.diffEqual(id));
+			}else if("first".equals(mode)) {
+				OBJECT_MAPPER.writeValue(responseBody, diffService.diffFirst(id));
+			}else if("count".equals(mode)) {
+				OBJECT_MAPPER.writeValue(responseBody, diffService.diffCount(id));
+			}else if(mode != null) {
+				throw new DiffValidationException("Unknown diff mode: " + mode);
+			}else if(paged) {
+				diffService.diff(id, cursor != null ? parseCursor(cursor) : fromOffset != null ? fromOffset : 0,
+								 toOffset != null ? toOffset : Integer.MAX_VALUE, limit != null ? limit : 0,
+								 new JsonDiffResultWriter(JSON_FACTORY.createGenerator(responseBody)));
+			}else if("positional".equals(algorithm)) {
+				diffService.diff(id, new JsonDiffResultWriter(JSON_FACTORY.createGenerator(responseBody)));
+			}else if("myers".equals(algorithm)) {
+				OBJECT_MAPPER.writeValue(responseBody, diffService.diffEdits(id));
+			}else if("blocks".equals(algorithm)) {
+				OBJECT_MAPPER.writeValue(responseBody, diffService.diffBlocks(id));
+			}else {
+				throw new DiffValidationException("Unknown diff algorithm: " + algorithm);
+			}
+		});
+	}
+
+	/**
+	 * Performs the diff of the data saved under each of the IDs provided in
+	 * the request body, as {@link DiffController#batchDiff} does.
+	 *
+	 * @param ids json array of the IDs, decoded as it arrives
+	 * @param request request whose "Accept" header selects the
+	 * 		  "application/x-ndjson" format
+	 * @param response response whose buffers hold the results
+	 * @return the results in Json format
+	 */
+	@RequestMapping(method=RequestMethod.POST, path="/batch", consumes="application/json", produces={"application/json", "application/x-ndjson"})
+	public Flux<DataBuffer> batchDiff(@RequestBody Flux<Integer> ids, ServerHttpRequest request, ServerHttpResponse response) {
+		boolean ndjson = request.getHeaders().getAccept().contains(MediaType.valueOf(DiffController.NDJSON_MEDIA_TYPE));
+		response.getHeaders().setContentType(ndjson ? MediaType.valueOf(DiffController.NDJSON_MEDIA_TYPE) : MediaType.APPLICATION_JSON_UTF8);
+
+		return ids.collectList()
+				.onErrorMap(e -> e instanceof DecodingException || e instanceof ServerWebInputException,
+							e -> new DiffValidationException("Wrong request format. Expected a json array of IDs.", e))
+				.flatMapMany(idList -> writeOnDiffScheduler(response, responseBody -> writeBatch(idList, ndjson, responseBody)))
+				.onErrorResume(DiffValidationException.class, e -> Flux.just(writeMessage(response, e.getFormattedResultMessage())));
+	}
+
+	private void writeBatch(List<Integer> ids, boolean ndjson, OutputStream responseBody) throws DiffValidationException, IOException {
+		JsonBatchResultWriter writer = new JsonBatchResultWriter(JSON_FACTORY.createGenerator(responseBody), ndjson);
+
+		batchDiffService.diff(ids, writer);
+		writer.finish();
+	}
+
+	private String saveFile(int id, boolean leftSide, FileUpload file) {
+		if(leftSide) {
+			diffService.addLeft(id, file);
+			return buildJsonResultMessage("success", "Left file was saved successfully.");
+		}
+
+		diffService.addRight(id, file);
+		return buildJsonResultMessage("success", "Right file was saved successfully.");
+	}
+
+	/**
+	 * Decodes the file content from the json request body as it arrives,
+	 * into an upload sized from the Content-Length.
+	 *
+	 * @param id identifier of the uploaded file
+	 * @param request Request whose body, in json format, contains the base64 encoded file
+	 * @return the upload holding the decoded file content, or a {@link DiffValidationException}
+	 *         if the body is not in the expected format
+	 */
+	private Mono<FileUpload> getDecodedFileContentFromRequestBody(int id, ServerHttpRequest request) {
+		return Mono.fromCallable(() -> new Base64JsonBodyDecoder(diffService.newUpload(id, DiffController.getExpectedDecodedSize(request.getHeaders().getContentLength()))))
+				.flatMap(decoder -> request.getBody()
+						.<Object>handle((buffer, sink) -> {
+							try {
+								decoder.decode(buffer.asByteBuffer());
+							} catch (DiffValidationException e) {
+								sink.error(e);
+							} finally {
+								DataBufferUtils.release(buffer);
+							}
+						})
+						.then(Mono.fromCallable(decoder::toFileContent)));
+	}
+
+	/**
+	 * Collects the raw file content from the request body as it arrives,
+	 * into an upload sized from the Content-Length.
+	 *
+	 * @param id identifier of the uploaded file
+	 * @param request Request whose body is the file content
+	 * @return the upload holding the file content
+	 */
+	private Mono<FileUpload> getFileContentFromRequestBody(int id, ServerHttpRequest request) {
+		return Mono.fromCallable(() -> diffService.newUpload(id, DiffController.checkContentLength(request.getHeaders().getContentLength())))
+				.flatMap(file -> readBody(request, file));
+	}
+
+	/**
+	 * Collects the patch from the request body as it arrives, into an
+	 * array sized from the Content-Length.
+	 *
+	 * @param request Request whose body is the patch
+	 * @return the upload holding the patch
+	 */
+	private Mono<FileUpload> getPatchFromRequestBody(ServerHttpRequest request) {
+		return Mono.fromCallable(() -> diffService.newPatch(DiffController.checkContentLength(request.getHeaders().getContentLength())))
+				.flatMap(patch -> readBody(request, patch));
+	}
+
+	private Mono<FileUpload> readBody(ServerHttpRequest request, FileUpload file) {
+		return request.getBody()
+				.<Object>handle((buffer, sink) -> {
+					try {
+						file.write(buffer.asByteBuffer());
+					} catch (IOException e) {
+						sink.error(new DiffValidationException("Error reading request body.", e));
+					} finally {
+						DataBufferUtils.release(buffer);
+					}
+				})
+				.then(Mono.just(file));
+	}
+
+	/**
+	 * Runs the given task on the diff scheduler.
+	 *
+	 * @param task task returning a message in Json format
+	 * @return the message returned by the task, or an error message if the
+	 *         task was rejected because the scheduler is busy
+	 */
+	private Mono<String> onDiffScheduler(Callable<String> task) {
+		return Mono.fromCallable(task)
+				.subscribeOn(diffScheduler)
+				.onErrorResume(DiffValidationException.class, e -> Mono.just(e.getFormattedResultMessage()))
+				.onErrorResume(RejectedExecutionException.class, e -> Mono.just(buildJsonResultMessage("error", "Server is busy, try again later.")));
+	}
+
+	/**
+	 * Runs the given writer on the diff scheduler, emitting what it writes to
+	 * the response body as it is requested by the client. A
+	 * {@link DiffValidationException} thrown by the writer is written as an
+	 * error message, as done by {@link DiffController}.
+	 * <br/><br/>
+	 * The writer blocks its thread while the client does not request more of
+	 * the response, so the requests are not run on that thread, which would
+	 * never get to them.
+	 *
+	 * @param response response whose buffer factory allocates the buffers
+	 * @param writer writer of the response body
+	 * @return the buffers holding the response body
+	 */
+	private Flux<DataBuffer> writeOnDiffScheduler(ServerHttpResponse response, ResponseBodyWriter writer) {
+		return Flux.<DataBuffer>create(sink -> {
+			try (OutputStream responseBody = new DataBufferOutputStream(response.bufferFactory(), sink)) {
+				try {
+					writer.write(responseBody);
+				} catch (DiffValidationException e) {
+					responseBody.write(e.getFormattedResultMessage().getBytes(StandardCharsets.UTF_8));
+				}
+			} catch (IOException e) {
+				sink.error(e);
+				return;
+			}
+
+			sink.complete();
+		}, FluxSink.OverflowStrategy.ERROR)
+		.subscribeOn(diffScheduler, false)
+		.onErrorResume(RejectedExecutionException.class,
+					   e -> Flux.just(writeMessage(response, buildJsonResultMessage("error", "Server is busy, try again later."))));
+	}
+
+	private DataBuffer writeMessage(ServerHttpResponse response, String message) {
+		return response.bufferFactory().wrap(message.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Parses the cursor returned by a previous page of diffs.
+	 *
+	 * @param cursor cursor returned as "nextCursor"
+	 * @return the offset from which the comparison resumes
+	 * @throws DiffValidationException if the cursor is not valid
+	 */
+	private int parseCursor(String cursor) throws DiffValidationException {
+		try {
+			return Integer.parseInt(cursor);
+		} catch (NumberFormatException e) {
+			throw new DiffValidationException("Invalid cursor: " + cursor, e);
+		}
+	}
+
+	/**
+	 * Builds a simple result message, in json format, composed of the
+	 * given status and message information.
+	 *
+	 * @param status
+	 * @param message
+	 * @return The result message in json format
+	 */
+	private String buildJsonResultMessage(String status, String message) {
+		ObjectNode objectNode = JsonNodeFactory.instance.objectNode();
+
+		objectNode.put("status", status);
+		objectNode.put("message", message);
+
+		return objectNode.toString();
+	}
+
+	/**
+	 * Writes a response body to a blocking output stream.
+	 */
+	@FunctionalInterface
+	private interface ResponseBodyWriter {
+
+		void write(OutputStream responseBody) throws DiffValidationException, IOException;
+	}
+}
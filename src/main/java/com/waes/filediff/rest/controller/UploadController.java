@@ -0,0 +1,159 @@
+package com.waes.filediff.rest.controller;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.waes.filediff.exception.DiffValidationException;
+import com.waes.filediff.service.UploadSessionService;
+
+/**
+ * Provides endpoints for uploading large files in numbered chunks, which
+ * may be sent in parallel and resumed after a failure, as an alternative
+ * to uploading them in a single request to {@link DiffController}.
+ *
+ * @author Rodrigo Hackbarth
+ */
+@RestController
+@RequestMapping("/v1/diff")
+@ConditionalOnWebApplication(type=Type.SERVLET)
+public class UploadController {
+
+	@Autowired
+	private UploadSessionService uploadSessionService;
+
+	/**
+	 * Opens an upload session for the left or right file of the given ID.
+	 *
+	 * @param id identifier for the data to be compared
+	 * @param side "left" or "right", the file to be uploaded
+	 * @param size size of the whole file, in bytes
+	 * @param chunkSize size of each chunk but the last one, in bytes
+	 * @return message in Json format, providing the "uploadId" of the session
+	 *         if the operation was successful, or informing that an error has
+	 *         occurred
+	 */
+	@RequestMapping(method=RequestMethod.POST, path="/{id}/{side}/uploads", produces="application/json")
+	public String openUpload(@PathVariable Integer id, @PathVariable String side,
+							 @RequestParam long size, @RequestParam int chunkSize) {
+		try {
+			String uploadId = uploadSessionService.open(id, isLeftSide(side), size, chunkSize);
+
+			ObjectNode objectNode = buildJsonResultMessage("success", "Upload session was opened successfully.");
+			objectNode.put("uploadId", uploadId);
+
+			return objectNode.toString();
+		} catch (DiffValidationException e) {
+			return e.getFormattedResultMessage();
+		} catch (IOException e) {
+			return buildJsonResultMessage("error", "Error storing file.").toString();
+		}
+	}
+
+	/**
+	 * Writes the chunk with the given index, provided as the raw binary
+	 * request body, into the file of the given upload session.
+	 *
+	 * @param uploadId ID of the upload session
+	 * @param index index of the chunk, starting at 0
+	 * @param request request whose body is the content of the chunk
+	 * @return message in Json format, to inform if the operation
+	 *         was successful or if an error has occurred.
+	 */
+	@RequestMapping(method=RequestMethod.PUT, path="/uploads/{uploadId}/chunks/{index}", consumes="application/octet-stream", produces="application/json")
+	public String writeChunk(@PathVariable String uploadId, @PathVariable int index, HttpServletRequest request) {
+		try (InputStream body = request.getInputStream()) {
+			uploadSessionService.writeChunk(uploadId, index, body);
+		} catch (DiffValidationException e) {
+			return e.getFormattedResultMessage();
+		} catch (IOException e) {
+			return buildJsonResultMessage("error", "Error reading request body.").toString();
+		}
+
+		return buildJsonResultMessage("success", "Chunk " + index + " was saved successfully.").toString();
+	}
+
+	/**
+	 * Informs which chunks of the given upload session were not received
+	 * yet, so an interrupted upload can be resumed.
+	 *
+	 * @param uploadId ID of the upload session
+	 * @return message in Json format, providing the indexes of the
+	 *         "missingChunks" if the operation was successful, or informing
+	 *         that an error has occurred
+	 */
+	@RequestMapping(method=RequestMethod.GET, path="/uploads/{uploadId}", produces="application/json")
+	public String getUpload(@PathVariable String uploadId) {
+		try {
+			ObjectNode objectNode = buildJsonResultMessage("success", null);
+			ArrayNode missingChunks = objectNode.putArray("missingChunks");
+
+			for(Integer index : uploadSessionService.getMissingChunks(uploadId)) {
+				missingChunks.add(index);
+			}
+
+			return objectNode.toString();
+		} catch (DiffValidationException e) {
+			return e.getFormattedResultMessage();
+		}
+	}
+
+	/**
+	 * Commits the given upload session, making its file available to be
+	 * compared. All of its chunks must have been received.
+	 *
+	 * @param uploadId ID of the upload session
+	 * @return message in Json format, to inform if the operation
+	 *         was successful or if an error has occurred.
+	 */
+	@RequestMapping(method=RequestMethod.POST, path="/uploads/{uploadId}/commit", produces="application/json")
+	public String commitUpload(@PathVariable String uploadId) {
+		try {
+			uploadSessionService.commit(uploadId);
+		} catch (DiffValidationException e) {
+			return e.getFormattedResultMessage();
+		}
+
+		return buildJsonResultMessage("success", "File was saved successfully.").toString();
+	}
+
+	private boolean isLeftSide(String side) throws DiffValidationException {
+		if("left".equals(side)) {
+			return true;
+		}else if("right".equals(side)) {
+			return false;
+		}
+
+		throw new DiffValidationException("Unknown file side: " + side);
+	}
+
+	/**
+	 * Builds a simple result message, in json format, composed of the
+	 * given status and message information.
+	 *
+	 * @param status
+	 * @param message
+	 * @return The result message in json format
+	 */
+	private ObjectNode buildJsonResultMessage(String status, String message) {
+		ObjectNode objectNode = JsonNodeFactory.instance.objectNode();
+
+		objectNode.put("status", status);
+		objectNode.put("message", message);
+
+		return objectNode;
+	}
+}
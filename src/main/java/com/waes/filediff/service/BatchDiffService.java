@@ -0,0 +1,157 @@
+package com.waes.filediff.service;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import com.waes.filediff.exception.DiffValidationException;
+import com.waes.filediff.model.DiffServiceResultDTO;
+
+/**
+ * Compares the files of many IDs in a single call, running
+ * {@link DiffService#diff(int)} for them in parallel.
+ * <br/><br/>
+ * The comparisons run on a fixed pool of "diff.batch.threads" threads. The
+ * results are handed out in the order the IDs were given, as soon as each
+ * one and all the ones before it are done, so only a small window of
+ * results is held in memory however many IDs there are.
+ *
+ * @author Rodrigo Hackbarth
+ */
+@Service
+public class BatchDiffService {
+
+	/**
+	 * Receives the result of each ID of a batch, in the order the IDs were given.
+	 */
+	public interface BatchResultListener {
+
+		/**
+		 * Called with the result of comparing the files of an ID.
+		 *
+		 * @param id identifier of the compared files
+		 * @param result result of file comparison
+		 * @throws IOException if the result could not be written
+		 */
+		void onResult(int id, DiffServiceResultDTO result) throws IOException;
+
+		/**
+		 * Called when the files of an ID could not be compared.
+		 *
+		 * @param id identifier of the files
+		 * @param error error found when validating the files
+		 * @throws IOException if the error could not be written
+		 */
+		void onError(int id, DiffValidationException error) throws IOException;
+	}
+
+	@Autowired
+	private DiffService diffService;
+
+	@Value("${diff.batch.threads:0}")
+	private int threads;
+
+	@Value("${diff.batch.max-ids:100000}")
+	private int maxIds;
+
+	private ExecutorService executor;
+	private int maxPendingResults;
+
+	@PostConstruct
+	public void startExecutor() {
+		int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+
+		executor = Executors.newFixedThreadPool(poolSize, new CustomizableThreadFactory("batch-diff-"));
+		maxPendingResults = poolSize * 2;
+	}
+
+	@PreDestroy
+	public void stopExecutor() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Compares the files of each of the given IDs and hands the results to
+	 * the given listener, in the order of the IDs.
+	 *
+	 * @param ids identifiers of the files to be compared
+	 * @param listener listener receiving the result of each ID, always from
+	 *                 the calling thread
+	 * @throws DiffValidationException if there are more than "diff.batch.max-ids"
+	 *                                 IDs, in which case nothing is compared
+	 * @throws IOException if a result could not be written, in which case the
+	 *                     remaining IDs are not compared
+	 */
+	public void diff(List<Integer> ids, BatchResultListener listener) throws DiffValidationException, IOException {
+		if(ids.size() > maxIds) {
+			throw new DiffValidationException("Batch requests are limited to " + maxIds + " IDs.");
+		}
+
+		Deque<PendingResult> pendingResults = new ArrayDeque<>();
+
+		try {
+			for(int id : ids) {
+				if(pendingResults.size() == maxPendingResults) {
+					pendingResults.poll().handTo(listener);
+				}
+
+				pendingResults.add(new PendingResult(id, executor.submit(() -> diffService.diff(id))));
+			}
+
+			while(!pendingResults.isEmpty()) {
+				pendingResults.poll().handTo(listener);
+			}
+		} finally {
+			for(PendingResult pendingResult : pendingResults) {
+				pendingResult.result.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * Comparison of the files of an ID, submitted to the executor.
+	 */
+	private static class PendingResult {
+
+		private final int id;
+		private final Future<DiffServiceResultDTO> result;
+
+		PendingResult(int id, Future<DiffServiceResultDTO> result) {
+			this.id = id;
+			this.result = result;
+		}
+
+		/**
+		 * Waits for the comparison and hands its result to the listener.
+		 */
+		void handTo(BatchResultListener listener) throws IOException {
+			DiffServiceResultDTO diffResult;
+
+			try {
+				diffResult = result.get();
+			} catch (ExecutionException e) {
+				listener.onError(id, e.getCause() instanceof DiffValidationException ? (DiffValidationException) e.getCause()
+						: new DiffValidationException("Error comparing files under ID: " + id, e.getCause()));
+				return;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while comparing files under ID: " + id, e);
+			}
+
+			listener.onResult(id, diffResult);
+		}
+	}
+}
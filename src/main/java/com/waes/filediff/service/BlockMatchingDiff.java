@@ -0,0 +1,266 @@
+package com.waes.filediff.service;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Block matching diff, detecting content which was moved or shifted
+ * between the left and the right file, in the manner of rsync.
+ * <br/><br/>
+ * The left file is indexed by a rolling checksum of each of its
+ * non-overlapping blocks. The right file is then scanned in a single pass,
+ * rolling the checksum one byte at a time: whenever the checksum of the
+ * current window is found in the index and the block content really
+ * matches, the window is reported as copied from the left file and the
+ * match is extended as far as both files keep being equal. The bytes
+ * between matches are reported as literals.
+ * <br/><br/>
+ * Both files are available locally, so the candidate blocks are verified
+ * by comparing their bytes instead of comparing a strong hash of them,
+ * which is just as costly and rules out collisions. The block following
+ * the last copied region is verified first, as it is the one matching when
+ * the files are mostly equal, and otherwise the first candidate found
+ * equal is taken, verifying at most {@value #MAX_VERIFIED_CANDIDATES}
+ * candidates per window.
+ *
+ * @author Rodrigo Hackbarth
+ */
+public final class BlockMatchingDiff {
+
+	/**
+	 * Receives the regions of the right file, in ascending offset order.
+	 */
+	public interface BlockListener {
+
+		/**
+		 * Called for a region of the right file which is also in the left file.
+		 *
+		 * @param leftOffset offset of the region in the left file
+		 * @param rightOffset offset of the region in the right file
+		 * @param length length of the region
+		 */
+		void onCopy(int leftOffset, int rightOffset, int length);
+
+		/**
+		 * Called for a region of the right file which is not in the left file.
+		 *
+		 * @param leftOffset offset in the left file following the last copied region
+		 * @param rightOffset offset of the region in the right file
+		 * @param length length of the region
+		 */
+		void onLiteral(int leftOffset, int rightOffset, int length);
+	}
+
+	/**
+	 * Maximum number of candidate blocks verified for a single window, so
+	 * a left file with many blocks sharing the same checksum, but not the
+	 * same content, does not make the scan quadratic.
+	 */
+	static final int MAX_VERIFIED_CANDIDATES = 16;
+
+	private BlockMatchingDiff() {}
+
+	/**
+	 * Splits the right file in regions copied from the left file and
+	 * literal regions, reporting them to the given listener.
+	 *
+	 * @param leftFile File whose content is looked for in the right file
+	 * @param rightFile File to be split in copied and literal regions
+	 * @param blockSize size of the blocks the left file is indexed by
+	 * @param listener Listener notified of each region
+	 */
+	public static void diff(ByteBuffer leftFile, ByteBuffer rightFile, int blockSize, BlockListener listener) {
+		ByteBuffer left = leftFile.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		ByteBuffer right = rightFile.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		int rightLength = right.capacity();
+
+		// most windows are rejected by their tag, without looking up the index
+		boolean[] tags = new boolean[1 << 16];
+		BlockIndex index = new BlockIndex(left, blockSize, tags);
+
+		int literalStart = 0;
+		int leftEnd = 0;
+		int position = 0;
+		int checksum = position + blockSize <= rightLength ? checksum(right, position, blockSize) : 0;
+
+		while(position + blockSize <= rightLength) {
+			int block = tags[tag(checksum)] ? matchingBlock(index, checksum, left, right, position, blockSize, leftEnd) : -1;
+
+			if(block == -1) {
+				if(position + blockSize < rightLength) {
+					checksum = roll(checksum, right.get(position), right.get(position + blockSize), blockSize);
+				}
+				position++;
+				continue;
+			}
+
+			int leftOffset = block * blockSize;
+			int length = blockSize + matchLength(left, leftOffset + blockSize, right, position + blockSize);
+
+			if(position > literalStart) {
+				listener.onLiteral(leftEnd, literalStart, position - literalStart);
+			}
+			listener.onCopy(leftOffset, position, length);
+
+			leftEnd = leftOffset + length;
+			position += length;
+			literalStart = position;
+
+			if(position + blockSize <= rightLength) {
+				checksum = checksum(right, position, blockSize);
+			}
+		}
+
+		if(rightLength > literalStart) {
+			listener.onLiteral(leftEnd, literalStart, rightLength - literalStart);
+		}
+	}
+
+	/**
+	 * Returns a block of the left file whose content is equal to the window
+	 * of the right file, preferring the block which follows the last copied
+	 * region.
+	 *
+	 * @return the index of the matching block, or -1 if there is none
+	 */
+	private static int matchingBlock(BlockIndex index, int checksum, ByteBuffer left, ByteBuffer right, int position, int blockSize, int leftEnd) {
+		int next = leftEnd % blockSize == 0 ? leftEnd / blockSize : -1;
+
+		if(next != -1 && next < index.checksums.length && index.checksums[next] == checksum
+				&& matchLength(left, leftEnd, right, position, blockSize) == blockSize) {
+			return next;
+		}
+
+		int verified = 0;
+
+		for(int block = index.first(checksum); block != -1 && verified < MAX_VERIFIED_CANDIDATES; block = index.next[block]) {
+			if(index.checksums[block] != checksum || block == next) {
+				continue;
+			}
+
+			if(matchLength(left, block * blockSize, right, position, blockSize) == blockSize) {
+				return block;
+			}
+			verified++;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Returns how many bytes are equal from the given offsets on.
+	 */
+	private static int matchLength(ByteBuffer left, int leftOffset, ByteBuffer right, int rightOffset) {
+		return matchLength(left, leftOffset, right, rightOffset, Math.min(left.capacity() - leftOffset, right.capacity() - rightOffset));
+	}
+
+	/**
+	 * Returns how many of the following bytes, up to the given maximum,
+	 * are equal from the given offsets on, comparing 8 bytes at a time.
+	 */
+	private static int matchLength(ByteBuffer left, int leftOffset, ByteBuffer right, int rightOffset, int max) {
+		int length = 0;
+
+		for(; length <= max - Long.BYTES; length += Long.BYTES) {
+			long xor = left.getLong(leftOffset + length) ^ right.getLong(rightOffset + length);
+
+			if(xor != 0) {
+				return length + (Long.numberOfTrailingZeros(xor) >>> 3);
+			}
+		}
+
+		while(length < max && left.get(leftOffset + length) == right.get(rightOffset + length)) {
+			length++;
+		}
+
+		return length;
+	}
+
+	/**
+	 * rsync's rolling checksum of the given window: the low 16 bits are the
+	 * sum of the bytes and the high 16 bits the sum of the running sums.
+	 */
+	private static int checksum(ByteBuffer file, int offset, int length) {
+		int a = 0;
+		int b = 0;
+
+		for(int i = 0; i < length; i++) {
+			a += file.get(offset + i) & 0xFF;
+			b += a;
+		}
+
+		return (a & 0xFFFF) | (b << 16);
+	}
+
+	/**
+	 * Folds the checksum into a 16 bit tag.
+	 */
+	private static int tag(int checksum) {
+		return (checksum ^ (checksum >>> 16)) & 0xFFFF;
+	}
+
+	/**
+	 * Moves the checksum window one byte forward.
+	 */
+	private static int roll(int checksum, byte removed, byte added, int length) {
+		int a = checksum & 0xFFFF;
+		int b = checksum >>> 16;
+
+		a = (a - (removed & 0xFF) + (added & 0xFF)) & 0xFFFF;
+		b = (b - length * (removed & 0xFF) + a) & 0xFFFF;
+
+		return a | (b << 16);
+	}
+
+	/**
+	 * Index of the full blocks of the left file by their checksum, held in
+	 * primitive arrays: the blocks whose checksums fall in the same bucket
+	 * are chained in ascending order through {@link #next}.
+	 */
+	private static final class BlockIndex {
+
+		private final int[] checksums;
+		private final int[] next;
+		private final int[] buckets;
+		private final int shift;
+
+		/**
+		 * Indexes the full blocks of the left file, flagging the tag of each
+		 * indexed checksum in the given table.
+		 */
+		BlockIndex(ByteBuffer left, int blockSize, boolean[] tags) {
+			int blockCount = left.capacity() / blockSize;
+			int bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(blockCount));
+
+			this.checksums = new int[blockCount];
+			this.next = new int[blockCount];
+			this.buckets = new int[1 << bits];
+			this.shift = 32 - bits;
+			Arrays.fill(buckets, -1);
+
+			// chained from the last block on, so each chain is in ascending order
+			for(int block = blockCount - 1; block >= 0; block--) {
+				int checksum = checksum(left, block * blockSize, blockSize);
+				int bucket = bucket(checksum);
+
+				checksums[block] = checksum;
+				next[block] = buckets[bucket];
+				buckets[bucket] = block;
+				tags[tag(checksum)] = true;
+			}
+		}
+
+		/**
+		 * Returns the first block of the chain the given checksum falls in,
+		 * or -1 if the chain is empty.
+		 */
+		int first(int checksum) {
+			return buckets[bucket(checksum)];
+		}
+
+		private int bucket(int checksum) {
+			return (checksum * 0x9E3779B9) >>> shift;
+		}
+	}
+}
@@ -0,0 +1,223 @@
+package com.waes.filediff.service;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Inflater;
+
+import com.waes.filediff.model.CompressedFile;
+import com.waes.filediff.service.DiffComparator.RunListener;
+
+/**
+ * Compares files stored as {@link CompressedFile}s, which must have the same
+ * length and block size, without decompressing them as a whole.
+ * <br/><br/>
+ * The files are compared block by block: blocks whose compressed bytes are
+ * equal are skipped without being decompressed, and the other blocks are
+ * decompressed one at a time into a pair of reused buffers, which are then
+ * compared by {@link DiffComparator}. Runs ending at the end of a block and
+ * going on at the start of the next one are reported as a single run, so the
+ * result is the same as comparing the decompressed files.
+ *
+ * @author Rodrigo Hackbarth
+ */
+public final class CompressedDiffComparator {
+
+	private CompressedDiffComparator() {}
+
+	/**
+	 * Compares the [from, to) range of the two files and reports every run
+	 * of different bytes to the given listener.
+	 *
+	 * @param leftFile File to be compared with the right file
+	 * @param rightFile File to be compared with the left file
+	 * @param from first offset to be compared, inclusive
+	 * @param to last offset to be compared, exclusive
+	 * @param listener Listener notified of each run found
+	 * @return the number of runs found, 0 meaning the range is equal
+	 */
+	public static int compare(CompressedFile leftFile, CompressedFile rightFile, int from, int to, RunListener listener) {
+		BlockPair blocks = new BlockPair(leftFile, rightFile);
+		JoiningRunListener joiningListener = new JoiningRunListener(listener);
+
+		try {
+			for(int block = from / blocks.blockSize; blocks.startsBefore(block, to); block++) {
+				if(leftFile.blockEquals(rightFile, block)) {
+					continue;
+				}
+
+				int blockStart = block * blocks.blockSize;
+				int blockEnd = blockStart + blocks.decompress(block);
+
+				joiningListener.blockStart = blockStart;
+				DiffComparator.compare(blocks.left, blocks.right, Math.max(from, blockStart) - blockStart,
+						Math.min(to, blockEnd) - blockStart, joiningListener);
+			}
+		} finally {
+			blocks.end();
+		}
+
+		joiningListener.flush();
+		return joiningListener.runs;
+	}
+
+	/**
+	 * Returns the offset of the first different byte in the [from, to)
+	 * range of the two files, without looking any further.
+	 *
+	 * @param leftFile File to be compared with the right file
+	 * @param rightFile File to be compared with the left file
+	 * @param from first offset to be compared, inclusive
+	 * @param to last offset to be compared, exclusive
+	 * @return the offset of the first different byte, or -1 if the range is equal
+	 */
+	public static int firstDifference(CompressedFile leftFile, CompressedFile rightFile, int from, int to) {
+		BlockPair blocks = new BlockPair(leftFile, rightFile);
+
+		try {
+			for(int block = from / blocks.blockSize; blocks.startsBefore(block, to); block++) {
+				if(leftFile.blockEquals(rightFile, block)) {
+					continue;
+				}
+
+				int blockStart = block * blocks.blockSize;
+				int blockEnd = blockStart + blocks.decompress(block);
+
+				int difference = DiffComparator.firstDifference(blocks.left, blocks.right, Math.max(from, blockStart) - blockStart,
+						Math.min(to, blockEnd) - blockStart);
+
+				if(difference != -1) {
+					return blockStart + difference;
+				}
+			}
+		} finally {
+			blocks.end();
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Returns the offset of the first equal byte in the [from, to) range
+	 * of the two files, which is where a run of different bytes starting
+	 * at the given offset ends.
+	 *
+	 * @param leftFile File to be compared with the right file
+	 * @param rightFile File to be compared with the left file
+	 * @param from first offset to be compared, inclusive
+	 * @param to last offset to be compared, exclusive
+	 * @return the offset of the first equal byte, or the given end of the
+	 *         range if all bytes are different
+	 */
+	public static int firstEqual(CompressedFile leftFile, CompressedFile rightFile, int from, int to) {
+		BlockPair blocks = new BlockPair(leftFile, rightFile);
+
+		try {
+			for(int block = from / blocks.blockSize; blocks.startsBefore(block, to); block++) {
+				int blockStart = block * blocks.blockSize;
+				int start = Math.max(from, blockStart);
+
+				if(leftFile.blockEquals(rightFile, block)) {
+					return start;
+				}
+
+				int end = Math.min(to, blockStart + blocks.decompress(block));
+				int equal = blockStart + DiffComparator.firstEqual(blocks.left, blocks.right, start - blockStart, end - blockStart);
+
+				if(equal < end) {
+					return equal;
+				}
+			}
+		} finally {
+			blocks.end();
+		}
+
+		return to;
+	}
+
+	/**
+	 * Buffers receiving the blocks of both files at the same index, reused
+	 * for all the blocks decompressed by a comparison.
+	 */
+	private static class BlockPair {
+
+		private final CompressedFile leftFile;
+		private final CompressedFile rightFile;
+		private final int blockSize;
+		private final byte[] leftBlock;
+		private final byte[] rightBlock;
+		private final ByteBuffer left;
+		private final ByteBuffer right;
+		private final Inflater inflater = new Inflater();
+
+		BlockPair(CompressedFile leftFile, CompressedFile rightFile) {
+			if(!leftFile.isComparableTo(rightFile)) {
+				throw new IllegalArgumentException("Files must have the same length and block size.");
+			}
+
+			this.leftFile = leftFile;
+			this.rightFile = rightFile;
+			this.blockSize = leftFile.getBlockSize();
+			this.leftBlock = new byte[Math.min(blockSize, leftFile.getLength())];
+			this.rightBlock = new byte[leftBlock.length];
+			this.left = ByteBuffer.wrap(leftBlock);
+			this.right = ByteBuffer.wrap(rightBlock);
+		}
+
+		boolean startsBefore(int block, int to) {
+			return block < leftFile.getBlockCount() && (long) block * blockSize < to;
+		}
+
+		/**
+		 * Decompresses the block at the given index of both files.
+		 *
+		 * @return the length of the block
+		 */
+		int decompress(int block) {
+			leftFile.decompressBlock(block, leftBlock, inflater);
+			return rightFile.decompressBlock(block, rightBlock, inflater);
+		}
+
+		void end() {
+			inflater.end();
+		}
+	}
+
+	/**
+	 * Shifts the runs found in a block by the offset of the block, joining
+	 * each run with the previous one when the previous run ends where it
+	 * starts, as it happens for runs crossing the end of a block.
+	 */
+	private static class JoiningRunListener implements RunListener {
+
+		private final RunListener listener;
+		private int blockStart;
+		private int pendingOffset = -1;
+		private int pendingLength;
+		private int runs;
+
+		JoiningRunListener(RunListener listener) {
+			this.listener = listener;
+		}
+
+		@Override
+		public void onRun(int offset, int length) {
+			int fileOffset = blockStart + offset;
+
+			if(pendingOffset != -1 && pendingOffset + pendingLength == fileOffset) {
+				pendingLength += length;
+				return;
+			}
+
+			flush();
+			pendingOffset = fileOffset;
+			pendingLength = length;
+		}
+
+		void flush() {
+			if(pendingOffset != -1) {
+				listener.onRun(pendingOffset, pendingLength);
+				runs++;
+				pendingOffset = -1;
+			}
+		}
+	}
+}
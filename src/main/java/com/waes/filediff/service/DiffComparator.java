@@ -0,0 +1,227 @@
+package com.waes.filediff.service;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Comparison kernel used by the diff operation.
+ * <br/><br/>
+ * The files are scanned 8 bytes at a time: each pair of words is
+ * XORed and {@link Long#numberOfTrailingZeros(long)} is used to locate
+ * where a run of different bytes starts and where it ends. The words are
+ * read in little endian order, so the lowest bits of a word always belong
+ * to the lowest offset.
+ *
+ * @author Rodrigo Hackbarth
+ */
+public final class DiffComparator {
+
+	private static final long LOW_BITS = 0x0101010101010101L;
+	private static final long HIGH_BITS = 0x8080808080808080L;
+
+	/**
+	 * Receives the runs of different bytes found by the comparison.
+	 */
+	public interface RunListener {
+
+		/**
+		 * Called once for every run of different bytes, in
+		 * ascending offset order.
+		 *
+		 * @param offset offset of the first different byte of the run
+		 * @param length number of consecutive different bytes
+		 */
+		void onRun(int offset, int length);
+	}
+
+	private DiffComparator() {}
+
+	/**
+	 * Compares the two files, which must have the same length, and
+	 * reports every run of different bytes to the given listener.
+	 *
+	 * @param leftFile File to be compared with the right file
+	 * @param rightFile File to be compared with the left file
+	 * @param listener Listener notified of each run found
+	 * @return the number of runs found, 0 meaning the files are equal
+	 */
+	public static int compare(byte[] leftFile, byte[] rightFile, RunListener listener) {
+		return compare(leftFile, rightFile, 0, leftFile.length, listener);
+	}
+
+	/**
+	 * Compares the [from, to) range of the two files and reports every
+	 * run of different bytes found inside that range to the given listener.
+	 *
+	 * @param leftFile File to be compared with the right file
+	 * @param rightFile File to be compared with the left file
+	 * @param from first offset to be compared, inclusive
+	 * @param to last offset to be compared, exclusive
+	 * @param listener Listener notified of each run found
+	 * @return the number of runs found, 0 meaning the range is equal
+	 */
+	public static int compare(byte[] leftFile, byte[] rightFile, int from, int to, RunListener listener) {
+		return compare(ByteBuffer.wrap(leftFile), ByteBuffer.wrap(rightFile), from, to, listener);
+	}
+
+	/**
+	 * Compares the two files, which must have the same capacity, and
+	 * reports every run of different bytes to the given listener.
+	 * <br/><br/>
+	 * The buffers may be heap, direct or memory-mapped buffers. They are read
+	 * by absolute index, so their position and limit are neither used nor
+	 * changed.
+	 *
+	 * @param leftFile File to be compared with the right file
+	 * @param rightFile File to be compared with the left file
+	 * @param listener Listener notified of each run found
+	 * @return the number of runs found, 0 meaning the files are equal
+	 */
+	public static int compare(ByteBuffer leftFile, ByteBuffer rightFile, RunListener listener) {
+		return compare(leftFile, rightFile, 0, leftFile.capacity(), listener);
+	}
+
+	/**
+	 * Compares the [from, to) range of the two files and reports every
+	 * run of different bytes found inside that range to the given listener.
+	 *
+	 * @param leftFile File to be compared with the right file
+	 * @param rightFile File to be compared with the left file
+	 * @param from first offset to be compared, inclusive
+	 * @param to last offset to be compared, exclusive
+	 * @param listener Listener notified of each run found
+	 * @return the number of runs found, 0 meaning the range is equal
+	 */
+	public static int compare(ByteBuffer leftFile, ByteBuffer rightFile, int from, int to, RunListener listener) {
+		ByteBuffer left = leftFile.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		ByteBuffer right = rightFile.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+
+		int runs = 0;
+		int runStart = -1;
+		int i = from;
+
+		for(; i <= to - Long.BYTES; i += Long.BYTES) {
+			long xor = left.getLong(i) ^ right.getLong(i);
+
+			if(runStart == -1 && xor == 0) {
+				continue;
+			}
+
+			int b = 0;
+			while(b < Long.BYTES) {
+				long remaining = xor >>> (b << 3);
+
+				if(runStart == -1) {
+					if(remaining == 0) {
+						break;
+					}
+
+					b += Long.numberOfTrailingZeros(remaining) >>> 3;
+					runStart = i + b;
+				}else {
+					long equalBytes = (remaining - LOW_BITS) & ~remaining & HIGH_BITS;
+					int equalIndex = b + (Long.numberOfTrailingZeros(equalBytes) >>> 3);
+
+					// the zero bytes shifted in from the top do not belong to this word
+					if(equalBytes == 0 || equalIndex >= Long.BYTES) {
+						break;
+					}
+
+					listener.onRun(runStart, i + equalIndex - runStart);
+					runs++;
+					runStart = -1;
+					b = equalIndex;
+				}
+			}
+		}
+
+		for(; i < to; i++) {
+			if(left.get(i) != right.get(i)) {
+				if(runStart == -1) {
+					runStart = i;
+				}
+			}else if(runStart != -1) {
+				listener.onRun(runStart, i - runStart);
+				runs++;
+				runStart = -1;
+			}
+		}
+
+		if(runStart != -1) {
+			listener.onRun(runStart, to - runStart);
+			runs++;
+		}
+
+		return runs;
+	}
+
+	/**
+	 * Returns the offset of the first different byte in the [from, to)
+	 * range of the two files, without looking any further.
+	 *
+	 * @param leftFile File to be compared with the right file
+	 * @param rightFile File to be compared with the left file
+	 * @param from first offset to be compared, inclusive
+	 * @param to last offset to be compared, exclusive
+	 * @return the offset of the first different byte, or -1 if the range is equal
+	 */
+	public static int firstDifference(ByteBuffer leftFile, ByteBuffer rightFile, int from, int to) {
+		ByteBuffer left = leftFile.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		ByteBuffer right = rightFile.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+
+		int i = from;
+
+		for(; i <= to - Long.BYTES; i += Long.BYTES) {
+			long xor = left.getLong(i) ^ right.getLong(i);
+
+			if(xor != 0) {
+				return i + (Long.numberOfTrailingZeros(xor) >>> 3);
+			}
+		}
+
+		for(; i < to; i++) {
+			if(left.get(i) != right.get(i)) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Returns the offset of the first equal byte in the [from, to) range
+	 * of the two files, which is where a run of different bytes starting
+	 * at the given offset ends.
+	 *
+	 * @param leftFile File to be compared with the right file
+	 * @param rightFile File to be compared with the left file
+	 * @param from first offset to be compared, inclusive
+	 * @param to last offset to be compared, exclusive
+	 * @return the offset of the first equal byte, or the given end of the 
+	 *         range if all bytes are different
+	 */
+	public static int firstEqual(ByteBuffer leftFile, ByteBuffer rightFile, int from, int to) {
+		ByteBuffer left = leftFile.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		ByteBuffer right = rightFile.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+
+		int i = from;
+
+		for(; i <= to - Long.BYTES; i += Long.BYTES) {
+			long xor = left.getLong(i) ^ right.getLong(i);
+			// the lowest flagged byte is always a zero byte of the xor
+			long equalBytes = (xor - LOW_BITS) & ~xor & HIGH_BITS;
+
+			if(equalBytes != 0) {
+				return i + (Long.numberOfTrailingZeros(equalBytes) >>> 3);
+			}
+		}
+
+		for(; i < to; i++) {
+			if(left.get(i) == right.get(i)) {
+				return i;
+			}
+		}
+
+		return to;
+	}
+}
@@ -0,0 +1,254 @@
+package com.waes.filediff.service;
+
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import com.waes.filediff.exception.DiffValidationException;
+import com.waes.filediff.model.DiffJobDTO;
+import com.waes.filediff.model.DiffServiceResultDTO;
+
+/**
+ * Runs comparisons of files in the background as jobs, which can be polled
+ * for their progress and result, and cancelled.
+ * <br/><br/>
+ * The jobs run {@link DiffService#diff(int, DiffService.ProgressListener)} on
+ * a pool of "diff.jobs.threads" threads, so comparing large files does not
+ * hold a request thread for its whole duration. Up to "diff.jobs.queue-size"
+ * jobs may wait for a thread.
+ * <br/><br/>
+ * Finished jobs are kept for "diff.jobs.retention-minutes" and dropped by a
+ * sweep running every "diff.jobs.sweep-interval-seconds", or the next time
+ * a job is submitted.
+ *
+ * @author Rodrigo Hackbarth
+ */
+@Service
+public class DiffJobService {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(DiffJobService.class);
+
+	private static final String RUNNING = "running";
+	private static final String DONE = "done";
+	private static final String FAILED = "failed";
+	private static final String CANCELLED = "cancelled";
+
+	@Autowired
+	private DiffService diffService;
+
+	@Value("${diff.jobs.threads:2}")
+	private int threads;
+
+	@Value("${diff.jobs.queue-size:100}")
+	private int queueSize;
+
+	@Value("${diff.jobs.retention-minutes:60}")
+	private long retentionMinutes;
+
+	@Value("${diff.jobs.sweep-interval-seconds:60}")
+	private long sweepIntervalSeconds;
+
+	private ThreadPoolExecutor executor;
+
+	/**
+	 * Executor sweeping the expired jobs.
+	 */
+	private ScheduledExecutorService sweeper;
+
+	/**
+	 * Jobs mapped by their IDs.
+	 */
+	private final ConcurrentMap<String, DiffJob> jobs = new ConcurrentHashMap<>();
+
+	@PostConstruct
+	public void startExecutor() {
+		executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueSize), new CustomizableThreadFactory("diff-job-"));
+
+		sweeper = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("diff-job-sweeper-"));
+		sweeper.scheduleWithFixedDelay(() -> dropExpiredJobs(System.nanoTime()),
+				sweepIntervalSeconds, sweepIntervalSeconds, TimeUnit.SECONDS);
+	}
+
+	@PreDestroy
+	public void stopExecutor() {
+		sweeper.shutdownNow();
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Submits a job comparing the files stored under the given ID.
+	 *
+	 * @param id identifier of the files to be compared
+	 * @return the state of the new job, holding its ID
+	 * @throws DiffValidationException if too many jobs are waiting for a thread
+	 */
+	public DiffJobDTO submit(int id) throws DiffValidationException {
+		dropExpiredJobs(System.nanoTime());
+
+		DiffJob job = new DiffJob(id);
+		String jobId = UUID.randomUUID().toString();
+
+		try {
+			job.future = executor.submit(() -> run(job));
+		} catch (RejectedExecutionException e) {
+			throw new DiffValidationException("Too many diff jobs are waiting to be run.", e);
+		}
+
+		jobs.put(jobId, job);
+
+		return job.toDTO(jobId);
+	}
+
+	/**
+	 * Returns the state of the given job, along with its result once it
+	 * is done.
+	 *
+	 * @param id identifier of the files compared by the job
+	 * @param jobId ID of the job
+	 * @return the state of the job
+	 * @throws DiffValidationException if there is no such job under the given ID
+	 */
+	public DiffJobDTO getJob(int id, String jobId) throws DiffValidationException {
+		return getDiffJob(id, jobId).toDTO(jobId);
+	}
+
+	/**
+	 * Cancels the given job, interrupting its comparison if it is running.
+	 * A job which is already finished is left as it is.
+	 *
+	 * @param id identifier of the files compared by the job
+	 * @param jobId ID of the job
+	 * @return the state of the job
+	 * @throws DiffValidationException if there is no such job under the given ID
+	 */
+	public DiffJobDTO cancel(int id, String jobId) throws DiffValidationException {
+		DiffJob job = getDiffJob(id, jobId);
+
+		job.cancel();
+
+		return job.toDTO(jobId);
+	}
+
+	private void run(DiffJob job) {
+		try {
+			job.finish(diffService.diff(job.id, job::setProgress));
+		} catch (DiffValidationException e) {
+			job.fail(e.getMessage());
+		} catch (InterruptedException e) {
+			// the job was cancelled
+		} catch (RuntimeException e) {
+			LOGGER.error("Diff job failed comparing files under ID: {}", job.id, e);
+			job.fail("Error comparing files under ID: " + job.id);
+		}
+	}
+
+	private DiffJob getDiffJob(int id, String jobId) throws DiffValidationException {
+		DiffJob job = jobs.get(jobId);
+
+		if(job == null || job.id != id) {
+			throw new DiffValidationException("No diff job exists under ID: " + jobId);
+		}
+
+		return job;
+	}
+
+	/**
+	 * Drops the jobs which finished more than "diff.jobs.retention-minutes"
+	 * before the given time.
+	 *
+	 * @param now current value of the system timer, in nanoseconds
+	 */
+	void dropExpiredJobs(long now) {
+		long expiredBefore = now - TimeUnit.MINUTES.toNanos(retentionMinutes);
+
+		jobs.values().removeIf(job -> job.isFinishedBefore(expiredBefore));
+	}
+
+	/**
+	 * Comparison of the files of an ID, submitted to the executor.
+	 * <br/><br/>
+	 * The state only leaves "running" once, so a comparison finishing while
+	 * the job is cancelled does not override the cancellation.
+	 */
+	private static class DiffJob {
+
+		private final int id;
+		private Future<?> future;
+		private String state = RUNNING;
+		private String message;
+		private long scannedBytes;
+		private long totalBytes;
+		private DiffServiceResultDTO result;
+		private long finishedAt;
+
+		DiffJob(int id) {
+			this.id = id;
+		}
+
+		synchronized void setProgress(long scannedBytes, long totalBytes) {
+			this.scannedBytes = scannedBytes;
+			this.totalBytes = totalBytes;
+		}
+
+		synchronized void finish(DiffServiceResultDTO result) {
+			if(finish(DONE, "Files were compared.")) {
+				this.result = result;
+			}
+		}
+
+		synchronized void fail(String message) {
+			finish(FAILED, message);
+		}
+
+		synchronized void cancel() {
+			if(finish(CANCELLED, "Diff job was cancelled.")) {
+				future.cancel(true);
+			}
+		}
+
+		private boolean finish(String state, String message) {
+			if(!RUNNING.equals(this.state)) {
+				return false;
+			}
+
+			this.state = state;
+			this.message = message;
+			this.finishedAt = System.nanoTime();
+			return true;
+		}
+
+		synchronized boolean isFinishedBefore(long time) {
+			return !RUNNING.equals(state) && finishedAt - time < 0;
+		}
+
+		synchronized DiffJobDTO toDTO(String jobId) {
+			DiffJobDTO dto = new DiffJobDTO();
+			dto.setStatus(FAILED.equals(state) ? "error" : "success");
+			dto.setMessage(RUNNING.equals(state) ? "Files are being compared." : message);
+			dto.setJobId(jobId);
+			dto.setState(state);
+			dto.setScannedBytes(scannedBytes);
+			dto.setTotalBytes(totalBytes);
+			dto.setResult(result);
+			return dto;
+		}
+	}
+}
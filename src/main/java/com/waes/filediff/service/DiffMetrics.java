@@ -0,0 +1,73 @@
+package com.waes.filediff.service;
+
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Meters of the phases a file goes through, from its upload to the result
+ * of its comparison.
+ * <br/><br/>
+ * The meters are registered in the global registry of Micrometer, which
+ * Spring Boot adds its registries to, so they are available to the code
+ * timing the phases without being injected, including in plain unit tests
+ * where they are simply not exported.
+ * <br/><br/>
+ * The "diff.phase" timer is tagged with the phase it measures:
+ * <ul>
+ * <li>decode: reading and decoding an upload request body;</li>
+ * <li>store: hashing and storing an uploaded or patched file;</li>
+ * <li>compare: comparing two files, which for a streamed result also
+ *     includes writing the diffs, since they are written as they are found;</li>
+ * <li>serialize: writing a result already held in memory.</li>
+ * </ul>
+ * The "diff.runs" summary records the number of diffs found by each
+ * comparison.
+ *
+ * @author Rodrigo Hackbarth
+ */
+public final class DiffMetrics {
+
+	public static final Timer DECODE = phaseTimer("decode");
+
+	public static final Timer STORE = phaseTimer("store");
+
+	public static final Timer COMPARE = phaseTimer("compare");
+
+	public static final Timer SERIALIZE = phaseTimer("serialize");
+
+	public static final DistributionSummary DIFF_RUNS = DistributionSummary.builder("diff.runs")
+			.description("Number of diffs found by each comparison")
+			.register(Metrics.globalRegistry);
+
+	private DiffMetrics() {}
+
+	/**
+	 * Returns the current time, to be given to {@link #record(Timer, long)}
+	 * once the timed phase is done.
+	 *
+	 * @return the current value of the system timer, in nanoseconds
+	 */
+	public static long start() {
+		return System.nanoTime();
+	}
+
+	/**
+	 * Records the time elapsed since the given start time.
+	 *
+	 * @param timer timer of the phase
+	 * @param startTime time returned by {@link #start()} when the phase started
+	 */
+	public static void record(Timer timer, long startTime) {
+		timer.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+	}
+
+	private static Timer phaseTimer(String phase) {
+		return Timer.builder("diff.phase")
+				.description("Time spent in each phase of uploading and comparing files")
+				.tag("phase", phase)
+				.register(Metrics.globalRegistry);
+	}
+}
@@ -0,0 +1,123 @@
+package com.waes.filediff.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.waes.filediff.model.DiffFilesDTO;
+import com.waes.filediff.model.DiffServiceResultDTO;
+
+/**
+ * Cache of the diff results, mapped by the ID of the compared files.
+ * <br/><br/>
+ * Each result is kept together with the {@link DiffFilesDTO} it was computed
+ * from. Since every upload stores a new {@link DiffFilesDTO}, a cached result
+ * is only returned while the files it was computed from are still the stored
+ * ones, even if it was put in the cache concurrently with an upload.
+ * <br/><br/>
+ * The cache holds at most "diff.cache.max-size" results, evicting the least
+ * recently used one when full, and {@link DiffService} does not cache results
+ * of more than "diff.cache.max-runs" diffs, so the memory held by the cache
+ * is bounded by both.
+ * 
+ * @author Rodrigo Hackbarth
+ */
+@Component
+public class DiffResultCache {
+
+	private final Map<Integer, CachedResult> results;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * @param maxSize maximum number of cached results, 0 disabling the cache
+	 */
+	@Autowired
+	public DiffResultCache(@Value("${diff.cache.max-size:1000}") int maxSize) {
+		this.results = new LinkedHashMap<Integer, CachedResult>(16, 0.75f, true) {
+			
+			private static final long serialVersionUID = -3165874325164872370L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, CachedResult> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Returns the result cached for the given files.
+	 * 
+	 * @param id identifier of the compared files
+	 * @param diffFiles files currently stored under the given ID
+	 * @return the cached result, or null if there is none for these files
+	 */
+	public DiffServiceResultDTO get(int id, DiffFilesDTO diffFiles) {
+		CachedResult cached;
+		
+		synchronized(results) {
+			cached = results.get(id);
+		}
+		
+		if(cached == null || cached.diffFiles != diffFiles) {
+			misses.incrementAndGet();
+			return null;
+		}
+		
+		hits.incrementAndGet();
+		return cached.result;
+	}
+
+	/**
+	 * Caches the result of comparing the given files.
+	 * 
+	 * @param id identifier of the compared files
+	 * @param diffFiles files the result was computed from
+	 * @param result result of the comparison
+	 */
+	public void put(int id, DiffFilesDTO diffFiles, DiffServiceResultDTO result) {
+		synchronized(results) {
+			results.put(id, new CachedResult(diffFiles, result));
+		}
+	}
+
+	/**
+	 * Removes the result cached for the given ID.
+	 * 
+	 * @param id identifier of the files whose result is no longer valid
+	 */
+	public void invalidate(int id) {
+		synchronized(results) {
+			results.remove(id);
+		}
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public int getSize() {
+		synchronized(results) {
+			return results.size();
+		}
+	}
+
+	private static class CachedResult {
+
+		private final DiffFilesDTO diffFiles;
+		private final DiffServiceResultDTO result;
+
+		CachedResult(DiffFilesDTO diffFiles, DiffServiceResultDTO result) {
+			this.diffFiles = diffFiles;
+			this.result = result;
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package com.waes.filediff.service;
+
+import java.io.IOException;
+
+/**
+ * Receives the result of a diff as it is produced, so it can be written
+ * out without the whole result being held in memory.
+ * <br/><br/>
+ * The methods are called in order: {@link #writeStart(String, String)} once,
+ * {@link #writeDiff(int, int)} once for each diff found and 
+ * {@link #writeEnd(String)} once.
+ * 
+ * @author Rodrigo Hackbarth
+ */
+public interface DiffResultWriter {
+
+	/**
+	 * Writes the start of the result.
+	 * 
+	 * @param status status of the diff
+	 * @param message message of the diff, null if diffs were found
+	 * @throws IOException if the result could not be written
+	 */
+	void writeStart(String status, String message) throws IOException;
+
+	/**
+	 * Writes a diff found when comparing the files.
+	 * 
+	 * @param offset offset of the diff
+	 * @param length length of the diff
+	 * @throws IOException if the result could not be written
+	 */
+	void writeDiff(int offset, int length) throws IOException;
+
+	/**
+	 * Writes the end of the result.
+	 * 
+	 * @param nextCursor cursor from which the next page of diffs can be 
+	 *                   requested, null if there are no more diffs
+	 * @throws IOException if the result could not be written
+	 */
+	void writeEnd(String nextCursor) throws IOException;
+}
@@ -1,69 +1,650 @@
 package com.waes.filediff.service;
 
-import java.util.Arrays;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 
 import com.waes.filediff.exception.DiffValidationException;
-import com.waes.filediff.model.DiffDataDTO;
+import com.waes.filediff.model.ChunkHashTree;
+import com.waes.filediff.model.CompressedFile;
+import com.waes.filediff.model.DiffEditDTO;
+import com.waes.filediff.model.DiffEditsResultDTO;
 import com.waes.filediff.model.DiffFilesDTO;
 import com.waes.filediff.model.DiffServiceResultDTO;
+import com.waes.filediff.model.DiffSummaryDTO;
+import com.waes.filediff.repository.BlobStore;
 import com.waes.filediff.repository.DiffRepository;
+import com.waes.filediff.repository.FileStore;
+import com.waes.filediff.service.DiffComparator.RunListener;
 
 /**
  * Provides the means to save files for later comparison and to
  * compare 2 files data which were saved under the same ID.
+ * <br/><br/>
+ * With "diff.storage.compression.enabled" set to true, the files are stored
+ * as {@link CompressedFile}s, in blocks of "diff.storage.compression.block-size"
+ * bytes. The positional comparisons then decompress only the blocks which are
+ * different, one at a time, while the myers and blocks algorithms and patches
+ * decompress the whole files.
  * 
  * @author Rodrigo Hackbarth
  */
 @Service
 public class DiffService {
+
+	/**
+	 * Receives the progress of a comparison.
+	 */
+	public interface ProgressListener {
+		
+		/**
+		 * Called after each step of the comparison.
+		 * 
+		 * @param scannedBytes number of bytes of each file scanned so far
+		 * @param totalBytes number of bytes of each file to be scanned
+		 */
+		void onProgress(long scannedBytes, long totalBytes);
+	}
 	
 	@Autowired
 	private DiffRepository repository;
+	
+	@Autowired
+	private BlobStore blobStore;
+	
+	@Autowired
+	private ParallelDiffComparator comparator;
+	
+	@Autowired
+	private DiffResultCache resultCache;
+	
+	@Value("${diff.cache.max-runs:100000}")
+	private int maxCachedRuns;
+	
+	@Value("${diff.myers.max-edits:10000}")
+	private int maxEdits;
+	
+	@Value("${diff.blocks.block-size:4096}")
+	private int blockSize;
+	
+	@Value("${diff.chunk-hash.chunk-size:65536}")
+	private int hashChunkSize;
+	
+	@Value("${diff.jobs.progress-step:16777216}")
+	private int progressStep;
+	
+	@Value("${diff.upload.max-size:1073741824}")
+	private int maxUploadSize;
+	
+	@Value("${diff.storage.compression.enabled:false}")
+	private boolean compressionEnabled;
+	
+	@Value("${diff.storage.compression.block-size:65536}")
+	private int compressionBlockSize;
+	
+	@Value("${diff.eager.enabled:false}")
+	private boolean eagerDiffEnabled;
+	
+	@Value("${diff.eager.threads:2}")
+	private int eagerDiffThreads;
+	
+	@Value("${diff.eager.queue-size:100}")
+	private int eagerDiffQueueSize;
+	
+	/**
+	 * Executor comparing the files in the background as soon as both of 
+	 * them are provided. Null when the eager diff mode is disabled.
+	 */
+	private ThreadPoolExecutor eagerDiffExecutor;
+	
+	/**
+	 * Background comparisons in progress, mapped by the ID of the files.
+	 */
+	private final ConcurrentMap<Integer, PendingDiff> pendingDiffs = new ConcurrentHashMap<>();
+	
+	@PostConstruct
+	public void startEagerDiffExecutor() {
+		if(eagerDiffEnabled) {
+			eagerDiffExecutor = new ThreadPoolExecutor(eagerDiffThreads, eagerDiffThreads, 0, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<>(eagerDiffQueueSize), new CustomizableThreadFactory("eager-diff-"));
+		}
+	}
+	
+	@PreDestroy
+	public void stopEagerDiffExecutor() {
+		if(eagerDiffExecutor != null) {
+			eagerDiffExecutor.shutdownNow();
+			
+			// the comparisons still queued are dropped, so their waiters compare the files themselves
+			pendingDiffs.forEach((id, pending) -> {
+				if(pending.claim()) {
+					pending.result.completeExceptionally(new RejectedExecutionException("Eager diff executor was stopped."));
+					pendingDiffs.remove(id, pending);
+				}
+			});
+		}
+	}
+	
+	@PostConstruct
+	public void registerEvictionListener() {
+		repository.setEvictionListener(this::releaseEvictedFiles);
+	}
+	
+	/**
+	 * Releases the stored blobs and the cached result of the files evicted
+	 * from the {@link DiffRepository}.
+	 * 
+	 * @param id identifier of the evicted files
+	 * @param diffFiles evicted files
+	 */
+	private void releaseEvictedFiles(int id, DiffFilesDTO diffFiles) {
+		blobStore.release(diffFiles.getLeftFile());
+		blobStore.release(diffFiles.getRightFile());
+		resultCache.invalidate(id);
+	}
 
+	/**
+	 * Starts the upload of a file of up to the given size, allocating the 
+	 * buffer its content is written to and stored in, see {@link FileUpload}.
+	 * 
+	 * @param id identifies the file
+	 * @param size maximum size of the file, in bytes, as declared by the request
+	 * @return the upload, to be handed to {@link #addLeft(int, FileUpload)}
+	 *         or {@link #addRight(int, FileUpload)} once written
+	 * @throws DiffValidationException if the size exceeds "diff.upload.max-size"
+	 * @throws IOException if room for the file could not be allocated
+	 */
+	public FileUpload newUpload(int id, long size) throws DiffValidationException, IOException {
+		checkUploadSize(size);
+		
+		// compressed files are built from the uploaded content, which is not kept
+		if(compressionEnabled) {
+			return new FileUpload(ByteBuffer.allocate((int) size));
+		}
+		
+		return new FileUpload(blobStore.allocate(id, (int) size), newHashBuilder((int) size));
+	}
+	
+	/**
+	 * Returns a builder hashing the chunks of a file uploaded in place as
+	 * they are written, in chunks of "diff.chunk-hash.chunk-size" bytes,
+	 * to be built into the hashes given to {@link #addLeft(int, ByteBuffer, ChunkHashTree)}
+	 * or {@link #addRight(int, ByteBuffer, ChunkHashTree)}.
+	 * 
+	 * @param length length of the buffer the file is written to
+	 * @return the builder, or null if the files are not hashed
+	 */
+	public ChunkHashTree.Builder newHashBuilder(int length) {
+		return compressionEnabled ? null : ChunkHashTree.builder(length, hashChunkSize);
+	}
+	
+	/**
+	 * Starts the upload of a patch of up to the given size, written to an
+	 * array handed to {@link #patchLeft(int, int, byte[])} or 
+	 * {@link #patchRight(int, int, byte[])} by {@link FileUpload#toByteArray()}.
+	 * 
+	 * @param size maximum size of the patch, in bytes, as declared by the request
+	 * @return the upload of the patch
+	 * @throws DiffValidationException if the size exceeds "diff.upload.max-size"
+	 */
+	public FileUpload newPatch(long size) throws DiffValidationException {
+		checkUploadSize(size);
+		
+		return new FileUpload(ByteBuffer.allocate((int) size));
+	}
+	
+	private void checkUploadSize(long size) throws DiffValidationException {
+		if(size < 0 || size > maxUploadSize) {
+			throw new DiffValidationException("File size must be between 0 and " + maxUploadSize + " bytes.");
+		}
+	}
+	
 	/**
 	 * Stores the provided file as the left file, associated with
 	 * the given ID.
+	 * <br/><br/>
+	 * The file is hashed in chunks of "diff.chunk-hash.chunk-size" bytes
+	 * before being stored, so later comparisons can skip the chunks which
+	 * are equal in both files.
 	 * 
 	 * @param id identifies the file
 	 * @param fileContent file content
+	 * @throws IOException if the file content could not be stored
+	 */
+	public void addLeft(int id, byte[] fileContent) throws IOException {
+		long startTime = DiffMetrics.start();
+		try {
+			if(compressionEnabled) {
+				setLeftFile(id, null, null, CompressedFile.of(fileContent, compressionBlockSize));
+				return;
+			}
+			
+			ChunkHashTree hashes = ChunkHashTree.of(fileContent, hashChunkSize);
+			setLeftFile(id, blobStore.store(id, fileContent, hashes), hashes, null);
+		} finally {
+			DiffMetrics.record(DiffMetrics.STORE, startTime);
+		}
+	}
+	
+	/**
+	 * Stores the provided file, already written in place into a buffer
+	 * allocated by the {@link FileStore}, as the left file associated
+	 * with the given ID.
+	 * 
+	 * @param id identifies the file
+	 * @param file buffer holding the whole file content, which must not
+	 *             be written anymore
+	 */
+	public void addLeft(int id, ByteBuffer file) {
+		addLeft(id, file, null);
+	}
+	
+	/**
+	 * Stores the provided file, already written in place into a buffer
+	 * allocated by the {@link FileStore}, as the left file associated
+	 * with the given ID, along with the hashes computed as it was written.
+	 * 
+	 * @param id identifies the file
+	 * @param file buffer holding the whole file content, which must not
+	 *             be written anymore
+	 * @param hashes hashes of the file, built by a {@link #newHashBuilder(int)}
+	 *               builder, or null to hash the file
 	 */
-	public void addLeft(int id, byte[] fileContent) {
-		DiffFilesDTO diffDTO = repository.getFilesForComparisonById(id);
-		if(diffDTO == null) {
-			diffDTO = new DiffFilesDTO();
-			diffDTO.setId(id);
+	public void addLeft(int id, ByteBuffer file, ChunkHashTree hashes) {
+		long startTime = DiffMetrics.start();
+		try {
+			if(compressionEnabled) {
+				setLeftFile(id, null, null, CompressedFile.of(file, compressionBlockSize));
+				return;
+			}
+			
+			ChunkHashTree fileHashes = getHashes(file, hashes);
+			setLeftFile(id, blobStore.register(file, fileHashes), fileHashes, null);
+		} finally {
+			DiffMetrics.record(DiffMetrics.STORE, startTime);
 		}
+	}
+	
+	/**
+	 * Stores the file written to the given upload as the left file
+	 * associated with the given ID, without copying it.
+	 * 
+	 * @param id identifies the file
+	 * @param upload upload returned by {@link #newUpload(int, long)}, whose
+	 *               content must not be written anymore
+	 */
+	public void addLeft(int id, FileUpload upload) {
+		addLeft(id, upload.getContent(), upload.getHashes());
+	}
+	
+	private void setLeftFile(int id, ByteBuffer storedFile, ChunkHashTree hashes, CompressedFile compressedFile) {
+		ByteBuffer[] replacedFile = new ByteBuffer[1];
 		
-		diffDTO.setLeftFile(fileContent);
+		DiffFilesDTO updated = repository.update(id, current -> {
+			DiffFilesDTO diffDTO = copyOf(current);
+			replacedFile[0] = diffDTO.getLeftFile();
+			diffDTO.setLeftFile(storedFile);
+			diffDTO.setLeftFileHashes(hashes);
+			diffDTO.setLeftCompressedFile(compressedFile);
+			return diffDTO;
+		});
 		
-		repository.save(id, diffDTO);
+		blobStore.release(replacedFile[0]);
+		resultCache.invalidate(id);
+		scheduleDiff(id, updated);
 	}
 	
 	/**
 	 * Stores the provided file as the right file, associated with
 	 * the given ID.
+	 * <br/><br/>
+	 * The file is hashed like the left file, see {@link #addLeft(int, byte[])}.
 	 * 
 	 * @param id identifies the file
 	 * @param fileContent file content
+	 * @throws IOException if the file content could not be stored
+	 */
+	public void addRight(int id, byte[] fileContent) throws IOException {
+		long startTime = DiffMetrics.start();
+		try {
+			if(compressionEnabled) {
+				setRightFile(id, null, null, CompressedFile.of(fileContent, compressionBlockSize));
+				return;
+			}
+			
+			ChunkHashTree hashes = ChunkHashTree.of(fileContent, hashChunkSize);
+			setRightFile(id, blobStore.store(id, fileContent, hashes), hashes, null);
+		} finally {
+			DiffMetrics.record(DiffMetrics.STORE, startTime);
+		}
+	}
+	
+	/**
+	 * Stores the provided file, already written in place into a buffer
+	 * allocated by the {@link FileStore}, as the right file associated
+	 * with the given ID.
+	 * 
+	 * @param id identifies the file
+	 * @param file buffer holding the whole file content, which must not
+	 *             be written anymore
+	 */
+	public void addRight(int id, ByteBuffer file) {
+		addRight(id, file, null);
+	}
+	
+	/**
+	 * Stores the provided file, already written in place into a buffer
+	 * allocated by the {@link FileStore}, as the right file associated
+	 * with the given ID, along with the hashes computed as it was written.
+	 * 
+	 * @param id identifies the file
+	 * @param file buffer holding the whole file content, which must not
+	 *             be written anymore
+	 * @param hashes hashes of the file, built by a {@link #newHashBuilder(int)}
+	 *               builder, or null to hash the file
+	 */
+	public void addRight(int id, ByteBuffer file, ChunkHashTree hashes) {
+		long startTime = DiffMetrics.start();
+		try {
+			if(compressionEnabled) {
+				setRightFile(id, null, null, CompressedFile.of(file, compressionBlockSize));
+				return;
+			}
+			
+			ChunkHashTree fileHashes = getHashes(file, hashes);
+			setRightFile(id, blobStore.register(file, fileHashes), fileHashes, null);
+		} finally {
+			DiffMetrics.record(DiffMetrics.STORE, startTime);
+		}
+	}
+	
+	/**
+	 * Returns the given hashes of a file stored in place if they were 
+	 * computed in chunks of "diff.chunk-hash.chunk-size" bytes, or hashes
+	 * the file otherwise.
+	 */
+	private ChunkHashTree getHashes(ByteBuffer file, ChunkHashTree hashes) {
+		if(hashes != null && hashes.getChunkSize() == hashChunkSize && hashes.getLength() == file.capacity()) {
+			return hashes;
+		}
+		
+		return ChunkHashTree.of(file, hashChunkSize);
+	}
+	
+	/**
+	 * Stores the file written to the given upload as the right file
+	 * associated with the given ID, without copying it.
+	 * 
+	 * @param id identifies the file
+	 * @param upload upload returned by {@link #newUpload(int, long)}, whose
+	 *               content must not be written anymore
+	 */
+	public void addRight(int id, FileUpload upload) {
+		addRight(id, upload.getContent(), upload.getHashes());
+	}
+	
+	private void setRightFile(int id, ByteBuffer storedFile, ChunkHashTree hashes, CompressedFile compressedFile) {
+		ByteBuffer[] replacedFile = new ByteBuffer[1];
+		
+		DiffFilesDTO updated = repository.update(id, current -> {
+			DiffFilesDTO diffDTO = copyOf(current);
+			replacedFile[0] = diffDTO.getRightFile();
+			diffDTO.setRightFile(storedFile);
+			diffDTO.setRightFileHashes(hashes);
+			diffDTO.setRightCompressedFile(compressedFile);
+			return diffDTO;
+		});
+		
+		blobStore.release(replacedFile[0]);
+		resultCache.invalidate(id);
+		scheduleDiff(id, updated);
+	}
+	
+	/**
+	 * Overwrites the [offset, offset + patch length) range of the left file
+	 * stored under the given ID with the provided bytes.
+	 * 
+	 * @param id identifies the file
+	 * @param offset offset of the first byte to be overwritten
+	 * @param patch bytes to be written at the given offset
+	 * @throws DiffValidationException if the left file is not found or if the
+	 *                                 patch does not fit inside of it
+	 * @throws IOException if the patched file content could not be stored
+	 * @see #patch(int, boolean, int, byte[])
+	 */
+	public void patchLeft(int id, int offset, byte[] patch) throws DiffValidationException, IOException {
+		patch(id, true, offset, patch);
+	}
+	
+	/**
+	 * Overwrites the [offset, offset + patch length) range of the right file
+	 * stored under the given ID with the provided bytes.
+	 * 
+	 * @param id identifies the file
+	 * @param offset offset of the first byte to be overwritten
+	 * @param patch bytes to be written at the given offset
+	 * @throws DiffValidationException if the right file is not found or if the
+	 *                                 patch does not fit inside of it
+	 * @throws IOException if the patched file content could not be stored
+	 * @see #patch(int, boolean, int, byte[])
+	 */
+	public void patchRight(int id, int offset, byte[] patch) throws DiffValidationException, IOException {
+		patch(id, false, offset, patch);
+	}
+	
+	/**
+	 * Overwrites a range of one of the files stored under the given ID.
+	 * <br/><br/>
+	 * The stored buffers are read-only and may be shared with other IDs and
+	 * with running comparisons, so the file is copied from buffer to buffer,
+	 * patched, and the copy replaces the current file unless it was replaced
+	 * concurrently, in which case the patch is applied again to the new file.
+	 * Readers keep seeing either the whole file before the patch or the whole
+	 * patched file. Only the chunk hashes of the patched range are computed
+	 * again, and a compressed file only has the blocks of the patched range
+	 * compressed again.
+	 * <br/><br/>
+	 * When the result of the previous comparison is cached, the new result
+	 * is computed from it by comparing only the patched range, instead of
+	 * being left to the next diff.
+	 * 
+	 * @param id identifies the file
+	 * @param leftSide true to patch the left file, false the right file
+	 * @param offset offset of the first byte to be overwritten
+	 * @param patch bytes to be written at the given offset
+	 * @throws DiffValidationException if the file is not found or if the
+	 *                                 patch does not fit inside of it
+	 * @throws IOException if the patched file content could not be stored
+	 */
+	private void patch(int id, boolean leftSide, int offset, byte[] patch) throws DiffValidationException, IOException {
+		String side = leftSide ? "Left" : "Right";
+		
+		while(true) {
+			DiffFilesDTO current = repository.getFilesForComparisonById(id);
+			ByteBuffer file = current == null ? null : leftSide ? current.getLeftFile() : current.getRightFile();
+			CompressedFile compressedFile = current == null ? null : leftSide ? current.getLeftCompressedFile() : current.getRightCompressedFile();
+			
+			if(file == null && compressedFile == null) {
+				throw new DiffValidationException(side + " file has not been provided under ID: " + id);
+			}
+			
+			int length = file != null ? file.capacity() : compressedFile.getLength();
+			
+			if(offset < 0 || offset > length - patch.length) {
+				throw new DiffValidationException("Patch exceeds the bounds of the " + side.toLowerCase() + " file under ID: " + id);
+			}
+			
+			long startTime = DiffMetrics.start();
+			ChunkHashTree currentHashes = leftSide ? current.getLeftFileHashes() : current.getRightFileHashes();
+			ChunkHashTree baseHashes = file == null ? null : currentHashes != null && currentHashes.getChunkSize() == hashChunkSize
+					? currentHashes : ChunkHashTree.of(file, hashChunkSize);
+			ChunkHashTree hashes = baseHashes == null ? null : baseHashes.patched(file, offset, patch);
+			ByteBuffer storedFile = file == null ? null : blobStore.storePatched(id, file, offset, patch, hashes);
+			// only the patched blocks of a compressed file are compressed again
+			CompressedFile patchedFile = file != null ? null : compressedFile.patched(offset, patch);
+			
+			DiffMetrics.record(DiffMetrics.STORE, startTime);
+			boolean[] applied = new boolean[1];
+			
+			DiffFilesDTO updated = repository.update(id, stored -> {
+				if(stored != current) {
+					return stored;
+				}
+				
+				applied[0] = true;
+				return withFile(stored, leftSide, storedFile, hashes, patchedFile);
+			});
+			
+			if(!applied[0]) {
+				blobStore.release(storedFile);
+				continue;
+			}
+			
+			blobStore.release(file);
+			
+			DiffServiceResultDTO previousResult = resultCache.get(id, current);
+			resultCache.invalidate(id);
+			
+			if(previousResult != null) {
+				cacheResult(id, updated, patchResult(previousResult, updated, offset, offset + patch.length));
+			}else {
+				scheduleDiff(id, updated);
+			}
+			
+			return;
+		}
+	}
+	
+	/**
+	 * Returns a copy of the given files with one of them replaced.
+	 * 
+	 * @param diffFiles files to be copied
+	 * @param leftSide true to replace the left file, false the right file
+	 * @param file replacing file, or null if it is compressed
+	 * @param hashes hashes of the replacing file
+	 * @param compressedFile replacing compressed file, or null if it is not compressed
+	 * @return the copy of the files
+	 */
+	private DiffFilesDTO withFile(DiffFilesDTO diffFiles, boolean leftSide, ByteBuffer file, ChunkHashTree hashes, CompressedFile compressedFile) {
+		DiffFilesDTO diffDTO = copyOf(diffFiles);
+		
+		if(leftSide) {
+			diffDTO.setLeftFile(file);
+			diffDTO.setLeftFileHashes(hashes);
+			diffDTO.setLeftCompressedFile(compressedFile);
+		}else {
+			diffDTO.setRightFile(file);
+			diffDTO.setRightFileHashes(hashes);
+			diffDTO.setRightCompressedFile(compressedFile);
+		}
+		
+		return diffDTO;
+	}
+	
+	/**
+	 * Computes the result of comparing the given files from the result of 
+	 * comparing them before the [from, to) range of one of them was patched.
+	 * <br/><br/>
+	 * Outside of the patched range the files are unchanged, and so are the 
+	 * runs found there. Only the patched range is compared again: the runs 
+	 * found in it are joined with the previous runs ending at its start and
+	 * starting at its end.
+	 * 
+	 * @param previousResult result of comparing the files before the patch
+	 * @param diffFiles patched files
+	 * @param from first patched offset, inclusive
+	 * @param to last patched offset, exclusive
+	 * @return the result of comparing the patched files
 	 */
-	public void addRight(int id, byte[] fileContent) {
-		DiffFilesDTO diffDTO = repository.getFilesForComparisonById(id);
-		if(diffDTO == null) {
-			diffDTO = new DiffFilesDTO();
-			diffDTO.setId(id);
+	private DiffServiceResultDTO patchResult(DiffServiceResultDTO previousResult, DiffFilesDTO diffFiles, int from, int to) {
+		if(isSameFile(diffFiles) || isDifferentInSize(diffFiles)) {
+			return compare(diffFiles);
+		}
+		
+		long startTime = DiffMetrics.start();
+		DiffServiceResultDTO result = new DiffServiceResultDTO();
+		result.setStatus("success");
+		
+		MergingRunListener listener = new MergingRunListener(result);
+		int previousCount = previousResult.getDiffCount();
+		
+		for(int i = 0; i < previousCount && previousResult.getDiffOffset(i) < from; i++) {
+			int offset = previousResult.getDiffOffset(i);
+			listener.onRun(offset, Math.min(offset + previousResult.getDiffLength(i), from) - offset);
+		}
+		
+		compareChangedChunks(diffFiles, from, to, listener);
+		
+		for(int i = 0; i < previousCount; i++) {
+			int offset = previousResult.getDiffOffset(i);
+			int end = offset + previousResult.getDiffLength(i);
+			
+			if(end > to) {
+				listener.onRun(Math.max(offset, to), end - Math.max(offset, to));
+			}
+		}
+		
+		listener.flush();
+		
+		if(result.getDiffCount() == 0) {
+			result.setMessage("Files are equal.");
 		}
 		
-		diffDTO.setRightFile(fileContent);
+		DiffMetrics.record(DiffMetrics.COMPARE, startTime);
+		DiffMetrics.DIFF_RUNS.record(result.getDiffCount());
+		return result;
+	}
+	
+	/**
+	 * Returns a new {@link DiffFilesDTO} holding the same files as the
+	 * given one, so it can be updated without affecting the readers of
+	 * the stored instance.
+	 * 
+	 * @param diffDTO files to be copied, may be null
+	 * @return a copy of the given files, or an empty instance if null
+	 */
+	private DiffFilesDTO copyOf(DiffFilesDTO diffDTO) {
+		DiffFilesDTO copy = new DiffFilesDTO();
+		
+		if(diffDTO != null) {
+			copy.setLeftFile(diffDTO.getLeftFile());
+			copy.setRightFile(diffDTO.getRightFile());
+			copy.setLeftFileHashes(diffDTO.getLeftFileHashes());
+			copy.setRightFileHashes(diffDTO.getRightFileHashes());
+			copy.setLeftCompressedFile(diffDTO.getLeftCompressedFile());
+			copy.setRightCompressedFile(diffDTO.getRightCompressedFile());
+		}
 		
-		repository.save(id, diffDTO);
+		return copy;
 	}
 	
 	/**
 	 * Compares the two files stored under the given ID and returns the result
 	 * of the comparison.
+	 * <br/><br/>
+	 * The result is cached until one of the files is replaced, so repeated
+	 * calls for unchanged files do not compare them again, unless it has more
+	 * than "diff.cache.max-runs" diffs. In the eager diff
+	 * mode, a comparison already running in the background for the stored
+	 * files is waited for instead of being repeated.
 	 * 
 	 * @param id identifier of the files to be compared
 	 * @return the result of file comparison 
@@ -74,80 +655,1057 @@ public class DiffService {
 		
 		validateFilesExist(id, diffFiles);
 		
-		byte[] leftFile = diffFiles.getLeftFile();
-		byte[] rightFile = diffFiles.getRightFile();
+		DiffServiceResultDTO result = resultCache.get(id, diffFiles);
 		
-		DiffServiceResultDTO result = new DiffServiceResultDTO();
-		result.setStatus("success");
+		if(result == null) {
+			result = awaitPendingDiff(id, diffFiles);
+		}
 		
-		if(leftFile.length != rightFile.length) {
-			result.setMessage("Files are different in size.");
-		} else if(Arrays.equals(leftFile, rightFile)) {
-			result.setMessage("Files are equal.");
-		}else {
-			checkFilesDiffs(leftFile, rightFile, result);
+		if(result == null) {
+			result = compare(diffFiles);
+			cacheResult(id, diffFiles, result);
 		}
 		
 		return result;
 	}
-
+	
 	/**
-	 * Validates if both files were provided for comparison.
+	 * Same as {@link #diff(int)}, but compares the files in steps of
+	 * "diff.jobs.progress-step" bytes, reporting how many bytes were scanned
+	 * after each step and stopping if the calling thread is interrupted, so
+	 * a long comparison can be followed and cancelled.
+	 * <br/><br/>
+	 * Runs spanning several steps are joined, so the result is the same as
+	 * the one of {@link #diff(int)}, and it is cached the same way. A
+	 * comparison still queued in the eager diff mode is run in steps too.
 	 * 
-	 * @param id Identifier of the files to be compared
-	 * @param diffFiles {@link DiffFilesDTO} to be validated
-	 * @throws DiffValidationException if one or both files were not 
-	 *                                 provided for comparison
+	 * @param id identifier of the files to be compared
+	 * @param progress listener notified of the number of bytes scanned so far
+	 * @return the result of file comparison 
+	 * @throws DiffValidationException if at least one of the files is not found
+	 * @throws InterruptedException if the calling thread was interrupted before
+	 *                              the comparison was done
 	 */
-	private void validateFilesExist(int id, DiffFilesDTO diffFiles) throws DiffValidationException {
-		if(diffFiles == null) {
-			throw new DiffValidationException("No file has been provided under ID: " + id);
-		}
+	public DiffServiceResultDTO diff(int id, ProgressListener progress) throws DiffValidationException, InterruptedException {
+		DiffFilesDTO diffFiles = repository.getFilesForComparisonById(id);
 		
-		if(diffFiles.getLeftFile() == null) {
-			throw new DiffValidationException("Left file has not been provided under ID: " + id);
+		validateFilesExist(id, diffFiles);
+		
+		DiffServiceResultDTO result = resultCache.get(id, diffFiles);
+		
+		if(result == null) {
+			result = awaitPendingDiffInSteps(id, diffFiles, progress);
 		}
 		
-		if(diffFiles.getRightFile() == null) {
-			throw new DiffValidationException("Right file has not been provided under ID: " + id);
+		if(result == null) {
+			result = compareInSteps(diffFiles, progress);
+			cacheResult(id, diffFiles, result);
 		}
+		
+		int length = leftLength(diffFiles);
+		progress.onProgress(length, length);
+		return result;
 	}
 	
 	/**
-	 * Compares the two files and adds the offset and length of the
-	 * differences found between them to the result.
+	 * Compares the two files stored under the given ID, which may be different
+	 * in size, and returns the inserted and deleted bytes which turn the left 
+	 * file into the right file.
+	 * <br/><br/>
+	 * The edits are found by {@link MyersDiff}, which gives up when the files 
+	 * differ by more than "diff.myers.max-edits" inserted and deleted bytes.
 	 * 
-	 * @param leftFile File to be compared with the right file
-	 * @param rightFile File to be compared with the left file
-	 * @param result Result object to which the offset and length of
-	 *               the diffs will be added
-	 * @return The comparison result containing the diffs offset and 
-	 *         length
-	 */
-	private DiffServiceResultDTO checkFilesDiffs(byte[] leftFile, byte[] rightFile, DiffServiceResultDTO result) {
-		DiffDataDTO diffData = null;
-		int offset = -1;
-		
-		for(int i = 0; i < leftFile.length; i++) {
-			if(leftFile[i] != rightFile[i]) {
-				if(offset == -1) {
-					offset = i;
-					diffData = new DiffDataDTO();
-					diffData.setOffset(i);
-				}
-				
-				diffData.incrementLength();
-			}else if(diffData != null) {
-				result.addDiff(diffData);
-				offset = -1;
-				diffData = null;
+	 * @param id identifier of the files to be compared
+	 * @return the result of file comparison 
+	 * @throws DiffValidationException if at least one of the files is not found
+	 *                                 or if the files differ by too many bytes
+	 */
+	public DiffEditsResultDTO diffEdits(int id) throws DiffValidationException {
+		DiffFilesDTO diffFiles = repository.getFilesForComparisonById(id);
+		
+		validateFilesExist(id, diffFiles);
+		
+		DiffEditsResultDTO result = new DiffEditsResultDTO();
+		result.setStatus("success");
+		
+		DiffFilesDTO files = isSameFile(diffFiles) ? diffFiles : decompressed(diffFiles);
+		boolean found = isSameFile(files) 
+				|| MyersDiff.diff(files.getLeftFile(), files.getRightFile(), maxEdits, new MyersDiff.EditListener() {
+			
+			@Override
+			public void onDelete(int leftOffset, int rightOffset, int length) {
+				result.addEdit(newEdit("delete", leftOffset, rightOffset, length));
+			}
+			
+			@Override
+			public void onInsert(int leftOffset, int rightOffset, int length) {
+				result.addEdit(newEdit("insert", leftOffset, rightOffset, length));
 			}
+		});
+		
+		if(!found) {
+			throw new DiffValidationException("Files differ by more than " + maxEdits + " inserted or deleted bytes under ID: " + id);
+		}
+		
+		if(result.getEdits().isEmpty()) {
+			result.setMessage("Files are equal.");
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Splits the right file stored under the given ID in regions copied from
+	 * the left file and literal regions, detecting content which was moved
+	 * or shifted between the files.
+	 * <br/><br/>
+	 * The regions are found by {@link BlockMatchingDiff}, using blocks of
+	 * "diff.blocks.block-size" bytes.
+	 * 
+	 * @param id identifier of the files to be compared
+	 * @return the result of file comparison, whose edits are "copy" and
+	 *         "literal" regions of the right file
+	 * @throws DiffValidationException if at least one of the files is not found
+	 */
+	public DiffEditsResultDTO diffBlocks(int id) throws DiffValidationException {
+		DiffFilesDTO diffFiles = repository.getFilesForComparisonById(id);
+		
+		validateFilesExist(id, diffFiles);
+		
+		DiffEditsResultDTO result = new DiffEditsResultDTO();
+		result.setStatus("success");
+		
+		if(isSameFile(diffFiles)) {
+			result.setMessage("Files are equal.");
+			return result;
 		}
 		
-		if(diffData != null) {
-			result.addDiff(diffData);
+		DiffFilesDTO files = decompressed(diffFiles);
+		ByteBuffer leftFile = files.getLeftFile();
+		ByteBuffer rightFile = files.getRightFile();
+		
+		BlockMatchingDiff.diff(leftFile, rightFile, blockSize, new BlockMatchingDiff.BlockListener() {
+			
+			@Override
+			public void onCopy(int leftOffset, int rightOffset, int length) {
+				result.addEdit(newEdit("copy", leftOffset, rightOffset, length));
+			}
+			
+			@Override
+			public void onLiteral(int leftOffset, int rightOffset, int length) {
+				result.addEdit(newEdit("literal", leftOffset, rightOffset, length));
+			}
+		});
+		
+		List<DiffEditDTO> edits = result.getEdits();
+		if(leftFile.capacity() == rightFile.capacity() && edits.size() == 1 && "copy".equals(edits.get(0).getOperation())
+				&& edits.get(0).getLeftOffset() == 0 && edits.get(0).getLength() == leftFile.capacity()) {
+			result.setMessage("Files are equal.");
 		}
 		
 		return result;
 	}
+	
+	/**
+	 * Tells if the two files stored under the given ID are equal.
+	 * <br/><br/>
+	 * The comparison stops at the first different word, or is not even done
+	 * when the files are known to be equal or different by their sizes, 
+	 * their hashes or a cached result.
+	 * 
+	 * @param id identifier of the files to be compared
+	 * @return the summary of file comparison, telling if they are equal
+	 * @throws DiffValidationException if at least one of the files is not found
+	 */
+	public DiffSummaryDTO diffEqual(int id) throws DiffValidationException {
+		DiffFilesDTO diffFiles = repository.getFilesForComparisonById(id);
+		
+		validateFilesExist(id, diffFiles);
+		
+		DiffSummaryDTO summary = newSummary(diffFiles);
+		summary.setEqual(!isDifferentInSize(diffFiles) && firstDifference(id, diffFiles) == -1);
+		
+		if(summary.getMessage() == null) {
+			summary.setMessage(summary.getEqual() ? "Files are equal." : "Files are different.");
+		}
+		
+		return summary;
+	}
+	
+	/**
+	 * Returns the offset of the first different byte of the two files stored
+	 * under the given ID, which must be equal in size.
+	 * <br/><br/>
+	 * The comparison stops at the first different word, skipping the chunks
+	 * whose hashes are equal.
+	 * 
+	 * @param id identifier of the files to be compared
+	 * @return the summary of file comparison, with the offset of the first
+	 *         difference unless the files are equal or different in size
+	 * @throws DiffValidationException if at least one of the files is not found
+	 */
+	public DiffSummaryDTO diffFirst(int id) throws DiffValidationException {
+		DiffFilesDTO diffFiles = repository.getFilesForComparisonById(id);
+		
+		validateFilesExist(id, diffFiles);
+		
+		DiffSummaryDTO summary = newSummary(diffFiles);
+		
+		if(!isDifferentInSize(diffFiles)) {
+			int firstDifference = firstDifference(id, diffFiles);
+			
+			if(firstDifference == -1) {
+				summary.setMessage("Files are equal.");
+			}else {
+				summary.setFirstDifference(firstDifference);
+			}
+		}
+		
+		return summary;
+	}
+	
+	/**
+	 * Counts the diffs of the two files stored under the given ID, which must
+	 * be equal in size, and the bytes in them.
+	 * <br/><br/>
+	 * The files are compared as in {@link #diff(int)}, but the diffs are only
+	 * counted, without being kept.
+	 * 
+	 * @param id identifier of the files to be compared
+	 * @return the summary of file comparison, with the number of diffs and of
+	 *         different bytes unless the files are different in size
+	 * @throws DiffValidationException if at least one of the files is not found
+	 */
+	public DiffSummaryDTO diffCount(int id) throws DiffValidationException {
+		DiffFilesDTO diffFiles = repository.getFilesForComparisonById(id);
+		
+		validateFilesExist(id, diffFiles);
+		
+		DiffSummaryDTO summary = newSummary(diffFiles);
+		
+		if(isDifferentInSize(diffFiles)) {
+			return summary;
+		}
+		
+		long[] totals = new long[2];
+		DiffServiceResultDTO cachedResult = resultCache.get(id, diffFiles);
+		
+		if(cachedResult != null) {
+			for(int i = 0; i < cachedResult.getDiffCount(); i++) {
+				totals[1] += cachedResult.getDiffLength(i);
+			}
+			totals[0] = cachedResult.getDiffCount();
+		}else if(!isSameFile(diffFiles)) {
+			totals[0] = compareChangedChunks(diffFiles, 0, leftLength(diffFiles), (offset, length) -> totals[1] += length);
+		}
+		
+		summary.setDiffCount(totals[0]);
+		summary.setDiffBytes(totals[1]);
+		
+		if(totals[0] == 0) {
+			summary.setMessage("Files are equal.");
+		}
+		
+		return summary;
+	}
+	
+	private DiffSummaryDTO newSummary(DiffFilesDTO diffFiles) {
+		DiffSummaryDTO summary = new DiffSummaryDTO();
+		summary.setStatus("success");
+		
+		if(isDifferentInSize(diffFiles)) {
+			summary.setMessage("Files are different in size.");
+		}
+		
+		return summary;
+	}
+	
+	private boolean isDifferentInSize(DiffFilesDTO diffFiles) {
+		return leftLength(diffFiles) != rightLength(diffFiles);
+	}
+	
+	private int leftLength(DiffFilesDTO diffFiles) {
+		ByteBuffer leftFile = diffFiles.getLeftFile();
+		return leftFile != null ? leftFile.capacity() : diffFiles.getLeftCompressedFile().getLength();
+	}
+	
+	private int rightLength(DiffFilesDTO diffFiles) {
+		ByteBuffer rightFile = diffFiles.getRightFile();
+		return rightFile != null ? rightFile.capacity() : diffFiles.getRightCompressedFile().getLength();
+	}
+	
+	/**
+	 * Tells if both files are known to be equal without being compared,
+	 * which is the case when both uploads resolved to the same stored blob.
+	 * 
+	 * @param diffFiles files to be compared
+	 * @return true if both files are the same stored file
+	 */
+	private boolean isSameFile(DiffFilesDTO diffFiles) {
+		if(diffFiles.getLeftFile() != null) {
+			return diffFiles.getLeftFile() == diffFiles.getRightFile();
+		}
+		
+		return diffFiles.getLeftCompressedFile() == diffFiles.getRightCompressedFile();
+	}
+	
+	/**
+	 * Returns the given files decompressed, for the comparisons which need
+	 * the whole files, or the given files themselves if they are not compressed.
+	 * 
+	 * @param diffFiles files to be compared
+	 * @return files holding the decompressed content of the given files
+	 */
+	private DiffFilesDTO decompressed(DiffFilesDTO diffFiles) {
+		if(diffFiles.getLeftCompressedFile() == null) {
+			return diffFiles;
+		}
+		
+		DiffFilesDTO decompressed = new DiffFilesDTO();
+		decompressed.setId(diffFiles.getId());
+		decompressed.setLeftFile(ByteBuffer.wrap(diffFiles.getLeftCompressedFile().toByteArray()).asReadOnlyBuffer());
+		decompressed.setRightFile(ByteBuffer.wrap(diffFiles.getRightCompressedFile().toByteArray()).asReadOnlyBuffer());
+		return decompressed;
+	}
+	
+	/**
+	 * Returns the offset of the first different byte of the given files,
+	 * which must be equal in size, taken from the cached result if there is
+	 * one.
+	 * 
+	 * @param id identifier of the compared files
+	 * @param diffFiles files to be compared
+	 * @return the offset of the first different byte, or -1 if the files are equal
+	 */
+	private int firstDifference(int id, DiffFilesDTO diffFiles) {
+		if(isSameFile(diffFiles)) {
+			return -1;
+		}
+		
+		DiffServiceResultDTO cachedResult = resultCache.get(id, diffFiles);
+		
+		if(cachedResult != null) {
+			return cachedResult.getDiffCount() == 0 ? -1 : cachedResult.getDiffOffset(0);
+		}
+		
+		return nextDifference(diffFiles, 0, leftLength(diffFiles));
+	}
+	
+	private DiffEditDTO newEdit(String operation, int leftOffset, int rightOffset, int length) {
+		DiffEditDTO edit = new DiffEditDTO();
+		edit.setOperation(operation);
+		edit.setLeftOffset(leftOffset);
+		edit.setRightOffset(rightOffset);
+		edit.setLength(length);
+		return edit;
+	}
+	
+	/**
+	 * Compares the two files stored under the given ID and writes the result
+	 * of the comparison to the given writer.
+	 * <br/><br/>
+	 * Cached results and results of background comparisons are written from 
+	 * memory. Otherwise the diffs are written as they are found, so the result
+	 * does not need to be held in memory: it is only cached when it has at 
+	 * most "diff.cache.max-runs" diffs.
+	 * 
+	 * @param id identifier of the files to be compared
+	 * @param writer writer receiving the result of file comparison
+	 * @throws DiffValidationException if at least one of the files is not found,
+	 *                                 in which case nothing is written
+	 * @throws IOException if the result could not be written
+	 */
+	public void diff(int id, DiffResultWriter writer) throws DiffValidationException, IOException {
+		DiffFilesDTO diffFiles = repository.getFilesForComparisonById(id);
+		
+		validateFilesExist(id, diffFiles);
+		
+		DiffServiceResultDTO result = resultCache.get(id, diffFiles);
+		
+		if(result == null) {
+			result = awaitPendingDiff(id, diffFiles);
+		}
+		
+		if(result == null) {
+			writeDiffs(id, diffFiles, writer);
+		}else {
+			writeResult(result, writer);
+		}
+	}
+	
+	/**
+	 * Compares the [fromOffset, toOffset) range of the two files stored under
+	 * the given ID and writes at most the given number of diffs found in it
+	 * to the given writer, along with a cursor to the following diffs.
+	 * <br/><br/>
+	 * Only the requested range is compared and the comparison stops as soon
+	 * as the requested number of diffs is found, so paging through the diffs
+	 * costs as much as the pages themselves. The cursor is the offset where 
+	 * the comparison stopped, to be requested as the next "fromOffset": it is
+	 * returned whenever the page is full before the end of the range, even if
+	 * no diffs are left after it. A page whose last diff reaches the end of
+	 * the range has no cursor, as there is nothing left to be compared.
+	 * <br/><br/>
+	 * Diffs crossing the limits of the range are cut at them. A cached result
+	 * of the whole files is paged through instead of comparing them again.
+	 * 
+	 * @param id identifier of the files to be compared
+	 * @param fromOffset first offset to be compared, inclusive
+	 * @param toOffset last offset to be compared, exclusive, cut at the file length
+	 * @param limit maximum number of diffs to be written, 0 meaning no limit
+	 * @param writer writer receiving the result of file comparison
+	 * @throws DiffValidationException if at least one of the files is not found
+	 *                                 or if the range is invalid, in which case
+	 *                                 nothing is written
+	 * @throws IOException if the result could not be written
+	 */
+	public void diff(int id, int fromOffset, int toOffset, int limit, DiffResultWriter writer) throws DiffValidationException, IOException {
+		DiffFilesDTO diffFiles = repository.getFilesForComparisonById(id);
+		
+		validateFilesExist(id, diffFiles);
+		
+		if(isDifferentInSize(diffFiles)) {
+			writeResult(compare(diffFiles), writer);
+			return;
+		}
+		
+		int length = leftLength(diffFiles);
+		int to = Math.min(toOffset, length);
+		
+		if(fromOffset < 0 || fromOffset > to) {
+			throw new DiffValidationException("Invalid range requested: fromOffset must be between 0 and " + to + ".");
+		}
+		
+		int maxDiffs = limit > 0 ? limit : Integer.MAX_VALUE;
+		DiffServiceResultDTO cachedResult = resultCache.get(id, diffFiles);
+		
+		if(cachedResult != null) {
+			writeCachedPage(cachedResult, fromOffset, to, maxDiffs, length, writer);
+			return;
+		}
+		
+		int start = isSameFile(diffFiles) ? -1 : nextDifference(diffFiles, fromOffset, to);
+		
+		if(start == -1) {
+			writer.writeStart("success", equalRangeMessage(fromOffset, to, length));
+			writer.writeEnd(null);
+			return;
+		}
+		
+		writer.writeStart("success", null);
+		
+		int diffs = 0;
+		String nextCursor = null;
+		
+		while(start != -1) {
+			int end = firstEqual(diffFiles, start, to);
+			writer.writeDiff(start, end - start);
+			
+			if(++diffs == maxDiffs) {
+				nextCursor = end < to ? String.valueOf(end) : null;
+				break;
+			}
+			
+			start = nextDifference(diffFiles, end, to);
+		}
+		
+		writer.writeEnd(nextCursor);
+	}
+	
+	/**
+	 * Writes a page of the given cached result, as described in
+	 * {@link #diff(int, int, int, int, DiffResultWriter)}.
+	 */
+	private void writeCachedPage(DiffServiceResultDTO result, int from, int to, int maxDiffs, int length, DiffResultWriter writer) throws IOException {
+		int count = result.getDiffCount();
+		int low = 0;
+		int high = count;
+		
+		// first diff ending after the start of the range
+		while(low < high) {
+			int middle = (low + high) >>> 1;
+			
+			if(result.getDiffOffset(middle) + result.getDiffLength(middle) <= from) {
+				low = middle + 1;
+			}else {
+				high = middle;
+			}
+		}
+		
+		if(from == to || low == count || result.getDiffOffset(low) >= to) {
+			writer.writeStart(result.getStatus(), equalRangeMessage(from, to, length));
+			writer.writeEnd(null);
+			return;
+		}
+		
+		writer.writeStart(result.getStatus(), null);
+		
+		int diffs = 0;
+		String nextCursor = null;
+		
+		for(int i = low; i < count && result.getDiffOffset(i) < to; i++) {
+			int start = Math.max(result.getDiffOffset(i), from);
+			int end = Math.min(result.getDiffOffset(i) + result.getDiffLength(i), to);
+			writer.writeDiff(start, end - start);
+			
+			if(++diffs == maxDiffs) {
+				nextCursor = end < to ? String.valueOf(end) : null;
+				break;
+			}
+		}
+		
+		writer.writeEnd(nextCursor);
+	}
+	
+	private String equalRangeMessage(int from, int to, int length) {
+		return from == 0 && to == length ? "Files are equal." : "Files are equal in the requested range.";
+	}
+	
+	/**
+	 * Compares the two given files, writing each diff as soon as it is found.
+	 * <br/><br/>
+	 * The first difference is looked for before anything is written, since 
+	 * it determines the message of the result. The comparison then resumes 
+	 * from it, so the files are still scanned only once.
+	 * 
+	 * @param id identifier of the files to be compared
+	 * @param diffFiles files to be compared
+	 * @param writer writer receiving the result of file comparison
+	 * @throws IOException if the result could not be written
+	 */
+	private void writeDiffs(int id, DiffFilesDTO diffFiles, DiffResultWriter writer) throws IOException {
+		if(isSameFile(diffFiles) || isDifferentInSize(diffFiles)) {
+			DiffServiceResultDTO result = compare(diffFiles);
+			cacheResult(id, diffFiles, result);
+			writeResult(result, writer);
+			return;
+		}
+		
+		long startTime = DiffMetrics.start();
+		int length = leftLength(diffFiles);
+		int firstDifference = nextDifference(diffFiles, 0, length);
+		
+		DiffServiceResultDTO result = new DiffServiceResultDTO();
+		result.setStatus("success");
+		
+		if(firstDifference == -1) {
+			DiffMetrics.record(DiffMetrics.COMPARE, startTime);
+			DiffMetrics.DIFF_RUNS.record(0);
+			result.setMessage("Files are equal.");
+			cacheResult(id, diffFiles, result);
+			writeResult(result, writer);
+			return;
+		}
+		
+		StreamingRunListener listener = new StreamingRunListener(writer, result);
+		
+		writer.writeStart(result.getStatus(), null);
+		try {
+			compareChangedChunks(diffFiles, firstDifference, length, listener);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		writer.writeEnd(null);
+		
+		DiffMetrics.record(DiffMetrics.COMPARE, startTime);
+		DiffMetrics.DIFF_RUNS.record(listener.runs);
+		
+		if(listener.result != null) {
+			cacheResult(id, diffFiles, listener.result);
+		}
+	}
+	
+	/**
+	 * Writes the given result to the given writer.
+	 * 
+	 * @param result result to be written
+	 * @param writer writer receiving the result
+	 * @throws IOException if the result could not be written
+	 */
+	private void writeResult(DiffServiceResultDTO result, DiffResultWriter writer) throws IOException {
+		long startTime = DiffMetrics.start();
+		writer.writeStart(result.getStatus(), result.getMessage());
+		
+		for(int i = 0; i < result.getDiffCount(); i++) {
+			writer.writeDiff(result.getDiffOffset(i), result.getDiffLength(i));
+		}
+		
+		writer.writeEnd(null);
+		DiffMetrics.record(DiffMetrics.SERIALIZE, startTime);
+	}
+	
+	/**
+	 * Schedules the comparison of the given files on the background executor,
+	 * if the eager diff mode is enabled and both files were provided.
+	 * <br/><br/>
+	 * When the executor queue is full the comparison is not scheduled and
+	 * is left to be done by {@link #diff(int)}, as is a comparison still
+	 * queued when the files are requested. A comparison still queued for
+	 * files which were replaced since is dropped.
+	 * 
+	 * @param id identifier of the files to be compared
+	 * @param diffFiles files to be compared
+	 */
+	private void scheduleDiff(int id, DiffFilesDTO diffFiles) {
+		if(eagerDiffExecutor == null || !hasBothFiles(diffFiles)) {
+			return;
+		}
+		
+		PendingDiff pending = new PendingDiff(diffFiles);
+		PendingDiff replaced = pendingDiffs.put(id, pending);
+		
+		// a comparison of replaced files still queued is skipped once dequeued
+		if(replaced != null && replaced.claim()) {
+			replaced.result.completeExceptionally(new IllegalStateException("Files under ID " + id + " were replaced."));
+		}
+		
+		try {
+			eagerDiffExecutor.execute(() -> {
+				if(pending.claim()) {
+					runPendingDiff(id, pending);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			if(pending.claim()) {
+				pendingDiffs.remove(id, pending);
+				pending.result.completeExceptionally(e);
+			}
+		}
+	}
+	
+	/**
+	 * Returns the result of the background comparison of the given files,
+	 * if there is one.
+	 * <br/><br/>
+	 * A comparison already running is waited for. A comparison still queued
+	 * is run on the calling thread instead, rather than waiting behind the
+	 * other queued comparisons, and is skipped once dequeued.
+	 * 
+	 * @param id identifier of the compared files
+	 * @param diffFiles files currently stored under the given ID
+	 * @return the result of the background comparison, or null if there
+	 *         is none for these files or if it failed
+	 */
+	private DiffServiceResultDTO awaitPendingDiff(int id, DiffFilesDTO diffFiles) {
+		PendingDiff pending = pendingDiffs.get(id);
+		
+		if(pending == null || pending.diffFiles != diffFiles) {
+			return null;
+		}
+		
+		if(pending.claim()) {
+			runPendingDiff(id, pending);
+		}
+		
+		try {
+			return pending.result.get();
+		} catch (ExecutionException e) {
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+	
+	/**
+	 * Same as {@link #awaitPendingDiff(int, DiffFilesDTO)}, for
+	 * {@link #diff(int, ProgressListener)}: a comparison still queued is run
+	 * in steps on the calling thread, reporting its progress and stopping if
+	 * the thread is interrupted, as is the wait for a running comparison.
+	 * 
+	 * @param id identifier of the compared files
+	 * @param diffFiles files currently stored under the given ID
+	 * @param progress listener notified of the number of bytes scanned so far
+	 * @return the result of the background comparison, or null if there
+	 *         is none for these files or if it failed
+	 * @throws InterruptedException if the calling thread was interrupted
+	 */
+	private DiffServiceResultDTO awaitPendingDiffInSteps(int id, DiffFilesDTO diffFiles, ProgressListener progress) throws InterruptedException {
+		PendingDiff pending = pendingDiffs.get(id);
+		
+		if(pending == null || pending.diffFiles != diffFiles) {
+			return null;
+		}
+		
+		if(pending.claim()) {
+			runPendingDiffInSteps(id, pending, progress);
+		}
+		
+		try {
+			return pending.result.get();
+		} catch (ExecutionException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Caches the given result, unless it has more than "diff.cache.max-runs"
+	 * diffs.
+	 * 
+	 * @param id identifier of the compared files
+	 * @param diffFiles files the result was computed from
+	 * @param result result of the comparison
+	 */
+	private void cacheResult(int id, DiffFilesDTO diffFiles, DiffServiceResultDTO result) {
+		if(result.getDiffCount() <= maxCachedRuns) {
+			resultCache.put(id, diffFiles, result);
+		}
+	}
+	
+	/**
+	 * Runs the given background comparison, on the thread which claimed it.
+	 * 
+	 * @param id identifier of the compared files
+	 * @param pending comparison to be run
+	 */
+	private void runPendingDiff(int id, PendingDiff pending) {
+		try {
+			DiffServiceResultDTO result = compare(pending.diffFiles);
+			cacheResult(id, pending.diffFiles, result);
+			pending.result.complete(result);
+		} finally {
+			// a failed comparison must not leave its waiters hanging, they compare the files themselves
+			pending.result.completeExceptionally(new IllegalStateException("Comparison of the files under ID " + id + " failed."));
+			pendingDiffs.remove(id, pending);
+		}
+	}
+	
+	/**
+	 * Runs the given background comparison in steps, on the thread which
+	 * claimed it for {@link #diff(int, ProgressListener)}.
+	 * 
+	 * @param id identifier of the compared files
+	 * @param pending comparison to be run
+	 * @param progress listener notified of the number of bytes scanned so far
+	 * @throws InterruptedException if the calling thread was interrupted
+	 */
+	private void runPendingDiffInSteps(int id, PendingDiff pending, ProgressListener progress) throws InterruptedException {
+		try {
+			DiffServiceResultDTO result = compareInSteps(pending.diffFiles, progress);
+			cacheResult(id, pending.diffFiles, result);
+			pending.result.complete(result);
+		} finally {
+			// an interrupted comparison must not leave its waiters hanging, they compare the files themselves
+			pending.result.completeExceptionally(new IllegalStateException("Comparison of the files under ID " + id + " failed."));
+			pendingDiffs.remove(id, pending);
+		}
+	}
+	
+	/**
+	 * Compares the two given files.
+	 * 
+	 * @param diffFiles files to be compared
+	 * @return the result of file comparison
+	 */
+	private DiffServiceResultDTO compare(DiffFilesDTO diffFiles) {
+		long startTime = DiffMetrics.start();
+		
+		DiffServiceResultDTO result = new DiffServiceResultDTO();
+		result.setStatus("success");
+		
+		if(isSameFile(diffFiles)) {
+			// both uploads resolved to the same stored blob
+			result.setMessage("Files are equal.");
+		} else if(isDifferentInSize(diffFiles)) {
+			result.setMessage("Files are different in size.");
+		} else if(checkFilesDiffs(diffFiles, result) == 0) {
+			result.setMessage("Files are equal.");
+		}
+		
+		DiffMetrics.record(DiffMetrics.COMPARE, startTime);
+		DiffMetrics.DIFF_RUNS.record(result.getDiffCount());
+		return result;
+	}
+
+	/**
+	 * Compares the two given files in steps of "diff.jobs.progress-step" bytes,
+	 * reporting the progress and checking for interruption after each step.
+	 * 
+	 * @param diffFiles files to be compared
+	 * @param progress listener notified of the number of bytes scanned so far
+	 * @return the result of file comparison
+	 * @throws InterruptedException if the calling thread was interrupted
+	 */
+	private DiffServiceResultDTO compareInSteps(DiffFilesDTO diffFiles, ProgressListener progress) throws InterruptedException {
+		if(isSameFile(diffFiles) || isDifferentInSize(diffFiles)) {
+			return compare(diffFiles);
+		}
+		
+		long startTime = DiffMetrics.start();
+		DiffServiceResultDTO result = new DiffServiceResultDTO();
+		result.setStatus("success");
+		
+		MergingRunListener listener = new MergingRunListener(result);
+		int length = leftLength(diffFiles);
+		int step = Math.max(Long.BYTES, progressStep);
+		
+		for(int from = 0; from < length;) {
+			if(Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			
+			int to = (int) Math.min(length, (long) from + step);
+			compareChangedChunks(diffFiles, from, to, listener);
+			progress.onProgress(to, length);
+			from = to;
+		}
+		
+		listener.flush();
+		
+		if(result.getDiffCount() == 0) {
+			result.setMessage("Files are equal.");
+		}
+		
+		DiffMetrics.record(DiffMetrics.COMPARE, startTime);
+		DiffMetrics.DIFF_RUNS.record(result.getDiffCount());
+		return result;
+	}
+
+	/**
+	 * Validates if both files were provided for comparison.
+	 * 
+	 * @param id Identifier of the files to be compared
+	 * @param diffFiles {@link DiffFilesDTO} to be validated
+	 * @throws DiffValidationException if one or both files were not 
+	 *                                 provided for comparison
+	 */
+	private void validateFilesExist(int id, DiffFilesDTO diffFiles) throws DiffValidationException {
+		if(diffFiles == null) {
+			throw new DiffValidationException("No file has been provided under ID: " + id);
+		}
+		
+		if(diffFiles.getLeftFile() == null && diffFiles.getLeftCompressedFile() == null) {
+			throw new DiffValidationException("Left file has not been provided under ID: " + id);
+		}
+		
+		if(diffFiles.getRightFile() == null && diffFiles.getRightCompressedFile() == null) {
+			throw new DiffValidationException("Right file has not been provided under ID: " + id);
+		}
+	}
+	
+	private boolean hasBothFiles(DiffFilesDTO diffFiles) {
+		return (diffFiles.getLeftFile() != null || diffFiles.getLeftCompressedFile() != null)
+				&& (diffFiles.getRightFile() != null || diffFiles.getRightCompressedFile() != null);
+	}
+	
+	/**
+	 * Compares the two files and adds the offset and length of the
+	 * differences found between them to the result.
+	 * <br/><br/>
+	 * The comparison is done in a single pass by {@link ParallelDiffComparator},
+	 * so no diff being found means the files are equal.
+	 * 
+	 * @param diffFiles files to be compared, which must have the same size
+	 * @param result Result object to which the offset and length of
+	 *               the diffs will be added
+	 * @return The number of diffs added to the result
+	 */
+	private int checkFilesDiffs(DiffFilesDTO diffFiles, DiffServiceResultDTO result) {
+		return compareChangedChunks(diffFiles, 0, leftLength(diffFiles), result::addDiff);
+	}
+	
+	/**
+	 * Returns the offset of the first different byte in the [from, to) range
+	 * of the given files.
+	 * <br/><br/>
+	 * When both files have comparable chunk hashes, only the chunks whose 
+	 * hashes differ are scanned. When the files are compressed, only the
+	 * blocks whose compressed bytes differ are decompressed.
+	 * 
+	 * @param diffFiles files to be compared, which must have the same size
+	 * @param from first offset to be compared, inclusive
+	 * @param to last offset to be compared, exclusive
+	 * @return the offset of the first different byte, or -1 if the range is equal
+	 */
+	private int nextDifference(DiffFilesDTO diffFiles, int from, int to) {
+		if(diffFiles.getLeftCompressedFile() != null) {
+			return CompressedDiffComparator.firstDifference(diffFiles.getLeftCompressedFile(), diffFiles.getRightCompressedFile(), from, to);
+		}
+		
+		ByteBuffer leftFile = diffFiles.getLeftFile();
+		ByteBuffer rightFile = diffFiles.getRightFile();
+		ChunkHashTree leftHashes = diffFiles.getLeftFileHashes();
+		ChunkHashTree rightHashes = diffFiles.getRightFileHashes();
+		
+		if(leftHashes == null || !leftHashes.isComparableTo(rightHashes)) {
+			return DiffComparator.firstDifference(leftFile, rightFile, from, to);
+		}
+		
+		if(leftHashes.rootEquals(rightHashes)) {
+			return -1;
+		}
+		
+		int chunkSize = leftHashes.getChunkSize();
+		int changedChunk = leftHashes.nextChangedChunk(rightHashes, from / chunkSize);
+		
+		while(changedChunk != -1 && (long) changedChunk * chunkSize < to) {
+			int unchangedChunk = leftHashes.nextUnchangedChunk(rightHashes, changedChunk);
+			int rangeStart = Math.max(from, changedChunk * chunkSize);
+			int rangeEnd = (int) Math.min(to, (long) unchangedChunk * chunkSize);
+			
+			int difference = DiffComparator.firstDifference(leftFile, rightFile, rangeStart, rangeEnd);
+			if(difference != -1) {
+				return difference;
+			}
+			
+			changedChunk = leftHashes.nextChangedChunk(rightHashes, unchangedChunk);
+		}
+		
+		return -1;
+	}
+	
+	/**
+	 * Compares the files in the [from, to) range, reporting every run of
+	 * different bytes to the given listener.
+	 * <br/><br/>
+	 * When both files have comparable chunk hashes, only the ranges of 
+	 * consecutive chunks whose hashes differ are compared: the other chunks
+	 * are known to be equal. No run can cross an unchanged chunk, so the
+	 * result is the same as comparing the whole files.
+	 * <br/><br/>
+	 * Compressed files are compared by {@link CompressedDiffComparator}, which
+	 * skips the blocks whose compressed bytes are equal in the same way.
+	 * 
+	 * @param diffFiles files to be compared, which must have the same size
+	 * @param from first offset to be compared, inclusive
+	 * @param to last offset to be compared, exclusive
+	 * @param listener Listener notified of each run found
+	 * @return the number of runs found
+	 */
+	private int compareChangedChunks(DiffFilesDTO diffFiles, int from, int to, RunListener listener) {
+		if(diffFiles.getLeftCompressedFile() != null) {
+			return CompressedDiffComparator.compare(diffFiles.getLeftCompressedFile(), diffFiles.getRightCompressedFile(), from, to, listener);
+		}
+		
+		ByteBuffer leftFile = diffFiles.getLeftFile();
+		ByteBuffer rightFile = diffFiles.getRightFile();
+		ChunkHashTree leftHashes = diffFiles.getLeftFileHashes();
+		ChunkHashTree rightHashes = diffFiles.getRightFileHashes();
+		
+		if(leftHashes == null || !leftHashes.isComparableTo(rightHashes)) {
+			return comparator.compare(leftFile, rightFile, from, to, listener);
+		}
+		
+		int chunkSize = leftHashes.getChunkSize();
+		int runs = 0;
+		int changedChunk = leftHashes.nextChangedChunk(rightHashes, from / chunkSize);
+		
+		while(changedChunk != -1 && (long) changedChunk * chunkSize < to) {
+			int unchangedChunk = leftHashes.nextUnchangedChunk(rightHashes, changedChunk);
+			int rangeStart = Math.max(from, changedChunk * chunkSize);
+			int rangeEnd = (int) Math.min(to, (long) unchangedChunk * chunkSize);
+			
+			runs += comparator.compare(leftFile, rightFile, rangeStart, rangeEnd, listener);
+			changedChunk = leftHashes.nextChangedChunk(rightHashes, unchangedChunk);
+		}
+		
+		return runs;
+	}
+	
+	/**
+	 * Returns the offset where the run of different bytes starting at the
+	 * given offset ends, which is the first equal byte in the [from, to) range.
+	 * 
+	 * @param diffFiles files to be compared, which must have the same size
+	 * @param from offset of a different byte
+	 * @param to last offset to be compared, exclusive
+	 * @return the offset of the first equal byte, or the given end of the range
+	 */
+	private int firstEqual(DiffFilesDTO diffFiles, int from, int to) {
+		if(diffFiles.getLeftCompressedFile() != null) {
+			return CompressedDiffComparator.firstEqual(diffFiles.getLeftCompressedFile(), diffFiles.getRightCompressedFile(), from, to);
+		}
+		
+		return DiffComparator.firstEqual(diffFiles.getLeftFile(), diffFiles.getRightFile(), from, to);
+	}
+	
+	/**
+	 * Comparison of files being done in the background.
+	 * <br/><br/>
+	 * The comparison is run by whichever thread claims it first: the
+	 * executor thread dequeuing it, or a thread requesting the result
+	 * while it is still queued.
+	 */
+	private static class PendingDiff {
+		
+		private final DiffFilesDTO diffFiles;
+		private final CompletableFuture<DiffServiceResultDTO> result = new CompletableFuture<>();
+		private final AtomicBoolean claimed = new AtomicBoolean();
+		
+		PendingDiff(DiffFilesDTO diffFiles) {
+			this.diffFiles = diffFiles;
+		}
+		
+		boolean claim() {
+			return claimed.compareAndSet(false, true);
+		}
+	}
+	
+	/**
+	 * Adds the runs it is notified of to a result, joining each run with
+	 * the previous one when the previous run ends where it starts.
+	 */
+	private static class MergingRunListener implements RunListener {
+		
+		private final DiffServiceResultDTO result;
+		private int pendingOffset = -1;
+		private int pendingLength;
+		
+		MergingRunListener(DiffServiceResultDTO result) {
+			this.result = result;
+		}
+		
+		@Override
+		public void onRun(int offset, int length) {
+			if(pendingOffset != -1 && pendingOffset + pendingLength == offset) {
+				pendingLength += length;
+				return;
+			}
+			
+			flush();
+			pendingOffset = offset;
+			pendingLength = length;
+		}
+		
+		void flush() {
+			if(pendingOffset != -1) {
+				result.addDiff(pendingOffset, pendingLength);
+				pendingOffset = -1;
+			}
+		}
+	}
+	
+	/**
+	 * Writes the runs found by the comparison to a {@link DiffResultWriter},
+	 * also collecting them in a result to be cached, as long as there are
+	 * not more than "diff.cache.max-runs" of them.
+	 */
+	private class StreamingRunListener implements RunListener {
+		
+		private final DiffResultWriter writer;
+		private DiffServiceResultDTO result;
+		private int runs;
+		
+		StreamingRunListener(DiffResultWriter writer, DiffServiceResultDTO result) {
+			this.writer = writer;
+			this.result = result;
+		}
+		
+		@Override
+		public void onRun(int offset, int length) {
+			try {
+				writer.writeDiff(offset, length);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			
+			if(++runs > maxCachedRuns) {
+				result = null;
+			}
+			
+			if(result != null) {
+				result.addDiff(offset, length);
+			}
+		}
+	}
 }
@@ -0,0 +1,166 @@
+package com.waes.filediff.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+import com.waes.filediff.model.ChunkHashTree;
+
+/**
+ * Output stream receiving the content of a file uploaded in a single
+ * request, started by {@link DiffService#newUpload(int, long)} and stored
+ * by {@link DiffService#addLeft(int, FileUpload)} or
+ * {@link DiffService#addRight(int, FileUpload)} once written.
+ * <br/><br/>
+ * The content is written straight into the buffer it is stored in, which
+ * is allocated upfront with the size declared by the request, so the file
+ * is never held twice nor copied while growing. Writing more bytes than
+ * declared fails instead of growing the buffer, as the declared size was
+ * already checked against "diff.upload.max-size".
+ * <br/><br/>
+ * Each chunk of the file is hashed as soon as it is written, while it is
+ * still in the CPU caches, so the file is not read once more to be hashed
+ * once the upload ends.
+ *
+ * @author Rodrigo Hackbarth
+ */
+public class FileUpload extends OutputStream {
+
+	private final ByteBuffer file;
+	private final ChunkHashTree.Builder hashes;
+	private int hashedLength;
+
+	/**
+	 * @param file writable buffer receiving the content, from its first 
+	 *             byte up to its capacity
+	 */
+	public FileUpload(ByteBuffer file) {
+		this(file, null);
+	}
+
+	/**
+	 * @param file writable buffer receiving the content, from its first 
+	 *             byte up to its capacity
+	 * @param hashes builder hashing the chunks of the content as they are
+	 *               written, or null if the content is not hashed
+	 */
+	public FileUpload(ByteBuffer file, ChunkHashTree.Builder hashes) {
+		this.file = file;
+		this.hashes = hashes;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		ensureRemaining(1);
+		file.put((byte) b);
+		hashWrittenChunks();
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		ensureRemaining(len);
+		file.put(b, off, len);
+		hashWrittenChunks();
+	}
+
+	/**
+	 * Writes the remaining bytes of the given buffer, such as a piece of a
+	 * request body received by the reactive stack, without copying them to
+	 * an array first.
+	 *
+	 * @param content bytes to be written, which are all consumed
+	 * @throws IOException if the content exceeds the declared size
+	 */
+	public void write(ByteBuffer content) throws IOException {
+		ensureRemaining(content.remaining());
+		file.put(content);
+		hashWrittenChunks();
+	}
+
+	/**
+	 * Reads the content from the given stream up to its end, straight into
+	 * the buffer through a channel, as done for the chunks of an upload
+	 * session.
+	 *
+	 * @param content stream providing the content, such as a request body
+	 * @throws IOException if the stream could not be read or if it provides
+	 *                     more bytes than declared
+	 */
+	public void readFrom(InputStream content) throws IOException {
+		ReadableByteChannel channel = Channels.newChannel(content);
+		while(file.hasRemaining() && channel.read(file) != -1) {
+			hashWrittenChunks();
+		}
+
+		if(!file.hasRemaining() && content.read() != -1) {
+			throw exceeded();
+		}
+	}
+
+	/**
+	 * Returns the number of bytes written so far.
+	 *
+	 * @return the size of the written content
+	 */
+	public int getSize() {
+		return file.position();
+	}
+
+	/**
+	 * Returns the written content in an array, which is the array backing
+	 * the buffer when the content fills it exactly, as for patches.
+	 *
+	 * @return the bytes written to this stream
+	 */
+	public byte[] toByteArray() {
+		if(file.hasArray() && file.arrayOffset() == 0 && file.position() == file.array().length) {
+			return file.array();
+		}
+
+		byte[] content = new byte[file.position()];
+		getContent().get(content);
+
+		return content;
+	}
+
+	/**
+	 * Returns the written content, without copying it.
+	 *
+	 * @return a buffer whose capacity is the size of the written content
+	 */
+	ByteBuffer getContent() {
+		ByteBuffer content = file.duplicate();
+		content.flip();
+
+		return content.slice();
+	}
+
+	/**
+	 * Returns the hashes of the written content.
+	 *
+	 * @return the hashes, or null if the content is not hashed
+	 */
+	ChunkHashTree getHashes() {
+		return hashes == null ? null : hashes.build(getContent());
+	}
+
+	private void hashWrittenChunks() {
+		if(hashes != null && file.position() - hashedLength >= hashes.getChunkSize()) {
+			hashes.hashChunks(file, hashedLength, file.position());
+			hashedLength = file.position() / hashes.getChunkSize() * hashes.getChunkSize();
+		}
+	}
+
+	private void ensureRemaining(int length) throws IOException {
+		if(length > file.remaining()) {
+			throw exceeded();
+		}
+	}
+
+	private IOException exceeded() {
+		return new IOException("File content exceeds the " + file.limit() + " bytes declared by the request.");
+	}
+}
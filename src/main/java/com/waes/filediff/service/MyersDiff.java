@@ -0,0 +1,292 @@
+package com.waes.filediff.service;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Insert/delete diff of files which may be different in size, based on
+ * Myers' O(ND) difference algorithm.
+ * <br/><br/>
+ * The linear space refinement is used: instead of keeping the whole edit
+ * graph, the middle snake of the shortest edit script is found by searching
+ * forward from the start and backward from the end of the files at the same
+ * time, and both halves around it are solved recursively. Only two arrays
+ * proportional to the edit distance are needed at each step, and the common
+ * prefix and suffix of each half are skipped before searching.
+ * <br/><br/>
+ * The search gives up once the edit distance is known to be bigger than the
+ * given maximum, which bounds the O((N+M)D) running time on inputs with
+ * too many differences.
+ *
+ * @author Rodrigo Hackbarth
+ */
+public final class MyersDiff {
+
+	/**
+	 * Receives the edits which turn the left file into the right file.
+	 */
+	public interface EditListener {
+
+		/**
+		 * Called for bytes of the left file which are not in the right file.
+		 *
+		 * @param leftOffset offset of the deleted bytes in the left file
+		 * @param rightOffset offset in the right file where the bytes were deleted
+		 * @param length number of deleted bytes
+		 */
+		void onDelete(int leftOffset, int rightOffset, int length);
+
+		/**
+		 * Called for bytes of the right file which are not in the left file.
+		 *
+		 * @param leftOffset offset in the left file where the bytes were inserted
+		 * @param rightOffset offset of the inserted bytes in the right file
+		 * @param length number of inserted bytes
+		 */
+		void onInsert(int leftOffset, int rightOffset, int length);
+	}
+
+	private static final int NONE = 0;
+	private static final int DELETE = 1;
+	private static final int INSERT = 2;
+
+	private final ByteBuffer leftFile;
+	private final ByteBuffer rightFile;
+	private final EditListener listener;
+
+	private int pendingOperation = NONE;
+	private int pendingLeftOffset;
+	private int pendingRightOffset;
+	private int pendingLength;
+
+	private MyersDiff(ByteBuffer leftFile, ByteBuffer rightFile, EditListener listener) {
+		this.leftFile = leftFile;
+		this.rightFile = rightFile;
+		this.listener = listener;
+	}
+
+	/**
+	 * Computes the shortest edit script turning the left file into the right
+	 * file and reports its edits to the given listener, in ascending offset
+	 * order. Consecutive edits of the same kind are reported as one.
+	 * <br/><br/>
+	 * When the edit distance is bigger than the given maximum the search is
+	 * abandoned before any edit is reported.
+	 *
+	 * @param leftFile File to be compared with the right file
+	 * @param rightFile File to be compared with the left file
+	 * @param maxEdits maximum number of inserted and deleted bytes
+	 * @param listener Listener notified of each edit
+	 * @return true if the edit script was found, false if the edit distance
+	 *         is bigger than the given maximum
+	 */
+	public static boolean diff(ByteBuffer leftFile, ByteBuffer rightFile, int maxEdits, EditListener listener) {
+		MyersDiff diff = new MyersDiff(leftFile, rightFile, listener);
+
+		int leftLength = leftFile.capacity();
+		int rightLength = rightFile.capacity();
+		int prefix = commonPrefix(leftFile, rightFile, 0, leftLength, 0, rightLength);
+		int suffix = commonSuffix(leftFile, rightFile, prefix, leftLength, prefix, rightLength);
+
+		int[] split = diff.middleSnake(prefix, leftLength - suffix, prefix, rightLength - suffix, maxEdits);
+		if(split == null) {
+			return false;
+		}
+
+		diff.diff(prefix, split[0], prefix, split[1], split[2]);
+		diff.diff(split[0], leftLength - suffix, split[1], rightLength - suffix, split[2]);
+		diff.flush();
+
+		return true;
+	}
+
+	/**
+	 * Reports the edits turning the [leftStart, leftEnd) range of the left
+	 * file into the [rightStart, rightEnd) range of the right file.
+	 * <br/><br/>
+	 * The edit distance of the ranges is at most twice the number of steps 
+	 * the search of the enclosing ranges took, which bounds the size of the 
+	 * arrays used to search them.
+	 */
+	private void diff(int leftStart, int leftEnd, int rightStart, int rightEnd, int parentSteps) {
+		int prefix = commonPrefix(leftFile, rightFile, leftStart, leftEnd, rightStart, rightEnd);
+		leftStart += prefix;
+		rightStart += prefix;
+
+		int suffix = commonSuffix(leftFile, rightFile, leftStart, leftEnd, rightStart, rightEnd);
+		leftEnd -= suffix;
+		rightEnd -= suffix;
+
+		if(leftStart == leftEnd) {
+			edit(INSERT, leftStart, rightStart, rightEnd - rightStart);
+			return;
+		}
+
+		if(rightStart == rightEnd) {
+			edit(DELETE, leftStart, rightStart, leftEnd - leftStart);
+			return;
+		}
+
+		int[] split = middleSnake(leftStart, leftEnd, rightStart, rightEnd, 2 * parentSteps + 2);
+		if(split == null) {
+			split = new int[] {leftEnd, rightStart, parentSteps};
+		}
+
+		diff(leftStart, split[0], rightStart, split[1], split[2]);
+		diff(split[0], leftEnd, split[1], rightEnd, split[2]);
+	}
+
+	/**
+	 * Finds the point where the forward and backward searches of the
+	 * shortest edit script of the given ranges overlap.
+	 *
+	 * @return the left and right offsets of the split point followed by the 
+	 *         number of search steps taken, or null if the edit distance of 
+	 *         the ranges is bigger than the given maximum
+	 */
+	private int[] middleSnake(int leftStart, int leftEnd, int rightStart, int rightEnd, int maxEdits) {
+		int leftLength = leftEnd - leftStart;
+		int rightLength = rightEnd - rightStart;
+
+		if(leftLength == 0 || rightLength == 0) {
+			return new int[] {leftStart, rightStart, 0};
+		}
+
+		int maxD = (int) Math.min((leftLength + (long) rightLength + 1) / 2, maxEdits / 2L + 2);
+		int vOffset = maxD;
+		int[] forward = new int[2 * maxD + 2];
+		int[] backward = new int[2 * maxD + 2];
+		Arrays.fill(forward, -1);
+		Arrays.fill(backward, -1);
+		forward[vOffset + 1] = 0;
+		backward[vOffset + 1] = 0;
+
+		int delta = leftLength - rightLength;
+		// with an odd delta the paths can only overlap during the forward search
+		boolean front = (delta & 1) != 0;
+		int forwardStart = 0;
+		int forwardEnd = 0;
+		int backwardStart = 0;
+		int backwardEnd = 0;
+
+		for(int d = 0; d < maxD; d++) {
+			for(int k = -d + forwardStart; k <= d - forwardEnd; k += 2) {
+				int kOffset = vOffset + k;
+				int x = k == -d || (k != d && forward[kOffset - 1] < forward[kOffset + 1]) ? forward[kOffset + 1] : forward[kOffset - 1] + 1;
+				int y = x - k;
+
+				while(x < leftLength && y < rightLength && leftFile.get(leftStart + x) == rightFile.get(rightStart + y)) {
+					x++;
+					y++;
+				}
+
+				forward[kOffset] = x;
+
+				if(x > leftLength) {
+					forwardEnd += 2;
+				}else if(y > rightLength) {
+					forwardStart += 2;
+				}else if(front) {
+					int backwardOffset = vOffset + delta - k;
+					if(backwardOffset >= 0 && backwardOffset < backward.length && backward[backwardOffset] != -1
+							&& x >= leftLength - backward[backwardOffset]) {
+						return new int[] {leftStart + x, rightStart + y, d};
+					}
+				}
+			}
+
+			for(int k = -d + backwardStart; k <= d - backwardEnd; k += 2) {
+				int kOffset = vOffset + k;
+				int x = k == -d || (k != d && backward[kOffset - 1] < backward[kOffset + 1]) ? backward[kOffset + 1] : backward[kOffset - 1] + 1;
+				int y = x - k;
+
+				while(x < leftLength && y < rightLength
+						&& leftFile.get(leftEnd - x - 1) == rightFile.get(rightEnd - y - 1)) {
+					x++;
+					y++;
+				}
+
+				backward[kOffset] = x;
+
+				if(x > leftLength) {
+					backwardEnd += 2;
+				}else if(y > rightLength) {
+					backwardStart += 2;
+				}else if(!front) {
+					int forwardOffset = vOffset + delta - k;
+					if(forwardOffset >= 0 && forwardOffset < forward.length && forward[forwardOffset] != -1) {
+						int forwardX = forward[forwardOffset];
+						int forwardY = vOffset + forwardX - forwardOffset;
+
+						if(forwardX >= leftLength - x) {
+							return new int[] {leftStart + forwardX, rightStart + forwardY, d};
+						}
+					}
+				}
+			}
+		}
+
+		if(maxD < (leftLength + (long) rightLength + 1) / 2) {
+			return null;
+		}
+
+		// no common byte at all: everything is deleted and then inserted
+		return new int[] {leftEnd, rightStart, maxD};
+	}
+
+	/**
+	 * Reports an edit, merging it with the previous one when both
+	 * are of the same kind and contiguous.
+	 */
+	private void edit(int operation, int leftOffset, int rightOffset, int length) {
+		if(length == 0) {
+			return;
+		}
+
+		if(operation == pendingOperation
+				&& (operation == DELETE ? pendingLeftOffset + pendingLength == leftOffset && pendingRightOffset == rightOffset
+										: pendingRightOffset + pendingLength == rightOffset && pendingLeftOffset == leftOffset)) {
+			pendingLength += length;
+			return;
+		}
+
+		flush();
+
+		pendingOperation = operation;
+		pendingLeftOffset = leftOffset;
+		pendingRightOffset = rightOffset;
+		pendingLength = length;
+	}
+
+	private void flush() {
+		if(pendingOperation == DELETE) {
+			listener.onDelete(pendingLeftOffset, pendingRightOffset, pendingLength);
+		}else if(pendingOperation == INSERT) {
+			listener.onInsert(pendingLeftOffset, pendingRightOffset, pendingLength);
+		}
+
+		pendingOperation = NONE;
+	}
+
+	private static int commonPrefix(ByteBuffer leftFile, ByteBuffer rightFile, int leftStart, int leftEnd, int rightStart, int rightEnd) {
+		int length = Math.min(leftEnd - leftStart, rightEnd - rightStart);
+		int prefix = 0;
+
+		while(prefix < length && leftFile.get(leftStart + prefix) == rightFile.get(rightStart + prefix)) {
+			prefix++;
+		}
+
+		return prefix;
+	}
+
+	private static int commonSuffix(ByteBuffer leftFile, ByteBuffer rightFile, int leftStart, int leftEnd, int rightStart, int rightEnd) {
+		int length = Math.min(leftEnd - leftStart, rightEnd - rightStart);
+		int suffix = 0;
+
+		while(suffix < length && leftFile.get(leftEnd - suffix - 1) == rightFile.get(rightEnd - suffix - 1)) {
+			suffix++;
+		}
+
+		return suffix;
+	}
+}
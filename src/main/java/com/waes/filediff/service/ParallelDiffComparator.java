@@ -0,0 +1,246 @@
+package com.waes.filediff.service;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.waes.filediff.service.DiffComparator.RunListener;
+
+/**
+ * Compares large files in parallel.
+ * <br/><br/>
+ * The files are split in chunks which are compared by {@link DiffComparator}
+ * on a {@link ForkJoinPool}. When joining the chunks, a run ending exactly at
+ * a chunk boundary is stitched to the run starting at that boundary, so the
+ * result is identical to the sequential comparison.
+ * <br/><br/>
+ * The range is compared one window at a time, a window holding a chunk per
+ * thread, and the runs of a window are reported before the next window is
+ * compared. The runs held in memory are so bounded by the window size rather
+ * than by the file size, however dense the differences are.
+ * <br/><br/>
+ * Files smaller than the configured threshold are compared on the calling
+ * thread.
+ *
+ * @author Rodrigo Hackbarth
+ */
+@Component
+public class ParallelDiffComparator {
+
+	private final int threshold;
+	private final int chunkSize;
+	private final long windowSize;
+	private final ForkJoinPool pool;
+
+	/**
+	 * @param threshold minimum file size, in bytes, for the comparison to be
+	 *                  done in parallel
+	 * @param chunkSize maximum size, in bytes, of the chunk compared by each task
+	 * @param parallelism number of threads comparing the chunks, 0 meaning
+	 *                    the number of available processors
+	 */
+	@Autowired
+	public ParallelDiffComparator(@Value("${diff.parallel.threshold:4194304}") int threshold,
+								  @Value("${diff.parallel.chunk-size:1048576}") int chunkSize,
+								  @Value("${diff.parallel.parallelism:0}") int parallelism) {
+		this.threshold = threshold;
+		// chunks are aligned to whole words, so the kernel never reads across them
+		this.chunkSize = Math.max(Long.BYTES, chunkSize - chunkSize % Long.BYTES);
+		this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+		this.windowSize = (long) this.chunkSize * pool.getParallelism();
+	}
+
+	/**
+	 * Compares the two files, which must have the same length, and
+	 * reports every run of different bytes to the given listener.
+	 *
+	 * @param leftFile File to be compared with the right file
+	 * @param rightFile File to be compared with the left file
+	 * @param listener Listener notified of each run found, always from
+	 *                 the calling thread
+	 * @return the number of runs found, 0 meaning the files are equal
+	 */
+	public int compare(ByteBuffer leftFile, ByteBuffer rightFile, RunListener listener) {
+		return compare(leftFile, rightFile, 0, leftFile.capacity(), listener);
+	}
+
+	/**
+	 * Compares the [from, to) range of the two files and reports every
+	 * run of different bytes found inside that range to the given listener.
+	 *
+	 * @param leftFile File to be compared with the right file
+	 * @param rightFile File to be compared with the left file
+	 * @param from first offset to be compared, inclusive
+	 * @param to last offset to be compared, exclusive
+	 * @param listener Listener notified of each run found, always from
+	 *                 the calling thread
+	 * @return the number of runs found, 0 meaning the range is equal
+	 */
+	public int compare(ByteBuffer leftFile, ByteBuffer rightFile, int from, int to, RunListener listener) {
+		int length = to - from;
+		
+		if(length < threshold || length <= chunkSize) {
+			return DiffComparator.compare(leftFile, rightFile, from, to, listener);
+		}
+
+		StitchedRuns runs = new StitchedRuns(listener);
+		int windowFrom = from;
+
+		while(windowFrom < to) {
+			int windowTo = (int) Math.min(windowFrom + windowSize, to);
+
+			pool.invoke(new ChunkTask(leftFile, rightFile, windowFrom, windowTo)).replay(runs);
+			windowFrom = windowTo;
+		}
+
+		return runs.finish();
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Compares a range of the files, splitting it in two halves
+	 * while it is bigger than the chunk size.
+	 */
+	private class ChunkTask extends RecursiveTask<Runs> {
+
+		private static final long serialVersionUID = 6140329567722063532L;
+
+		private final ByteBuffer leftFile;
+		private final ByteBuffer rightFile;
+		private final int from;
+		private final int to;
+
+		ChunkTask(ByteBuffer leftFile, ByteBuffer rightFile, int from, int to) {
+			this.leftFile = leftFile;
+			this.rightFile = rightFile;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Runs compute() {
+			if(to - from <= chunkSize) {
+				Runs runs = new Runs();
+				DiffComparator.compare(leftFile, rightFile, from, to, runs);
+				return runs;
+			}
+
+			int middle = from + (to - from) / 2;
+			middle -= middle % Long.BYTES;
+
+			if(middle <= from) {
+				// an unaligned range start may leave no word boundary before the middle
+				middle = from + (to - from) / 2;
+			}
+
+			ChunkTask right = new ChunkTask(leftFile, rightFile, middle, to);
+			right.fork();
+			Runs runs = new ChunkTask(leftFile, rightFile, from, middle).compute();
+
+			return runs.append(right.join());
+		}
+	}
+
+	/**
+	 * Runs found in a chunk, kept in primitive arrays until all
+	 * chunks of a window are joined.
+	 */
+	private static class Runs implements RunListener {
+
+		private int[] offsets = new int[16];
+		private int[] lengths = new int[16];
+		private int size;
+
+		@Override
+		public void onRun(int offset, int length) {
+			if(size == offsets.length) {
+				offsets = Arrays.copyOf(offsets, size * 2);
+				lengths = Arrays.copyOf(lengths, size * 2);
+			}
+
+			offsets[size] = offset;
+			lengths[size] = length;
+			size++;
+		}
+
+		/**
+		 * Appends the runs of the following chunk to these runs, merging
+		 * the run crossing the boundary between both chunks.
+		 */
+		Runs append(Runs next) {
+			int first = 0;
+
+			if(size > 0 && next.size > 0 && offsets[size - 1] + lengths[size - 1] == next.offsets[0]) {
+				lengths[size - 1] += next.lengths[0];
+				first = 1;
+			}
+
+			for(int i = first; i < next.size; i++) {
+				onRun(next.offsets[i], next.lengths[i]);
+			}
+
+			return this;
+		}
+
+		void replay(RunListener listener) {
+			for(int i = 0; i < size; i++) {
+				listener.onRun(offsets[i], lengths[i]);
+			}
+		}
+	}
+
+	/**
+	 * Reports the runs of consecutive windows to a listener, holding back
+	 * the last run until the next one is known, so a run crossing the
+	 * boundary between two windows is reported once.
+	 */
+	private static class StitchedRuns implements RunListener {
+
+		private final RunListener listener;
+		private int offset;
+		private int length;
+		private int size;
+
+		StitchedRuns(RunListener listener) {
+			this.listener = listener;
+		}
+
+		@Override
+		public void onRun(int offset, int length) {
+			if(this.length > 0 && this.offset + this.length == offset) {
+				this.length += length;
+				return;
+			}
+
+			finish();
+			this.offset = offset;
+			this.length = length;
+		}
+
+		/**
+		 * Reports the run held back, if any.
+		 *
+		 * @return the number of runs reported so far
+		 */
+		int finish() {
+			if(length > 0) {
+				listener.onRun(offset, length);
+				length = 0;
+				size++;
+			}
+
+			return size;
+		}
+	}
+}
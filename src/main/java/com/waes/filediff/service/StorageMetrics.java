@@ -0,0 +1,72 @@
+package com.waes.filediff.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.waes.filediff.repository.BlobStore;
+import com.waes.filediff.repository.DiffRepository;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Binds the meters of what is held in memory, the stored files and the
+ * cached results, to the registries configured by Spring Boot.
+ * <br/><br/>
+ * The values are read from the {@link DiffRepository}, the {@link BlobStore}
+ * and the {@link DiffResultCache} whenever the metrics are exported.
+ *
+ * @author Rodrigo Hackbarth
+ */
+@Component
+public class StorageMetrics implements MeterBinder {
+
+	@Autowired
+	private DiffRepository repository;
+
+	@Autowired
+	private BlobStore blobStore;
+
+	@Autowired
+	private DiffResultCache resultCache;
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		Gauge.builder("diff.storage.ids", repository, DiffRepository::getIdCount)
+				.description("Number of IDs with files stored")
+				.register(registry);
+
+		Gauge.builder("diff.storage.bytes", repository, DiffRepository::getStoredBytes)
+				.description("Size of the stored files, as limited by diff.storage.max-bytes")
+				.baseUnit("bytes")
+				.register(registry);
+
+		Gauge.builder("diff.storage.blobs", blobStore, BlobStore::getBlobCount)
+				.description("Number of unique file contents stored")
+				.register(registry);
+
+		FunctionCounter.builder("diff.storage.evictions", repository, DiffRepository::getSizeEvictionCount)
+				.description("Number of IDs whose files were evicted from the storage")
+				.tag("cause", "size")
+				.register(registry);
+
+		FunctionCounter.builder("diff.storage.evictions", repository, DiffRepository::getExpiredEvictionCount)
+				.description("Number of IDs whose files were evicted from the storage")
+				.tag("cause", "expired")
+				.register(registry);
+
+		Gauge.builder("diff.cache.size", resultCache, DiffResultCache::getSize)
+				.description("Number of cached diff results")
+				.register(registry);
+
+		FunctionCounter.builder("diff.cache.hits", resultCache, DiffResultCache::getHits)
+				.description("Number of diff results found in the cache")
+				.register(registry);
+
+		FunctionCounter.builder("diff.cache.misses", resultCache, DiffResultCache::getMisses)
+				.description("Number of diff results not found in the cache")
+				.register(registry);
+	}
+}
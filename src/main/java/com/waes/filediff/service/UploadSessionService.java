@@ -0,0 +1,351 @@
+package com.waes.filediff.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import com.waes.filediff.exception.DiffValidationException;
+import com.waes.filediff.model.ChunkHashTree;
+import com.waes.filediff.repository.FileStore;
+
+/**
+ * Provides resumable uploads of large files, sent in numbered chunks.
+ * <br/><br/>
+ * Opening an upload session allocates room for the whole file in the
+ * {@link FileStore}, into which each chunk is written in place as it is
+ * received, so chunks may be sent in any order, in parallel, and sent again
+ * after a failure. The file only becomes visible to {@link DiffService} once
+ * the session is committed with all of its chunks received. Each chunk is
+ * hashed right after being written, so committing a session does not read
+ * the whole file once more to hash it.
+ * <br/><br/>
+ * As the size of a session is given by the client, the sessions open at
+ * once may be limited to reserve up to "diff.upload.max-reserved-bytes" in
+ * total; opening another one is then rejected until sessions are committed
+ * or dropped. The limit applies to the sessions in total, a single session
+ * only being bounded by the maximum size of a file.
+ * <br/><br/>
+ * Sessions left idle for longer than "diff.upload.session-timeout-minutes"
+ * are dropped by a sweep running every "diff.upload.sweep-interval-seconds",
+ * or the next time a session is opened.
+ *
+ * @author Rodrigo Hackbarth
+ */
+@Service
+public class UploadSessionService {
+
+	@Autowired
+	private FileStore fileStore;
+
+	@Autowired
+	private DiffService diffService;
+
+	@Value("${diff.upload.session-timeout-minutes:60}")
+	private long sessionTimeoutMinutes;
+
+	@Value("${diff.upload.max-reserved-bytes:0}")
+	private long maxReservedBytes;
+
+	@Value("${diff.upload.sweep-interval-seconds:60}")
+	private long sweepIntervalSeconds;
+
+	/**
+	 * Executor sweeping the expired sessions.
+	 */
+	private ScheduledExecutorService sweeper;
+
+	/**
+	 * Open upload sessions mapped by their IDs.
+	 */
+	private final ConcurrentMap<String, UploadSession> sessions = new ConcurrentHashMap<>();
+
+	/**
+	 * Total size, in bytes, of the files of the open upload sessions.
+	 */
+	private final AtomicLong reservedBytes = new AtomicLong();
+
+	@PostConstruct
+	public void startSweeper() {
+		sweeper = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("upload-session-sweeper-"));
+		sweeper.scheduleWithFixedDelay(() -> dropExpiredSessions(System.nanoTime()),
+				sweepIntervalSeconds, sweepIntervalSeconds, TimeUnit.SECONDS);
+	}
+
+	@PreDestroy
+	public void stopSweeper() {
+		sweeper.shutdownNow();
+	}
+
+	/**
+	 * Opens an upload session for the left or right file of the given ID.
+	 *
+	 * @param id identifies the file
+	 * @param leftSide true to upload the left file, false the right file
+	 * @param size size of the whole file, in bytes
+	 * @param chunkSize size of each chunk but the last one, in bytes
+	 * @return the ID of the upload session
+	 * @throws DiffValidationException if the size or the chunk size are invalid, or
+	 *                                 if the open sessions already reserve too many bytes
+	 * @throws IOException if room for the file could not be allocated
+	 */
+	public String open(int id, boolean leftSide, long size, int chunkSize) throws DiffValidationException, IOException {
+		if(size < 0 || size > Integer.MAX_VALUE) {
+			throw new DiffValidationException("File size must be between 0 and " + Integer.MAX_VALUE + " bytes.");
+		}
+
+		if(chunkSize <= 0) {
+			throw new DiffValidationException("Chunk size must be positive.");
+		}
+
+		dropExpiredSessions(System.nanoTime());
+		reserve(size);
+
+		UploadSession session;
+		try {
+			session = new UploadSession(id, leftSide, fileStore.allocate(id, (int) size), chunkSize, diffService.newHashBuilder((int) size));
+		} catch (IOException | RuntimeException e) {
+			reservedBytes.addAndGet(-size);
+			throw e;
+		}
+
+		String uploadId = UUID.randomUUID().toString();
+		sessions.put(uploadId, session);
+
+		return uploadId;
+	}
+
+	/**
+	 * Writes the chunk with the given index, read from the given stream, into
+	 * the file of the given upload session. A chunk which was already
+	 * received is overwritten.
+	 *
+	 * @param uploadId ID of the upload session
+	 * @param index index of the chunk, starting at 0
+	 * @param chunk stream providing exactly the content of the chunk
+	 * @throws DiffValidationException if the session is not open, if the index is
+	 *                                 out of range or if the stream does not provide
+	 *                                 the expected number of bytes
+	 * @throws IOException if the stream could not be read
+	 */
+	public void writeChunk(String uploadId, int index, InputStream chunk) throws DiffValidationException, IOException {
+		UploadSession session = getSession(uploadId);
+
+		if(index < 0 || index >= session.chunkCount) {
+			throw new DiffValidationException("Chunk index must be between 0 and " + (session.chunkCount - 1) + ".");
+		}
+
+		session.startWrite(uploadId);
+		boolean complete = false;
+
+		try {
+			ByteBuffer target = session.file.duplicate();
+			int start = index * session.chunkSize;
+			target.limit((int) Math.min((long) start + session.chunkSize, session.file.capacity()));
+			target.position(start);
+
+			ReadableByteChannel channel = Channels.newChannel(chunk);
+			while(target.hasRemaining() && channel.read(target) != -1) {
+				// reads straight into the file until the chunk is full
+			}
+
+			if(target.hasRemaining() || chunk.read() != -1) {
+				throw new DiffValidationException("Chunk " + index + " must have " + (target.limit() - start) + " bytes.");
+			}
+
+			if(session.hashes != null) {
+				session.hashes.hashChunks(session.file, start, target.limit());
+			}
+
+			complete = true;
+		} finally {
+			session.endWrite(index, complete);
+		}
+	}
+
+	/**
+	 * Returns the indexes of the chunks of the given upload session which
+	 * were not received yet, so an interrupted upload can be resumed.
+	 *
+	 * @param uploadId ID of the upload session
+	 * @return the indexes of the missing chunks, in ascending order
+	 * @throws DiffValidationException if the session is not open
+	 */
+	public List<Integer> getMissingChunks(String uploadId) throws DiffValidationException {
+		return getSession(uploadId).getMissingChunks();
+	}
+
+	/**
+	 * Closes the given upload session and stores its file as the left or
+	 * right file of its ID, replacing the current one.
+	 *
+	 * @param uploadId ID of the upload session
+	 * @throws DiffValidationException if the session is not open, if chunks are
+	 *                                 still being written or if chunks are missing
+	 */
+	public void commit(String uploadId) throws DiffValidationException {
+		UploadSession session = getSession(uploadId);
+
+		session.close(uploadId);
+		sessions.remove(uploadId, session);
+		reservedBytes.addAndGet(-session.file.capacity());
+
+		ChunkHashTree hashes = session.hashes != null ? session.hashes.build(session.file) : null;
+
+		if(session.leftSide) {
+			diffService.addLeft(session.id, session.file, hashes);
+		}else {
+			diffService.addRight(session.id, session.file, hashes);
+		}
+	}
+
+	private UploadSession getSession(String uploadId) throws DiffValidationException {
+		UploadSession session = sessions.get(uploadId);
+
+		if(session == null) {
+			throw new DiffValidationException("No upload session is open under ID: " + uploadId);
+		}
+
+		return session;
+	}
+
+	private void reserve(long size) throws DiffValidationException {
+		long reserved;
+
+		do {
+			reserved = reservedBytes.get();
+
+			if(maxReservedBytes > 0 && reserved + size > maxReservedBytes) {
+				throw new DiffValidationException("Too many bytes are reserved by open upload sessions, at most " + maxReservedBytes + " bytes may be reserved.");
+			}
+		} while(!reservedBytes.compareAndSet(reserved, reserved + size));
+	}
+
+	/**
+	 * Drops the sessions left idle for longer than the session timeout,
+	 * releasing the bytes they reserve.
+	 *
+	 * @param now current value of the system timer, in nanoseconds
+	 */
+	void dropExpiredSessions(long now) {
+		long expiredBefore = now - TimeUnit.MINUTES.toNanos(sessionTimeoutMinutes);
+
+		sessions.forEach((uploadId, session) -> {
+			if(session.expire(expiredBefore) && sessions.remove(uploadId, session)) {
+				reservedBytes.addAndGet(-session.file.capacity());
+			}
+		});
+	}
+
+	/**
+	 * File being uploaded in chunks, along with the chunks received so far.
+	 * <br/><br/>
+	 * Chunks are written and hashed in disjoint ranges of the file without
+	 * holding the session lock, which is only taken to track them: ending a
+	 * write and closing the session are synchronized, so every write and
+	 * every chunk hash are visible once the session is closed.
+	 */
+	private static class UploadSession {
+
+		private final int id;
+		private final boolean leftSide;
+		private final ByteBuffer file;
+		private final int chunkSize;
+		private final int chunkCount;
+		private final BitSet receivedChunks;
+		private final ChunkHashTree.Builder hashes;
+		private int activeWrites;
+		private boolean closed;
+		private long lastAccess = System.nanoTime();
+
+		UploadSession(int id, boolean leftSide, ByteBuffer file, int chunkSize, ChunkHashTree.Builder hashes) {
+			this.id = id;
+			this.leftSide = leftSide;
+			this.file = file;
+			this.chunkSize = chunkSize;
+			this.chunkCount = (int) ((file.capacity() + (long) chunkSize - 1) / chunkSize);
+			this.receivedChunks = new BitSet(chunkCount);
+			this.hashes = hashes;
+		}
+
+		synchronized void startWrite(String uploadId) throws DiffValidationException {
+			if(closed) {
+				throw new DiffValidationException("No upload session is open under ID: " + uploadId);
+			}
+
+			activeWrites++;
+			lastAccess = System.nanoTime();
+		}
+
+		synchronized void endWrite(int index, boolean complete) {
+			activeWrites--;
+			lastAccess = System.nanoTime();
+
+			if(complete) {
+				receivedChunks.set(index);
+			}else {
+				// a partially written chunk has to be sent again
+				receivedChunks.clear(index);
+			}
+		}
+
+		synchronized List<Integer> getMissingChunks() {
+			List<Integer> missingChunks = new ArrayList<>();
+
+			for(int index = receivedChunks.nextClearBit(0); index < chunkCount; index = receivedChunks.nextClearBit(index + 1)) {
+				missingChunks.add(index);
+			}
+
+			return missingChunks;
+		}
+
+		synchronized void close(String uploadId) throws DiffValidationException {
+			if(closed) {
+				throw new DiffValidationException("No upload session is open under ID: " + uploadId);
+			}
+
+			if(activeWrites > 0) {
+				throw new DiffValidationException("Chunks are still being written under upload ID: " + uploadId);
+			}
+
+			int missingChunks = chunkCount - receivedChunks.cardinality();
+			if(missingChunks > 0) {
+				throw new DiffValidationException(missingChunks + " chunks have not been received under upload ID: " + uploadId);
+			}
+
+			closed = true;
+		}
+
+		/**
+		 * Closes the session if it has been idle since the given time, so
+		 * no chunk is written into it once it is dropped.
+		 */
+		synchronized boolean expire(long time) {
+			if(closed || activeWrites > 0 || lastAccess - time >= 0) {
+				return false;
+			}
+
+			closed = true;
+			return true;
+		}
+	}
+}
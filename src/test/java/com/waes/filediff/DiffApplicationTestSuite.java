@@ -4,9 +4,35 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
+import com.waes.filediff.rest.controller.Base64JsonBodyDecoderTest;
+import com.waes.filediff.rest.controller.DataBufferOutputStreamTest;
 import com.waes.filediff.rest.controller.DiffControllerIntegrationTest;
 import com.waes.filediff.rest.controller.DiffControllerTest;
+import com.waes.filediff.rest.controller.ReactiveDiffControllerTest;
+import com.waes.filediff.model.ChunkHashTreeTest;
+import com.waes.filediff.model.CompressedFileTest;
+import com.waes.filediff.model.DiffServiceResultDTOTest;
+import com.waes.filediff.repository.BlobStoreTest;
+import com.waes.filediff.repository.DiffRepositoryTest;
+import com.waes.filediff.repository.MappedFileStoreTest;
+import com.waes.filediff.service.BatchDiffServiceTest;
+import com.waes.filediff.service.BlockMatchingDiffTest;
+import com.waes.filediff.service.CompressedDiffComparatorTest;
+import com.waes.filediff.service.CompressedDiffServiceTest;
+import com.waes.filediff.service.DiffComparatorTest;
+import com.waes.filediff.service.DiffJobServiceTest;
+import com.waes.filediff.service.DiffMetricsTest;
+import com.waes.filediff.service.DiffResultCacheTest;
 import com.waes.filediff.service.DiffServiceTest;
+import com.waes.filediff.service.EagerDiffServiceTest;
+import com.waes.filediff.service.EvictingDiffServiceTest;
+import com.waes.filediff.service.FileUploadTest;
+import com.waes.filediff.service.MyersDiffTest;
+import com.waes.filediff.service.ParallelDiffComparatorTest;
+import com.waes.filediff.service.PatchingDiffServiceTest;
+import com.waes.filediff.service.StorageMetricsTest;
+import com.waes.filediff.service.UploadSessionServiceTest;
+import com.waes.filediff.service.UploadingDiffServiceTest;
 
 /**
  * Test suite which allows for running all test classes at once.
@@ -15,6 +41,32 @@ import com.waes.filediff.service.DiffServiceTest;
  */
 @RunWith(Suite.class)
 @SuiteClasses({DiffControllerTest.class,
+		      ReactiveDiffControllerTest.class,
+		      Base64JsonBodyDecoderTest.class,
+		      DataBufferOutputStreamTest.class,
 		      DiffServiceTest.class,
+		      CompressedDiffServiceTest.class,
+		      EagerDiffServiceTest.class,
+		      EvictingDiffServiceTest.class,
+		      PatchingDiffServiceTest.class,
+		      UploadingDiffServiceTest.class,
+		      FileUploadTest.class,
+		      DiffComparatorTest.class,
+		      CompressedDiffComparatorTest.class,
+		      ParallelDiffComparatorTest.class,
+		      DiffResultCacheTest.class,
+		      MyersDiffTest.class,
+		      BlockMatchingDiffTest.class,
+		      UploadSessionServiceTest.class,
+		      BatchDiffServiceTest.class,
+		      DiffJobServiceTest.class,
+		      DiffMetricsTest.class,
+		      StorageMetricsTest.class,
+		      DiffRepositoryTest.class,
+		      MappedFileStoreTest.class,
+		      BlobStoreTest.class,
+		      ChunkHashTreeTest.class,
+		      CompressedFileTest.class,
+		      DiffServiceResultDTOTest.class,
 		      DiffControllerIntegrationTest.class})
 public class DiffApplicationTestSuite {}
@@ -0,0 +1,122 @@
+package com.waes.filediff.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Provides unit tests for the {@link ChunkHashTree} class.
+ *
+ * @author Rodrigo Hackbarth
+ */
+public class ChunkHashTreeTest {
+
+	@Test
+	public void testEqualFilesHaveEqualRoots() {
+		byte[] file = randomFile(new Random(1), 1000);
+
+		ChunkHashTree leftHashes = ChunkHashTree.of(file, 64);
+		ChunkHashTree rightHashes = ChunkHashTree.of(file.clone(), 64);
+
+		assertEquals(16, leftHashes.getChunkCount());
+		assertTrue(leftHashes.isComparableTo(rightHashes));
+		assertTrue(leftHashes.rootEquals(rightHashes));
+		assertEquals(-1, leftHashes.nextChangedChunk(rightHashes, 0));
+	}
+
+	@Test
+	public void testChangedChunksAreFound() {
+		byte[] leftFile = randomFile(new Random(2), 1000);
+		byte[] rightFile = leftFile.clone();
+		rightFile[64]++;
+		rightFile[130]++;
+		rightFile[999]++;
+
+		ChunkHashTree leftHashes = ChunkHashTree.of(leftFile, 64);
+		ChunkHashTree rightHashes = ChunkHashTree.of(rightFile, 64);
+
+		assertFalse(leftHashes.rootEquals(rightHashes));
+		assertEquals(1, leftHashes.nextChangedChunk(rightHashes, 0));
+		assertEquals(3, leftHashes.nextUnchangedChunk(rightHashes, 1));
+		assertEquals(15, leftHashes.nextChangedChunk(rightHashes, 3));
+		assertEquals(16, leftHashes.nextUnchangedChunk(rightHashes, 15));
+	}
+
+	@Test
+	public void testPatchedTreeEqualsTreeOfPatchedContent() {
+		Random random = new Random(4);
+		byte[] file = randomFile(random, 1000);
+		ChunkHashTree hashes = ChunkHashTree.of(file, 64);
+
+		byte[] patch = randomFile(random, 100);
+		byte[] patchedFile = file.clone();
+		System.arraycopy(patch, 0, patchedFile, 120, 100);
+
+		ChunkHashTree patchedHashes = hashes.patched(ByteBuffer.wrap(file), 120, patch);
+		ChunkHashTree expectedHashes = ChunkHashTree.of(patchedFile, 64);
+
+		assertTrue(patchedHashes.rootEquals(expectedHashes));
+		assertEquals(-1, patchedHashes.nextChangedChunk(expectedHashes, 0));
+		assertEquals(1, hashes.nextChangedChunk(patchedHashes, 0));
+		assertEquals(4, hashes.nextUnchangedChunk(patchedHashes, 1));
+	}
+
+	@Test
+	public void testTreesOfDifferentLayoutsAreNotComparable() {
+		byte[] file = randomFile(new Random(3), 1000);
+
+		assertFalse(ChunkHashTree.of(file, 64).isComparableTo(ChunkHashTree.of(file, 128)));
+		assertFalse(ChunkHashTree.of(file, 64).isComparableTo(ChunkHashTree.of(new byte[999], 64)));
+		assertFalse(ChunkHashTree.of(file, 64).isComparableTo(null));
+		assertNull(ChunkHashTree.of(file, 0));
+	}
+
+	@Test
+	public void testBuiltTreeEqualsTreeOfWrittenContent() {
+		byte[] file = randomFile(new Random(5), 1000);
+		ByteBuffer buffer = ByteBuffer.allocate(file.length);
+		ChunkHashTree.Builder builder = ChunkHashTree.builder(file.length, 64);
+
+		// written out of order, in ranges not aligned to the chunks
+		for(int[] range : new int[][] {{300, 1000}, {0, 100}, {100, 300}}) {
+			buffer.position(range[0]);
+			buffer.put(file, range[0], range[1] - range[0]);
+			builder.hashChunks(buffer, range[0], range[1]);
+		}
+
+		ChunkHashTree hashes = builder.build(buffer);
+
+		assertEquals(file.length, hashes.getLength());
+		assertTrue(hashes.rootEquals(ChunkHashTree.of(file, 64)));
+	}
+
+	@Test
+	public void testBuiltTreeOfContentShorterThanBuffer() {
+		byte[] file = randomFile(new Random(6), 700);
+		ByteBuffer buffer = ByteBuffer.allocate(1000);
+		ChunkHashTree.Builder builder = ChunkHashTree.builder(buffer.capacity(), 64);
+
+		buffer.put(file);
+		builder.hashChunks(buffer, 0, file.length);
+		buffer.flip();
+
+		ChunkHashTree hashes = builder.build(buffer.slice());
+
+		assertTrue(hashes.isComparableTo(ChunkHashTree.of(file, 64)));
+		assertTrue(hashes.rootEquals(ChunkHashTree.of(file, 64)));
+		assertNull(ChunkHashTree.builder(1000, 0));
+	}
+
+	private byte[] randomFile(Random random, int size) {
+		byte[] file = new byte[size];
+		random.nextBytes(file);
+
+		return file;
+	}
+}
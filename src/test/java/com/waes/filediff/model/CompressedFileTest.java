@@ -0,0 +1,124 @@
+package com.waes.filediff.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.zip.Inflater;
+
+import org.junit.Test;
+
+/**
+ * Provides unit tests for the {@link CompressedFile} class.
+ *
+ * @author Rodrigo Hackbarth
+ */
+public class CompressedFileTest {
+
+	@Test
+	public void testDecompressedFileEqualsOriginalContent() {
+		Random random = new Random(1);
+
+		for(int size : new int[] {0, 1, 63, 64, 65, 1000}) {
+			byte[] textFile = textFile(random, size);
+			byte[] randomFile = randomFile(random, size);
+
+			assertArrayEquals(textFile, CompressedFile.of(textFile, 64).toByteArray());
+			assertArrayEquals(randomFile, CompressedFile.of(randomFile, 64).toByteArray());
+		}
+	}
+
+	@Test
+	public void testBlocksAreCompressedOnTheirOwn() {
+		byte[] file = textFile(new Random(2), 1000);
+		CompressedFile compressedFile = CompressedFile.of(file, 64);
+
+		assertEquals(1000, compressedFile.getLength());
+		assertEquals(16, compressedFile.getBlockCount());
+		assertEquals(64, compressedFile.getBlockLength(0));
+		assertEquals(40, compressedFile.getBlockLength(15));
+		assertTrue(compressedFile.getCompressedSize() < file.length);
+
+		byte[] block = new byte[64];
+		assertEquals(40, compressedFile.decompressBlock(15, block, new Inflater()));
+
+		for(int i = 0; i < 40; i++) {
+			assertEquals(file[960 + i], block[i]);
+		}
+	}
+
+	@Test
+	public void testIncompressibleBlocksAreNotLarger() {
+		byte[] file = randomFile(new Random(3), 1000);
+
+		assertEquals(1000, CompressedFile.of(file, 64).getCompressedSize());
+	}
+
+	@Test
+	public void testEqualBlocksAreFoundWithoutDecompression() {
+		byte[] leftFile = textFile(new Random(4), 1000);
+		byte[] rightFile = leftFile.clone();
+		rightFile[130]++;
+
+		CompressedFile leftCompressedFile = CompressedFile.of(leftFile, 64);
+		CompressedFile rightCompressedFile = CompressedFile.of(rightFile, 64);
+
+		assertTrue(leftCompressedFile.isComparableTo(rightCompressedFile));
+		assertTrue(leftCompressedFile.blockEquals(rightCompressedFile, 1));
+		assertFalse(leftCompressedFile.blockEquals(rightCompressedFile, 2));
+		assertTrue(leftCompressedFile.blockEquals(rightCompressedFile, 3));
+	}
+
+	@Test
+	public void testPatchedFileEqualsFileOfPatchedContent() {
+		Random random = new Random(5);
+		byte[] file = textFile(random, 1000);
+		CompressedFile compressedFile = CompressedFile.of(file, 64);
+
+		byte[] patch = randomFile(random, 100);
+		byte[] patchedFile = file.clone();
+		System.arraycopy(patch, 0, patchedFile, 120, 100);
+
+		CompressedFile patchedCompressedFile = compressedFile.patched(120, patch);
+		CompressedFile expectedFile = CompressedFile.of(patchedFile, 64);
+
+		assertArrayEquals(patchedFile, patchedCompressedFile.toByteArray());
+		assertEquals(expectedFile.getCompressedSize(), patchedCompressedFile.getCompressedSize());
+		assertTrue(compressedFile.blockEquals(patchedCompressedFile, 0));
+		assertFalse(compressedFile.blockEquals(patchedCompressedFile, 1));
+		assertTrue(compressedFile.blockEquals(patchedCompressedFile, 4));
+	}
+
+	@Test
+	public void testFilesOfDifferentLayoutsAreNotComparable() {
+		byte[] file = textFile(new Random(6), 1000);
+
+		assertFalse(CompressedFile.of(file, 64).isComparableTo(CompressedFile.of(file, 128)));
+		assertFalse(CompressedFile.of(file, 64).isComparableTo(CompressedFile.of(new byte[999], 64)));
+		assertFalse(CompressedFile.of(file, 64).isComparableTo(null));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBlockSizeMustBePositive() {
+		CompressedFile.of(new byte[10], 0);
+	}
+
+	private byte[] textFile(Random random, int size) {
+		byte[] file = new byte[size];
+
+		for(int i = 0; i < size; i++) {
+			file[i] = (byte) ('a' + random.nextInt(4));
+		}
+
+		return file;
+	}
+
+	private byte[] randomFile(Random random, int size) {
+		byte[] file = new byte[size];
+		random.nextBytes(file);
+
+		return file;
+	}
+}
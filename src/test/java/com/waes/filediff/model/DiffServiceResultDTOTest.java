@@ -0,0 +1,49 @@
+package com.waes.filediff.model;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Provides unit tests for the {@link DiffServiceResultDTO} class.
+ * 
+ * @author Rodrigo Hackbarth
+ */
+public class DiffServiceResultDTOTest {
+
+	@Test
+	public void testGetDiffsReturnsAddedDiffs() {
+		DiffServiceResultDTO result = new DiffServiceResultDTO();
+		
+		for(int i = 0; i < 100; i++) {
+			result.addDiff(i * 10, i + 1);
+		}
+		
+		assertEquals(100, result.getDiffs().size());
+		assertEquals(990, result.getDiffs().get(99).getOffset());
+		assertEquals(100, result.getDiffs().get(99).getLength());
+	}
+	
+	@Test
+	public void testSerializedJsonFormat() throws Exception {
+		DiffServiceResultDTO result = new DiffServiceResultDTO();
+		result.setStatus("success");
+		result.addDiff(0, 2);
+		result.addDiff(5, 1);
+		
+		assertEquals("{\"status\":\"success\",\"message\":null,\"diffs\":[{\"offset\":0,\"length\":2},{\"offset\":5,\"length\":1}]}", 
+				new ObjectMapper().writeValueAsString(result));
+	}
+	
+	@Test
+	public void testSerializedJsonFormatWithoutDiffs() throws Exception {
+		DiffServiceResultDTO result = new DiffServiceResultDTO();
+		result.setStatus("success");
+		result.setMessage("Files are equal.");
+		
+		assertEquals("{\"status\":\"success\",\"message\":\"Files are equal.\",\"diffs\":[]}", 
+				new ObjectMapper().writeValueAsString(result));
+	}
+}
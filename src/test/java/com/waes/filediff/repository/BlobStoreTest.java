@@ -0,0 +1,117 @@
+package com.waes.filediff.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import com.waes.filediff.model.ChunkHashTree;
+
+/**
+ * Provides unit tests for the {@link BlobStore} class.
+ * 
+ * @author Rodrigo Hackbarth
+ */
+public class BlobStoreTest {
+
+	@Test
+	public void testStoreReturnsSameBufferForSameContent() throws IOException {
+		BlobStore blobStore = new BlobStore(new HeapFileStore(), true);
+		
+		ByteBuffer first = blobStore.store(1, new byte[] {1, 2, 3});
+		ByteBuffer second = blobStore.store(2, new byte[] {1, 2, 3});
+		
+		assertSame(first, second);
+		assertEquals(1, blobStore.getBlobCount());
+	}
+	
+	@Test
+	public void testStoreReturnsDifferentBuffersForDifferentContent() throws IOException {
+		BlobStore blobStore = new BlobStore(new HeapFileStore(), true);
+		
+		ByteBuffer first = blobStore.store(1, new byte[] {1, 2, 3});
+		ByteBuffer second = blobStore.store(1, new byte[] {1, 2, 4});
+		
+		assertNotSame(first, second);
+		assertEquals(2, blobStore.getBlobCount());
+	}
+	
+	@Test
+	public void testReleaseDropsBlobOnceNoLongerReferenced() throws IOException {
+		BlobStore blobStore = new BlobStore(new HeapFileStore(), true);
+		
+		ByteBuffer buffer = blobStore.store(1, new byte[] {1, 2, 3});
+		blobStore.store(2, new byte[] {1, 2, 3});
+		
+		blobStore.release(buffer);
+		assertEquals(1, blobStore.getBlobCount());
+		
+		blobStore.release(buffer);
+		assertEquals(0, blobStore.getBlobCount());
+	}
+	
+	@Test
+	public void testRegisterReturnsStoredBufferForSameContent() throws IOException {
+		BlobStore blobStore = new BlobStore(new HeapFileStore(), true);
+		
+		ByteBuffer stored = blobStore.store(1, new byte[] {1, 2, 3});
+		
+		ByteBuffer allocated = new HeapFileStore().allocate(2, 3);
+		allocated.put(new byte[] {1, 2, 3});
+		
+		assertSame(stored, blobStore.register(allocated));
+		assertEquals(1, blobStore.getBlobCount());
+	}
+	
+	@Test
+	public void testStoreIdentifiesContentByItsChunkHashes() throws IOException {
+		BlobStore blobStore = new BlobStore(new HeapFileStore(), true);
+		byte[] file = {1, 2, 3, 4, 5};
+		
+		ByteBuffer first = blobStore.store(1, file, ChunkHashTree.of(file, 2));
+		ByteBuffer second = blobStore.store(2, file.clone(), ChunkHashTree.of(file, 2));
+		ByteBuffer differentChunks = blobStore.store(3, file.clone(), ChunkHashTree.of(file, 4));
+		
+		ByteBuffer allocated = new HeapFileStore().allocate(4, 5);
+		allocated.put(file);
+		
+		assertSame(first, second);
+		assertSame(first, blobStore.register(allocated, ChunkHashTree.of(file, 2)));
+		assertNotSame(first, differentChunks);
+		assertEquals(2, blobStore.getBlobCount());
+	}
+	
+	@Test
+	public void testStorePatchedLeavesPatchedBlobUntouched() throws IOException {
+		BlobStore blobStore = new BlobStore(new HeapFileStore(), true);
+		byte[] file = {1, 2, 3, 4, 5};
+		byte[] patchedFile = {1, 9, 9, 4, 5};
+		
+		ByteBuffer stored = blobStore.store(1, file.clone(), ChunkHashTree.of(file, 2));
+		ChunkHashTree patchedHashes = ChunkHashTree.of(file, 2).patched(stored, 1, new byte[] {9, 9});
+		ByteBuffer patched = blobStore.storePatched(1, stored, 1, new byte[] {9, 9}, patchedHashes);
+		
+		assertNotSame(stored, patched);
+		assertTrue(patched.isReadOnly());
+		assertEquals(ByteBuffer.wrap(file), stored);
+		assertEquals(ByteBuffer.wrap(patchedFile), patched);
+		assertSame(patched, blobStore.store(2, patchedFile, ChunkHashTree.of(patchedFile, 2)));
+		assertEquals(2, blobStore.getBlobCount());
+	}
+	
+	@Test
+	public void testStoreWithoutDeduplication() throws IOException {
+		BlobStore blobStore = new BlobStore(new HeapFileStore(), false);
+		
+		ByteBuffer first = blobStore.store(1, new byte[] {1, 2, 3});
+		ByteBuffer second = blobStore.store(2, new byte[] {1, 2, 3});
+		
+		assertNotSame(first, second);
+		assertEquals(0, blobStore.getBlobCount());
+	}
+}
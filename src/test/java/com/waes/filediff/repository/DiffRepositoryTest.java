@@ -0,0 +1,244 @@
+package com.waes.filediff.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.waes.filediff.model.DiffFilesDTO;
+
+/**
+ * Provides unit tests for the {@link DiffRepository} class.
+ * 
+ * @author Rodrigo Hackbarth
+ */
+public class DiffRepositoryTest {
+
+	private static final int IDS = 64;
+	private static final int UPDATES_PER_THREAD = 20_480;
+
+	@Test
+	public void testUpdateStoresFilesUnderGivenId() {
+		DiffRepository repository = new DiffRepository();
+		ByteBuffer file = ByteBuffer.wrap(new byte[] {1, 2, 3});
+		
+		repository.update(1, current -> {
+			DiffFilesDTO diffDTO = new DiffFilesDTO();
+			diffDTO.setLeftFile(file);
+			return diffDTO;
+		});
+		
+		DiffFilesDTO stored = repository.getFilesForComparisonById(1);
+		assertEquals(Integer.valueOf(1), stored.getId());
+		assertEquals(file, stored.getLeftFile());
+	}
+	
+	@Test
+	public void testUpdateEvictsLeastRecentlyAccessedFilesBeyondMaxBytes() {
+		DiffRepository repository = new DiffRepository();
+		ReflectionTestUtils.setField(repository, "maxBytes", 10L);
+		List<Integer> evictedIds = new ArrayList<>();
+		repository.setEvictionListener((id, diffFiles) -> evictedIds.add(id));
+		
+		repository.save(1, filesOfSize(4));
+		repository.save(2, filesOfSize(4));
+		repository.getFilesForComparisonById(1);
+		repository.save(3, filesOfSize(4));
+		
+		assertNotNull(repository.getFilesForComparisonById(1));
+		assertNull(repository.getFilesForComparisonById(2));
+		assertNotNull(repository.getFilesForComparisonById(3));
+		assertEquals(8, repository.getStoredBytes());
+		assertEquals(1, repository.getSizeEvictionCount());
+		assertEquals(Arrays.asList(2), evictedIds);
+	}
+	
+	@Test
+	public void testUpdateEvictsEldestFilesWhenAllWereAccessed() {
+		DiffRepository repository = new DiffRepository();
+		ReflectionTestUtils.setField(repository, "maxBytes", 10L);
+		List<Integer> evictedIds = new ArrayList<>();
+		repository.setEvictionListener((id, diffFiles) -> evictedIds.add(id));
+		
+		repository.save(1, filesOfSize(4));
+		repository.save(2, filesOfSize(4));
+		repository.getFilesForComparisonById(1);
+		repository.getFilesForComparisonById(2);
+		repository.save(3, filesOfSize(4));
+		
+		// both accessed files got a second chance, the eldest of them is evicted
+		assertEquals(Arrays.asList(1), evictedIds);
+		assertNotNull(repository.getFilesForComparisonById(2));
+		assertEquals(8, repository.getStoredBytes());
+	}
+	
+	@Test
+	public void testUpdateKeepsFilesJustStoredEvenIfLargerThanMaxBytes() {
+		DiffRepository repository = new DiffRepository();
+		ReflectionTestUtils.setField(repository, "maxBytes", 10L);
+		
+		repository.save(1, filesOfSize(4));
+		repository.save(2, filesOfSize(16));
+		
+		assertNull(repository.getFilesForComparisonById(1));
+		assertNotNull(repository.getFilesForComparisonById(2));
+		assertEquals(1, repository.getIdCount());
+	}
+	
+	@Test
+	public void testRemoveExpiredEvictsFilesStoredLongerThanTtl() {
+		DiffRepository repository = new DiffRepository();
+		ReflectionTestUtils.setField(repository, "ttlMinutes", 1L);
+		
+		repository.save(1, filesOfSize(4));
+		repository.removeExpired(System.nanoTime());
+		
+		assertNotNull(repository.getFilesForComparisonById(1));
+		
+		repository.removeExpired(System.nanoTime() + TimeUnit.MINUTES.toNanos(1));
+		
+		assertNull(repository.getFilesForComparisonById(1));
+		assertEquals(0, repository.getStoredBytes());
+		assertEquals(1, repository.getExpiredEvictionCount());
+	}
+	
+	@Test
+	public void testUpdateReturningNullLeavesFilesUnchanged() {
+		DiffRepository repository = new DiffRepository();
+		
+		assertNull(repository.update(1, current -> null));
+		assertNull(repository.getFilesForComparisonById(1));
+		
+		DiffFilesDTO stored = filesOfSize(4);
+		repository.save(1, stored);
+		
+		assertEquals(stored, repository.update(1, current -> null));
+		assertEquals(4, repository.getStoredBytes());
+	}
+	
+	@Test
+	public void testConcurrentUpdatesOfBothSidesAreNotLost() throws Exception {
+		DiffRepository repository = new DiffRepository();
+		int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+		
+		runConcurrently(repository, threads);
+		
+		for(int id = 0; id < IDS; id++) {
+			DiffFilesDTO stored = repository.getFilesForComparisonById(id);
+			
+			assertNotNull(stored.getLeftFile());
+			assertNotNull(stored.getRightFile());
+			assertEquals(threads * UPDATES_PER_THREAD / IDS / 2, counterValue(stored.getLeftFile()));
+			assertEquals(threads * UPDATES_PER_THREAD / IDS / 2, counterValue(stored.getRightFile()));
+		}
+	}
+	
+	@Test
+	public void testThroughputScalesWithNumberOfThreads() throws Exception {
+		int threads = Math.min(Runtime.getRuntime().availableProcessors(), 4);
+		Assume.assumeTrue("Scaling is only measured with several processors", threads > 1);
+		
+		// warms up the JIT before measuring
+		runConcurrently(new DiffRepository(), threads);
+		
+		double singleThreaded = bestThroughput(1);
+		double multiThreaded = bestThroughput(threads);
+		
+		// updates only contend on the same ID, so each thread adds at least half of the single thread throughput
+		assertTrue(String.format("%.0f updates/s with %d threads, %.0f updates/s with 1 thread", multiThreaded, threads, singleThreaded),
+				multiThreaded >= singleThreaded * threads / 2);
+	}
+	
+	/**
+	 * Returns the best number of updates per second out of a few runs of
+	 * the given number of threads.
+	 */
+	private double bestThroughput(int threads) throws Exception {
+		double best = 0;
+		
+		for(int run = 0; run < 3; run++) {
+			long start = System.nanoTime();
+			runConcurrently(new DiffRepository(), threads);
+			long elapsed = System.nanoTime() - start;
+			
+			best = Math.max(best, threads * UPDATES_PER_THREAD / (elapsed / 1e9));
+		}
+		
+		return best;
+	}
+	
+	private DiffFilesDTO filesOfSize(int size) {
+		DiffFilesDTO diffDTO = new DiffFilesDTO();
+		diffDTO.setLeftFile(ByteBuffer.wrap(new byte[size]));
+		return diffDTO;
+	}
+	
+	/**
+	 * Runs the given number of threads, each of them alternately incrementing 
+	 * the counter kept in the left and in the right file of every ID.
+	 */
+	private void runConcurrently(DiffRepository repository, int threads) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Callable<Void>> tasks = new ArrayList<>();
+		
+		for(int t = 0; t < threads; t++) {
+			tasks.add(() -> {
+				for(int i = 0; i < UPDATES_PER_THREAD; i++) {
+					boolean left = (i / IDS) % 2 == 0;
+					
+					repository.update(i % IDS, current -> incremented(current, left));
+				}
+				return null;
+			});
+		}
+		
+		try {
+			for(Future<Void> future : executor.invokeAll(tasks)) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	private DiffFilesDTO incremented(DiffFilesDTO current, boolean left) {
+		DiffFilesDTO updated = new DiffFilesDTO();
+		
+		if(current != null) {
+			updated.setLeftFile(current.getLeftFile());
+			updated.setRightFile(current.getRightFile());
+		}
+		
+		if(left) {
+			updated.setLeftFile(incremented(updated.getLeftFile()));
+		}else {
+			updated.setRightFile(incremented(updated.getRightFile()));
+		}
+		
+		return updated;
+	}
+	
+	private ByteBuffer incremented(ByteBuffer counter) {
+		int value = counter == null ? 0 : counter.getInt(0);
+		
+		return ByteBuffer.allocate(Integer.BYTES).putInt(0, value + 1);
+	}
+	
+	private int counterValue(ByteBuffer counter) {
+		return counter.getInt(0);
+	}
+}
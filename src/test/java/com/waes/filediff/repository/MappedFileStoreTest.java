@@ -0,0 +1,59 @@
+package com.waes.filediff.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+/**
+ * Provides unit tests for the {@link MappedFileStore} class.
+ * 
+ * @author Rodrigo Hackbarth
+ */
+public class MappedFileStoreTest {
+
+	@Test
+	public void testStoreReturnsMappedContent() throws IOException {
+		Path directory = Files.createTempDirectory("diff");
+		byte[] fileContent = new byte[] {1, 2, 3, 4, 5};
+		
+		ByteBuffer stored = new MappedFileStore(directory.toString()).store(1, fileContent);
+		
+		assertTrue(stored.isDirect());
+		assertEquals(fileContent.length, stored.capacity());
+		assertEquals(ByteBuffer.wrap(fileContent), stored);
+	}
+	
+	@Test
+	public void testAllocateReturnsWritableMappedBuffer() throws IOException {
+		Path directory = Files.createTempDirectory("diff");
+		
+		ByteBuffer allocated = new MappedFileStore(directory.toString()).allocate(1, 5);
+		allocated.put(2, (byte) 7);
+		
+		assertTrue(allocated.isDirect());
+		assertEquals(5, allocated.capacity());
+		assertEquals(ByteBuffer.wrap(new byte[] {0, 0, 7, 0, 0}), allocated);
+		
+		try (Stream<Path> files = Files.list(directory)) {
+			assertEquals(0, files.count());
+		}
+	}
+	
+	@Test
+	public void testStoreLeavesNoFileBehind() throws IOException {
+		Path directory = Files.createTempDirectory("diff");
+		
+		new MappedFileStore(directory.toString()).store(1, new byte[] {1, 2, 3});
+		
+		try (Stream<Path> files = Files.list(directory)) {
+			assertEquals(0, files.count());
+		}
+	}
+}
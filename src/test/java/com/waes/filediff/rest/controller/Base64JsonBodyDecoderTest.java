@@ -0,0 +1,110 @@
+package com.waes.filediff.rest.controller;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.waes.filediff.exception.DiffValidationException;
+import com.waes.filediff.service.FileUpload;
+
+/**
+ * Provides unit tests for the {@link Base64JsonBodyDecoder} class.
+ * 
+ * @author Rodrigo Hackbarth
+ */
+public class Base64JsonBodyDecoderTest {
+
+	@Rule
+	public ExpectedException expectedException = ExpectedException.none();
+	
+	@Test
+	public void testDecodeBodyReceivedInPieces() throws DiffValidationException {
+		byte[] file = new byte[1000];
+		new Random(1).nextBytes(file);
+		String encodedFile = Base64.getEncoder().encodeToString(file).replace("/", "\\/");
+		
+		byte[] body = ("{\"name\":\"a\\\"}\",\"tags\":[1,{\"file\":null}],\"file\":\"" + encodedFile + "\",\"size\":1000}")
+				.getBytes(StandardCharsets.UTF_8);
+		
+		// every piece size splits the escapes and the base64 quanta at different places
+		for(int pieceSize = 1; pieceSize <= 7; pieceSize++) {
+			Base64JsonBodyDecoder decoder = new Base64JsonBodyDecoder(new FileUpload(ByteBuffer.allocate(file.length)));
+			
+			for(int offset = 0; offset < body.length; offset += pieceSize) {
+				decoder.decode(ByteBuffer.wrap(body, offset, Math.min(pieceSize, body.length - offset)));
+			}
+			
+			assertArrayEquals(file, decoder.toFileContent().toByteArray());
+		}
+	}
+	
+	@Test
+	public void testDecodeLargeFileFromDirectBuffers() throws DiffValidationException {
+		byte[] file = new byte[100001];
+		new Random(2).nextBytes(file);
+		byte[] body = ("{\"file\":\"" + Base64.getEncoder().encodeToString(file) + "\"}").getBytes(StandardCharsets.UTF_8);
+		
+		Base64JsonBodyDecoder decoder = new Base64JsonBodyDecoder(new FileUpload(ByteBuffer.allocate(file.length)));
+		
+		for(int offset = 0; offset < body.length; offset += 8192) {
+			ByteBuffer piece = ByteBuffer.allocateDirect(Math.min(8192, body.length - offset));
+			piece.put(body, offset, piece.capacity()).flip();
+			decoder.decode(piece);
+		}
+		
+		assertArrayEquals(file, decoder.toFileContent().toByteArray());
+	}
+	
+	@Test
+	public void testDecodeUnpaddedContent() throws DiffValidationException {
+		Base64JsonBodyDecoder decoder = new Base64JsonBodyDecoder(new FileUpload(ByteBuffer.allocate(16)));
+		decoder.decode(ByteBuffer.wrap("{\"file\":\"AQIDBA\"}".getBytes(StandardCharsets.UTF_8)));
+		
+		assertArrayEquals(new byte[] {1, 2, 3, 4}, decoder.toFileContent().toByteArray());
+	}
+	
+	@Test
+	public void testDecodeBodyWithoutFileField() throws DiffValidationException {
+		expectedException.expect(DiffValidationException.class);
+		expectedException.expectMessage("Wrong request format. Expected file data to be associated to 'file' key.");
+		
+		Base64JsonBodyDecoder decoder = new Base64JsonBodyDecoder(new FileUpload(ByteBuffer.allocate(16)));
+		decoder.decode(ByteBuffer.wrap("{\"file1\":\"AQID\"}".getBytes(StandardCharsets.UTF_8)));
+		decoder.toFileContent();
+	}
+	
+	@Test
+	public void testDecodeTruncatedBody() throws DiffValidationException {
+		expectedException.expect(DiffValidationException.class);
+		expectedException.expectMessage("Error reading request body.");
+		
+		Base64JsonBodyDecoder decoder = new Base64JsonBodyDecoder(new FileUpload(ByteBuffer.allocate(16)));
+		decoder.decode(ByteBuffer.wrap("{\"file\":\"AQID".getBytes(StandardCharsets.UTF_8)));
+		decoder.toFileContent();
+	}
+	
+	@Test
+	public void testDecodeInvalidBase64() throws DiffValidationException {
+		expectedException.expect(DiffValidationException.class);
+		expectedException.expectMessage("Error reading request body.");
+		
+		Base64JsonBodyDecoder decoder = new Base64JsonBodyDecoder(new FileUpload(ByteBuffer.allocate(16)));
+		decoder.decode(ByteBuffer.wrap("{\"file\":\"AQ$D\"}".getBytes(StandardCharsets.UTF_8)));
+	}
+	
+	@Test
+	public void testDecodeContentLargerThanUpload() throws DiffValidationException {
+		expectedException.expect(DiffValidationException.class);
+		expectedException.expectMessage("Error reading request body.");
+		
+		Base64JsonBodyDecoder decoder = new Base64JsonBodyDecoder(new FileUpload(ByteBuffer.allocate(3)));
+		decoder.decode(ByteBuffer.wrap("{\"file\":\"AQIDBA==\"}".getBytes(StandardCharsets.UTF_8)));
+	}
+}
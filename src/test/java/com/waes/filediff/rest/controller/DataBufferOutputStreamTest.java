@@ -0,0 +1,117 @@
+package com.waes.filediff.rest.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.reactivestreams.Subscription;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Provides unit tests for the {@link DataBufferOutputStream} class.
+ *
+ * @author Rodrigo Hackbarth
+ */
+public class DataBufferOutputStreamTest {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private Scheduler scheduler;
+
+	private final List<DataBuffer> buffers = new CopyOnWriteArrayList<>();
+
+	private final CountDownLatch finished = new CountDownLatch(1);
+
+	private final AtomicReference<IOException> failure = new AtomicReference<>();
+
+	private final BaseSubscriber<DataBuffer> subscriber = new BaseSubscriber<DataBuffer>() {
+
+		@Override
+		protected void hookOnSubscribe(Subscription subscription) {
+			// requests are made by the tests
+		}
+
+		@Override
+		protected void hookOnNext(DataBuffer buffer) {
+			buffers.add(buffer);
+		}
+	};
+
+	@Before
+	public void setUp() {
+		scheduler = Schedulers.newSingle("data-buffer-output-stream-test");
+	}
+
+	@After
+	public void tearDown() {
+		subscriber.dispose();
+		scheduler.dispose();
+	}
+
+	@Test
+	public void testBuffersAreOnlyEmittedWhenRequested() throws InterruptedException {
+		write(new byte[BUFFER_SIZE * 4 + 10]).subscribe(subscriber);
+
+		subscriber.request(1);
+		Thread.sleep(100);
+
+		assertEquals(1, buffers.size());
+		assertEquals(1, finished.getCount());
+
+		subscriber.request(Long.MAX_VALUE);
+
+		assertTrue(finished.await(5, TimeUnit.SECONDS));
+		assertEquals(5, buffers.size());
+		assertEquals(BUFFER_SIZE * 4 + 10, buffers.stream().mapToInt(DataBuffer::readableByteCount).sum());
+	}
+
+	@Test
+	public void testWritingFailsOnceCancelled() throws InterruptedException {
+		write(new byte[BUFFER_SIZE * 4]).subscribe(subscriber);
+
+		subscriber.request(1);
+		Thread.sleep(100);
+		subscriber.dispose();
+
+		assertTrue(finished.await(5, TimeUnit.SECONDS));
+		assertEquals(1, buffers.size());
+		assertEquals("Response was cancelled.", failure.get().getMessage());
+	}
+
+	/**
+	 * Writes the given content through a {@link DataBufferOutputStream} on
+	 * the scheduler, as done by {@link ReactiveDiffController}.
+	 */
+	private Flux<DataBuffer> write(byte[] content) {
+		return Flux.<DataBuffer>create(sink -> {
+			try (OutputStream responseBody = new DataBufferOutputStream(new DefaultDataBufferFactory(), sink)) {
+				responseBody.write(content);
+			} catch (IOException e) {
+				failure.set(e);
+				sink.error(e);
+			} finally {
+				finished.countDown();
+			}
+
+			sink.complete();
+		}, FluxSink.OverflowStrategy.ERROR)
+		.subscribeOn(scheduler, false);
+	}
+}
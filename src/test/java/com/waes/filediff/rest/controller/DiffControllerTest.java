@@ -1,15 +1,21 @@
 package com.waes.filediff.rest.controller;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.AdditionalMatchers;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
@@ -27,8 +33,15 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.waes.filediff.exception.DiffValidationException;
+import com.waes.filediff.model.DiffEditDTO;
+import com.waes.filediff.model.DiffEditsResultDTO;
 import com.waes.filediff.model.DiffServiceResultDTO;
+import com.waes.filediff.model.DiffSummaryDTO;
+import com.waes.filediff.service.BatchDiffService;
+import com.waes.filediff.service.BatchDiffService.BatchResultListener;
+import com.waes.filediff.service.DiffResultWriter;
 import com.waes.filediff.service.DiffService;
+import com.waes.filediff.service.FileUpload;
 
 /**
  * Provides unit tests for testing the {@link DiffController} class.
@@ -50,6 +63,17 @@ public class DiffControllerTest {
 	@MockBean
 	private DiffService service;
 	
+	@MockBean
+	private BatchDiffService batchService;
+	
+	@Before
+	public void setUpUploads() throws Exception {
+		Mockito.when(service.newUpload(Mockito.anyInt(), Mockito.anyLong()))
+			.thenAnswer(invocation -> new FileUpload(ByteBuffer.allocate(invocation.<Long>getArgument(1).intValue())));
+		Mockito.when(service.newPatch(Mockito.anyLong()))
+			.thenAnswer(invocation -> new FileUpload(ByteBuffer.allocate(invocation.<Long>getArgument(0).intValue())));
+	}
+	
 	@Test
 	public void testSaveLeftFile() throws Exception {
 		String pathStr = new StringBuilder(ENDPOINTS_BASE_PATH).append(1).append("/left").toString();
@@ -110,6 +134,62 @@ public class DiffControllerTest {
         assertEquals("Wrong request format. Expected file data to be associated to 'file' key.", jsonResultContent.get("message").asText());
 	}
 	
+	@Test
+	public void testSaveLeftFileDecodesFileFieldFollowingOtherFields() throws Exception {
+		String pathStr = new StringBuilder(ENDPOINTS_BASE_PATH).append(1).append("/left").toString();
+		
+		byte[] leftFile = loadFile("leftFile.txt");
+		
+		ObjectNode objectNode = JsonNodeFactory.instance.objectNode();
+		objectNode.put("name", "leftFile.txt");
+		objectNode.putObject("metadata").put("file", "not the file");
+		objectNode.put("file", leftFile);
+		
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.post(pathStr)
+                .content(objectNode.toString())
+                .contentType(MediaType.APPLICATION_JSON);
+        
+        MvcResult result = mvc.perform(requestBuilder).andReturn();
+        
+        JsonNode jsonResultContent = new ObjectMapper().readTree(result.getResponse().getContentAsString());
+        assertEquals("success", jsonResultContent.get("status").asText());
+        
+        ArgumentCaptor<FileUpload> upload = ArgumentCaptor.forClass(FileUpload.class);
+        Mockito.verify(service).addLeft(Mockito.eq(1), upload.capture());
+        assertArrayEquals(leftFile, upload.getValue().toByteArray());
+	}
+	
+	@Test
+	public void testSaveLeftFileTruncatedRequestBody() throws Exception {
+		String pathStr = new StringBuilder(ENDPOINTS_BASE_PATH).append(1).append("/left").toString();
+		
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.post(pathStr)
+                .content("{\"file\":\"QUJD")
+                .contentType(MediaType.APPLICATION_JSON);
+        
+        MvcResult result = mvc.perform(requestBuilder).andReturn();
+        
+        JsonNode jsonResultContent = new ObjectMapper().readTree(result.getResponse().getContentAsString());
+        assertEquals("error", jsonResultContent.get("status").asText());
+        assertEquals("Error reading request body.", jsonResultContent.get("message").asText());
+        Mockito.verify(service, Mockito.never()).addLeft(Mockito.anyInt(), Mockito.any(FileUpload.class));
+	}
+	
+	@Test
+	public void testSaveLeftFileRequestBodyNotJsonObject() throws Exception {
+		String pathStr = new StringBuilder(ENDPOINTS_BASE_PATH).append(1).append("/left").toString();
+		
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.post(pathStr)
+                .content("[\"file\"]")
+                .contentType(MediaType.APPLICATION_JSON);
+        
+        MvcResult result = mvc.perform(requestBuilder).andReturn();
+        
+        JsonNode jsonResultContent = new ObjectMapper().readTree(result.getResponse().getContentAsString());
+        assertEquals("error", jsonResultContent.get("status").asText());
+        assertEquals("Wrong request format. Expected file data to be associated to 'file' key.", jsonResultContent.get("message").asText());
+	}
+	
 	@Test
 	public void testSaveRightFile() throws Exception {
 		String pathStr = new StringBuilder(ENDPOINTS_BASE_PATH).append(1).append("/right").toString();
@@ -170,6 +250,118 @@ public class DiffControllerTest {
         assertEquals("Wrong request format. Expected file data to be associated to 'file' key.", jsonResultContent.get("message").asText());
 	}
 	
+	@Test
+	public void testSaveBinaryLeftFile() throws Exception {
+		String pathStr = new StringBuilder(ENDPOINTS_BASE_PATH).append(1).append("/left").toString();
+	
+		byte[] file = loadFile("leftFile.txt");
+		
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.post(pathStr)
+                .content(file)
+                .contentType(MediaType.APPLICATION_OCTET_STREAM);
+        
+        MvcResult result = mvc.perform(requestBuilder).andReturn();
+        
+        JsonNode jsonResultContent = new ObjectMapper().readTree(result.getResponse().getContentAsString());
+        assertEquals("success", jsonResultContent.get("status").asText());
+        assertEquals("Left file was saved successfully.", jsonResultContent.get("message").asText());
+        
+        ArgumentCaptor<FileUpload> upload = ArgumentCaptor.forClass(FileUpload.class);
+        Mockito.verify(service).newUpload(1, file.length);
+        Mockito.verify(service).addLeft(Mockito.eq(1), upload.capture());
+        assertArrayEquals(file, upload.getValue().toByteArray());
+	}
+	
+	@Test
+	public void testSaveBinaryLeftFileWithoutContentLength() throws Exception {
+		String pathStr = new StringBuilder(ENDPOINTS_BASE_PATH).append(1).append("/left").toString();
+		
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.post(pathStr)
+                .contentType(MediaType.APPLICATION_OCTET_STREAM);
+        
+        MvcResult result = mvc.perform(requestBuilder).andReturn();
+        
+        JsonNode jsonResultContent = new ObjectMapper().readTree(result.getResponse().getContentAsString());
+        assertEquals("error", jsonResultContent.get("status").asText());
+        assertEquals("Request body must declare its Content-Length.", jsonResultContent.get("message").asText());
+        Mockito.verify(service, Mockito.never()).newUpload(Mockito.anyInt(), Mockito.anyLong());
+	}
+	
+	@Test
+	public void testSaveBinaryLeftFileExceedingMaxUploadSize() throws Exception {
+		String pathStr = new StringBuilder(ENDPOINTS_BASE_PATH).append(1).append("/left").toString();
+		
+		Mockito.when(service.newUpload(1, 3)).thenThrow(new DiffValidationException("File size must be between 0 and 2 bytes."));
+		
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.post(pathStr)
+                .content(new byte[] {1, 2, 3})
+                .contentType(MediaType.APPLICATION_OCTET_STREAM);
+        
+        MvcResult result = mvc.perform(requestBuilder).andReturn();
+        
+        JsonNode jsonResultContent = new ObjectMapper().readTree(result.getResponse().getContentAsString());
+        assertEquals("error", jsonResultContent.get("status").asText());
+        assertEquals("File size must be between 0 and 2 bytes.", jsonResultContent.get("message").asText());
+        Mockito.verify(service, Mockito.never()).addLeft(Mockito.anyInt(), Mockito.any(FileUpload.class));
+	}
+	
+	@Test
+	public void testSaveBinaryRightFile() throws Exception {
+		String pathStr = new StringBuilder(ENDPOINTS_BASE_PATH).append(1).append("/right").toString();
+	
+		byte[] file = loadFile("leftFileCopy.txt");
+		
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.post(pathStr)
+                .content(file)
+                .contentType(MediaType.APPLICATION_OCTET_STREAM);
+        
+        MvcResult result = mvc.perform(requestBuilder).andReturn();
+        
+        JsonNode jsonResultContent = new ObjectMapper().readTree(result.getResponse().getContentAsString());
+        assertEquals("success", jsonResultContent.get("status").asText());
+        assertEquals("Right file was saved successfully.", jsonResultContent.get("message").asText());
+        
+        ArgumentCaptor<FileUpload> upload = ArgumentCaptor.forClass(FileUpload.class);
+        Mockito.verify(service).addRight(Mockito.eq(1), upload.capture());
+        assertArrayEquals(file, upload.getValue().toByteArray());
+	}
+	
+	@Test
+	public void testPatchRightFile() throws Exception {
+		String pathStr = new StringBuilder(ENDPOINTS_BASE_PATH).append(1).append("/right").toString();
+		
+		byte[] patch = new byte[] {1, 2, 3};
+		
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.patch(pathStr)
+                .param("offset", "10")
+                .content(patch)
+                .contentType(MediaType.APPLICATION_OCTET_STREAM);
+        
+        MvcResult result = mvc.perform(requestBuilder).andReturn();
+        
+        JsonNode jsonResultContent = new ObjectMapper().readTree(result.getResponse().getContentAsString());
+        assertEquals("success", jsonResultContent.get("status").asText());
+        assertEquals("Right file was patched successfully.", jsonResultContent.get("message").asText());
+        
+        Mockito.verify(service).patchRight(Mockito.eq(1), Mockito.eq(10), AdditionalMatchers.aryEq(patch));
+	}
+	
+	@Test
+	public void testPatchUnknownSide() throws Exception {
+		String pathStr = new StringBuilder(ENDPOINTS_BASE_PATH).append(1).append("/middle").toString();
+		
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.patch(pathStr)
+                .param("offset", "0")
+                .content(new byte[] {1})
+                .contentType(MediaType.APPLICATION_OCTET_STREAM);
+        
+        MvcResult result = mvc.perform(requestBuilder).andReturn();
+        
+        JsonNode jsonResultContent = new ObjectMapper().readTree(result.getResponse().getContentAsString());
+        assertEquals("error", jsonResultContent.get("status").asText());
+        assertEquals("Unknown file side: middle", jsonResultContent.get("message").asText());
+	}
+	
 	@Test
 	public void testDiffDiffValidationException() throws Exception {
 		String expectedExceptionMessage = "Diff validation error test message.";
@@ -177,7 +369,7 @@ public class DiffControllerTest {
 
 		String pathStr = ENDPOINTS_BASE_PATH+1;
 		
-		Mockito.when(service.diff(Mockito.anyInt())).thenThrow(diffValidationException);
+		Mockito.doThrow(diffValidationException).when(service).diff(Mockito.anyInt(), Mockito.any(DiffResultWriter.class));
 		
 		RequestBuilder requestBuilder = MockMvcRequestBuilders.get(pathStr);
 		MvcResult result = mvc.perform(requestBuilder).andReturn();
@@ -191,11 +383,13 @@ public class DiffControllerTest {
 	public void testDiffJsonFormattedResultFromDiffServiceResultDTO() throws Exception {
 		String pathStr = ENDPOINTS_BASE_PATH+1;
 		
-		DiffServiceResultDTO diffServiceResultDTO = new DiffServiceResultDTO(); 
-		diffServiceResultDTO.setStatus("success");
-		diffServiceResultDTO.setMessage("Mock result message");
-		
-		Mockito.when(service.diff(Mockito.anyInt())).thenReturn(diffServiceResultDTO);
+		Mockito.doAnswer(invocation -> {
+			DiffResultWriter writer = invocation.getArgument(1);
+			writer.writeStart("success", "Mock result message");
+			writer.writeDiff(3, 2);
+			writer.writeEnd(null);
+			return null;
+		}).when(service).diff(Mockito.anyInt(), Mockito.any(DiffResultWriter.class));
 		
 		RequestBuilder requestBuilder = MockMvcRequestBuilders.get(pathStr);
 		MvcResult result = mvc.perform(requestBuilder).andReturn();
@@ -203,6 +397,113 @@ public class DiffControllerTest {
 		JsonNode jsonResultContent = new ObjectMapper().readTree(result.getResponse().getContentAsString());
         assertEquals("success", jsonResultContent.get("status").asText());
         assertEquals("Mock result message", jsonResultContent.get("message").asText());
+        assertEquals(3, jsonResultContent.get("diffs").get(0).get("offset").asInt());
+        assertEquals(2, jsonResultContent.get("diffs").get(0).get("length").asInt());
+	}
+
+	@Test
+	public void testDiffWithMyersAlgorithm() throws Exception {
+		String pathStr = ENDPOINTS_BASE_PATH+1;
+		
+		DiffEditDTO edit = new DiffEditDTO();
+		edit.setOperation("insert");
+		edit.setLeftOffset(2);
+		edit.setRightOffset(2);
+		edit.setLength(3);
+		
+		DiffEditsResultDTO diffEditsResultDTO = new DiffEditsResultDTO();
+		diffEditsResultDTO.setStatus("success");
+		diffEditsResultDTO.addEdit(edit);
+		
+		Mockito.when(service.diffEdits(Mockito.anyInt())).thenReturn(diffEditsResultDTO);
+		
+		RequestBuilder requestBuilder = MockMvcRequestBuilders.get(pathStr).param("algorithm", "myers");
+		MvcResult result = mvc.perform(requestBuilder).andReturn();
+		
+		JsonNode jsonResultContent = new ObjectMapper().readTree(result.getResponse().getContentAsString());
+        assertEquals("success", jsonResultContent.get("status").asText());
+        assertEquals("insert", jsonResultContent.get("edits").get(0).get("operation").asText());
+        assertEquals(3, jsonResultContent.get("edits").get(0).get("length").asInt());
+	}
+	
+	@Test
+	public void testDiffWithUnknownAlgorithm() throws Exception {
+		String pathStr = ENDPOINTS_BASE_PATH+1;
+		
+		RequestBuilder requestBuilder = MockMvcRequestBuilders.get(pathStr).param("algorithm", "unknown");
+		MvcResult result = mvc.perform(requestBuilder).andReturn();
+		
+		JsonNode jsonResultContent = new ObjectMapper().readTree(result.getResponse().getContentAsString());
+        assertEquals("error", jsonResultContent.get("status").asText());
+        assertEquals("Unknown diff algorithm: unknown", jsonResultContent.get("message").asText());
+	}
+	
+	@Test
+	public void testDiffPageWithCursor() throws Exception {
+		String pathStr = ENDPOINTS_BASE_PATH+1;
+		
+		Mockito.doAnswer(invocation -> {
+			DiffResultWriter writer = invocation.getArgument(4);
+			writer.writeStart("success", null);
+			writer.writeDiff(7, 1);
+			writer.writeEnd("8");
+			return null;
+		}).when(service).diff(Mockito.eq(1), Mockito.eq(5), Mockito.eq(Integer.MAX_VALUE), Mockito.eq(1), Mockito.any(DiffResultWriter.class));
+		
+		RequestBuilder requestBuilder = MockMvcRequestBuilders.get(pathStr).param("limit", "1").param("cursor", "5");
+		MvcResult result = mvc.perform(requestBuilder).andReturn();
+		
+		JsonNode jsonResultContent = new ObjectMapper().readTree(result.getResponse().getContentAsString());
+        assertEquals("success", jsonResultContent.get("status").asText());
+        assertEquals(7, jsonResultContent.get("diffs").get(0).get("offset").asInt());
+        assertEquals("8", jsonResultContent.get("nextCursor").asText());
+	}
+	
+	@Test
+	public void testDiffWithCountMode() throws Exception {
+		String pathStr = ENDPOINTS_BASE_PATH+1;
+		
+		DiffSummaryDTO summary = new DiffSummaryDTO();
+		summary.setStatus("success");
+		summary.setDiffCount(2L);
+		summary.setDiffBytes(3L);
+		Mockito.when(service.diffCount(1)).thenReturn(summary);
+		
+		RequestBuilder requestBuilder = MockMvcRequestBuilders.get(pathStr).param("mode", "count");
+		MvcResult result = mvc.perform(requestBuilder).andReturn();
+		
+		JsonNode jsonResultContent = new ObjectMapper().readTree(result.getResponse().getContentAsString());
+        assertEquals("success", jsonResultContent.get("status").asText());
+        assertEquals(2, jsonResultContent.get("diffCount").asLong());
+        assertEquals(3, jsonResultContent.get("diffBytes").asLong());
+        assertEquals(null, jsonResultContent.get("firstDifference"));
+	}
+	
+	@Test
+	public void testBatchDiff() throws Exception {
+		DiffServiceResultDTO diffResult = new DiffServiceResultDTO();
+		diffResult.setStatus("success");
+		diffResult.setMessage("Files are equal.");
+		
+		Mockito.doAnswer(invocation -> {
+			BatchResultListener listener = invocation.getArgument(1);
+			listener.onResult(1, diffResult);
+			listener.onError(2, new DiffValidationException("No file has been provided under ID: 2"));
+			return null;
+		}).when(batchService).diff(Mockito.eq(Arrays.asList(1, 2)), Mockito.any(BatchResultListener.class));
+		
+		RequestBuilder requestBuilder = MockMvcRequestBuilders.post(ENDPOINTS_BASE_PATH + "batch")
+				.content("[1, 2]")
+				.contentType(MediaType.APPLICATION_JSON);
+		MvcResult result = mvc.perform(requestBuilder).andReturn();
+		
+		JsonNode jsonResultContent = new ObjectMapper().readTree(result.getResponse().getContentAsString());
+        assertEquals(2, jsonResultContent.size());
+        assertEquals(1, jsonResultContent.get(0).get("id").asInt());
+        assertEquals("Files are equal.", jsonResultContent.get(0).get("result").get("message").asText());
+        assertEquals(2, jsonResultContent.get(1).get("id").asInt());
+        assertEquals("error", jsonResultContent.get(1).get("result").get("status").asText());
+        assertEquals("No file has been provided under ID: 2", jsonResultContent.get(1).get("result").get("message").asText());
 	}
 
 	/**
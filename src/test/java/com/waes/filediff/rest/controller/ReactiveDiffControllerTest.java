@@ -0,0 +1,207 @@
+package com.waes.filediff.rest.controller;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.waes.filediff.exception.DiffValidationException;
+import com.waes.filediff.model.DiffServiceResultDTO;
+import com.waes.filediff.service.BatchDiffService;
+import com.waes.filediff.service.BatchDiffService.BatchResultListener;
+import com.waes.filediff.service.DiffResultWriter;
+import com.waes.filediff.service.DiffService;
+import com.waes.filediff.service.FileUpload;
+
+/**
+ * Provides unit tests for testing the {@link ReactiveDiffController} class.
+ * 
+ * @author Rodrigo Hackbarth
+ */
+@RunWith(SpringRunner.class)
+@WebFluxTest(ReactiveDiffController.class)
+@TestPropertySource(properties = "spring.main.web-application-type=reactive")
+public class ReactiveDiffControllerTest {
+
+	/**
+	 * The base path for all endpoints in this controller.
+	 */
+	private static final String ENDPOINTS_BASE_PATH = "/v1/diff/";
+
+	@Autowired
+	private WebTestClient client;
+	
+	@MockBean
+	private DiffService service;
+	
+	@MockBean
+	private BatchDiffService batchService;
+	
+	@Before
+	public void setUpUploads() throws Exception {
+		Mockito.when(service.newUpload(Mockito.anyInt(), Mockito.anyLong()))
+			.thenAnswer(invocation -> new FileUpload(ByteBuffer.allocate(invocation.<Long>getArgument(1).intValue())));
+	}
+	
+	@Test
+	public void testSaveLeftFile() throws Exception {
+		byte[] leftFile = loadFile("leftFile.txt");
+		
+		ObjectNode objectNode = JsonNodeFactory.instance.objectNode();
+		objectNode.put("name", "leftFile.txt");
+		objectNode.put("file", leftFile);
+		
+		JsonNode jsonResultContent = post(ENDPOINTS_BASE_PATH + 1 + "/left", MediaType.APPLICATION_JSON, objectNode.toString().getBytes());
+		
+		assertEquals("success", jsonResultContent.get("status").asText());
+		assertEquals("Left file was saved successfully.", jsonResultContent.get("message").asText());
+		
+		ArgumentCaptor<FileUpload> savedFile = ArgumentCaptor.forClass(FileUpload.class);
+		Mockito.verify(service).addLeft(Mockito.eq(1), savedFile.capture());
+		assertArrayEquals(leftFile, savedFile.getValue().toByteArray());
+	}
+	
+	@Test
+	public void testSaveRightFileRequestBodyFileAssociatedWithWrongKey() throws Exception {
+		ObjectNode objectNode = JsonNodeFactory.instance.objectNode();
+		objectNode.put("file1", loadFile("leftFileCopy.txt"));
+		
+		JsonNode jsonResultContent = post(ENDPOINTS_BASE_PATH + 1 + "/right", MediaType.APPLICATION_JSON, objectNode.toString().getBytes());
+		
+		assertEquals("error", jsonResultContent.get("status").asText());
+		assertEquals("Wrong request format. Expected file data to be associated to 'file' key.", jsonResultContent.get("message").asText());
+	}
+	
+	@Test
+	public void testSaveBinaryRightFile() throws Exception {
+		byte[] rightFile = loadFile("leftFileCopy.txt");
+		
+		JsonNode jsonResultContent = post(ENDPOINTS_BASE_PATH + 1 + "/right", MediaType.APPLICATION_OCTET_STREAM, rightFile);
+		
+		assertEquals("Right file was saved successfully.", jsonResultContent.get("message").asText());
+		
+		ArgumentCaptor<FileUpload> savedFile = ArgumentCaptor.forClass(FileUpload.class);
+		Mockito.verify(service).newUpload(1, rightFile.length);
+		Mockito.verify(service).addRight(Mockito.eq(1), savedFile.capture());
+		assertArrayEquals(rightFile, savedFile.getValue().toByteArray());
+	}
+	
+	@Test
+	public void testSaveBinaryRightFileExceedingMaxUploadSize() throws Exception {
+		Mockito.when(service.newUpload(1, 3)).thenThrow(new DiffValidationException("File size must be between 0 and 2 bytes."));
+		
+		JsonNode jsonResultContent = post(ENDPOINTS_BASE_PATH + 1 + "/right", MediaType.APPLICATION_OCTET_STREAM, new byte[] {1, 2, 3});
+		
+		assertEquals("error", jsonResultContent.get("status").asText());
+		assertEquals("File size must be between 0 and 2 bytes.", jsonResultContent.get("message").asText());
+		Mockito.verify(service, Mockito.never()).addRight(Mockito.anyInt(), Mockito.any(FileUpload.class));
+	}
+	
+	@Test
+	public void testDiff() throws Exception {
+		Mockito.doAnswer(invocation -> {
+			DiffResultWriter writer = invocation.getArgument(1);
+			writer.writeStart("success", null);
+			writer.writeDiff(0, 2);
+			writer.writeDiff(10, 3);
+			writer.writeEnd(null);
+			return null;
+		}).when(service).diff(Mockito.eq(1), Mockito.any(DiffResultWriter.class));
+		
+		JsonNode jsonResultContent = get(ENDPOINTS_BASE_PATH + 1);
+		
+		assertEquals("success", jsonResultContent.get("status").asText());
+		assertEquals(2, jsonResultContent.get("diffs").size());
+		assertEquals(10, jsonResultContent.get("diffs").get(1).get("offset").asInt());
+		assertEquals(3, jsonResultContent.get("diffs").get(1).get("length").asInt());
+	}
+	
+	@Test
+	public void testDiffNoFilesProvided() throws Exception {
+		Mockito.doThrow(new DiffValidationException("No file has been provided under ID: 2"))
+				.when(service).diff(Mockito.eq(2), Mockito.any(DiffResultWriter.class));
+		
+		JsonNode jsonResultContent = get(ENDPOINTS_BASE_PATH + 2);
+		
+		assertEquals("error", jsonResultContent.get("status").asText());
+		assertEquals("No file has been provided under ID: 2", jsonResultContent.get("message").asText());
+	}
+	
+	@Test
+	public void testBatchDiffAsNdjson() throws Exception {
+		DiffServiceResultDTO diffResult = new DiffServiceResultDTO();
+		diffResult.setStatus("success");
+		diffResult.setMessage("Files are equal.");
+		
+		Mockito.doAnswer(invocation -> {
+			BatchResultListener listener = invocation.getArgument(1);
+			listener.onResult(1, diffResult);
+			listener.onError(2, new DiffValidationException("No file has been provided under ID: 2"));
+			return null;
+		}).when(batchService).diff(Mockito.eq(Arrays.asList(1, 2)), Mockito.any(BatchResultListener.class));
+		
+		String[] lines = client.post().uri(ENDPOINTS_BASE_PATH + "batch")
+				.contentType(MediaType.APPLICATION_JSON)
+				.accept(MediaType.valueOf("application/x-ndjson"))
+				.syncBody("[1, 2]")
+				.exchange()
+				.expectBody(String.class).returnResult().getResponseBody().split("\n");
+		
+		assertEquals(2, lines.length);
+		assertEquals("Files are equal.", new ObjectMapper().readTree(lines[0]).get("result").get("message").asText());
+		assertEquals("error", new ObjectMapper().readTree(lines[1]).get("result").get("status").asText());
+	}
+	
+	private JsonNode post(String path, MediaType contentType, byte[] body) throws IOException {
+		byte[] response = client.post().uri(path)
+				.contentType(contentType)
+				.syncBody(body)
+				.exchange()
+				.expectBody().returnResult().getResponseBody();
+		
+		return new ObjectMapper().readTree(response);
+	}
+	
+	private JsonNode get(String path) throws IOException {
+		byte[] response = client.get().uri(path)
+				.exchange()
+				.expectBody().returnResult().getResponseBody();
+		
+		return new ObjectMapper().readTree(response);
+	}
+	
+	/**
+	 * Finds the requested file in the resources and returns it.
+	 * 
+	 * @return The requested file from the resources folder
+	 * @throws URISyntaxException
+	 * @throws IOException
+	 */
+	private byte[] loadFile(String filename) throws URISyntaxException, IOException {
+		Path path = Paths.get(getClass().getClassLoader().getResource(filename).toURI());
+		return Files.readAllBytes(path);
+	}
+}
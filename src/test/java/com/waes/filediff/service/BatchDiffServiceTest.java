@@ -0,0 +1,117 @@
+package com.waes.filediff.service;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.waes.filediff.exception.DiffValidationException;
+import com.waes.filediff.model.DiffServiceResultDTO;
+import com.waes.filediff.service.BatchDiffService.BatchResultListener;
+
+/**
+ * Provides unit tests for the {@link BatchDiffService} class.
+ * 
+ * @author Rodrigo Hackbarth
+ */
+@RunWith(SpringRunner.class)
+@TestPropertySource(properties = {"diff.batch.threads=4", "diff.batch.max-ids=50"})
+public class BatchDiffServiceTest {
+
+	@TestConfiguration
+	static class BatchDiffServiceTestContextConfiguration {
+		
+		@Bean
+		public BatchDiffService batchDiffService() {
+			return new BatchDiffService();
+		}
+	}
+	
+	@Autowired
+	private BatchDiffService service;
+	
+	@MockBean
+	private DiffService diffService;
+	
+	@Rule
+	public ExpectedException expectedException = ExpectedException.none();
+	
+	@Test
+	public void testResultsAreHandedOutInOrder() throws DiffValidationException, IOException {
+		Mockito.when(diffService.diff(Mockito.anyInt())).thenAnswer(invocation -> {
+			int id = invocation.getArgument(0);
+			
+			if(id % 10 == 0) {
+				throw new DiffValidationException("No file has been provided under ID: " + id);
+			}
+			
+			// later IDs finish first, which must not change the order of the results
+			Thread.sleep(50 - id);
+			
+			DiffServiceResultDTO result = new DiffServiceResultDTO();
+			result.setStatus("success");
+			result.setMessage("Files under ID " + id + " are equal.");
+			return result;
+		});
+		
+		List<Integer> ids = IntStream.rangeClosed(1, 40).boxed().collect(Collectors.toList());
+		List<String> results = new ArrayList<>();
+		
+		service.diff(ids, new BatchResultListener() {
+			
+			@Override
+			public void onResult(int id, DiffServiceResultDTO result) {
+				results.add(id + ": " + result.getMessage());
+			}
+			
+			@Override
+			public void onError(int id, DiffValidationException error) {
+				results.add(id + ": " + error.getMessage());
+			}
+		});
+		
+		assertEquals(40, results.size());
+		for(int id = 1; id <= 40; id++) {
+			String expected = id % 10 == 0 ? "No file has been provided under ID: " + id : "Files under ID " + id + " are equal.";
+			assertEquals(id + ": " + expected, results.get(id - 1));
+		}
+	}
+	
+	@Test
+	public void testBatchOverMaxIds() throws DiffValidationException, IOException {
+		expectedException.expect(DiffValidationException.class);
+		expectedException.expectMessage("Batch requests are limited to 50 IDs.");
+		
+		service.diff(IntStream.rangeClosed(1, 51).boxed().collect(Collectors.toList()), Mockito.mock(BatchResultListener.class));
+	}
+	
+	@Test
+	public void testUnexpectedErrorOnlyAffectsItsId() throws DiffValidationException, IOException {
+		DiffServiceResultDTO equalResult = new DiffServiceResultDTO();
+		equalResult.setStatus("success");
+		Mockito.when(diffService.diff(1)).thenReturn(equalResult);
+		Mockito.when(diffService.diff(2)).thenThrow(new IllegalStateException());
+		
+		BatchResultListener listener = Mockito.mock(BatchResultListener.class);
+		service.diff(Arrays.asList(1, 2), listener);
+		
+		Mockito.verify(listener).onResult(1, equalResult);
+		Mockito.verify(listener).onError(Mockito.eq(2), Mockito.argThat(error -> "Error comparing files under ID: 2".equals(error.getMessage())));
+	}
+}
@@ -0,0 +1,174 @@
+package com.waes.filediff.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Provides unit tests for the {@link BlockMatchingDiff} class.
+ *
+ * @author Rodrigo Hackbarth
+ */
+public class BlockMatchingDiffTest {
+
+	@Test
+	public void testDiffDetectsContentShiftedByInsertedByte() {
+		byte[] leftFile = randomFile(new Random(1), 10_000);
+		byte[] rightFile = new byte[leftFile.length + 1];
+		rightFile[0] = 42;
+		System.arraycopy(leftFile, 0, rightFile, 1, leftFile.length);
+
+		Regions regions = diff(leftFile, rightFile, 64);
+
+		assertEquals("literal 0 0 1;copy 0 1 10000;", regions.operations.toString());
+	}
+
+	@Test
+	public void testDiffDetectsMovedContent() {
+		byte[] leftFile = randomFile(new Random(2), 1024);
+		byte[] rightFile = new byte[leftFile.length];
+		System.arraycopy(leftFile, 512, rightFile, 0, 512);
+		System.arraycopy(leftFile, 0, rightFile, 512, 512);
+
+		Regions regions = diff(leftFile, rightFile, 64);
+
+		assertEquals("copy 512 0 512;copy 0 512 512;", regions.operations.toString());
+	}
+
+	@Test
+	public void testDiffRegionsRebuildRightFile() {
+		Random random = new Random(3);
+
+		for(int test = 0; test < 200; test++) {
+			byte[] leftFile = randomFile(random, random.nextInt(2000));
+			byte[] rightFile = mutate(random, leftFile);
+
+			Regions regions = diff(leftFile, rightFile, 1 + random.nextInt(32));
+
+			assertArrayEquals(rightFile, regions.rebuilt.toByteArray());
+		}
+	}
+
+	@Test
+	public void testDiffPrefersBlockFollowingLastCopy() {
+		byte[] a = randomFile(new Random(4), 64);
+		byte[] b = randomFile(new Random(5), 64);
+		byte[] leftFile = new byte[192];
+		System.arraycopy(b, 0, leftFile, 0, 64);
+		System.arraycopy(a, 0, leftFile, 64, 64);
+		System.arraycopy(b, 0, leftFile, 128, 64);
+		byte[] rightFile = new byte[129];
+		System.arraycopy(a, 0, rightFile, 0, 64);
+		rightFile[64] = (byte) (b[0] + 1);
+		System.arraycopy(b, 0, rightFile, 65, 64);
+
+		Regions regions = diff(leftFile, rightFile, 64);
+
+		assertEquals("copy 64 0 64;literal 128 64 1;copy 128 65 64;", regions.operations.toString());
+	}
+
+	@Test
+	public void testDiffRegionsRebuildRightFileWithRepeatedBlocks() {
+		Random random = new Random(6);
+
+		for(int test = 0; test < 50; test++) {
+			// two byte values only, so many blocks share the same checksum
+			byte[] leftFile = new byte[random.nextInt(4000)];
+			for(int i = 0; i < leftFile.length; i++) {
+				leftFile[i] = (byte) random.nextInt(2);
+			}
+			byte[] rightFile = mutate(random, leftFile);
+
+			Regions regions = diff(leftFile, rightFile, 1 + random.nextInt(8));
+
+			assertArrayEquals(rightFile, regions.rebuilt.toByteArray());
+		}
+	}
+
+	private Regions diff(byte[] leftFile, byte[] rightFile, int blockSize) {
+		Regions regions = new Regions(leftFile, rightFile);
+		BlockMatchingDiff.diff(ByteBuffer.wrap(leftFile), ByteBuffer.wrap(rightFile), blockSize, regions);
+
+		return regions;
+	}
+
+	private byte[] randomFile(Random random, int size) {
+		byte[] file = new byte[size];
+		random.nextBytes(file);
+
+		return file;
+	}
+
+	/**
+	 * Returns a copy of the given file with a few regions inserted,
+	 * deleted and moved.
+	 */
+	private byte[] mutate(Random random, byte[] file) {
+		ByteArrayOutputStream copy = new ByteArrayOutputStream();
+		int offset = 0;
+
+		while(offset < file.length) {
+			int length = Math.min(file.length - offset, 1 + random.nextInt(300));
+
+			switch(random.nextInt(4)) {
+				case 0:
+					// region deleted
+					break;
+				case 1:
+					byte[] inserted = randomFile(random, random.nextInt(20));
+					copy.write(inserted, 0, inserted.length);
+					copy.write(file, offset, length);
+					break;
+				default:
+					copy.write(file, offset, length);
+			}
+
+			offset += length;
+		}
+
+		byte[] mutated = copy.toByteArray();
+		if(mutated.length > 100 && random.nextBoolean()) {
+			byte[] head = Arrays.copyOfRange(mutated, 0, 50);
+			System.arraycopy(mutated, 50, mutated, 0, mutated.length - 50);
+			System.arraycopy(head, 0, mutated, mutated.length - 50, 50);
+		}
+
+		return mutated;
+	}
+
+	/**
+	 * Records the reported regions and rebuilds the right file from them.
+	 */
+	private static class Regions implements BlockMatchingDiff.BlockListener {
+
+		private final byte[] leftFile;
+		private final byte[] rightFile;
+		private final StringBuilder operations = new StringBuilder();
+		private final ByteArrayOutputStream rebuilt = new ByteArrayOutputStream();
+
+		Regions(byte[] leftFile, byte[] rightFile) {
+			this.leftFile = leftFile;
+			this.rightFile = rightFile;
+		}
+
+		@Override
+		public void onCopy(int leftOffset, int rightOffset, int length) {
+			assertEquals(rebuilt.size(), rightOffset);
+			rebuilt.write(leftFile, leftOffset, length);
+			operations.append("copy ").append(leftOffset).append(' ').append(rightOffset).append(' ').append(length).append(';');
+		}
+
+		@Override
+		public void onLiteral(int leftOffset, int rightOffset, int length) {
+			assertEquals(rebuilt.size(), rightOffset);
+			rebuilt.write(rightFile, rightOffset, length);
+			operations.append("literal ").append(leftOffset).append(' ').append(rightOffset).append(' ').append(length).append(';');
+		}
+	}
+}
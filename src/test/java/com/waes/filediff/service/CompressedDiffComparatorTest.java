@@ -0,0 +1,145 @@
+package com.waes.filediff.service;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.waes.filediff.model.CompressedFile;
+
+/**
+ * Provides unit tests for the {@link CompressedDiffComparator} class.
+ *
+ * @author Rodrigo Hackbarth
+ */
+public class CompressedDiffComparatorTest {
+
+	@Test
+	public void testCompareMatchesComparisonOfDecompressedFiles() {
+		Random random = new Random(42);
+
+		for(int size = 0; size < 200; size += 7) {
+			for(int density = 0; density <= 100; density += 10) {
+				byte[] leftFile = textFile(random, size);
+				byte[] rightFile = mutate(random, leftFile, density);
+
+				for(int blockSize : new int[] {1, 8, 33, 256}) {
+					assertRunsEqual(expectedRuns(leftFile, rightFile, 0, size),
+							compressedRuns(leftFile, rightFile, blockSize, 0, size));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testRunsCrossingBlocksAreJoined() {
+		byte[] leftFile = new byte[64];
+		byte[] rightFile = leftFile.clone();
+
+		for(int i = 10; i < 50; i++) {
+			rightFile[i] = 1;
+		}
+
+		List<int[]> runs = compressedRuns(leftFile, rightFile, 16, 0, 64);
+
+		assertEquals(1, runs.size());
+		assertEquals(10, runs.get(0)[0]);
+		assertEquals(40, runs.get(0)[1]);
+	}
+
+	@Test
+	public void testCompareRangeMatchesComparisonOfDecompressedFiles() {
+		Random random = new Random(7);
+		byte[] leftFile = textFile(random, 257);
+		byte[] rightFile = mutate(random, leftFile, 30);
+
+		for(int from = 0; from < 40; from += 3) {
+			for(int to = leftFile.length - 40; to <= leftFile.length; to += 3) {
+				assertRunsEqual(expectedRuns(leftFile, rightFile, from, to),
+						compressedRuns(leftFile, rightFile, 16, from, to));
+			}
+		}
+	}
+
+	@Test
+	public void testFirstDifferenceAndFirstEqualMatchRuns() {
+		Random random = new Random(11);
+
+		for(int size = 1; size < 200; size += 13) {
+			byte[] leftFile = textFile(random, size);
+			byte[] rightFile = mutate(random, leftFile, 20);
+			CompressedFile leftCompressedFile = CompressedFile.of(leftFile, 16);
+			CompressedFile rightCompressedFile = CompressedFile.of(rightFile, 16);
+			List<int[]> runs = expectedRuns(leftFile, rightFile, 0, size);
+
+			assertEquals(runs.isEmpty() ? -1 : runs.get(0)[0],
+					CompressedDiffComparator.firstDifference(leftCompressedFile, rightCompressedFile, 0, size));
+
+			for(int[] run : runs) {
+				assertEquals(run[0] + run[1], CompressedDiffComparator.firstEqual(leftCompressedFile, rightCompressedFile, run[0], size));
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testFilesOfDifferentLayoutsCannotBeCompared() {
+		byte[] file = new byte[100];
+
+		CompressedDiffComparator.compare(CompressedFile.of(file, 16), CompressedFile.of(file, 32), 0, 100, (offset, length) -> {});
+	}
+
+	private List<int[]> compressedRuns(byte[] leftFile, byte[] rightFile, int blockSize, int from, int to) {
+		List<int[]> runs = new ArrayList<>();
+		int count = CompressedDiffComparator.compare(CompressedFile.of(leftFile, blockSize), CompressedFile.of(rightFile, blockSize),
+				from, to, (offset, length) -> runs.add(new int[] {offset, length}));
+
+		assertEquals(runs.size(), count);
+
+		return runs;
+	}
+
+	private List<int[]> expectedRuns(byte[] leftFile, byte[] rightFile, int from, int to) {
+		List<int[]> runs = new ArrayList<>();
+		DiffComparator.compare(leftFile, rightFile, from, to, (offset, length) -> runs.add(new int[] {offset, length}));
+
+		return runs;
+	}
+
+	private void assertRunsEqual(List<int[]> expected, List<int[]> actual) {
+		assertEquals(expected.size(), actual.size());
+
+		for(int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i)[0], actual.get(i)[0]);
+			assertEquals(expected.get(i)[1], actual.get(i)[1]);
+		}
+	}
+
+	private byte[] textFile(Random random, int size) {
+		byte[] file = new byte[size];
+
+		for(int i = 0; i < size; i++) {
+			file[i] = (byte) ('a' + random.nextInt(4));
+		}
+
+		return file;
+	}
+
+	/**
+	 * Returns a copy of the given file with the given percentage of its
+	 * bytes changed.
+	 */
+	private byte[] mutate(Random random, byte[] file, int density) {
+		byte[] mutated = file.clone();
+
+		for(int i = 0; i < mutated.length; i++) {
+			if(random.nextInt(100) < density) {
+				mutated[i]++;
+			}
+		}
+
+		return mutated;
+	}
+}
@@ -0,0 +1,173 @@
+package com.waes.filediff.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.waes.filediff.exception.DiffValidationException;
+import com.waes.filediff.model.DiffEditsResultDTO;
+import com.waes.filediff.model.DiffFilesDTO;
+import com.waes.filediff.model.DiffServiceResultDTO;
+import com.waes.filediff.repository.BlobStore;
+import com.waes.filediff.repository.DiffRepository;
+import com.waes.filediff.repository.HeapFileStore;
+
+/**
+ * Provides unit tests for the {@link DiffService} class storing the files
+ * compressed, with "diff.storage.compression.enabled".
+ *
+ * @author Rodrigo Hackbarth
+ */
+@RunWith(SpringRunner.class)
+@TestPropertySource(properties = {"diff.storage.compression.enabled=true", "diff.storage.compression.block-size=16"})
+public class CompressedDiffServiceTest {
+
+	@TestConfiguration
+    static class CompressedDiffServiceTestContextConfiguration {
+
+        @Bean
+        public DiffService diffService() {
+            return new DiffService();
+        }
+
+        @Bean
+        public DiffRepository diffRepository() {
+        	return new DiffRepository();
+        }
+
+        @Bean
+        public BlobStore blobStore() {
+        	return new BlobStore(new HeapFileStore(), true);
+        }
+
+        @Bean
+        public ParallelDiffComparator parallelDiffComparator() {
+        	return new ParallelDiffComparator(64, 16, 2);
+        }
+
+        @Bean
+        public DiffResultCache diffResultCache() {
+        	return new DiffResultCache(10);
+        }
+    }
+
+	@Autowired
+	private DiffService service;
+
+	@Autowired
+	private DiffRepository repository;
+
+	@Autowired
+	private BlobStore blobStore;
+
+	@Rule
+	public ExpectedException expectedException = ExpectedException.none();
+
+	@Test
+	public void testFilesAreStoredCompressed() throws IOException {
+		int id = 1;
+		long storedBytes = repository.getStoredBytes();
+
+		service.addLeft(id, new byte[100]);
+
+		DiffFilesDTO diffFiles = repository.getFilesForComparisonById(id);
+
+		assertNull(diffFiles.getLeftFile());
+		assertNull(diffFiles.getLeftFileHashes());
+		assertNotNull(diffFiles.getLeftCompressedFile());
+		assertEquals(100, diffFiles.getLeftCompressedFile().getLength());
+		assertEquals(0, blobStore.getBlobCount());
+		assertEquals(storedBytes + diffFiles.getLeftCompressedFile().getCompressedSize(), repository.getStoredBytes());
+	}
+
+	@Test
+	public void testDiffJoinsRunsAcrossBlocks() throws IOException, DiffValidationException {
+		int id = 2;
+		byte[] leftFile = new byte[100];
+		byte[] rightFile = new byte[100];
+
+		for(int i = 10; i < 40; i++) {
+			rightFile[i] = 1;
+		}
+		rightFile[99] = 1;
+
+		service.addLeft(id, leftFile);
+		service.addRight(id, rightFile);
+
+		DiffServiceResultDTO diffResult = service.diff(id);
+
+		assertNull(diffResult.getMessage());
+		assertEquals(2, diffResult.getDiffCount());
+		assertEquals(10, diffResult.getDiffOffset(0));
+		assertEquals(30, diffResult.getDiffLength(0));
+		assertEquals(99, diffResult.getDiffOffset(1));
+		assertEquals(1, diffResult.getDiffLength(1));
+	}
+
+	@Test
+	public void testDiffEqualAndDifferentInSize() throws IOException, DiffValidationException {
+		service.addLeft(3, new byte[100]);
+		service.addRight(3, new byte[100]);
+		service.addLeft(4, new byte[100]);
+		service.addRight(4, new byte[99]);
+
+		assertEquals("Files are equal.", service.diff(3).getMessage());
+		assertEquals("Files are different in size.", service.diff(4).getMessage());
+	}
+
+	@Test
+	public void testPatchRecomputesDiffsOfPatchedRange() throws IOException, DiffValidationException {
+		int id = 5;
+
+		service.addLeft(id, new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20});
+		service.addRight(id, new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20});
+
+		assertEquals("Files are equal.", service.diff(id).getMessage());
+
+		service.patchRight(id, 14, new byte[] {0, 0, 0});
+
+		DiffServiceResultDTO diffResult = service.diff(id);
+
+		assertEquals(1, diffResult.getDiffCount());
+		assertEquals(14, diffResult.getDiffOffset(0));
+		assertEquals(3, diffResult.getDiffLength(0));
+	}
+
+	@Test
+	public void testDiffEditsDecompressesFiles() throws IOException, DiffValidationException {
+		int id = 6;
+
+		service.addLeft(id, "abcdefghijklmnopqrstuvwxyz".getBytes());
+		service.addRight(id, "abcdefghijklmnopqrstuvwxyzz".getBytes());
+
+		DiffEditsResultDTO result = service.diffEdits(id);
+
+		assertEquals(1, result.getEdits().size());
+		assertEquals("insert", result.getEdits().get(0).getOperation());
+		assertEquals(1, result.getEdits().get(0).getLength());
+	}
+
+	@Test
+	public void testDiffRightFileNotFoundForGivenId() throws IOException, DiffValidationException {
+		int id = 7;
+
+		service.addLeft(id, new byte[10]);
+
+		expectedException.expect(DiffValidationException.class);
+		expectedException.expectMessage("Right file has not been provided under ID: " + id);
+
+		service.diff(id);
+	}
+}
@@ -0,0 +1,157 @@
+package com.waes.filediff.service;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Provides unit tests for the {@link DiffComparator} class.
+ *
+ * @author Rodrigo Hackbarth
+ */
+public class DiffComparatorTest {
+
+	@Test
+	public void testCompareEqualFiles() {
+		byte[] leftFile = randomFile(new Random(1), 1000);
+
+		List<int[]> runs = new ArrayList<>();
+
+		assertEquals(0, DiffComparator.compare(leftFile, leftFile.clone(), (offset, length) -> runs.add(new int[] {offset, length})));
+		assertEquals(0, runs.size());
+	}
+
+	@Test
+	public void testCompareEmptyFiles() {
+		assertEquals(0, DiffComparator.compare(new byte[0], new byte[0], (offset, length) -> {}));
+	}
+
+	@Test
+	public void testCompareMatchesByteByByteComparison() {
+		Random random = new Random(42);
+
+		for(int size = 0; size < 70; size++) {
+			for(int density = 0; density <= 100; density += 10) {
+				byte[] leftFile = randomFile(random, size);
+				byte[] rightFile = mutate(random, leftFile, density);
+
+				assertRunsEqual(byteByByteRuns(leftFile, rightFile, 0, size), kernelRuns(leftFile, rightFile, 0, size));
+			}
+		}
+	}
+
+	@Test
+	public void testCompareRangeMatchesByteByByteComparison() {
+		Random random = new Random(7);
+		byte[] leftFile = randomFile(random, 257);
+		byte[] rightFile = mutate(random, leftFile, 30);
+
+		for(int from = 0; from < 20; from++) {
+			for(int to = leftFile.length - 20; to <= leftFile.length; to++) {
+				assertRunsEqual(byteByByteRuns(leftFile, rightFile, from, to), kernelRuns(leftFile, rightFile, from, to));
+			}
+		}
+	}
+
+	@Test
+	public void testFirstDifferenceMatchesFirstRunOffset() {
+		Random random = new Random(11);
+
+		for(int size = 0; size < 70; size++) {
+			for(int density = 0; density <= 20; density += 2) {
+				ByteBuffer leftFile = ByteBuffer.wrap(randomFile(random, size));
+				ByteBuffer rightFile = ByteBuffer.wrap(mutate(random, leftFile.array(), density));
+				List<int[]> runs = byteByByteRuns(leftFile.array(), rightFile.array(), 0, size);
+
+				assertEquals(runs.isEmpty() ? -1 : runs.get(0)[0], DiffComparator.firstDifference(leftFile, rightFile, 0, size));
+			}
+		}
+	}
+
+	@Test
+	public void testFirstEqualMatchesRunEnds() {
+		Random random = new Random(13);
+
+		for(int size = 0; size < 70; size++) {
+			for(int density = 50; density <= 100; density += 10) {
+				ByteBuffer leftFile = ByteBuffer.wrap(randomFile(random, size));
+				ByteBuffer rightFile = ByteBuffer.wrap(mutate(random, leftFile.array(), density));
+
+				for(int[] run : byteByByteRuns(leftFile.array(), rightFile.array(), 0, size)) {
+					assertEquals(run[0] + run[1], DiffComparator.firstEqual(leftFile, rightFile, run[0], size));
+				}
+			}
+		}
+	}
+
+	private List<int[]> kernelRuns(byte[] leftFile, byte[] rightFile, int from, int to) {
+		List<int[]> runs = new ArrayList<>();
+		int count = DiffComparator.compare(leftFile, rightFile, from, to, (offset, length) -> runs.add(new int[] {offset, length}));
+
+		assertEquals(runs.size(), count);
+
+		return runs;
+	}
+
+	/**
+	 * Reference implementation, comparing one byte per iteration.
+	 */
+	private List<int[]> byteByByteRuns(byte[] leftFile, byte[] rightFile, int from, int to) {
+		List<int[]> runs = new ArrayList<>();
+		int offset = -1;
+
+		for(int i = from; i < to; i++) {
+			if(leftFile[i] != rightFile[i]) {
+				if(offset == -1) {
+					offset = i;
+				}
+			}else if(offset != -1) {
+				runs.add(new int[] {offset, i - offset});
+				offset = -1;
+			}
+		}
+
+		if(offset != -1) {
+			runs.add(new int[] {offset, to - offset});
+		}
+
+		return runs;
+	}
+
+	private void assertRunsEqual(List<int[]> expected, List<int[]> actual) {
+		assertEquals(expected.size(), actual.size());
+
+		for(int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i)[0], actual.get(i)[0]);
+			assertEquals(expected.get(i)[1], actual.get(i)[1]);
+		}
+	}
+
+	private byte[] randomFile(Random random, int size) {
+		byte[] file = new byte[size];
+		random.nextBytes(file);
+
+		return file;
+	}
+
+	/**
+	 * Returns a copy of the given file in which roughly the given
+	 * percentage of bytes was changed.
+	 */
+	private byte[] mutate(Random random, byte[] file, int percentage) {
+		byte[] copy = file.clone();
+
+		for(int i = 0; i < copy.length; i++) {
+			if(random.nextInt(100) < percentage) {
+				copy[i] = (byte) (copy[i] + 1 + random.nextInt(255));
+			}
+		}
+
+		return copy;
+	}
+}
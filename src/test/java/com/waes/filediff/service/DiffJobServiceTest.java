@@ -0,0 +1,159 @@
+package com.waes.filediff.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.waes.filediff.exception.DiffValidationException;
+import com.waes.filediff.model.DiffJobDTO;
+import com.waes.filediff.model.DiffServiceResultDTO;
+import com.waes.filediff.service.DiffService.ProgressListener;
+
+/**
+ * Provides unit tests for the {@link DiffJobService} class.
+ * 
+ * @author Rodrigo Hackbarth
+ */
+@RunWith(SpringRunner.class)
+public class DiffJobServiceTest {
+
+	@TestConfiguration
+	static class DiffJobServiceTestContextConfiguration {
+		
+		@Bean
+		public DiffJobService diffJobService() {
+			return new DiffJobService();
+		}
+	}
+	
+	@Autowired
+	private DiffJobService service;
+	
+	@MockBean
+	private DiffService diffService;
+	
+	@Rule
+	public ExpectedException expectedException = ExpectedException.none();
+	
+	@Test
+	public void testJobReportsProgressAndResult() throws Exception {
+		CountDownLatch scanned = new CountDownLatch(1);
+		CountDownLatch resume = new CountDownLatch(1);
+		DiffServiceResultDTO diffResult = new DiffServiceResultDTO();
+		diffResult.setStatus("success");
+		diffResult.setMessage("Files are equal.");
+		
+		Mockito.when(diffService.diff(Mockito.eq(1), Mockito.any(ProgressListener.class))).thenAnswer(invocation -> {
+			ProgressListener progress = invocation.getArgument(1);
+			progress.onProgress(10, 40);
+			scanned.countDown();
+			resume.await();
+			progress.onProgress(40, 40);
+			return diffResult;
+		});
+		
+		String jobId = service.submit(1).getJobId();
+		scanned.await(5, TimeUnit.SECONDS);
+		
+		DiffJobDTO running = service.getJob(1, jobId);
+		assertEquals("running", running.getState());
+		assertEquals(10, running.getScannedBytes());
+		assertEquals(40, running.getTotalBytes());
+		assertNull(running.getResult());
+		
+		resume.countDown();
+		DiffJobDTO done = awaitJob(1, jobId);
+		assertEquals("success", done.getStatus());
+		assertEquals(40, done.getScannedBytes());
+		assertEquals(diffResult, done.getResult());
+	}
+	
+	@Test
+	public void testCancelInterruptsRunningJob() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch interrupted = new CountDownLatch(1);
+		
+		Mockito.when(diffService.diff(Mockito.eq(2), Mockito.any(ProgressListener.class))).thenAnswer(invocation -> {
+			started.countDown();
+			try {
+				Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+			} finally {
+				interrupted.countDown();
+			}
+			return null;
+		});
+		
+		String jobId = service.submit(2).getJobId();
+		started.await(5, TimeUnit.SECONDS);
+		
+		DiffJobDTO cancelled = service.cancel(2, jobId);
+		
+		assertEquals("cancelled", cancelled.getState());
+		assertEquals(true, interrupted.await(5, TimeUnit.SECONDS));
+		assertEquals("cancelled", service.getJob(2, jobId).getState());
+	}
+	
+	@Test
+	public void testFailedJobReportsError() throws Exception {
+		Mockito.when(diffService.diff(Mockito.eq(3), Mockito.any(ProgressListener.class)))
+				.thenThrow(new DiffValidationException("Right file has not been provided under ID: 3"));
+		
+		DiffJobDTO failed = awaitJob(3, service.submit(3).getJobId());
+		
+		assertEquals("error", failed.getStatus());
+		assertEquals("failed", failed.getState());
+		assertEquals("Right file has not been provided under ID: 3", failed.getMessage());
+	}
+	
+	@Test
+	public void testJobOfOtherId() throws Exception {
+		String jobId = service.submit(4).getJobId();
+		
+		expectedException.expect(DiffValidationException.class);
+		expectedException.expectMessage("No diff job exists under ID: " + jobId);
+		
+		service.getJob(5, jobId);
+	}
+	
+	@Test
+	public void testSweepDropsExpiredJobs() throws Exception {
+		Mockito.when(diffService.diff(Mockito.eq(6), Mockito.any(ProgressListener.class))).thenReturn(new DiffServiceResultDTO());
+		
+		String jobId = service.submit(6).getJobId();
+		assertEquals("done", awaitJob(6, jobId).getState());
+		
+		service.dropExpiredJobs(System.nanoTime());
+		assertEquals("done", service.getJob(6, jobId).getState());
+		
+		service.dropExpiredJobs(System.nanoTime() + TimeUnit.MINUTES.toNanos(61));
+		
+		expectedException.expect(DiffValidationException.class);
+		expectedException.expectMessage("No diff job exists under ID: " + jobId);
+		
+		service.getJob(6, jobId);
+	}
+	
+	private DiffJobDTO awaitJob(int id, String jobId) throws DiffValidationException, InterruptedException {
+		DiffJobDTO job = service.getJob(id, jobId);
+		
+		for(int i = 0; i < 500 && "running".equals(job.getState()); i++) {
+			Thread.sleep(10);
+			job = service.getJob(id, jobId);
+		}
+		
+		return job;
+	}
+}
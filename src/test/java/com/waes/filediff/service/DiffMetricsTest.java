@@ -0,0 +1,99 @@
+package com.waes.filediff.service;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.waes.filediff.repository.BlobStore;
+import com.waes.filediff.repository.DiffRepository;
+import com.waes.filediff.repository.HeapFileStore;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Provides unit tests for the meters of the {@link DiffMetrics} class,
+ * as recorded by the {@link DiffService}.
+ * 
+ * @author Rodrigo Hackbarth
+ */
+@RunWith(SpringRunner.class)
+public class DiffMetricsTest {
+
+	@TestConfiguration
+	static class DiffMetricsTestContextConfiguration {
+		
+		@Bean
+		public DiffService diffService() {
+			return new DiffService();
+		}
+		
+		@Bean
+		public DiffRepository diffRepository() {
+			return new DiffRepository();
+		}
+		
+		@Bean
+		public BlobStore blobStore() {
+			return new BlobStore(new HeapFileStore(), true);
+		}
+		
+		@Bean
+		public ParallelDiffComparator parallelDiffComparator() {
+			return new ParallelDiffComparator(64, 16, 2);
+		}
+		
+		@Bean
+		public DiffResultCache diffResultCache() {
+			return new DiffResultCache(10);
+		}
+	}
+	
+	@Autowired
+	private DiffService service;
+	
+	private MeterRegistry registry;
+	
+	@Before
+	public void addRegistry() {
+		registry = new SimpleMeterRegistry();
+		Metrics.globalRegistry.add(registry);
+	}
+	
+	@After
+	public void removeRegistry() {
+		Metrics.globalRegistry.remove(registry);
+	}
+	
+	@Test
+	public void testDiffRecordsStoreAndComparePhases() throws Exception {
+		service.addLeft(1, new byte[] {1, 2, 3, 4, 5, 6});
+		service.addRight(1, new byte[] {1, 0, 3, 4, 0, 6});
+		service.diff(1);
+		
+		assertEquals(2, registry.get("diff.phase").tag("phase", "store").timer().count());
+		assertEquals(1, registry.get("diff.phase").tag("phase", "compare").timer().count());
+		assertEquals(1, registry.get("diff.runs").summary().count());
+		assertEquals(2, registry.get("diff.runs").summary().totalAmount(), 0);
+	}
+	
+	@Test
+	public void testCachedResultIsNotComparedAgain() throws Exception {
+		service.addLeft(2, new byte[] {1, 2, 3});
+		service.addRight(2, new byte[] {3, 2, 1});
+		service.diff(2);
+		
+		double compared = registry.get("diff.phase").tag("phase", "compare").timer().count();
+		service.diff(2);
+		
+		assertEquals(compared, registry.get("diff.phase").tag("phase", "compare").timer().count(), 0);
+	}
+}
@@ -0,0 +1,68 @@
+package com.waes.filediff.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import com.waes.filediff.model.DiffFilesDTO;
+import com.waes.filediff.model.DiffServiceResultDTO;
+
+/**
+ * Provides unit tests for the {@link DiffResultCache} class.
+ * 
+ * @author Rodrigo Hackbarth
+ */
+public class DiffResultCacheTest {
+
+	@Test
+	public void testGetReturnsResultCachedForSameFiles() {
+		DiffResultCache cache = new DiffResultCache(10);
+		DiffFilesDTO diffFiles = new DiffFilesDTO();
+		DiffServiceResultDTO result = new DiffServiceResultDTO();
+		
+		assertNull(cache.get(1, diffFiles));
+		cache.put(1, diffFiles, result);
+		
+		assertEquals(result, cache.get(1, diffFiles));
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+	
+	@Test
+	public void testGetIgnoresResultCachedForReplacedFiles() {
+		DiffResultCache cache = new DiffResultCache(10);
+		
+		cache.put(1, new DiffFilesDTO(), new DiffServiceResultDTO());
+		
+		assertNull(cache.get(1, new DiffFilesDTO()));
+	}
+	
+	@Test
+	public void testInvalidateRemovesResult() {
+		DiffResultCache cache = new DiffResultCache(10);
+		DiffFilesDTO diffFiles = new DiffFilesDTO();
+		
+		cache.put(1, diffFiles, new DiffServiceResultDTO());
+		cache.invalidate(1);
+		
+		assertNull(cache.get(1, diffFiles));
+		assertEquals(0, cache.getSize());
+	}
+	
+	@Test
+	public void testPutEvictsLeastRecentlyUsedResult() {
+		DiffResultCache cache = new DiffResultCache(2);
+		DiffFilesDTO first = new DiffFilesDTO();
+		DiffFilesDTO second = new DiffFilesDTO();
+		DiffFilesDTO third = new DiffFilesDTO();
+		
+		cache.put(1, first, new DiffServiceResultDTO());
+		cache.put(2, second, new DiffServiceResultDTO());
+		cache.get(1, first);
+		cache.put(3, third, new DiffServiceResultDTO());
+		
+		assertEquals(2, cache.getSize());
+		assertNull(cache.get(2, second));
+	}
+}
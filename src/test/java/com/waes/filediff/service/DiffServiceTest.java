@@ -6,9 +6,14 @@ import static org.junit.Assert.assertThat;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.UnaryOperator;
 
 import org.hamcrest.collection.IsEmptyCollection;
 import org.junit.Rule;
@@ -20,13 +25,18 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import com.waes.filediff.exception.DiffValidationException;
+import com.waes.filediff.model.ChunkHashTree;
 import com.waes.filediff.model.DiffDataDTO;
 import com.waes.filediff.model.DiffFilesDTO;
 import com.waes.filediff.model.DiffServiceResultDTO;
+import com.waes.filediff.model.DiffSummaryDTO;
+import com.waes.filediff.repository.BlobStore;
 import com.waes.filediff.repository.DiffRepository;
+import com.waes.filediff.repository.HeapFileStore;
 
 /**
  * Provides unit tests for the {@link DiffService} class.
@@ -34,6 +44,7 @@ import com.waes.filediff.repository.DiffRepository;
  * @author Rodrigo Hackbarth
  */
 @RunWith(SpringRunner.class)
+@TestPropertySource(properties = {"diff.jobs.progress-step=8", "diff.cache.max-runs=4"})
 public class DiffServiceTest {
 
 	@TestConfiguration
@@ -43,11 +54,29 @@ public class DiffServiceTest {
         public DiffService diffService() {
             return new DiffService();
         }
+        
+        @Bean
+        public BlobStore blobStore() {
+        	return new BlobStore(new HeapFileStore(), true);
+        }
+        
+        @Bean
+        public ParallelDiffComparator parallelDiffComparator() {
+        	return new ParallelDiffComparator(64, 16, 2);
+        }
+        
+        @Bean
+        public DiffResultCache diffResultCache() {
+        	return new DiffResultCache(10);
+        }
     }
 	
 	@Autowired
 	private DiffService service;
 	
+	@Autowired
+	private DiffResultCache resultCache;
+	
 	@MockBean
 	private DiffRepository repository;
 	
@@ -75,7 +104,7 @@ public class DiffServiceTest {
 		DiffFilesDTO filesDTOMock = Mockito.mock(DiffFilesDTO.class);
 		Mockito.when(filesDTOMock.getId()).thenReturn(id);
 		Mockito.when(filesDTOMock.getLeftFile()).thenReturn(null);
-		Mockito.when(filesDTOMock.getRightFile()).thenReturn(new byte[] {});
+		Mockito.when(filesDTOMock.getRightFile()).thenReturn(ByteBuffer.wrap(new byte[] {}));
 		
 		Mockito.when(repository.getFilesForComparisonById(Mockito.anyInt())).thenReturn(filesDTOMock);
 		
@@ -92,7 +121,7 @@ public class DiffServiceTest {
 		
 		DiffFilesDTO filesDTOMock = Mockito.mock(DiffFilesDTO.class);
 		Mockito.when(filesDTOMock.getId()).thenReturn(id);
-		Mockito.when(filesDTOMock.getLeftFile()).thenReturn(new byte[] {});
+		Mockito.when(filesDTOMock.getLeftFile()).thenReturn(ByteBuffer.wrap(new byte[] {}));
 		Mockito.when(filesDTOMock.getRightFile()).thenReturn(null);
 		
 		Mockito.when(repository.getFilesForComparisonById(Mockito.anyInt())).thenReturn(filesDTOMock);
@@ -111,8 +140,8 @@ public class DiffServiceTest {
 		
 		DiffFilesDTO filesDTOMock = Mockito.mock(DiffFilesDTO.class);
 		Mockito.when(filesDTOMock.getId()).thenReturn(id);
-		Mockito.when(filesDTOMock.getLeftFile()).thenReturn(leftFile);
-		Mockito.when(filesDTOMock.getRightFile()).thenReturn(rightFile);
+		Mockito.when(filesDTOMock.getLeftFile()).thenReturn(ByteBuffer.wrap(leftFile));
+		Mockito.when(filesDTOMock.getRightFile()).thenReturn(ByteBuffer.wrap(rightFile));
 		
 		Mockito.when(repository.getFilesForComparisonById(Mockito.anyInt())).thenReturn(filesDTOMock);
 		
@@ -131,8 +160,27 @@ public class DiffServiceTest {
 		
 		DiffFilesDTO filesDTOMock = Mockito.mock(DiffFilesDTO.class);
 		Mockito.when(filesDTOMock.getId()).thenReturn(id);
-		Mockito.when(filesDTOMock.getLeftFile()).thenReturn(leftFile);
-		Mockito.when(filesDTOMock.getRightFile()).thenReturn(rightFile);
+		Mockito.when(filesDTOMock.getLeftFile()).thenReturn(ByteBuffer.wrap(leftFile));
+		Mockito.when(filesDTOMock.getRightFile()).thenReturn(ByteBuffer.wrap(rightFile));
+		
+		Mockito.when(repository.getFilesForComparisonById(Mockito.anyInt())).thenReturn(filesDTOMock);
+		
+		DiffServiceResultDTO diffResult = service.diff(id);
+		
+		assertEquals("success", diffResult.getStatus());
+		assertEquals("Files are equal.", diffResult.getMessage());
+		assertThat(diffResult.getDiffs(), IsEmptyCollection.empty());
+	}
+	
+	@Test
+	public void testDiffFilesResolvedToSameBlobAreEqual() throws URISyntaxException, IOException, DiffValidationException {
+		int id = 1;
+		ByteBuffer file = ByteBuffer.wrap(loadFile("leftFile.txt"));
+		
+		DiffFilesDTO filesDTOMock = Mockito.mock(DiffFilesDTO.class);
+		Mockito.when(filesDTOMock.getId()).thenReturn(id);
+		Mockito.when(filesDTOMock.getLeftFile()).thenReturn(file);
+		Mockito.when(filesDTOMock.getRightFile()).thenReturn(file);
 		
 		Mockito.when(repository.getFilesForComparisonById(Mockito.anyInt())).thenReturn(filesDTOMock);
 		
@@ -151,8 +199,8 @@ public class DiffServiceTest {
 		
 		DiffFilesDTO filesDTOMock = Mockito.mock(DiffFilesDTO.class);
 		Mockito.when(filesDTOMock.getId()).thenReturn(id);
-		Mockito.when(filesDTOMock.getLeftFile()).thenReturn(leftFile);
-		Mockito.when(filesDTOMock.getRightFile()).thenReturn(rightFile);
+		Mockito.when(filesDTOMock.getLeftFile()).thenReturn(ByteBuffer.wrap(leftFile));
+		Mockito.when(filesDTOMock.getRightFile()).thenReturn(ByteBuffer.wrap(rightFile));
 		
 		Mockito.when(repository.getFilesForComparisonById(Mockito.anyInt())).thenReturn(filesDTOMock);
 		
@@ -176,8 +224,8 @@ public class DiffServiceTest {
 		
 		DiffFilesDTO filesDTOMock = Mockito.mock(DiffFilesDTO.class);
 		Mockito.when(filesDTOMock.getId()).thenReturn(id);
-		Mockito.when(filesDTOMock.getLeftFile()).thenReturn(leftFile);
-		Mockito.when(filesDTOMock.getRightFile()).thenReturn(rightFile);
+		Mockito.when(filesDTOMock.getLeftFile()).thenReturn(ByteBuffer.wrap(leftFile));
+		Mockito.when(filesDTOMock.getRightFile()).thenReturn(ByteBuffer.wrap(rightFile));
 		
 		Mockito.when(repository.getFilesForComparisonById(Mockito.anyInt())).thenReturn(filesDTOMock);
 		
@@ -201,8 +249,8 @@ public class DiffServiceTest {
 		
 		DiffFilesDTO filesDTOMock = Mockito.mock(DiffFilesDTO.class);
 		Mockito.when(filesDTOMock.getId()).thenReturn(id);
-		Mockito.when(filesDTOMock.getLeftFile()).thenReturn(leftFile);
-		Mockito.when(filesDTOMock.getRightFile()).thenReturn(rightFile);
+		Mockito.when(filesDTOMock.getLeftFile()).thenReturn(ByteBuffer.wrap(leftFile));
+		Mockito.when(filesDTOMock.getRightFile()).thenReturn(ByteBuffer.wrap(rightFile));
 		
 		Mockito.when(repository.getFilesForComparisonById(Mockito.anyInt())).thenReturn(filesDTOMock);
 		
@@ -229,8 +277,8 @@ public class DiffServiceTest {
 		
 		DiffFilesDTO filesDTOMock = Mockito.mock(DiffFilesDTO.class);
 		Mockito.when(filesDTOMock.getId()).thenReturn(id);
-		Mockito.when(filesDTOMock.getLeftFile()).thenReturn(leftFile);
-		Mockito.when(filesDTOMock.getRightFile()).thenReturn(rightFile);
+		Mockito.when(filesDTOMock.getLeftFile()).thenReturn(ByteBuffer.wrap(leftFile));
+		Mockito.when(filesDTOMock.getRightFile()).thenReturn(ByteBuffer.wrap(rightFile));
 		
 		Mockito.when(repository.getFilesForComparisonById(Mockito.anyInt())).thenReturn(filesDTOMock);
 		
@@ -257,8 +305,8 @@ public class DiffServiceTest {
 		
 		DiffFilesDTO filesDTOMock = Mockito.mock(DiffFilesDTO.class);
 		Mockito.when(filesDTOMock.getId()).thenReturn(id);
-		Mockito.when(filesDTOMock.getLeftFile()).thenReturn(leftFile);
-		Mockito.when(filesDTOMock.getRightFile()).thenReturn(rightFile);
+		Mockito.when(filesDTOMock.getLeftFile()).thenReturn(ByteBuffer.wrap(leftFile));
+		Mockito.when(filesDTOMock.getRightFile()).thenReturn(ByteBuffer.wrap(rightFile));
 		
 		Mockito.when(repository.getFilesForComparisonById(Mockito.anyInt())).thenReturn(filesDTOMock);
 		
@@ -273,6 +321,270 @@ public class DiffServiceTest {
 		assertEquals(leftFile.length, diff.getLength());
 	}
 	
+	@Test
+	public void testDiffSkipsChunksWithEqualHashes() throws DiffValidationException {
+		int id = 3;
+		byte[] leftFile = new byte[100];
+		byte[] rightFile = new byte[100];
+		rightFile[5] = 1;
+		rightFile[45] = 1;
+		rightFile[46] = 1;
+		
+		// the hashes only tell the chunk [40, 50) apart, so the diff in the first chunk is not looked for
+		byte[] hashedRightFile = new byte[100];
+		hashedRightFile[45] = 1;
+		
+		DiffFilesDTO filesDTO = new DiffFilesDTO();
+		filesDTO.setLeftFile(ByteBuffer.wrap(leftFile));
+		filesDTO.setRightFile(ByteBuffer.wrap(rightFile));
+		filesDTO.setLeftFileHashes(ChunkHashTree.of(leftFile, 10));
+		filesDTO.setRightFileHashes(ChunkHashTree.of(hashedRightFile, 10));
+		
+		Mockito.when(repository.getFilesForComparisonById(Mockito.anyInt())).thenReturn(filesDTO);
+		
+		DiffServiceResultDTO diffResult = service.diff(id);
+		
+		assertNull(diffResult.getMessage());
+		assertEquals(1, diffResult.getDiffs().size());
+		assertEquals(45, diffResult.getDiffs().get(0).getOffset());
+		assertEquals(2, diffResult.getDiffs().get(0).getLength());
+	}
+	
+	@Test
+	public void testPatchRecomputesDiffsOfPatchedRange() throws IOException, DiffValidationException {
+		int id = 4;
+		byte[] leftFile = new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12};
+		byte[] rightFile = new byte[] {0, 0, 3, 0, 0, 6, 7, 0, 9, 10, 0, 0};
+		
+		DiffFilesDTO[] stored = new DiffFilesDTO[1];
+		stored[0] = new DiffFilesDTO();
+		stored[0].setLeftFile(ByteBuffer.wrap(leftFile));
+		stored[0].setRightFile(ByteBuffer.wrap(rightFile));
+		
+		Mockito.when(repository.getFilesForComparisonById(id)).thenAnswer(invocation -> stored[0]);
+		Mockito.when(repository.update(Mockito.eq(id), Mockito.any())).thenAnswer(invocation -> {
+			UnaryOperator<DiffFilesDTO> update = invocation.getArgument(1);
+			stored[0] = update.apply(stored[0]);
+			return stored[0];
+		});
+		
+		assertEquals(4, service.diff(id).getDiffCount());
+		
+		service.patchRight(id, 2, new byte[] {0, 4, 5, 6, 0, 8});
+		
+		DiffServiceResultDTO diffResult = service.diff(id);
+		
+		assertNull(diffResult.getMessage());
+		assertEquals(3, diffResult.getDiffCount());
+		assertEquals(0, diffResult.getDiffOffset(0));
+		assertEquals(3, diffResult.getDiffLength(0));
+		assertEquals(6, diffResult.getDiffOffset(1));
+		assertEquals(1, diffResult.getDiffLength(1));
+		assertEquals(10, diffResult.getDiffOffset(2));
+		assertEquals(2, diffResult.getDiffLength(2));
+	}
+	
+	@Test
+	public void testResultWithMoreThanMaxCachedRunsIsNotCached() throws DiffValidationException, InterruptedException {
+		int id = 10;
+		byte[] leftFile = new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12};
+		byte[] rightFile = new byte[] {0, 2, 0, 4, 0, 6, 0, 8, 0, 10, 11, 12};
+		
+		DiffFilesDTO filesDTO = new DiffFilesDTO();
+		filesDTO.setLeftFile(ByteBuffer.wrap(leftFile));
+		filesDTO.setRightFile(ByteBuffer.wrap(rightFile));
+		
+		Mockito.when(repository.getFilesForComparisonById(id)).thenReturn(filesDTO);
+		
+		assertEquals(5, service.diff(id).getDiffCount());
+		assertNull(resultCache.get(id, filesDTO));
+		
+		assertEquals(5, service.diff(id, (scanned, length) -> {}).getDiffCount());
+		assertNull(resultCache.get(id, filesDTO));
+	}
+	
+	@Test
+	public void testPatchOutOfBounds() throws IOException, DiffValidationException {
+		int id = 5;
+		
+		DiffFilesDTO filesDTO = new DiffFilesDTO();
+		filesDTO.setLeftFile(ByteBuffer.wrap(new byte[10]));
+		
+		Mockito.when(repository.getFilesForComparisonById(id)).thenReturn(filesDTO);
+		
+		expectedException.expect(DiffValidationException.class);
+		expectedException.expectMessage("Patch exceeds the bounds of the left file under ID: " + id);
+		
+		service.patchLeft(id, 8, new byte[3]);
+	}
+	
+	@Test
+	public void testDiffWritesDiffsToWriter() throws IOException, DiffValidationException {
+		int id = 2;
+		byte[] leftFile = new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+		byte[] rightFile = new byte[] {1, 0, 0, 4, 5, 6, 7, 8, 9, 0};
+		
+		DiffFilesDTO filesDTOMock = Mockito.mock(DiffFilesDTO.class);
+		Mockito.when(filesDTOMock.getId()).thenReturn(id);
+		Mockito.when(filesDTOMock.getLeftFile()).thenReturn(ByteBuffer.wrap(leftFile));
+		Mockito.when(filesDTOMock.getRightFile()).thenReturn(ByteBuffer.wrap(rightFile));
+		
+		Mockito.when(repository.getFilesForComparisonById(Mockito.anyInt())).thenReturn(filesDTOMock);
+		
+		StringBuilder written = new StringBuilder();
+		service.diff(id, new DiffResultWriter() {
+			
+			@Override
+			public void writeStart(String status, String message) {
+				written.append(status).append(' ').append(message);
+			}
+			
+			@Override
+			public void writeDiff(int offset, int length) {
+				written.append(' ').append(offset).append(':').append(length);
+			}
+			
+			@Override
+			public void writeEnd(String nextCursor) {
+				written.append(" end");
+			}
+		});
+		
+		assertEquals("success null 1:2 9:1 end", written.toString());
+	}
+	
+	@Test
+	public void testDiffPageStopsAtLimit() throws IOException, DiffValidationException {
+		int id = 6;
+		byte[] leftFile = new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12};
+		byte[] rightFile = new byte[] {0, 0, 3, 0, 0, 6, 7, 0, 9, 10, 0, 0};
+		
+		DiffFilesDTO filesDTO = new DiffFilesDTO();
+		filesDTO.setLeftFile(ByteBuffer.wrap(leftFile));
+		filesDTO.setRightFile(ByteBuffer.wrap(rightFile));
+		
+		Mockito.when(repository.getFilesForComparisonById(id)).thenReturn(filesDTO);
+		
+		assertEquals("success null 0:2 3:2 next 5", writePage(id, 0, Integer.MAX_VALUE, 2));
+		assertEquals("success null 7:1 10:2 end", writePage(id, 5, Integer.MAX_VALUE, 2));
+		assertEquals("success null 4:1 7:1 end", writePage(id, 4, 9, 0));
+		assertEquals("success Files are equal in the requested range. end", writePage(id, 8, 10, 0));
+	}
+	
+	@Test
+	public void testDiffPageEndingAtLastDiff() throws IOException, DiffValidationException {
+		int id = 11;
+		byte[] leftFile = new byte[] {1, 2, 3, 4, 5, 6, 7, 8};
+		byte[] rightFile = new byte[] {0, 2, 3, 0, 5, 6, 7, 8};
+		
+		DiffFilesDTO filesDTO = new DiffFilesDTO();
+		filesDTO.setLeftFile(ByteBuffer.wrap(leftFile));
+		filesDTO.setRightFile(ByteBuffer.wrap(rightFile));
+		
+		Mockito.when(repository.getFilesForComparisonById(id)).thenReturn(filesDTO);
+		
+		// full page before the end of the range, though no diffs are left after it
+		assertEquals("success null 0:1 3:1 next 4", writePage(id, 0, Integer.MAX_VALUE, 2));
+		assertEquals("success Files are equal in the requested range. end", writePage(id, 4, Integer.MAX_VALUE, 2));
+		// full page reaching the end of the range
+		assertEquals("success null 0:1 3:1 end", writePage(id, 0, 4, 2));
+		
+		// the same pages out of the cached result
+		service.diff(id);
+		assertEquals("success null 0:1 3:1 next 4", writePage(id, 0, Integer.MAX_VALUE, 2));
+		assertEquals("success null 0:1 3:1 end", writePage(id, 0, 4, 2));
+	}
+	
+	@Test
+	public void testDiffSummaryModes() throws DiffValidationException {
+		int id = 7;
+		byte[] leftFile = new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12};
+		byte[] rightFile = new byte[] {1, 2, 3, 0, 0, 6, 7, 0, 9, 10, 11, 12};
+		
+		DiffFilesDTO filesDTO = new DiffFilesDTO();
+		filesDTO.setLeftFile(ByteBuffer.wrap(leftFile));
+		filesDTO.setRightFile(ByteBuffer.wrap(rightFile));
+		
+		Mockito.when(repository.getFilesForComparisonById(id)).thenReturn(filesDTO);
+		
+		DiffSummaryDTO equal = service.diffEqual(id);
+		assertEquals(false, equal.getEqual());
+		assertEquals("Files are different.", equal.getMessage());
+		
+		DiffSummaryDTO first = service.diffFirst(id);
+		assertNull(first.getMessage());
+		assertEquals(Integer.valueOf(3), first.getFirstDifference());
+		
+		DiffSummaryDTO count = service.diffCount(id);
+		assertNull(count.getMessage());
+		assertEquals(Long.valueOf(2), count.getDiffCount());
+		assertEquals(Long.valueOf(3), count.getDiffBytes());
+	}
+	
+	@Test
+	public void testDiffReportsProgressInSteps() throws DiffValidationException, InterruptedException {
+		int id = 8;
+		byte[] leftFile = new byte[20];
+		byte[] rightFile = new byte[20];
+		Arrays.fill(rightFile, 6, 11, (byte) 1);
+		rightFile[19] = 1;
+		
+		DiffFilesDTO filesDTO = new DiffFilesDTO();
+		filesDTO.setLeftFile(ByteBuffer.wrap(leftFile));
+		filesDTO.setRightFile(ByteBuffer.wrap(rightFile));
+		
+		Mockito.when(repository.getFilesForComparisonById(id)).thenReturn(filesDTO);
+		
+		List<Long> progress = new ArrayList<>();
+		DiffServiceResultDTO diffResult = service.diff(id, (scannedBytes, totalBytes) -> progress.add(scannedBytes));
+		
+		// the run crossing the step boundary at offset 8 is reported once
+		assertEquals(Arrays.asList(8L, 16L, 20L, 20L), progress);
+		assertEquals(2, diffResult.getDiffs().size());
+		assertEquals(6, diffResult.getDiffs().get(0).getOffset());
+		assertEquals(5, diffResult.getDiffs().get(0).getLength());
+		assertEquals(19, diffResult.getDiffs().get(1).getOffset());
+		assertEquals(1, diffResult.getDiffs().get(1).getLength());
+	}
+	
+	@Test
+	public void testDiffWithProgressStopsWhenInterrupted() throws DiffValidationException, InterruptedException {
+		int id = 9;
+		DiffFilesDTO filesDTO = new DiffFilesDTO();
+		filesDTO.setLeftFile(ByteBuffer.wrap(new byte[20]));
+		filesDTO.setRightFile(ByteBuffer.wrap(new byte[20]));
+		
+		Mockito.when(repository.getFilesForComparisonById(id)).thenReturn(filesDTO);
+		
+		expectedException.expect(InterruptedException.class);
+		
+		service.diff(id, (scannedBytes, totalBytes) -> Thread.currentThread().interrupt());
+	}
+	
+	private String writePage(int id, int fromOffset, int toOffset, int limit) throws IOException, DiffValidationException {
+		StringBuilder written = new StringBuilder();
+		
+		service.diff(id, fromOffset, toOffset, limit, new DiffResultWriter() {
+			
+			@Override
+			public void writeStart(String status, String message) {
+				written.append(status).append(' ').append(message);
+			}
+			
+			@Override
+			public void writeDiff(int offset, int length) {
+				written.append(' ').append(offset).append(':').append(length);
+			}
+			
+			@Override
+			public void writeEnd(String nextCursor) {
+				written.append(nextCursor == null ? " end" : " next " + nextCursor);
+			}
+		});
+		
+		return written.toString();
+	}
+	
 	/**
 	 * Finds the requested file in the resources and returns it.
 	 * 
@@ -0,0 +1,191 @@
+package com.waes.filediff.service;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.waes.filediff.model.DiffServiceResultDTO;
+import com.waes.filediff.repository.BlobStore;
+import com.waes.filediff.repository.DiffRepository;
+import com.waes.filediff.repository.HeapFileStore;
+import com.waes.filediff.service.DiffComparator.RunListener;
+
+/**
+ * Provides unit tests for the eager diff mode of the {@link DiffService}
+ * class, with a single background thread and room for a single queued
+ * comparison, comparing jobs in steps of 8 bytes.
+ * <br/><br/>
+ * The comparisons of files of 100 bytes block until {@link #release} is
+ * counted down, so the background thread can be kept busy.
+ *
+ * @author Rodrigo Hackbarth
+ */
+@RunWith(SpringRunner.class)
+@TestPropertySource(properties = {"diff.eager.enabled=true", "diff.eager.threads=1", "diff.eager.queue-size=1", "diff.jobs.progress-step=8"})
+public class EagerDiffServiceTest {
+
+	private static final int BLOCKING_SIZE = 100;
+
+	@TestConfiguration
+    static class EagerDiffServiceTestContextConfiguration {
+
+        @Bean
+        public DiffService diffService() {
+            return new DiffService();
+        }
+
+        @Bean
+        public DiffRepository diffRepository() {
+        	return new DiffRepository();
+        }
+
+        @Bean
+        public BlobStore blobStore() {
+        	return new BlobStore(new HeapFileStore(), true);
+        }
+
+        @Bean
+        public DiffResultCache diffResultCache() {
+        	return new DiffResultCache(10);
+        }
+    }
+
+	@Autowired
+	private DiffService service;
+
+	@MockBean
+	private ParallelDiffComparator comparator;
+
+	private CountDownLatch started;
+
+	private CountDownLatch release;
+
+	@Before
+	public void setUp() {
+		started = new CountDownLatch(1);
+		release = new CountDownLatch(1);
+
+		Mockito.when(comparator.compare(Mockito.any(ByteBuffer.class), Mockito.any(ByteBuffer.class), Mockito.anyInt(), Mockito.anyInt(), Mockito.any(RunListener.class)))
+				.thenAnswer(invocation -> {
+					ByteBuffer leftFile = invocation.getArgument(0);
+
+					if(leftFile.capacity() == BLOCKING_SIZE) {
+						started.countDown();
+						release.await();
+					}
+
+					RunListener listener = invocation.getArgument(4);
+					listener.onRun(0, 1);
+					return 1;
+				});
+	}
+
+	@After
+	public void tearDown() {
+		release.countDown();
+	}
+
+	@Test
+	public void testDiffWaitsForRunningEagerDiff() throws Exception {
+		upload(1, BLOCKING_SIZE);
+		assertEquals(true, started.await(5, TimeUnit.SECONDS));
+
+		CompletableFuture<DiffServiceResultDTO> diff = diffAsync(1);
+		release.countDown();
+
+		assertEquals(1, diff.get(5, TimeUnit.SECONDS).getDiffCount());
+		assertEquals(1, service.diff(1).getDiffCount());
+		Mockito.verify(comparator, Mockito.times(1)).compare(Mockito.any(ByteBuffer.class), Mockito.any(ByteBuffer.class), Mockito.anyInt(), Mockito.anyInt(), Mockito.any(RunListener.class));
+	}
+
+	@Test
+	public void testQueuedAndRejectedEagerDiffsAreComputedByCaller() throws Exception {
+		upload(2, BLOCKING_SIZE);
+		assertEquals(true, started.await(5, TimeUnit.SECONDS));
+
+		// queued behind the blocked comparison, then rejected for the queue being full
+		upload(3, 10);
+		upload(4, 10);
+
+		assertEquals(1, diffAsync(3).get(5, TimeUnit.SECONDS).getDiffCount());
+		assertEquals(1, diffAsync(4).get(5, TimeUnit.SECONDS).getDiffCount());
+	}
+
+	@Test
+	public void testQueuedEagerDiffOfReplacedFilesIsDropped() throws Exception {
+		upload(9, BLOCKING_SIZE);
+		assertEquals(true, started.await(5, TimeUnit.SECONDS));
+
+		// queued, then replaced by uploads rejected for the queue being full
+		upload(10, 10);
+		upload(10, 10);
+		release.countDown();
+
+		assertEquals(1, diffAsync(10).get(5, TimeUnit.SECONDS).getDiffCount());
+		Mockito.verify(comparator, Mockito.after(500).times(2)).compare(Mockito.any(ByteBuffer.class), Mockito.any(ByteBuffer.class), Mockito.anyInt(), Mockito.anyInt(), Mockito.any(RunListener.class));
+	}
+
+	@Test
+	public void testQueuedEagerDiffIsComparedInStepsByJob() throws Exception {
+		upload(7, BLOCKING_SIZE);
+		assertEquals(true, started.await(5, TimeUnit.SECONDS));
+		upload(8, 10);
+
+		List<Long> progress = new ArrayList<>();
+		service.diff(8, (scannedBytes, totalBytes) -> progress.add(scannedBytes));
+
+		assertEquals(Arrays.asList(8L, 10L, 10L), progress);
+	}
+
+	@Test
+	public void testStoppedExecutorDoesNotLeaveDiffsWaiting() throws Exception {
+		upload(5, BLOCKING_SIZE);
+		assertEquals(true, started.await(5, TimeUnit.SECONDS));
+		upload(6, 10);
+
+		try {
+			service.stopEagerDiffExecutor();
+
+			assertEquals(1, diffAsync(6).get(5, TimeUnit.SECONDS).getDiffCount());
+		} finally {
+			release.countDown();
+			service.startEagerDiffExecutor();
+		}
+	}
+
+	private void upload(int id, int size) throws Exception {
+		byte[] rightFile = new byte[size];
+		rightFile[0] = 1;
+
+		service.addLeft(id, new byte[size]);
+		service.addRight(id, rightFile);
+	}
+
+	private CompletableFuture<DiffServiceResultDTO> diffAsync(int id) {
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return service.diff(id);
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		});
+	}
+}
@@ -0,0 +1,101 @@
+package com.waes.filediff.service;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.waes.filediff.exception.DiffValidationException;
+import com.waes.filediff.repository.BlobStore;
+import com.waes.filediff.repository.DiffRepository;
+import com.waes.filediff.repository.HeapFileStore;
+
+/**
+ * Provides unit tests for the {@link DiffService} class evicting the files
+ * of the least recently accessed IDs beyond "diff.storage.max-bytes".
+ *
+ * @author Rodrigo Hackbarth
+ */
+@RunWith(SpringRunner.class)
+@TestPropertySource(properties = "diff.storage.max-bytes=50")
+public class EvictingDiffServiceTest {
+
+	@TestConfiguration
+    static class EvictingDiffServiceTestContextConfiguration {
+
+        @Bean
+        public DiffService diffService() {
+            return new DiffService();
+        }
+
+        @Bean
+        public DiffRepository diffRepository() {
+        	return new DiffRepository();
+        }
+
+        @Bean
+        public BlobStore blobStore() {
+        	return new BlobStore(new HeapFileStore(), true);
+        }
+
+        @Bean
+        public ParallelDiffComparator parallelDiffComparator() {
+        	return new ParallelDiffComparator(64, 16, 2);
+        }
+
+        @Bean
+        public DiffResultCache diffResultCache() {
+        	return new DiffResultCache(10);
+        }
+    }
+
+	@Autowired
+	private DiffService service;
+
+	@Autowired
+	private BlobStore blobStore;
+
+	@Autowired
+	private DiffResultCache resultCache;
+
+	@Rule
+	public ExpectedException expectedException = ExpectedException.none();
+
+	@Test
+	public void testEvictedIdReleasesItsFilesAndCachedResult() throws IOException, DiffValidationException {
+		service.addLeft(1, fileOf(1));
+		service.addRight(1, fileOf(2));
+
+		assertEquals(1, service.diff(1).getDiffCount());
+		assertEquals(1, resultCache.getSize());
+
+		// the files of ID 2 do not fit along with the files of ID 1
+		service.addLeft(2, fileOf(3));
+		service.addRight(2, fileOf(4));
+
+		assertEquals(2, blobStore.getBlobCount());
+		assertEquals(0, resultCache.getSize());
+
+		expectedException.expect(DiffValidationException.class);
+		expectedException.expectMessage("No file has been provided under ID: 1");
+
+		service.diff(1);
+	}
+
+	private byte[] fileOf(int value) {
+		byte[] file = new byte[20];
+		Arrays.fill(file, (byte) value);
+
+		return file;
+	}
+}
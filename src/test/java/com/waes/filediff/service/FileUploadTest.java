@@ -0,0 +1,123 @@
+package com.waes.filediff.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.waes.filediff.model.ChunkHashTree;
+
+/**
+ * Provides unit tests for the {@link FileUpload} class.
+ *
+ * @author Rodrigo Hackbarth
+ */
+public class FileUploadTest {
+
+	@Rule
+	public ExpectedException expectedException = ExpectedException.none();
+
+	@Test
+	public void testContentFillingBufferIsNotCopied() throws IOException {
+		byte[] array = new byte[4];
+		FileUpload upload = new FileUpload(ByteBuffer.wrap(array));
+
+		upload.write(new byte[] {1, 2, 3}, 0, 3);
+		upload.write(4);
+
+		assertEquals(4, upload.getSize());
+		assertSame(array, upload.toByteArray());
+		assertArrayEquals(new byte[] {1, 2, 3, 4}, array);
+	}
+
+	@Test
+	public void testContentShorterThanBufferEndsContent() throws IOException {
+		FileUpload upload = new FileUpload(ByteBuffer.allocate(10));
+
+		upload.write(new byte[] {1, 2, 3}, 0, 3);
+
+		assertArrayEquals(new byte[] {1, 2, 3}, upload.toByteArray());
+		assertEquals(3, upload.getContent().capacity());
+	}
+
+	@Test
+	public void testContentLargerThanBufferIsRejected() throws IOException {
+		FileUpload upload = new FileUpload(ByteBuffer.allocate(2));
+
+		expectedException.expect(IOException.class);
+		expectedException.expectMessage("File content exceeds the 2 bytes declared by the request.");
+
+		upload.write(new byte[] {1, 2, 3}, 0, 3);
+	}
+
+	@Test
+	public void testWriteBuffers() throws IOException {
+		FileUpload upload = new FileUpload(ByteBuffer.allocate(5));
+		ByteBuffer direct = ByteBuffer.allocateDirect(2);
+		direct.put(new byte[] {4, 5}).flip();
+
+		upload.write(ByteBuffer.wrap(new byte[] {0, 1, 2, 3}, 1, 3));
+		upload.write(direct);
+
+		assertArrayEquals(new byte[] {1, 2, 3, 4, 5}, upload.toByteArray());
+		assertEquals(0, direct.remaining());
+	}
+
+	@Test
+	public void testWriteBufferLargerThanBufferIsRejected() throws IOException {
+		FileUpload upload = new FileUpload(ByteBuffer.allocate(2));
+
+		expectedException.expect(IOException.class);
+		expectedException.expectMessage("File content exceeds the 2 bytes declared by the request.");
+
+		upload.write(ByteBuffer.wrap(new byte[] {1, 2, 3}));
+	}
+
+	@Test
+	public void testReadFromStreamIntoBuffer() throws IOException {
+		byte[] content = new byte[20000];
+		new Random(1).nextBytes(content);
+		ByteBuffer file = ByteBuffer.allocateDirect(content.length);
+		FileUpload upload = new FileUpload(file);
+
+		upload.readFrom(new ByteArrayInputStream(content));
+
+		assertEquals(content.length, upload.getSize());
+		assertArrayEquals(content, upload.toByteArray());
+	}
+
+	@Test
+	public void testReadFromStreamLargerThanBufferIsRejected() throws IOException {
+		FileUpload upload = new FileUpload(ByteBuffer.allocate(2));
+
+		expectedException.expect(IOException.class);
+		expectedException.expectMessage("File content exceeds the 2 bytes declared by the request.");
+
+		upload.readFrom(new ByteArrayInputStream(new byte[] {1, 2, 3}));
+	}
+
+	@Test
+	public void testChunksAreHashedAsTheyAreWritten() throws IOException {
+		byte[] content = new byte[1000];
+		new Random(2).nextBytes(content);
+		FileUpload upload = new FileUpload(ByteBuffer.allocate(1200), ChunkHashTree.builder(1200, 64));
+
+		for(int offset = 0; offset < content.length; offset += 30) {
+			upload.write(content, offset, Math.min(30, content.length - offset));
+		}
+
+		ChunkHashTree hashes = upload.getHashes();
+
+		assertEquals(content.length, hashes.getLength());
+		assertTrue(hashes.rootEquals(ChunkHashTree.of(content, 64)));
+	}
+}
@@ -0,0 +1,185 @@
+package com.waes.filediff.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Provides unit tests for the {@link MyersDiff} class.
+ *
+ * @author Rodrigo Hackbarth
+ */
+public class MyersDiffTest {
+
+	@Test
+	public void testDiffOfEqualFilesHasNoEdits() {
+		byte[] file = new byte[] {1, 2, 3, 4};
+
+		EditScript script = diff(file, file.clone(), Integer.MAX_VALUE);
+
+		assertEquals(0, script.edits);
+	}
+
+	@Test
+	public void testDiffOfInsertedBytes() {
+		byte[] leftFile = new byte[] {1, 2, 3, 4};
+		byte[] rightFile = new byte[] {1, 2, 9, 9, 3, 4};
+
+		EditScript script = diff(leftFile, rightFile, Integer.MAX_VALUE);
+
+		assertEquals("insert 2 2 2;", script.operations.toString());
+	}
+
+	@Test
+	public void testDiffOfDeletedBytes() {
+		byte[] leftFile = new byte[] {1, 2, 3, 4, 5};
+		byte[] rightFile = new byte[] {1, 5};
+
+		EditScript script = diff(leftFile, rightFile, Integer.MAX_VALUE);
+
+		assertEquals("delete 1 1 3;", script.operations.toString());
+	}
+
+	@Test
+	public void testDiffIsShortestEditScript() {
+		Random random = new Random(5);
+
+		for(int test = 0; test < 500; test++) {
+			byte[] leftFile = randomFile(random, random.nextInt(40));
+			byte[] rightFile = random.nextBoolean() ? randomFile(random, random.nextInt(40)) : mutate(random, leftFile);
+
+			EditScript script = diff(leftFile, rightFile, Integer.MAX_VALUE);
+
+			assertArrayEquals(rightFile, script.apply(leftFile, rightFile));
+			assertEquals(leftFile.length + rightFile.length - 2 * longestCommonSubsequence(leftFile, rightFile), script.edits);
+		}
+	}
+
+	@Test
+	public void testDiffGivesUpAboveMaximumEdits() {
+		Random random = new Random(9);
+		byte[] leftFile = randomFile(random, 1000);
+		byte[] rightFile = randomFile(random, 1000);
+
+		EditScript script = new EditScript();
+
+		assertFalse(MyersDiff.diff(ByteBuffer.wrap(leftFile), ByteBuffer.wrap(rightFile), 10, script));
+		assertEquals(0, script.edits);
+	}
+
+	private EditScript diff(byte[] leftFile, byte[] rightFile, int maxEdits) {
+		EditScript script = new EditScript();
+
+		assertTrue(MyersDiff.diff(ByteBuffer.wrap(leftFile), ByteBuffer.wrap(rightFile), maxEdits, script));
+
+		return script;
+	}
+
+	private int longestCommonSubsequence(byte[] leftFile, byte[] rightFile) {
+		int[][] lengths = new int[leftFile.length + 1][rightFile.length + 1];
+
+		for(int i = 1; i <= leftFile.length; i++) {
+			for(int j = 1; j <= rightFile.length; j++) {
+				lengths[i][j] = leftFile[i - 1] == rightFile[j - 1] ? lengths[i - 1][j - 1] + 1 : Math.max(lengths[i - 1][j], lengths[i][j - 1]);
+			}
+		}
+
+		return lengths[leftFile.length][rightFile.length];
+	}
+
+	private byte[] randomFile(Random random, int size) {
+		byte[] file = new byte[size];
+		for(int i = 0; i < size; i++) {
+			file[i] = (byte) random.nextInt(4);
+		}
+
+		return file;
+	}
+
+	/**
+	 * Returns a copy of the given file with a few bytes inserted and deleted.
+	 */
+	private byte[] mutate(Random random, byte[] file) {
+		ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+		for(byte b : file) {
+			int action = random.nextInt(10);
+			if(action == 0) {
+				continue;
+			}
+			if(action == 1) {
+				copy.write(random.nextInt(4));
+			}
+			copy.write(b);
+		}
+
+		return copy.toByteArray();
+	}
+
+	/**
+	 * Records the reported edits, checking they are in ascending order.
+	 */
+	private static class EditScript implements MyersDiff.EditListener {
+
+		private final StringBuilder operations = new StringBuilder();
+		private int[][] ops = new int[0][];
+		private int edits;
+
+		@Override
+		public void onDelete(int leftOffset, int rightOffset, int length) {
+			record(0, leftOffset, rightOffset, length);
+			operations.append("delete ").append(leftOffset).append(' ').append(rightOffset).append(' ').append(length).append(';');
+		}
+
+		@Override
+		public void onInsert(int leftOffset, int rightOffset, int length) {
+			record(1, leftOffset, rightOffset, length);
+			operations.append("insert ").append(leftOffset).append(' ').append(rightOffset).append(' ').append(length).append(';');
+		}
+
+		private void record(int type, int leftOffset, int rightOffset, int length) {
+			if(ops.length > 0) {
+				int[] last = ops[ops.length - 1];
+				assertTrue(leftOffset >= last[1] && rightOffset >= last[2]);
+			}
+
+			int[][] grown = new int[ops.length + 1][];
+			System.arraycopy(ops, 0, grown, 0, ops.length);
+			grown[ops.length] = new int[] {type, leftOffset, rightOffset, length};
+			ops = grown;
+			edits += length;
+		}
+
+		/**
+		 * Applies the edits to the left file, taking the inserted
+		 * bytes from the right file.
+		 */
+		byte[] apply(byte[] leftFile, byte[] rightFile) {
+			ByteArrayOutputStream result = new ByteArrayOutputStream();
+			int leftOffset = 0;
+
+			for(int[] op : ops) {
+				result.write(leftFile, leftOffset, op[1] - leftOffset);
+				leftOffset = op[1];
+				assertEquals(op[2], result.size());
+
+				if(op[0] == 0) {
+					leftOffset += op[3];
+				}else {
+					result.write(rightFile, op[2], op[3]);
+				}
+			}
+
+			result.write(leftFile, leftOffset, leftFile.length - leftOffset);
+
+			return result.toByteArray();
+		}
+	}
+}
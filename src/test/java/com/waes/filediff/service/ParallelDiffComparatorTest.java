@@ -0,0 +1,144 @@
+package com.waes.filediff.service;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Provides unit tests for the {@link ParallelDiffComparator} class.
+ *
+ * @author Rodrigo Hackbarth
+ */
+public class ParallelDiffComparatorTest {
+
+	@Test
+	public void testCompareMatchesSequentialComparison() {
+		ParallelDiffComparator comparator = new ParallelDiffComparator(0, 64, 4);
+		Random random = new Random(3);
+
+		try {
+			for(int density = 0; density <= 100; density += 5) {
+				byte[] leftFile = new byte[10_000 + random.nextInt(100)];
+				random.nextBytes(leftFile);
+
+				byte[] rightFile = leftFile.clone();
+				for(int i = 0; i < rightFile.length; i++) {
+					if(random.nextInt(100) < density) {
+						rightFile[i]++;
+					}
+				}
+
+				assertRunsEqual(sequentialRuns(leftFile, rightFile), parallelRuns(comparator, leftFile, rightFile));
+			}
+		} finally {
+			comparator.shutdown();
+		}
+	}
+
+	@Test
+	public void testCompareStitchesRunsCrossingChunkBoundaries() {
+		ParallelDiffComparator comparator = new ParallelDiffComparator(0, 64, 4);
+
+		byte[] leftFile = new byte[1024];
+		byte[] rightFile = new byte[1024];
+		for(int i = 60; i < 300; i++) {
+			rightFile[i] = 1;
+		}
+
+		try {
+			List<int[]> runs = parallelRuns(comparator, leftFile, rightFile);
+
+			assertEquals(1, runs.size());
+			assertEquals(60, runs.get(0)[0]);
+			assertEquals(240, runs.get(0)[1]);
+		} finally {
+			comparator.shutdown();
+		}
+	}
+
+	@Test
+	public void testCompareStitchesRunsCrossingWindows() {
+		// windows of 4 chunks of 64 bytes, so the run spans 4 windows
+		ParallelDiffComparator comparator = new ParallelDiffComparator(0, 64, 4);
+
+		byte[] leftFile = new byte[1024];
+		byte[] rightFile = new byte[1024];
+		for(int i = 100; i < 900; i++) {
+			rightFile[i] = 1;
+		}
+		rightFile[1000] = 1;
+
+		try {
+			List<int[]> runs = parallelRuns(comparator, leftFile, rightFile);
+
+			assertEquals(2, runs.size());
+			assertEquals(100, runs.get(0)[0]);
+			assertEquals(800, runs.get(0)[1]);
+			assertEquals(1000, runs.get(1)[0]);
+			assertEquals(1, runs.get(1)[1]);
+		} finally {
+			comparator.shutdown();
+		}
+	}
+
+	@Test
+	public void testCompareUnalignedRangeMatchesSequentialComparison() {
+		ParallelDiffComparator comparator = new ParallelDiffComparator(0, 8, 2);
+		Random random = new Random(5);
+
+		byte[] leftFile = new byte[200];
+		random.nextBytes(leftFile);
+		byte[] rightFile = leftFile.clone();
+		for(int i = 0; i < rightFile.length; i += 3) {
+			rightFile[i]++;
+		}
+
+		try {
+			for(int from = 0; from < 16; from++) {
+				for(int to = from + 9; to < from + 40; to++) {
+					List<int[]> expected = new ArrayList<>();
+					DiffComparator.compare(leftFile, rightFile, from, to, (offset, length) -> expected.add(new int[] {offset, length}));
+
+					List<int[]> actual = new ArrayList<>();
+					int count = comparator.compare(ByteBuffer.wrap(leftFile), ByteBuffer.wrap(rightFile), from, to,
+							(offset, length) -> actual.add(new int[] {offset, length}));
+
+					assertEquals(actual.size(), count);
+					assertRunsEqual(expected, actual);
+				}
+			}
+		} finally {
+			comparator.shutdown();
+		}
+	}
+
+	private List<int[]> parallelRuns(ParallelDiffComparator comparator, byte[] leftFile, byte[] rightFile) {
+		List<int[]> runs = new ArrayList<>();
+		int count = comparator.compare(ByteBuffer.wrap(leftFile), ByteBuffer.wrap(rightFile), (offset, length) -> runs.add(new int[] {offset, length}));
+
+		assertEquals(runs.size(), count);
+
+		return runs;
+	}
+
+	private List<int[]> sequentialRuns(byte[] leftFile, byte[] rightFile) {
+		List<int[]> runs = new ArrayList<>();
+		DiffComparator.compare(leftFile, rightFile, (offset, length) -> runs.add(new int[] {offset, length}));
+
+		return runs;
+	}
+
+	private void assertRunsEqual(List<int[]> expected, List<int[]> actual) {
+		assertEquals(expected.size(), actual.size());
+
+		for(int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i)[0], actual.get(i)[0]);
+			assertEquals(expected.get(i)[1], actual.get(i)[1]);
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package com.waes.filediff.service;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.waes.filediff.exception.DiffValidationException;
+import com.waes.filediff.model.DiffServiceResultDTO;
+import com.waes.filediff.repository.BlobStore;
+import com.waes.filediff.repository.DiffRepository;
+import com.waes.filediff.repository.HeapFileStore;
+
+/**
+ * Provides unit tests for the {@link DiffService} class patching files
+ * while they are read, without deduplication, so uploads of the same array
+ * are stored separately.
+ *
+ * @author Rodrigo Hackbarth
+ */
+@RunWith(SpringRunner.class)
+public class PatchingDiffServiceTest {
+
+	private static final int FILE_SIZE = 256 * 1024;
+
+	@TestConfiguration
+    static class PatchingDiffServiceTestContextConfiguration {
+
+        @Bean
+        public DiffService diffService() {
+            return new DiffService();
+        }
+
+        @Bean
+        public DiffRepository diffRepository() {
+        	return new DiffRepository();
+        }
+
+        @Bean
+        public BlobStore blobStore() {
+        	return new BlobStore(new HeapFileStore(), false);
+        }
+
+        @Bean
+        public ParallelDiffComparator parallelDiffComparator() {
+        	return new ParallelDiffComparator(64 * 1024, 16 * 1024, 2);
+        }
+
+        @Bean
+        public DiffResultCache diffResultCache() {
+        	return new DiffResultCache(10);
+        }
+    }
+
+	@Autowired
+	private DiffService service;
+
+	@Test
+	public void testPatchDoesNotChangeFilesStoredFromSameArray() throws IOException, DiffValidationException {
+		int id = 1;
+		byte[] file = new byte[100];
+
+		service.addLeft(id, file);
+		service.addRight(id, file);
+		service.patchRight(id, 10, new byte[] {1, 1});
+
+		DiffServiceResultDTO diffResult = service.diff(id);
+
+		assertEquals(1, diffResult.getDiffCount());
+		assertEquals(10, diffResult.getDiffOffset(0));
+		assertEquals(2, diffResult.getDiffLength(0));
+	}
+
+	@Test
+	public void testDiffsReadDuringPatchesSeeWholePatches() throws Exception {
+		int id = 2;
+		byte[] ones = new byte[FILE_SIZE];
+		Arrays.fill(ones, (byte) 1);
+
+		service.addLeft(id, new byte[FILE_SIZE]);
+		service.addRight(id, new byte[FILE_SIZE]);
+
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		AtomicBoolean patching = new AtomicBoolean(true);
+		List<Future<?>> readers = new ArrayList<>();
+
+		try {
+			for(int i = 0; i < 2; i++) {
+				readers.add(executor.submit(() -> {
+					while(patching.get()) {
+						DiffServiceResultDTO diffResult = service.diff(id);
+
+						// either the files before a patch or the whole patched files are compared
+						if(diffResult.getDiffCount() > 0) {
+							assertEquals(1, diffResult.getDiffCount());
+							assertEquals(0, diffResult.getDiffOffset(0));
+							assertEquals(FILE_SIZE, diffResult.getDiffLength(0));
+						}else {
+							assertEquals("Files are equal.", diffResult.getMessage());
+						}
+					}
+					return null;
+				}));
+			}
+
+			for(int i = 0; i < 50; i++) {
+				service.patchRight(id, 0, i % 2 == 0 ? ones : new byte[FILE_SIZE]);
+			}
+		} finally {
+			patching.set(false);
+			executor.shutdown();
+		}
+
+		for(Future<?> reader : readers) {
+			reader.get();
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package com.waes.filediff.service;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.waes.filediff.repository.BlobStore;
+import com.waes.filediff.repository.DiffRepository;
+import com.waes.filediff.repository.HeapFileStore;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Provides unit tests for the {@link StorageMetrics} class.
+ * 
+ * @author Rodrigo Hackbarth
+ */
+@RunWith(SpringRunner.class)
+public class StorageMetricsTest {
+
+	@TestConfiguration
+	static class StorageMetricsTestContextConfiguration {
+		
+		@Bean
+		public StorageMetrics storageMetrics() {
+			return new StorageMetrics();
+		}
+		
+		@Bean
+		public DiffService diffService() {
+			return new DiffService();
+		}
+		
+		@Bean
+		public DiffRepository diffRepository() {
+			return new DiffRepository();
+		}
+		
+		@Bean
+		public BlobStore blobStore() {
+			return new BlobStore(new HeapFileStore(), true);
+		}
+		
+		@Bean
+		public ParallelDiffComparator parallelDiffComparator() {
+			return new ParallelDiffComparator(64, 16, 2);
+		}
+		
+		@Bean
+		public DiffResultCache diffResultCache() {
+			return new DiffResultCache(10);
+		}
+	}
+	
+	@Autowired
+	private StorageMetrics storageMetrics;
+	
+	@Autowired
+	private DiffService service;
+	
+	private MeterRegistry registry;
+	
+	@Before
+	public void bindMetrics() {
+		registry = new SimpleMeterRegistry();
+		storageMetrics.bindTo(registry);
+	}
+	
+	@Test
+	public void testGaugesReportStoredFiles() throws Exception {
+		double ids = registry.get("diff.storage.ids").gauge().value();
+		double bytes = registry.get("diff.storage.bytes").gauge().value();
+		double blobs = registry.get("diff.storage.blobs").gauge().value();
+		
+		service.addLeft(1, new byte[] {11, 12, 13, 14});
+		service.addRight(1, new byte[] {11, 12, 13, 15});
+		service.addLeft(2, new byte[] {11, 12, 13, 14});
+		
+		assertEquals(ids + 2, registry.get("diff.storage.ids").gauge().value(), 0);
+		assertEquals(bytes + 12, registry.get("diff.storage.bytes").gauge().value(), 0);
+		// the left files have the same content, which is stored once
+		assertEquals(blobs + 2, registry.get("diff.storage.blobs").gauge().value(), 0);
+	}
+	
+	@Test
+	public void testCacheMetricsReportHitsAndMisses() throws Exception {
+		service.addLeft(3, new byte[] {21, 22, 23, 24});
+		service.addRight(3, new byte[] {24, 23, 22, 21});
+		
+		double hits = registry.get("diff.cache.hits").functionCounter().count();
+		double misses = registry.get("diff.cache.misses").functionCounter().count();
+		double size = registry.get("diff.cache.size").gauge().value();
+		
+		service.diff(3);
+		service.diff(3);
+		
+		assertEquals(hits + 1, registry.get("diff.cache.hits").functionCounter().count(), 0);
+		assertEquals(misses + 1, registry.get("diff.cache.misses").functionCounter().count(), 0);
+		assertEquals(size + 1, registry.get("diff.cache.size").gauge().value(), 0);
+	}
+}
@@ -0,0 +1,137 @@
+package com.waes.filediff.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.waes.filediff.exception.DiffValidationException;
+import com.waes.filediff.model.ChunkHashTree;
+import com.waes.filediff.repository.FileStore;
+import com.waes.filediff.repository.HeapFileStore;
+
+/**
+ * Provides unit tests for the {@link UploadSessionService} class.
+ * 
+ * @author Rodrigo Hackbarth
+ */
+@RunWith(SpringRunner.class)
+@TestPropertySource(properties = "diff.upload.max-reserved-bytes=100")
+public class UploadSessionServiceTest {
+
+	@TestConfiguration
+	static class UploadSessionServiceTestContextConfiguration {
+		
+		@Bean
+		public UploadSessionService uploadSessionService() {
+			return new UploadSessionService();
+		}
+		
+		@Bean
+		public FileStore fileStore() {
+			return new HeapFileStore();
+		}
+	}
+	
+	@Autowired
+	private UploadSessionService service;
+	
+	@MockBean
+	private DiffService diffService;
+	
+	@Rule
+	public ExpectedException expectedException = ExpectedException.none();
+	
+	@Test
+	public void testChunksSentOutOfOrderAreCommitted() throws DiffValidationException, IOException {
+		Mockito.when(diffService.newHashBuilder(10)).thenReturn(ChunkHashTree.builder(10, 2));
+		String uploadId = service.open(1, true, 10, 4);
+		
+		service.writeChunk(uploadId, 2, new ByteArrayInputStream(new byte[] {9, 10}));
+		service.writeChunk(uploadId, 0, new ByteArrayInputStream(new byte[] {1, 2, 3, 4}));
+		
+		assertEquals(Arrays.asList(1), service.getMissingChunks(uploadId));
+		
+		service.writeChunk(uploadId, 1, new ByteArrayInputStream(new byte[] {5, 6, 7, 8}));
+		service.commit(uploadId);
+		
+		byte[] expectedFile = new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+		ArgumentCaptor<ByteBuffer> file = ArgumentCaptor.forClass(ByteBuffer.class);
+		ArgumentCaptor<ChunkHashTree> hashes = ArgumentCaptor.forClass(ChunkHashTree.class);
+		Mockito.verify(diffService).addLeft(Mockito.eq(1), file.capture(), hashes.capture());
+		assertEquals(ByteBuffer.wrap(expectedFile), file.getValue());
+		assertTrue(hashes.getValue().rootEquals(ChunkHashTree.of(expectedFile, 2)));
+	}
+	
+	@Test
+	public void testIncompleteChunkIsMissing() throws DiffValidationException, IOException {
+		String uploadId = service.open(1, false, 8, 4);
+		
+		service.writeChunk(uploadId, 0, new ByteArrayInputStream(new byte[] {1, 2, 3, 4}));
+		
+		try {
+			service.writeChunk(uploadId, 1, new ByteArrayInputStream(new byte[] {5, 6}));
+		} catch (DiffValidationException e) {
+			assertEquals("Chunk 1 must have 4 bytes.", e.getMessage());
+		}
+		
+		assertEquals(Arrays.asList(1), service.getMissingChunks(uploadId));
+		
+		expectedException.expect(DiffValidationException.class);
+		expectedException.expectMessage("1 chunks have not been received under upload ID: " + uploadId);
+		
+		service.commit(uploadId);
+	}
+	
+	@Test
+	public void testCommittedSessionIsClosed() throws DiffValidationException, IOException {
+		String uploadId = service.open(1, false, 0, 4);
+		
+		service.commit(uploadId);
+		
+		expectedException.expect(DiffValidationException.class);
+		expectedException.expectMessage("No upload session is open under ID: " + uploadId);
+		
+		service.writeChunk(uploadId, 0, new ByteArrayInputStream(new byte[0]));
+	}
+	
+	@Test
+	public void testOpenIsRejectedBeyondReservedBytes() throws DiffValidationException, IOException {
+		service.open(2, true, 80, 40);
+		
+		try {
+			service.open(2, false, 80, 40);
+			fail("Opening the session should have been rejected.");
+		} catch (DiffValidationException e) {
+			assertEquals("Too many bytes are reserved by open upload sessions, at most 100 bytes may be reserved.", e.getMessage());
+		} finally {
+			service.dropExpiredSessions(System.nanoTime() + TimeUnit.MINUTES.toNanos(61));
+		}
+		
+		String uploadId = service.open(2, false, 80, 40);
+		service.dropExpiredSessions(System.nanoTime() + TimeUnit.MINUTES.toNanos(61));
+		
+		expectedException.expect(DiffValidationException.class);
+		expectedException.expectMessage("No upload session is open under ID: " + uploadId);
+		
+		service.getMissingChunks(uploadId);
+	}
+}
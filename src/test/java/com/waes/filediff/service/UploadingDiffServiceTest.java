@@ -0,0 +1,102 @@
+package com.waes.filediff.service;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.waes.filediff.exception.DiffValidationException;
+import com.waes.filediff.model.DiffServiceResultDTO;
+import com.waes.filediff.repository.BlobStore;
+import com.waes.filediff.repository.DiffRepository;
+import com.waes.filediff.repository.HeapFileStore;
+
+/**
+ * Provides unit tests for the {@link DiffService} class storing files
+ * uploaded in a single request through a {@link FileUpload}.
+ *
+ * @author Rodrigo Hackbarth
+ */
+@RunWith(SpringRunner.class)
+@TestPropertySource(properties = "diff.upload.max-size=1024")
+public class UploadingDiffServiceTest {
+
+	@TestConfiguration
+    static class UploadingDiffServiceTestContextConfiguration {
+
+        @Bean
+        public DiffService diffService() {
+            return new DiffService();
+        }
+
+        @Bean
+        public DiffRepository diffRepository() {
+        	return new DiffRepository();
+        }
+
+        @Bean
+        public BlobStore blobStore() {
+        	return new BlobStore(new HeapFileStore(), true);
+        }
+
+        @Bean
+        public ParallelDiffComparator parallelDiffComparator() {
+        	return new ParallelDiffComparator(64, 16, 2);
+        }
+
+        @Bean
+        public DiffResultCache diffResultCache() {
+        	return new DiffResultCache(10);
+        }
+    }
+
+	@Autowired
+	private DiffService service;
+
+	@Rule
+	public ExpectedException expectedException = ExpectedException.none();
+
+	@Test
+	public void testUploadsStoreOnlyTheWrittenContent() throws IOException, DiffValidationException {
+		int id = 1;
+
+		FileUpload left = service.newUpload(id, 10);
+		left.write(new byte[] {1, 2, 3, 4}, 0, 4);
+		service.addLeft(id, left);
+
+		FileUpload right = service.newUpload(id, 4);
+		right.write(new byte[] {1, 0, 0, 4}, 0, 4);
+		service.addRight(id, right);
+
+		DiffServiceResultDTO diffResult = service.diff(id);
+
+		assertEquals(1, diffResult.getDiffCount());
+		assertEquals(1, diffResult.getDiffOffset(0));
+		assertEquals(2, diffResult.getDiffLength(0));
+	}
+
+	@Test
+	public void testUploadLargerThanMaxSizeIsRejected() throws IOException, DiffValidationException {
+		expectedException.expect(DiffValidationException.class);
+		expectedException.expectMessage("File size must be between 0 and 1024 bytes.");
+
+		service.newUpload(2, 1025);
+	}
+
+	@Test
+	public void testPatchLargerThanMaxSizeIsRejected() throws DiffValidationException {
+		expectedException.expect(DiffValidationException.class);
+		expectedException.expectMessage("File size must be between 0 and 1024 bytes.");
+
+		service.newPatch(1025);
+	}
+}